@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.benchmark;
+
+import net.duvdev.rsqueezea.loader.PKCS1PrivateKeyLoader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.RSAMultiPrimePrivateCrtKeySpec;
+import java.security.spec.RSAPrivateCrtKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+
+/**
+ * Pre-generated keys the benchmarks run on, one two-prime and one three-prime key per modulus
+ * length. Generating a 16384-bit key takes minutes, so they are kept as resources rather than
+ * generated on setup.
+ */
+final class BenchmarkKeys {
+
+  /** Do not instantiate */
+  private BenchmarkKeys() {}
+
+  static RSAPrivateCrtKeySpec privateKey(int bits) throws IOException {
+    try (InputStream inputStream = open("/keys/" + bits + ".pem", bits)) {
+      return new PKCS1PrivateKeyLoader(inputStream).load();
+    }
+  }
+
+  static RSAMultiPrimePrivateCrtKeySpec multiPrimeKey(int bits) throws IOException {
+    try (InputStream inputStream = open("/keys/multiprime-" + bits + ".pem", bits)) {
+      return (RSAMultiPrimePrivateCrtKeySpec) new PKCS1PrivateKeyLoader(inputStream).loadKeySpec();
+    }
+  }
+
+  static RSAPublicKey publicKey(RSAPrivateCrtKeySpec privateKey) throws GeneralSecurityException {
+    return (RSAPublicKey)
+        KeyFactory.getInstance("RSA")
+            .generatePublic(
+                new RSAPublicKeySpec(privateKey.getModulus(), privateKey.getPublicExponent()));
+  }
+
+  private static InputStream open(String resource, int bits) {
+    InputStream inputStream = BenchmarkKeys.class.getResourceAsStream(resource);
+    if (inputStream == null) {
+      throw new IllegalArgumentException("No benchmark key of " + bits + " bits");
+    }
+    return inputStream;
+  }
+}
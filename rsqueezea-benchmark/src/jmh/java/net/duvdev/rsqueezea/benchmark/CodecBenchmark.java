@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.benchmark;
+
+import net.duvdev.rsqueezea.codec.CodecFactory;
+import net.duvdev.rsqueezea.codec.DecoderException;
+import net.duvdev.rsqueezea.codec.EncoderException;
+import net.duvdev.rsqueezea.codec.StreamingCodec;
+import net.duvdev.rsqueezea.model.SqueezedKey;
+import net.duvdev.rsqueezea.protocol.ProtocolFactory;
+import net.duvdev.rsqueezea.protocol.SqueezeType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of a squeezed key by every codec, through the byte array and the streaming
+ * methods. The key is squeezed as {@link SqueezeType#PRIME_P}, the only type that still fits in a
+ * QR code at 16384 bits.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CodecBenchmark {
+
+  @Param({"1024", "2048", "4096", "8192", "16384"})
+  public int keyBits;
+
+  @Param({"DER", "PEM", "QR", "CRC"})
+  public CodecFactory.CodecType codecType;
+
+  private StreamingCodec codec;
+
+  private byte[] data;
+
+  private byte[] encoded;
+
+  private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+  @Setup
+  public void setUp() throws Exception {
+    codec = CodecFactory.getCodec(codecType);
+    data =
+        ProtocolFactory.getLatest()
+            .encodeSqueezedKey(
+                SqueezedKey.fromRSAKey(BenchmarkKeys.privateKey(keyBits)), SqueezeType.PRIME_P);
+    encoded = codec.encode(data);
+  }
+
+  @Benchmark
+  public byte[] encode() throws EncoderException {
+    return codec.encode(data);
+  }
+
+  @Benchmark
+  public byte[] decode() throws DecoderException {
+    return codec.decode(encoded);
+  }
+
+  @Benchmark
+  public int encodeStreaming() throws EncoderException, IOException {
+    output.reset();
+    codec.encode(ByteBuffer.wrap(data), output);
+    return output.size();
+  }
+
+  @Benchmark
+  public ByteBuffer decodeStreaming() throws DecoderException, IOException {
+    return codec.decode(new ByteArrayInputStream(encoded));
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.benchmark;
+
+import net.duvdev.rsqueezea.KeyReassembler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigInteger;
+import java.security.spec.RSAPrivateCrtKeySpec;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KeyReassemblerBenchmark {
+
+  @Param({"1024", "2048", "4096", "8192", "16384"})
+  public int keyBits;
+
+  @Param({"EULER", "CARMICHAEL"})
+  public String totient;
+
+  @Param({"BIG_INTEGER", "FIXED_WIDTH"})
+  public String engine;
+
+  private BigInteger modulus;
+
+  private BigInteger publicExponent;
+
+  private BigInteger primeP;
+
+  private KeyReassembler.TotientFunction totientFunction;
+
+  private KeyReassembler.Engine reassemblyEngine;
+
+  @Setup
+  public void setUp() throws Exception {
+    RSAPrivateCrtKeySpec privateKey = BenchmarkKeys.privateKey(keyBits);
+    modulus = privateKey.getModulus();
+    publicExponent = privateKey.getPublicExponent();
+    primeP = privateKey.getPrimeP();
+    totientFunction =
+        "EULER".equals(totient)
+            ? KeyReassembler.EULER_TOTIENT_FUNCTION
+            : KeyReassembler.CARMICHAEL_TOTIENT_FUNCTION;
+    reassemblyEngine =
+        "FIXED_WIDTH".equals(engine)
+            ? KeyReassembler.FIXED_WIDTH_ENGINE
+            : KeyReassembler.BIG_INTEGER_ENGINE;
+  }
+
+  @Benchmark
+  public RSAPrivateCrtKeySpec reassemble() {
+    return reassemblyEngine.reassemble(modulus, publicExponent, primeP, totientFunction);
+  }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.benchmark;
+
+import net.duvdev.rsqueezea.lattice.PrimeRecovery;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigInteger;
+import java.security.spec.RSAPrivateCrtKeySpec;
+import java.util.concurrent.TimeUnit;
+
+/** Recovery of the larger prime from as few of its high bits as the squeeze type stores. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PrimeRecoveryBenchmark {
+
+  @Param({"1024", "2048", "4096", "8192"})
+  public int keyBits;
+
+  private BigInteger modulus;
+
+  private BigInteger highBits;
+
+  private int unknownBits;
+
+  @Setup
+  public void setUp() throws Exception {
+    RSAPrivateCrtKeySpec privateKey = BenchmarkKeys.privateKey(keyBits);
+    modulus = privateKey.getModulus();
+    unknownBits = PrimeRecovery.unknownBits(modulus.bitLength());
+    highBits = privateKey.getPrimeP().max(privateKey.getPrimeQ()).shiftRight(unknownBits);
+  }
+
+  @Benchmark
+  public BigInteger recover() {
+    return PrimeRecovery.fromHighBits(modulus, highBits, unknownBits);
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.benchmark;
+
+import net.duvdev.rsqueezea.KeyReassembler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigInteger;
+import java.security.spec.RSAPrivateCrtKeySpec;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The private exponent of a key with e = 65537, by the extended Euclidean algorithm on the full
+ * totient ({@code GENERIC}), and by the small exponent path of {@link
+ * KeyReassembler#privateExponent(BigInteger, BigInteger)} ({@code SMALL_E}).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PrivateExponentBenchmark {
+
+  @Param({"2048", "4096", "8192"})
+  public int keyBits;
+
+  @Param({"GENERIC", "SMALL_E"})
+  public String path;
+
+  private BigInteger publicExponent;
+
+  private BigInteger totient;
+
+  private boolean generic;
+
+  @Setup
+  public void setUp() throws Exception {
+    RSAPrivateCrtKeySpec privateKey = BenchmarkKeys.privateKey(keyBits);
+    publicExponent = privateKey.getPublicExponent();
+    totient =
+        KeyReassembler.CARMICHAEL_TOTIENT_FUNCTION.apply(
+            privateKey.getPrimeP(), privateKey.getPrimeQ());
+    generic = "GENERIC".equals(path);
+  }
+
+  @Benchmark
+  public BigInteger privateExponent() {
+    return generic
+        ? publicExponent.modInverse(totient)
+        : KeyReassembler.privateExponent(publicExponent, totient);
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.benchmark;
+
+import net.duvdev.rsqueezea.keygen.SeededKeyGenerator;
+import net.duvdev.rsqueezea.model.SqueezedKey;
+import net.duvdev.rsqueezea.protocol.Protocol;
+import net.duvdev.rsqueezea.protocol.ProtocolFactory;
+import net.duvdev.rsqueezea.protocol.SqueezeType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of every squeeze type, by every protocol version. Multi-prime keys have
+ * three primes, and seeds are encoded as they are, without generating their keys.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProtocolBenchmark {
+
+  @Param({"1024", "2048", "4096", "8192", "16384"})
+  public int keyBits;
+
+  @Param({"0", "1"})
+  public int version;
+
+  @Param({
+    "PRIME_P",
+    "PRIME_WITH_MODULUS",
+    "PRIME_PQ_WITH_EXPONENT",
+    "MULTI_PRIME_WITH_EXPONENT",
+    "PRIME_P_HIGH_BITS",
+    "SEED"
+  })
+  public SqueezeType squeezeType;
+
+  private Protocol protocol;
+
+  private SqueezedKey key;
+
+  private byte[] encoded;
+
+  @Setup
+  public void setUp() throws Exception {
+    protocol = ProtocolFactory.getInstance(version);
+    switch (squeezeType) {
+      case MULTI_PRIME_WITH_EXPONENT:
+        key = SqueezedKey.fromRSAKey(BenchmarkKeys.multiPrimeKey(keyBits));
+        break;
+      case SEED:
+        key = SqueezedKey.fromSeed(new byte[SeededKeyGenerator.SEED_LENGTH], keyBits);
+        break;
+      default:
+        key = SqueezedKey.fromRSAKey(BenchmarkKeys.privateKey(keyBits));
+    }
+    encoded = protocol.encodeSqueezedKey(key, squeezeType);
+  }
+
+  @Benchmark
+  public byte[] encode() throws IOException {
+    return protocol.encodeSqueezedKey(key, squeezeType);
+  }
+
+  @Benchmark
+  public SqueezedKey decode() throws IOException {
+    return protocol.decodeSqueezedKey(encoded);
+  }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.benchmark;
+
+import net.duvdev.rsqueezea.selftest.RSASelfTest;
+import net.duvdev.rsqueezea.selftest.RSASelfTestException;
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.InputStream;
+import java.security.interfaces.RSAPublicKey;
+import java.util.concurrent.TimeUnit;
+
+/** The self-test every squeeze ends with: loading, decrypting and signing with the key. */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RSASelfTestBenchmark {
+
+  @Param({"1024", "2048", "4096", "8192", "16384"})
+  public int keyBits;
+
+  private byte[] pem;
+
+  private RSAPublicKey publicKey;
+
+  @Setup
+  public void setUp() throws Exception {
+    try (InputStream inputStream = getClass().getResourceAsStream("/keys/" + keyBits + ".pem")) {
+      pem = IOUtils.toByteArray(inputStream);
+    }
+    publicKey = BenchmarkKeys.publicKey(BenchmarkKeys.privateKey(keyBits));
+  }
+
+  @Benchmark
+  public void selfTest() throws RSASelfTestException {
+    RSASelfTest.selfTest(pem, publicKey);
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.benchmark;
+
+import net.duvdev.rsqueezea.keygen.SeededKeyGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.spec.RSAPrivateCrtKeySpec;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generation of a key from its seed, which is what reassembling a seed costs. The time to find a
+ * prime varies a lot from seed to seed, so every invocation takes the next of a few fixed seeds.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SeededKeyGeneratorBenchmark {
+
+  private static final int SEED_COUNT = 16;
+
+  @Param({"2048", "4096"})
+  public int keyBits;
+
+  @Param({"1", "4"})
+  public int parallelism;
+
+  private byte[][] seeds;
+
+  private ForkJoinPool pool;
+
+  private int next;
+
+  @Setup
+  public void setUp() {
+    seeds = new byte[SEED_COUNT][SeededKeyGenerator.SEED_LENGTH];
+    for (int i = 0; i < SEED_COUNT; ++i) {
+      seeds[i][0] = (byte) i;
+    }
+    pool = new ForkJoinPool(parallelism);
+  }
+
+  @TearDown
+  public void tearDown() {
+    pool.shutdown();
+  }
+
+  @Benchmark
+  public RSAPrivateCrtKeySpec generate() {
+    byte[] seed = seeds[next];
+    next = (next + 1) % SEED_COUNT;
+    return SeededKeyGenerator.generate(seed, keyBits, pool);
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.archive;
+
+import net.duvdev.rsqueezea.model.ModulusFingerprint;
+import net.duvdev.rsqueezea.model.SqueezedKey;
+import net.duvdev.rsqueezea.protocol.ProtocolFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/** A squeezed key stored in a {@link KeyArchive}, with the ID and fingerprint it is indexed by. */
+public final class ArchiveEntry {
+
+  private final String keyId;
+
+  private final ModulusFingerprint fingerprint;
+
+  private final ByteBuffer squeezedKey;
+
+  /** Offset of the record in its archive, or -1 before it is written */
+  final int offset;
+
+  /**
+   * @param keyId Any name, unique within the archive
+   * @param fingerprint Fingerprint of the key's modulus. Squeezed keys need not have the modulus,
+   *     so it is taken separately.
+   * @param squeezedKey A key encoded by a {@link net.duvdev.rsqueezea.protocol.Protocol}, from its
+   *     position to its limit
+   */
+  public ArchiveEntry(String keyId, ModulusFingerprint fingerprint, ByteBuffer squeezedKey) {
+    this(keyId, fingerprint, squeezedKey.slice(), -1);
+  }
+
+  ArchiveEntry(String keyId, ModulusFingerprint fingerprint, ByteBuffer squeezedKey, int offset) {
+    int idLength = keyId.getBytes(StandardCharsets.UTF_8).length;
+    if (idLength == 0 || idLength > KeyArchive.MAX_ID_LENGTH) {
+      throw new IllegalArgumentException(
+          "Key ID must be 1 to " + KeyArchive.MAX_ID_LENGTH + " bytes, but was " + idLength);
+    }
+    this.keyId = keyId;
+    this.fingerprint = fingerprint;
+    this.squeezedKey = squeezedKey.asReadOnlyBuffer();
+    this.offset = offset;
+  }
+
+  public String getKeyId() {
+    return keyId;
+  }
+
+  public ModulusFingerprint getFingerprint() {
+    return fingerprint;
+  }
+
+  /**
+   * @return The encoded squeezed key. For an entry read from an archive, this is a view of the
+   *     mapped file and nothing is copied.
+   */
+  public ByteBuffer getSqueezedKey() {
+    return squeezedKey.duplicate();
+  }
+
+  public SqueezedKey decode() throws IOException {
+    ByteBuffer buffer = getSqueezedKey();
+    try {
+      return ProtocolFactory.detect(buffer).decodeSqueezedKey(buffer);
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Cannot decode key " + keyId, e);
+    }
+  }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.archive;
+
+import net.duvdev.rsqueezea.model.ModulusFingerprint;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * A read-only view of a file holding many squeezed keys, indexed by key ID and by modulus
+ * fingerprint:
+ *
+ * <pre>
+ * header   "RSQZARC" 0x01
+ * records  0x52, ID length (u16), ID (UTF-8), fingerprint (32 bytes), key length (i32), key,
+ *          CRC32 of the record (i32)
+ * index    0x49, ID table (i32 * slots), fingerprint table (i32 * slots)
+ * trailer  index offset (i32), key count (i32), slots (i32), CRC32 of the index (i32), "RSQZAEND"
+ * </pre>
+ *
+ * Both tables are open-addressed hash tables of record offsets, probed linearly from the FNV-1a
+ * hash of the ID's UTF-8 bytes, or the first four bytes of the fingerprint. An empty slot is 0.
+ * Records left behind by a key appended again under the same ID are not indexed, and are dropped by
+ * {@link KeyArchiveWriter#compact}.
+ *
+ * <p>The file is mapped into memory, so a lookup reads a few bytes of the index and the record it
+ * points to, and returns a view of the key without copying it. Lookups are safe from any number of
+ * threads. Archives are limited to 2 GiB, which is millions of keys.
+ */
+public final class KeyArchive {
+
+  static final byte[] MAGIC = {'R', 'S', 'Q', 'Z', 'A', 'R', 'C', 0x01};
+
+  static final byte[] TRAILER_MAGIC = {'R', 'S', 'Q', 'Z', 'A', 'E', 'N', 'D'};
+
+  static final int RECORD_TAG = 0x52;
+
+  static final int INDEX_TAG = 0x49;
+
+  static final int TRAILER_LENGTH = 16 + TRAILER_MAGIC.length;
+
+  static final int MAX_ID_LENGTH = 0xFFFF;
+
+  private static final String CORRUPT_INDEX =
+      "Key archive index is missing or corrupt, compacting the archive rebuilds it";
+
+  private final ByteBuffer buffer;
+
+  private final int indexOffset;
+
+  private final int size;
+
+  private final int mask;
+
+  KeyArchive(ByteBuffer buffer) throws IOException {
+    this.buffer = buffer;
+    int limit = buffer.limit();
+    if (limit < MAGIC.length + 1 + TRAILER_LENGTH || !startsWith(buffer, 0, MAGIC)) {
+      throw new IOException("Not a key archive");
+    }
+    int trailer = limit - TRAILER_LENGTH;
+    if (!startsWith(buffer, trailer + 16, TRAILER_MAGIC)) {
+      throw new IOException(CORRUPT_INDEX);
+    }
+    indexOffset = buffer.getInt(trailer);
+    size = buffer.getInt(trailer + 4);
+    int slots = buffer.getInt(trailer + 8);
+    if (slots < 2
+        || Integer.bitCount(slots) != 1
+        || size < 0
+        || size > slots / 2
+        || indexOffset < MAGIC.length
+        || (long) indexOffset + 1 + 8L * slots != trailer
+        || buffer.get(indexOffset) != INDEX_TAG) {
+      throw new IOException(CORRUPT_INDEX);
+    }
+    ByteBuffer index = buffer.duplicate();
+    index.limit(trailer).position(indexOffset);
+    CRC32 crc = new CRC32();
+    crc.update(index);
+    if ((int) crc.getValue() != buffer.getInt(trailer + 12)) {
+      throw new IOException(CORRUPT_INDEX);
+    }
+    mask = slots - 1;
+  }
+
+  /** Maps the archive at {@code path} into memory, and checks its index */
+  public static KeyArchive open(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long length = channel.size();
+      if (length > Integer.MAX_VALUE) {
+        throw new IOException("Key archive larger than 2 GiB");
+      }
+      // the mapping outlives the channel
+      return new KeyArchive(channel.map(FileChannel.MapMode.READ_ONLY, 0, length));
+    }
+  }
+
+  int indexOffset() {
+    return indexOffset;
+  }
+
+  /** @return Number of keys in the archive */
+  public int size() {
+    return size;
+  }
+
+  public @Nullable ArchiveEntry get(String keyId) throws IOException {
+    byte[] id = keyId.getBytes(StandardCharsets.UTF_8);
+    int table = indexOffset + 1;
+    int slot = hash(id) & mask;
+    for (int probe = 0; probe <= mask; ++probe, slot = (slot + 1) & mask) {
+      int offset = buffer.getInt(table + 4 * slot);
+      if (offset == 0) {
+        return null;
+      }
+      if (idEquals(checkRecord(offset), id)) {
+        return readEntry(offset);
+      }
+    }
+    return null;
+  }
+
+  public @Nullable ArchiveEntry get(ModulusFingerprint fingerprint) throws IOException {
+    byte[] bytes = fingerprint.getBytes();
+    int table = indexOffset + 1 + 4 * (mask + 1);
+    int slot = fingerprint.hashCode() & mask;
+    for (int probe = 0; probe <= mask; ++probe, slot = (slot + 1) & mask) {
+      int offset = buffer.getInt(table + 4 * slot);
+      if (offset == 0) {
+        return null;
+      }
+      int record = checkRecord(offset);
+      if (startsWith(buffer, record + 3 + (buffer.getShort(record + 1) & 0xFFFF), bytes)) {
+        return readEntry(offset);
+      }
+    }
+    return null;
+  }
+
+  /** @return Every key in the archive, in the order they were appended */
+  public List<ArchiveEntry> entries() throws IOException {
+    int[] offsets = new int[size];
+    int count = 0;
+    int table = indexOffset + 1;
+    for (int slot = 0; slot <= mask; ++slot) {
+      int offset = buffer.getInt(table + 4 * slot);
+      if (offset != 0) {
+        if (count == size) {
+          throw new IOException(CORRUPT_INDEX);
+        }
+        offsets[count++] = offset;
+      }
+    }
+    Arrays.sort(offsets, 0, count);
+    List<ArchiveEntry> entries = new ArrayList<>(count);
+    for (int i = 0; i < count; ++i) {
+      entries.add(readEntry(offsets[i]));
+    }
+    return entries;
+  }
+
+  /** FNV-1a */
+  static int hash(byte[] id) {
+    int hash = 0x811C9DC5;
+    for (byte b : id) {
+      hash = (hash ^ (b & 0xFF)) * 0x01000193;
+    }
+    return hash;
+  }
+
+  /**
+   * Reads the record at {@code offset} of {@code buffer}, which may end anywhere.
+   *
+   * @return The record, or null if there is no complete and intact record there
+   */
+  static @Nullable ArchiveEntry scanEntry(ByteBuffer buffer, int offset) {
+    int limit = buffer.limit();
+    if (limit - offset < 3 || buffer.get(offset) != RECORD_TAG) {
+      return null;
+    }
+    int idLength = buffer.getShort(offset + 1) & 0xFFFF;
+    int fingerprint = offset + 3 + idLength;
+    if (idLength == 0 || limit - fingerprint < ModulusFingerprint.LENGTH + 4) {
+      return null;
+    }
+    int keyLength = buffer.getInt(fingerprint + ModulusFingerprint.LENGTH);
+    int key = fingerprint + ModulusFingerprint.LENGTH + 4;
+    if (keyLength <= 0 || limit - key - 4 < keyLength) {
+      return null;
+    }
+    ByteBuffer record = buffer.duplicate();
+    record.limit(key + keyLength).position(offset);
+    CRC32 crc = new CRC32();
+    crc.update(record);
+    if ((int) crc.getValue() != buffer.getInt(key + keyLength)) {
+      return null;
+    }
+    byte[] id = new byte[idLength];
+    byte[] digest = new byte[ModulusFingerprint.LENGTH];
+    ByteBuffer view = buffer.duplicate();
+    view.position(offset + 3);
+    view.get(id).get(digest);
+    view.limit(key + keyLength).position(key);
+    return new ArchiveEntry(
+        new String(id, StandardCharsets.UTF_8),
+        ModulusFingerprint.fromBytes(digest),
+        view.slice(),
+        offset);
+  }
+
+  /** @return Length of the entry's record, in bytes */
+  static int recordLength(ArchiveEntry entry) {
+    return 3
+        + entry.getKeyId().getBytes(StandardCharsets.UTF_8).length
+        + ModulusFingerprint.LENGTH
+        + 4
+        + entry.getSqueezedKey().remaining()
+        + 4;
+  }
+
+  private ArchiveEntry readEntry(int offset) throws IOException {
+    ArchiveEntry entry = scanEntry(buffer, offset);
+    if (entry == null || offset + recordLength(entry) > indexOffset) {
+      throw new IOException("Corrupt key archive record at " + offset);
+    }
+    return entry;
+  }
+
+  /** @return The offset, if it is a plausible record header */
+  private int checkRecord(int offset) throws IOException {
+    if (offset < MAGIC.length
+        || offset > indexOffset - 3 - ModulusFingerprint.LENGTH - 8
+        || buffer.get(offset) != RECORD_TAG
+        || offset + 3 + (buffer.getShort(offset + 1) & 0xFFFF) + ModulusFingerprint.LENGTH + 4
+            > indexOffset) {
+      throw new IOException("Corrupt key archive record at " + offset);
+    }
+    return offset;
+  }
+
+  private boolean idEquals(int record, byte[] id) {
+    return (buffer.getShort(record + 1) & 0xFFFF) == id.length
+        && startsWith(buffer, record + 3, id);
+  }
+
+  private static boolean startsWith(ByteBuffer buffer, int offset, byte[] prefix) {
+    for (int i = 0; i < prefix.length; ++i) {
+      if (buffer.get(offset + i) != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
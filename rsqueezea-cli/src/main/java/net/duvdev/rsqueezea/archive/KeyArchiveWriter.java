@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.archive;
+
+import net.duvdev.rsqueezea.model.ModulusFingerprint;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/** Writes {@link KeyArchive} files. */
+public final class KeyArchiveWriter {
+
+  /** Do not instantiate */
+  private KeyArchiveWriter() {}
+
+  /**
+   * Appends keys to the archive at {@code path}, creating it if needed. A key appended under an ID
+   * already in the archive replaces it.
+   *
+   * <p>The new records are written over the old index, followed by a new index. The archive is
+   * unreadable if this is interrupted, until {@link #compact} recovers the records written before.
+   */
+  public static void append(Path path, Collection<ArchiveEntry> entries) throws IOException {
+    try (FileChannel channel =
+        FileChannel.open(
+            path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      Map<String, ArchiveEntry> live = new LinkedHashMap<>();
+      int position;
+      if (channel.size() == 0) {
+        position = writeFully(channel, 0, ByteBuffer.wrap(KeyArchive.MAGIC));
+      } else {
+        // read rather than mapped, so the file can be truncated on any platform
+        KeyArchive archive = new KeyArchive(readFully(channel));
+        for (ArchiveEntry entry : archive.entries()) {
+          live.put(entry.getKeyId(), entry);
+        }
+        position = archive.indexOffset();
+      }
+      position = writeRecords(channel, position, entries, live);
+      position = writeIndex(channel, position, live.values());
+      channel.truncate(position);
+      channel.force(true);
+    }
+  }
+
+  /**
+   * Rewrites the archive at {@code path} with only the keys it indexes, and a fresh index. The
+   * records are scanned from the start of the file, so an archive whose index was lost to an
+   * interrupted {@link #append} is recovered up to its last complete record.
+   *
+   * <p>The archive is replaced atomically, where the file system supports it.
+   */
+  public static void compact(Path path) throws IOException {
+    ByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      buffer = readFully(channel);
+    }
+    for (int i = 0; i < KeyArchive.MAGIC.length; ++i) {
+      if (buffer.limit() <= i || buffer.get(i) != KeyArchive.MAGIC[i]) {
+        throw new IOException("Not a key archive");
+      }
+    }
+    Map<String, ArchiveEntry> latest = new LinkedHashMap<>();
+    int offset = KeyArchive.MAGIC.length;
+    ArchiveEntry entry;
+    while ((entry = KeyArchive.scanEntry(buffer, offset)) != null) {
+      // re-insert, so the order is that of the latest records
+      latest.remove(entry.getKeyId());
+      latest.put(entry.getKeyId(), entry);
+      offset += KeyArchive.recordLength(entry);
+    }
+
+    Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+    try (FileChannel channel =
+        FileChannel.open(
+            temp,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE)) {
+      int position = writeFully(channel, 0, ByteBuffer.wrap(KeyArchive.MAGIC));
+      Map<String, ArchiveEntry> live = new LinkedHashMap<>();
+      position = writeRecords(channel, position, latest.values(), live);
+      writeIndex(channel, position, live.values());
+      channel.force(true);
+    }
+    try {
+      Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /**
+   * Writes the records of {@code entries} from {@code position}, and puts them in {@code live}.
+   *
+   * @return Position after the records
+   */
+  private static int writeRecords(
+      FileChannel channel,
+      int position,
+      Collection<ArchiveEntry> entries,
+      Map<String, ArchiveEntry> live)
+      throws IOException {
+    for (ArchiveEntry entry : entries) {
+      byte[] id = entry.getKeyId().getBytes(StandardCharsets.UTF_8);
+      ByteBuffer key = entry.getSqueezedKey();
+      int length = KeyArchive.recordLength(entry);
+      if (position + (long) length > Integer.MAX_VALUE) {
+        throw new IOException("Key archive larger than 2 GiB");
+      }
+      ByteBuffer header = ByteBuffer.allocate(length - key.remaining() - 4);
+      header.put((byte) KeyArchive.RECORD_TAG);
+      header.putShort((short) id.length);
+      header.put(id);
+      header.put(entry.getFingerprint().getBytes());
+      header.putInt(key.remaining());
+      header.flip();
+      CRC32 crc = new CRC32();
+      crc.update(header.duplicate());
+      crc.update(key.duplicate());
+      ByteBuffer check = ByteBuffer.allocate(4).putInt(0, (int) crc.getValue());
+      int offset = position;
+      position = writeFully(channel, position, header);
+      position = writeFully(channel, position, key);
+      position = writeFully(channel, position, check);
+      live.remove(entry.getKeyId());
+      live.put(
+          entry.getKeyId(),
+          new ArchiveEntry(
+              entry.getKeyId(), entry.getFingerprint(), entry.getSqueezedKey(), offset));
+    }
+    return position;
+  }
+
+  /**
+   * Writes the index of {@code entries}, in the order they were written, followed by the trailer.
+   *
+   * @return Position after the trailer
+   */
+  private static int writeIndex(FileChannel channel, int position, Collection<ArchiveEntry> entries)
+      throws IOException {
+    int slots = 2;
+    while (slots < entries.size() * 2) {
+      slots <<= 1;
+    }
+    int[] idTable = new int[slots];
+    // a later key with the same fingerprint takes the place of an earlier one
+    Map<ModulusFingerprint, ArchiveEntry> byFingerprint = new LinkedHashMap<>();
+    for (ArchiveEntry entry : entries) {
+      put(idTable, KeyArchive.hash(entry.getKeyId().getBytes(StandardCharsets.UTF_8)), entry);
+      byFingerprint.put(entry.getFingerprint(), entry);
+    }
+    int[] fingerprintTable = new int[slots];
+    for (ArchiveEntry entry : byFingerprint.values()) {
+      put(fingerprintTable, entry.getFingerprint().hashCode(), entry);
+    }
+
+    ByteBuffer index = ByteBuffer.allocate(1 + 8 * slots + KeyArchive.TRAILER_LENGTH);
+    index.put((byte) KeyArchive.INDEX_TAG);
+    index.asIntBuffer().put(idTable).put(fingerprintTable);
+    index.position(1 + 8 * slots);
+    CRC32 crc = new CRC32();
+    crc.update(index.array(), 0, index.position());
+    index.putInt(position);
+    index.putInt(entries.size());
+    index.putInt(slots);
+    index.putInt((int) crc.getValue());
+    index.put(KeyArchive.TRAILER_MAGIC);
+    index.flip();
+    return writeFully(channel, position, index);
+  }
+
+  private static void put(int[] table, int hash, ArchiveEntry entry) {
+    int mask = table.length - 1;
+    int slot = hash & mask;
+    while (table[slot] != 0) {
+      slot = (slot + 1) & mask;
+    }
+    table[slot] = entry.offset;
+  }
+
+  private static int writeFully(FileChannel channel, int position, ByteBuffer buffer)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer, position);
+    }
+    return position;
+  }
+
+  private static ByteBuffer readFully(FileChannel channel) throws IOException {
+    long size = channel.size();
+    if (size > Integer.MAX_VALUE) {
+      throw new IOException("Key archive larger than 2 GiB");
+    }
+    ByteBuffer buffer = ByteBuffer.allocate((int) size);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, buffer.position()) < 0) {
+        throw new IOException("Key archive truncated while reading");
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+}
@@ -8,36 +8,69 @@ import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParameterException;
 import com.beust.jcommander.Parameters;
+import com.beust.jcommander.ParametersDelegate;
 import net.duvdev.rsqueezea.codec.Codec;
+import net.duvdev.rsqueezea.codec.CodecChain;
 import net.duvdev.rsqueezea.codec.CodecFactory;
 import net.duvdev.rsqueezea.codec.QRCodeCodec;
+import net.duvdev.rsqueezea.codec.QRCodePNGWriter;
+import net.duvdev.rsqueezea.codec.QRCodeSheet;
+import net.duvdev.rsqueezea.codec.StreamingCodec;
+import net.duvdev.rsqueezea.controller.ArchiveController;
+import net.duvdev.rsqueezea.controller.BatchReassembleController;
+import net.duvdev.rsqueezea.controller.BatchSqueezeController;
+import net.duvdev.rsqueezea.controller.GenerateController;
 import net.duvdev.rsqueezea.controller.ReassembleController;
 import net.duvdev.rsqueezea.controller.SqueezeController;
 import net.duvdev.rsqueezea.loader.PKCS1PrivateKeyLoader;
 import net.duvdev.rsqueezea.loader.PKCS1PublicKeyLoader;
+import net.duvdev.rsqueezea.loader.RSAPrivateKeyLoader;
 import net.duvdev.rsqueezea.loader.X509CertificatePublicKeyLoader;
 import net.duvdev.rsqueezea.protocol.SqueezeType;
 import org.apache.commons.io.IOUtils;
 
+import javax.annotation.Nullable;
 import java.io.*;
 import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.security.KeyFactory;
 import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
 import java.security.interfaces.RSAPublicKey;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.RSAPublicKeySpec;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public final class Main {
 
   public static final void main(String[] args) {
     MainArgs mainArgs = new MainArgs();
     SqueezeCommand squeezeCommand = new SqueezeCommand();
+    BatchSqueezeCommand batchSqueezeCommand = new BatchSqueezeCommand();
     ReassembleCommand reassembleCommand = new ReassembleCommand();
+    BatchReassembleCommand batchReassembleCommand = new BatchReassembleCommand();
+    GenerateCommand generateCommand = new GenerateCommand();
+    ArchiveAppendCommand archiveAppendCommand = new ArchiveAppendCommand();
+    ArchiveListCommand archiveListCommand = new ArchiveListCommand();
+    ArchiveExtractCommand archiveExtractCommand = new ArchiveExtractCommand();
+    ArchiveCompactCommand archiveCompactCommand = new ArchiveCompactCommand();
     JCommander jc =
         JCommander.newBuilder()
             .addObject(mainArgs)
             .addCommand("squeeze", squeezeCommand)
+            .addCommand("batch-squeeze", batchSqueezeCommand)
             .addCommand("reassemble", reassembleCommand)
+            .addCommand("batch-reassemble", batchReassembleCommand)
+            .addCommand("generate", generateCommand)
+            .addCommand("archive-append", archiveAppendCommand)
+            .addCommand("archive-list", archiveListCommand)
+            .addCommand("archive-extract", archiveExtractCommand)
+            .addCommand("archive-compact", archiveCompactCommand)
             .build();
     try {
       jc.parse(args);
@@ -62,8 +95,22 @@ public final class Main {
     try {
       if ("squeeze".equalsIgnoreCase(parsedCommand)) {
         doSqueeze(squeezeCommand);
+      } else if ("batch-squeeze".equalsIgnoreCase(parsedCommand)) {
+        doBatchSqueeze(batchSqueezeCommand);
       } else if ("reassemble".equalsIgnoreCase(parsedCommand)) {
         doReassemble(reassembleCommand);
+      } else if ("batch-reassemble".equalsIgnoreCase(parsedCommand)) {
+        doBatchReassemble(batchReassembleCommand);
+      } else if ("generate".equalsIgnoreCase(parsedCommand)) {
+        doGenerate(generateCommand);
+      } else if ("archive-append".equalsIgnoreCase(parsedCommand)) {
+        doArchiveAppend(archiveAppendCommand);
+      } else if ("archive-list".equalsIgnoreCase(parsedCommand)) {
+        new ArchiveController(Paths.get(archiveListCommand.archiveFile)).list(System.out);
+      } else if ("archive-extract".equalsIgnoreCase(parsedCommand)) {
+        doArchiveExtract(archiveExtractCommand);
+      } else if ("archive-compact".equalsIgnoreCase(parsedCommand)) {
+        new ArchiveController(Paths.get(archiveCompactCommand.archiveFile)).compact();
       } else {
         if (mainArgs.verbose) {
           throw new IllegalArgumentException(parsedCommand);
@@ -107,13 +154,16 @@ public final class Main {
     }
 
     try {
-      SqueezeType squeezeType =
-          args.noModulus ? SqueezeType.PRIME_P : SqueezeType.PRIME_PQ_WITH_EXPONENT;
-      Codec<byte[], byte[]> codec = CodecFactory.getCodec(args.format);
-      configureCodec(codec, args);
+      SqueezeType squeezeType = squeezeType(args.noModulus, args.primeHighBits);
+      Codec<byte[], byte[]> codec =
+          configureCodec(CodecFactory.getCodec(args.format), args.qrCode);
       SqueezeController controller =
           new SqueezeController(
-              new PKCS1PrivateKeyLoader(pemStream), squeezeType, codec, outputStream);
+              new PKCS1PrivateKeyLoader(pemStream),
+              squeezeType,
+              codec,
+              outputStream,
+              args.integrityCheck);
       controller.run();
     } finally {
       try {
@@ -133,10 +183,49 @@ public final class Main {
     }
   }
 
-  private static void configureCodec(Codec<byte[], byte[]> codec, SqueezeCommand args) {
+  private static void doBatchSqueeze(BatchSqueezeCommand args) throws IOException {
+    List<Path> keys = new ArrayList<>(args.inputs.size());
+    for (String input : args.inputs) {
+      keys.add(Paths.get(input));
+    }
+    QRCodeArgs qrCode = new QRCodeArgs();
+    qrCode.level = args.level;
+    qrCode.maxVersion = args.maxVersion;
+    Codec<byte[], byte[]> codec = configureCodec(CodecFactory.getCodec(args.format), qrCode);
+    new BatchSqueezeController(
+            squeezeType(args.noModulus, args.primeHighBits),
+            codec,
+            args.integrityCheck,
+            () -> new QRCodeSheet(args.paperSize, args.dpi, args.moduleSize),
+            Paths.get(args.outputDirectory),
+            System.out)
+        .run(keys);
+  }
+
+  private static SqueezeType squeezeType(boolean noModulus, boolean primeHighBits) {
+    if (primeHighBits) {
+      return SqueezeType.PRIME_P_HIGH_BITS;
+    }
+    return noModulus ? SqueezeType.PRIME_P : SqueezeType.PRIME_PQ_WITH_EXPONENT;
+  }
+
+  /** @return The codec, with its QR code stages configured as given, as codecs are immutable */
+  private static StreamingCodec configureCodec(StreamingCodec codec, QRCodeArgs qrCode) {
     if (codec instanceof QRCodeCodec) {
-      ((QRCodeCodec) codec).setLevel(args.qrLevel);
+      return ((QRCodeCodec) codec)
+          .withLevel(qrCode.level)
+          .withMaxVersion(qrCode.maxVersion)
+          .withModuleSize(qrCode.moduleSize)
+          .withQuietZone(qrCode.quietZone);
     }
+    if (codec instanceof CodecChain) {
+      List<StreamingCodec> stages = new ArrayList<>();
+      for (StreamingCodec stage : ((CodecChain) codec).getStages()) {
+        stages.add(configureCodec(stage, qrCode));
+      }
+      return new CodecChain(stages);
+    }
+    return codec;
   }
 
   private static void doReassemble(ReassembleCommand args) throws IOException {
@@ -154,6 +243,86 @@ public final class Main {
       outputStream = new FileOutputStream(new File(args.outputFile));
     }
 
+    RSAPublicKey publicKey = loadPublicKey(args.publicKey);
+
+    ReassembleController controller =
+        new ReassembleController(
+            publicKey, inputStream, CodecFactory.getCodec(args.format), outputStream);
+    controller.run();
+  }
+
+  private static void doBatchReassemble(BatchReassembleCommand args) throws IOException {
+    List<Path> pages = new ArrayList<>(args.inputs.size());
+    for (String input : args.inputs) {
+      pages.add(Paths.get(input));
+    }
+    new BatchReassembleController(
+            CodecFactory.getCodec(args.format), Paths.get(args.outputDirectory), System.out)
+        .run(pages);
+  }
+
+  private static void doGenerate(GenerateCommand args) throws IOException {
+    OutputStream privateKeyStream;
+    if ("-".equals(args.outputFile)) {
+      privateKeyStream = System.out;
+    } else {
+      privateKeyStream = new FileOutputStream(new File(args.outputFile));
+    }
+    try (OutputStream squeezedStream = new FileOutputStream(new File(args.squeezedFile))) {
+      Codec<byte[], byte[]> codec =
+          configureCodec(CodecFactory.getCodec(args.format), args.qrCode);
+      new GenerateController(
+              args.bits,
+              new SecureRandom(),
+              codec,
+              privateKeyStream,
+              squeezedStream,
+              args.integrityCheck)
+          .run();
+    } finally {
+      try {
+        privateKeyStream.close();
+      } catch (IOException e) {
+        // ignored
+      }
+    }
+  }
+
+  private static void doArchiveAppend(ArchiveAppendCommand args) throws IOException {
+    if (args.keyId != null && args.inputFiles.size() != 1) {
+      throw new IllegalArgumentException("--id can only be given with a single input file");
+    }
+    Map<String, RSAPrivateKeyLoader> keys = new LinkedHashMap<>();
+    for (String inputFile : args.inputFiles) {
+      byte[] pem = Files.readAllBytes(Paths.get(inputFile));
+      String keyId = args.keyId != null ? args.keyId : new File(inputFile).getName();
+      keys.put(keyId, new PKCS1PrivateKeyLoader(new ByteArrayInputStream(pem)));
+    }
+    SqueezeType squeezeType = squeezeType(args.noModulus, args.primeHighBits);
+    new ArchiveController(Paths.get(args.archiveFile))
+        .append(keys, squeezeType, args.integrityCheck);
+  }
+
+  private static void doArchiveExtract(ArchiveExtractCommand args) throws IOException {
+    OutputStream outputStream;
+    if ("-".equals(args.outputFile)) {
+      outputStream = System.out;
+    } else {
+      outputStream = new FileOutputStream(new File(args.outputFile));
+    }
+    try {
+      new ArchiveController(Paths.get(args.archiveFile))
+          .extract(args.key, loadPublicKey(args.publicKey), outputStream);
+    } finally {
+      try {
+        outputStream.close();
+      } catch (IOException e) {
+        // ignored
+      }
+    }
+  }
+
+  private static @Nullable RSAPublicKey loadPublicKey(PublicKeyArgs args) throws IOException {
     RSAPublicKey publicKey = null;
 
     if (args.modulus != null || args.exponent != null) {
@@ -179,11 +348,7 @@ public final class Main {
         publicKey = new PKCS1PublicKeyLoader(fis).load();
       }
     }
-
-    ReassembleController controller =
-        new ReassembleController(
-            publicKey, inputStream, CodecFactory.getCodec(args.format), outputStream);
-    controller.run();
+    return publicKey;
   }
 
   @Parameters
@@ -229,17 +394,101 @@ public final class Main {
     )
     private Boolean noModulus = false;
 
+    @Parameter(
+      names = {"--prime-high-bits"},
+      description =
+          "Only write the high bits of the larger prime, implies --no-modulus. About a third smaller than that, but reassembly has to recover the rest of the prime, which takes up to a few seconds"
+    )
+    private boolean primeHighBits = false;
+
+    @Parameter(
+      names = {"-f", "--format"},
+      description = "Output format: DER, PEM, QR or CRC, or several of them applied in turn, as in DER+CRC+QR"
+    )
+    private String format = "DER";
+
+    @ParametersDelegate private QRCodeArgs qrCode = new QRCodeArgs();
+
+    @Parameter(
+      names = {"--integrity-check"},
+      description =
+          "Add a CRC32 of the squeezed key, so a corrupt copy is rejected before reassembly. Adds 4 to 6 bytes"
+    )
+    private boolean integrityCheck = false;
+  }
+
+  @Parameters(
+    commandDescription =
+        "Squeeze many RSA private keys to pages of labelled QR codes, ready to print"
+  )
+  private static final class BatchSqueezeCommand {
+    @Parameter(
+      description = "PKCS#1 PEM RSA private key files, or directories of them",
+      required = true
+    )
+    private List<String> inputs = new ArrayList<>();
+
+    @Parameter(
+      names = {"-o", "--output"},
+      description = "Directory to write the pages to, as page-0001.png and on",
+      required = true
+    )
+    private String outputDirectory;
+
+    @Parameter(
+      names = {"-x", "--no-modulus"},
+      description = "Don't write public modulus and exponent, as with squeeze"
+    )
+    private Boolean noModulus = false;
+
+    @Parameter(
+      names = {"--prime-high-bits"},
+      description = "Only write the high bits of the larger prime, as with squeeze"
+    )
+    private boolean primeHighBits = false;
+
     @Parameter(
       names = {"-f", "--format"},
-      description = "Output format"
+      description = "Output format, ending in QR, such as DER+CRC+QR"
     )
-    private CodecFactory.CodecType format = CodecFactory.CodecType.DER;
+    private String format = "QR";
 
     @Parameter(
       names = {"--qr-level"},
       description = "QR code error correction level"
     )
-    private QRCodeCodec.Level qrLevel = QRCodeCodec.Level.M;
+    private QRCodeCodec.Level level = QRCodeCodec.Level.M;
+
+    @Parameter(
+      names = {"--qr-max-version"},
+      description =
+          "Largest QR code version, from 1 to 40. Larger keys are split across several QR codes."
+    )
+    private int maxVersion = QRCodeCodec.MAX_VERSION;
+
+    @Parameter(
+      names = {"--page-size"},
+      description = "Paper size of the pages"
+    )
+    private QRCodeSheet.PaperSize paperSize = QRCodeSheet.PaperSize.A4;
+
+    @Parameter(
+      names = {"--dpi"},
+      description = "Resolution of the pages, in pixels per inch"
+    )
+    private int dpi = QRCodeSheet.DEFAULT_DPI;
+
+    @Parameter(
+      names = {"--module-size"},
+      description = "Side of a QR code module on paper, in millimeters"
+    )
+    private double moduleSize = QRCodeSheet.DEFAULT_MODULE_MILLIMETERS;
+
+    @Parameter(
+      names = {"--integrity-check"},
+      description = "Add a CRC32 of each squeezed key, as with squeeze"
+    )
+    private boolean integrityCheck = false;
   }
 
   @Parameters(commandDescription = "Reassemble an RSA private key from a squeezed key")
@@ -256,6 +505,108 @@ public final class Main {
     )
     private String outputFile = "-";
 
+    @ParametersDelegate private PublicKeyArgs publicKey = new PublicKeyArgs();
+
+    @Parameter(
+      names = {"-f", "--format"},
+      description = "Input format, as given when squeezing, such as DER+CRC+QR"
+    )
+    private String format = "DER";
+  }
+
+  @Parameters(
+    commandDescription =
+        "Reassemble every RSA private key on pages of QR codes, such as scanned sheets of backups"
+  )
+  private static final class BatchReassembleCommand {
+    @Parameter(description = "Page images, or directories of them", required = true)
+    private List<String> inputs = new ArrayList<>();
+
+    @Parameter(
+      names = {"-o", "--output"},
+      description =
+          "Directory to write the private keys to, each named by its modulus fingerprint",
+      required = true
+    )
+    private String outputDirectory;
+
+    @Parameter(
+      names = {"-f", "--format"},
+      description = "Input format, as given when squeezing, ending in QR, such as DER+CRC+QR"
+    )
+    private String format = "QR";
+  }
+
+  @Parameters(
+    commandDescription =
+        "Generate an RSA private key from a random seed, and squeeze it to that seed"
+  )
+  private static final class GenerateCommand {
+    @Parameter(
+      names = {"-b", "--bits"},
+      description = "Length of the modulus, from 512 to 16384"
+    )
+    private int bits = 4096;
+
+    @Parameter(
+      names = {"-o", "--output"},
+      description = "File to write the PKCS#1 PEM private key to. Use \"-\" for STDOUT"
+    )
+    private String outputFile = "-";
+
+    @Parameter(
+      names = {"-s", "--squeezed"},
+      description =
+          "File to write the squeezed key to. Only 35 bytes, from which reassembly generates the key again",
+      required = true
+    )
+    private String squeezedFile;
+
+    @Parameter(
+      names = {"-f", "--format"},
+      description = "Squeezed key format: DER, PEM, QR or CRC, or several of them applied in turn, as in DER+CRC+QR"
+    )
+    private String format = "DER";
+
+    @ParametersDelegate private QRCodeArgs qrCode = new QRCodeArgs();
+
+    @Parameter(
+      names = {"--integrity-check"},
+      description = "Add a CRC32 of the squeezed key"
+    )
+    private boolean integrityCheck = false;
+  }
+
+  /** How to write QR codes */
+  private static final class QRCodeArgs {
+    @Parameter(
+      names = {"--qr-level"},
+      description = "QR code error correction level"
+    )
+    private QRCodeCodec.Level level = QRCodeCodec.Level.M;
+
+    @Parameter(
+      names = {"--qr-max-version"},
+      description =
+          "Largest QR code version, from 1 to 40. Larger keys are split across several QR codes."
+    )
+    private int maxVersion = QRCodeCodec.MAX_VERSION;
+
+    @Parameter(
+      names = {"--qr-module-size"},
+      description = "Side of a QR code module, in pixels"
+    )
+    private int moduleSize = QRCodePNGWriter.DEFAULT_MODULE_SIZE;
+
+    @Parameter(
+      names = {"--qr-quiet-zone"},
+      description = "Width of the white border around a QR code, in modules"
+    )
+    private int quietZone = QRCodePNGWriter.DEFAULT_QUIET_ZONE;
+  }
+
+  /** Where to get the public key of keys squeezed without it */
+  private static final class PublicKeyArgs {
     @Parameter(
       names = {"-n", "--modulus"},
       description = "Public modulus (hex), if not found in squeezed key"
@@ -279,11 +630,89 @@ public final class Main {
       description = "Path to PKCS#1 PEM file to get public key from"
     )
     private String pkcs1File;
+  }
 
+  @Parameters(commandDescription = "Squeeze RSA private keys into an archive")
+  private static final class ArchiveAppendCommand {
     @Parameter(
-      names = {"-f", "--format"},
-      description = "Input format"
+      names = {"-a", "--archive"},
+      description = "Archive file, created if it does not exist",
+      required = true
+    )
+    private String archiveFile;
+
+    @Parameter(description = "PKCS#1 PEM RSA private key files", required = true)
+    private List<String> inputFiles = new ArrayList<>();
+
+    @Parameter(
+      names = {"--id"},
+      description = "ID to store the key under. Defaults to the file name"
+    )
+    private String keyId;
+
+    @Parameter(
+      names = {"-x", "--no-modulus"},
+      description =
+          "Don't write public modulus an exponent to the archive. Reassembly will need the public key from external source"
+    )
+    private Boolean noModulus = false;
+
+    @Parameter(
+      names = {"--prime-high-bits"},
+      description =
+          "Only write the high bits of the larger prime, implies --no-modulus. About a third smaller than that, but reassembly has to recover the rest of the prime, which takes up to a few seconds"
+    )
+    private boolean primeHighBits = false;
+
+    @Parameter(
+      names = {"--integrity-check"},
+      description = "Add a CRC32 of each squeezed key"
+    )
+    private boolean integrityCheck = false;
+  }
+
+  @Parameters(commandDescription = "List the keys of an archive")
+  private static final class ArchiveListCommand {
+    @Parameter(
+      names = {"-a", "--archive"},
+      description = "Archive file",
+      required = true
+    )
+    private String archiveFile;
+  }
+
+  @Parameters(commandDescription = "Reassemble an RSA private key from an archive")
+  private static final class ArchiveExtractCommand {
+    @Parameter(
+      names = {"-a", "--archive"},
+      description = "Archive file",
+      required = true
+    )
+    private String archiveFile;
+
+    @Parameter(
+      names = {"-k", "--key"},
+      description = "ID or modulus fingerprint of the key",
+      required = true
+    )
+    private String key;
+
+    @Parameter(
+      names = {"-o", "--output"},
+      description = "File to write the private key to. Use \"-\" for STDOUT"
+    )
+    private String outputFile = "-";
+
+    @ParametersDelegate private PublicKeyArgs publicKey = new PublicKeyArgs();
+  }
+
+  @Parameters(commandDescription = "Drop replaced keys from an archive, and rebuild its index")
+  private static final class ArchiveCompactCommand {
+    @Parameter(
+      names = {"-a", "--archive"},
+      description = "Archive file",
+      required = true
     )
-    private CodecFactory.CodecType format = CodecFactory.CodecType.DER;
+    private String archiveFile;
   }
 }
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.codec;
+
+import java.util.Arrays;
+
+/**
+ * Base45, as specified by RFC 9285. Its alphabet is that of the QR code alphanumeric mode, where 2
+ * bytes take 3 characters, or 16.5 bits. That is about 3% more than the byte mode, and 23% less
+ * than Base64 in the byte mode.
+ */
+public final class Base45Codec implements Codec<byte[], String> {
+
+  public static final String ALPHABET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ $%*+-./:";
+
+  private static final int BASE = 45;
+
+  private static final int[] VALUES = new int[128];
+
+  static {
+    Arrays.fill(VALUES, -1);
+    for (int i = 0; i < ALPHABET.length(); ++i) {
+      VALUES[ALPHABET.charAt(i)] = i;
+    }
+  }
+
+  /** @return Whether every character of the text is in the Base45 alphabet */
+  public static boolean isAlphabet(CharSequence text) {
+    for (int i = 0; i < text.length(); ++i) {
+      if (value(text.charAt(i)) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** @return The number of characters encoding that many bytes */
+  public static int encodedLength(int length) {
+    return length / 2 * 3 + length % 2 * 2;
+  }
+
+  @Override
+  public byte[] decode(String encoded) throws DecoderException {
+    int length = encoded.length();
+    if (length % 3 == 1) {
+      throw new DecoderException("Invalid Base45 length: " + length);
+    }
+    byte[] decoded = new byte[length / 3 * 2 + length % 3 / 2];
+    int j = 0;
+    for (int i = 0; i < length; i += 3) {
+      int digits = Math.min(3, length - i);
+      int n = 0;
+      for (int k = digits - 1; k >= 0; --k) {
+        int value = value(encoded.charAt(i + k));
+        if (value < 0) {
+          throw new DecoderException("Invalid Base45 character at " + (i + k));
+        }
+        n = n * BASE + value;
+      }
+      if (digits == 3) {
+        if (n > 0xffff) {
+          throw new DecoderException("Invalid Base45 triplet at " + i);
+        }
+        decoded[j++] = (byte) (n >> 8);
+      } else if (n > 0xff) {
+        throw new DecoderException("Invalid Base45 pair at " + i);
+      }
+      decoded[j++] = (byte) n;
+    }
+    return decoded;
+  }
+
+  @Override
+  public String encode(byte[] decoded) {
+    StringBuilder encoded = new StringBuilder(encodedLength(decoded.length));
+    for (int i = 0; i < decoded.length; i += 2) {
+      int n = decoded[i] & 0xff;
+      int digits = 2;
+      if (i + 1 < decoded.length) {
+        n = n << 8 | decoded[i + 1] & 0xff;
+        digits = 3;
+      }
+      for (int k = 0; k < digits; ++k) {
+        encoded.append(ALPHABET.charAt(n % BASE));
+        n /= BASE;
+      }
+    }
+    return encoded.toString();
+  }
+
+  private static int value(char c) {
+    return c < VALUES.length ? VALUES[c] : -1;
+  }
+}
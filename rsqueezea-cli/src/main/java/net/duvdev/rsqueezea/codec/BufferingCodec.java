@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.codec;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/** Streams a byte array codec, by reading its whole input before decoding it. */
+final class BufferingCodec implements StreamingCodec {
+
+  private final Codec<byte[], byte[]> codec;
+
+  BufferingCodec(Codec<byte[], byte[]> codec) {
+    this.codec = codec;
+  }
+
+  @Override
+  public void encode(ByteBuffer decoded, OutputStream output) throws EncoderException, IOException {
+    output.write(codec.encode(ByteBuffers.toByteArray(decoded)));
+    output.flush();
+  }
+
+  @Override
+  public ByteBuffer decode(InputStream input) throws DecoderException, IOException {
+    return ByteBuffer.wrap(codec.decode(IOUtils.toByteArray(input)));
+  }
+
+  @Override
+  public byte[] encode(byte[] decoded) throws EncoderException {
+    return codec.encode(decoded);
+  }
+
+  @Override
+  public byte[] decode(byte[] encoded) throws DecoderException {
+    return codec.decode(encoded);
+  }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.codec;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/** Provides the codecs of {@link CodecFactory.CodecType} */
+public final class BuiltInCodecProvider implements CodecProvider {
+
+  private final Map<CodecFactory.CodecType, StreamingCodec> codecs =
+      new EnumMap<>(CodecFactory.CodecType.class);
+
+  public BuiltInCodecProvider() {
+    codecs.put(CodecFactory.CodecType.DER, new IdentityCodec());
+    codecs.put(CodecFactory.CodecType.PEM, new PEMCodec());
+    codecs.put(CodecFactory.CodecType.QR, new QRCodeCodec());
+    codecs.put(CodecFactory.CodecType.CRC, new CRC32Codec());
+  }
+
+  @Override
+  public Set<String> getNames() {
+    Set<String> names = new TreeSet<>();
+    for (CodecFactory.CodecType type : codecs.keySet()) {
+      names.add(type.name());
+    }
+    return names;
+  }
+
+  @Override
+  public StreamingCodec getCodec(String name) {
+    return codecs.get(CodecFactory.CodecType.valueOf(name));
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+final class ByteBuffers {
+
+  /** Do not instantiate */
+  private ByteBuffers() {}
+
+  /** @return The remaining bytes of the buffer, which is its own array when it wraps a whole one */
+  static byte[] toByteArray(ByteBuffer buffer) {
+    if (buffer.hasArray()
+        && buffer.arrayOffset() == 0
+        && buffer.position() == 0
+        && buffer.remaining() == buffer.array().length) {
+      return buffer.array();
+    }
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.duplicate().get(bytes);
+    return bytes;
+  }
+
+  /** Writes the remaining bytes of the buffer, without copying them if it has an array */
+  static void write(ByteBuffer buffer, OutputStream output) throws IOException {
+    if (buffer.hasArray()) {
+      output.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+    } else {
+      output.write(toByteArray(buffer));
+    }
+  }
+
+  /** @return A stream of the remaining bytes of the buffer, leaving its position unchanged */
+  static InputStream asInputStream(ByteBuffer buffer) {
+    ByteBuffer source = buffer.duplicate();
+    return new InputStream() {
+      @Override
+      public int read() {
+        return source.hasRemaining() ? source.get() & 0xff : -1;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) {
+        if (len == 0) {
+          return 0;
+        }
+        if (!source.hasRemaining()) {
+          return -1;
+        }
+        int read = Math.min(len, source.remaining());
+        source.get(b, off, read);
+        return read;
+      }
+
+      @Override
+      public long skip(long n) {
+        int skipped = (int) Math.max(0, Math.min(n, source.remaining()));
+        source.position(source.position() + skipped);
+        return skipped;
+      }
+
+      @Override
+      public int available() {
+        return source.remaining();
+      }
+    };
+  }
+}
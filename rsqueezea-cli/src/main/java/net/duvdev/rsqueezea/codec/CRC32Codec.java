@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.codec;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * Appends the CRC-32 of the data, as 4 big-endian bytes, and verifies it when decoding. Meant as a
+ * stage of a {@link CodecChain}, to tell a damaged encoding from a wrong one.
+ */
+public final class CRC32Codec implements StreamingCodec {
+
+  public static final int LENGTH = 4;
+
+  @Override
+  public void encode(ByteBuffer decoded, OutputStream output) throws IOException {
+    ByteBuffers.write(decoded, output);
+    output.write(ByteBuffer.allocate(LENGTH).putInt(0, crc32(decoded)).array());
+    output.flush();
+  }
+
+  @Override
+  public ByteBuffer decode(InputStream input) throws DecoderException, IOException {
+    byte[] encoded = IOUtils.toByteArray(input);
+    if (encoded.length < LENGTH) {
+      throw new DecoderException("Too short for a CRC-32: " + encoded.length + " bytes");
+    }
+    ByteBuffer data = ByteBuffer.wrap(encoded, 0, encoded.length - LENGTH).slice();
+    int expected = ByteBuffer.wrap(encoded).getInt(encoded.length - LENGTH);
+    if (crc32(data) != expected) {
+      throw new DecoderException("CRC-32 mismatch, the data is damaged");
+    }
+    return data;
+  }
+
+  private static int crc32(ByteBuffer data) {
+    CRC32 crc = new CRC32();
+    crc.update(data.duplicate());
+    return (int) crc.getValue();
+  }
+}
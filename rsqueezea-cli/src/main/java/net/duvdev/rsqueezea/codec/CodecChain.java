@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Stages of codecs composed into one. Encoding runs the stages in order, each encoding the output
+ * of the one before it, and decoding runs them in reverse.
+ *
+ * <p>Each stage reads the output of the one before it in place. Encoding alternates between two
+ * buffers, which are reused across the stages, and decoding reads each stage's output through a
+ * stream over its buffer.
+ */
+public final class CodecChain implements StreamingCodec {
+
+  private final List<StreamingCodec> stages;
+
+  /** @param stages Codecs in encoding order. Codecs which do not stream are buffered. */
+  public CodecChain(List<? extends Codec<byte[], byte[]>> stages) {
+    if (stages.isEmpty()) {
+      throw new IllegalArgumentException("A codec chain needs at least one stage");
+    }
+    List<StreamingCodec> streaming = new ArrayList<>(stages.size());
+    for (Codec<byte[], byte[]> stage : stages) {
+      streaming.add(StreamingCodec.of(stage));
+    }
+    this.stages = Collections.unmodifiableList(streaming);
+  }
+
+  /** @return The stages, in encoding order */
+  public List<StreamingCodec> getStages() {
+    return stages;
+  }
+
+  @Override
+  public void encode(ByteBuffer decoded, OutputStream output) throws EncoderException, IOException {
+    int last = stages.size() - 1;
+    StageBuffer[] buffers = new StageBuffer[Math.min(last, 2)];
+    ByteBuffer input = decoded;
+    for (int i = 0; i < last; ++i) {
+      StageBuffer buffer = buffers[i % 2];
+      if (buffer == null) {
+        buffer = buffers[i % 2] = new StageBuffer(input.remaining() * 2 + 64);
+      }
+      // the other buffer holds the input
+      buffer.reset();
+      stages.get(i).encode(input, buffer);
+      input = buffer.toByteBuffer();
+    }
+    stages.get(last).encode(input, output);
+  }
+
+  @Override
+  public ByteBuffer decode(InputStream input) throws DecoderException, IOException {
+    int last = stages.size() - 1;
+    ByteBuffer data = stages.get(last).decode(input);
+    for (int i = last - 1; i >= 0; --i) {
+      data = stages.get(i).decode(ByteBuffers.asInputStream(data));
+    }
+    return data;
+  }
+}
@@ -4,38 +4,123 @@
  */
 package net.duvdev.rsqueezea.codec;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Looks up codecs by name. Codecs are provided by {@link ServiceLoader} services of {@link
+ * CodecProvider}, loaded once, and shared - as are the chains of them, once made for a format. The
+ * codecs are immutable, so the same instance serves every caller and thread; a codec configured
+ * otherwise is a new instance, such as from {@link QRCodeCodec#withLevel(QRCodeCodec.Level)}.
+ */
 public final class CodecFactory {
 
+  /** Separates the stages of a codec chain */
+  public static final String CHAIN_SEPARATOR = "+";
+
+  /** Formats whose codecs are kept, as formats are given by users and may be anything */
+  private static final int MAX_CACHED_FORMATS = 256;
+
+  private static final Map<String, StreamingCodec> FORMATS = new ConcurrentHashMap<>();
+
   /** Do not instantiate */
   private CodecFactory() {}
 
-  public static Codec<byte[], byte[]> getCodec(CodecType type) {
-    Class<? extends Codec<byte[], byte[]>> clazz = null;
-    for (CodecType codecType : CodecType.values()) {
-      if (type == codecType) {
-        clazz = codecType.clazz;
-        break;
-      }
+  public static StreamingCodec getCodec(CodecType type) {
+    return getCodec(type.name());
+  }
+
+  /**
+   * @param format A codec name, or several joined by {@value #CHAIN_SEPARATOR} in encoding order,
+   *     as in {@code der+crc+qr}. Case insensitive.
+   * @return The codec, or a {@link CodecChain} of several, the same instance for the same format
+   */
+  public static StreamingCodec getCodec(String format) {
+    String[] names = format.split(Pattern.quote(CHAIN_SEPARATOR), -1);
+    for (int i = 0; i < names.length; ++i) {
+      names[i] = names[i].trim().toUpperCase(Locale.ROOT);
     }
-    if (clazz == null) {
-      throw new IllegalArgumentException("Unknown codec: " + type.name());
+    String key = String.join(CHAIN_SEPARATOR, names);
+    StreamingCodec codec = FORMATS.get(key);
+    if (codec != null) {
+      return codec;
     }
-    try {
-      return clazz.newInstance();
-    } catch (InstantiationException | IllegalAccessException e) {
-      throw new IllegalArgumentException("Cannot instantiate " + clazz.getCanonicalName(), e);
+    List<StreamingCodec> stages = new ArrayList<>(names.length);
+    for (String name : names) {
+      StreamingCodec stage = Registry.CODECS.get(name);
+      if (stage == null) {
+        throw new IllegalArgumentException("Unknown codec: " + name);
+      }
+      stages.add(stage);
     }
+    codec = stages.size() == 1 ? stages.get(0) : new CodecChain(stages);
+    if (FORMATS.size() < MAX_CACHED_FORMATS) {
+      StreamingCodec existing = FORMATS.putIfAbsent(key, codec);
+      if (existing != null) {
+        return existing;
+      }
+    }
+    return codec;
+  }
+
+  /** @return The names of the registered codecs, in upper case */
+  public static Set<String> getNames() {
+    return Registry.CODECS.keySet();
   }
 
+  /** The codecs built in, provided by {@link BuiltInCodecProvider} */
   public enum CodecType {
-    DER(IdentityCodec.class),
-    PEM(PEMCodec.class),
-    QR(QRCodeCodec.class);
+    DER,
+    PEM,
+    QR,
+    CRC
+  }
+
+  /** Loaded on first use */
+  private static final class Registry {
 
-    private final Class<? extends Codec<byte[], byte[]>> clazz;
+    private static final Map<String, StreamingCodec> CODECS;
 
-    CodecType(Class<? extends Codec<byte[], byte[]>> clazz) {
-      this.clazz = clazz;
+    static {
+      TreeMap<String, StreamingCodec> codecs = new TreeMap<>();
+      Map<String, CodecProvider> providers = new TreeMap<>();
+      for (CodecProvider provider :
+          ServiceLoader.load(CodecProvider.class, CodecFactory.class.getClassLoader())) {
+        for (String name : provider.getNames()) {
+          if (name.contains(CHAIN_SEPARATOR) || !name.equals(name.toUpperCase(Locale.ROOT))) {
+            throw new IllegalStateException(
+                "Invalid codec name " + name + " registered by " + provider.getClass().getName());
+          }
+          CodecProvider existing = providers.put(name, provider);
+          if (existing != null) {
+            throw new IllegalStateException(
+                "Codec "
+                    + name
+                    + " registered by both "
+                    + existing.getClass().getName()
+                    + " and "
+                    + provider.getClass().getName());
+          }
+          StreamingCodec codec = provider.getCodec(name);
+          if (codec == null) {
+            throw new IllegalStateException(
+                "No codec " + name + " provided by " + provider.getClass().getName());
+          }
+          codecs.put(name, codec);
+        }
+      }
+      if (codecs.isEmpty()) {
+        throw new IllegalStateException("No codecs registered");
+      }
+      CODECS = Collections.unmodifiableSortedMap(codecs);
     }
   }
 }
@@ -0,0 +1,23 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.codec;
+
+import java.util.ServiceLoader;
+import java.util.Set;
+
+/**
+ * Provides codecs by the names they take in formats, such as {@code QR} in {@code DER+CRC+QR}.
+ * Providers are registered as {@link ServiceLoader} services of this interface, and loaded once by
+ * {@link CodecFactory}. Their codecs are shared by every caller, on any thread - they must be
+ * immutable and thread-safe.
+ */
+public interface CodecProvider {
+
+  /** @return The names of the codecs, in upper case */
+  Set<String> getNames();
+
+  /** @return The codec of one of the names, in its default configuration */
+  StreamingCodec getCodec(String name);
+}
@@ -5,6 +5,10 @@
 package net.duvdev.rsqueezea.codec;
 
 public class EncoderException extends CodecException {
+  public EncoderException(String message) {
+    super(message);
+  }
+
   public EncoderException(Throwable cause) {
     super(cause);
   }
@@ -4,7 +4,14 @@
  */
 package net.duvdev.rsqueezea.codec;
 
-public final class IdentityCodec implements Codec<byte[], byte[]> {
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+public final class IdentityCodec implements StreamingCodec {
   @Override
   public byte[] decode(byte[] encoded) throws DecoderException {
     return encoded;
@@ -14,4 +21,15 @@ public final class IdentityCodec implements Codec<byte[], byte[]> {
   public byte[] encode(byte[] decoded) throws EncoderException {
     return decoded;
   }
+
+  @Override
+  public void encode(ByteBuffer decoded, OutputStream output) throws IOException {
+    ByteBuffers.write(decoded, output);
+    output.flush();
+  }
+
+  @Override
+  public ByteBuffer decode(InputStream input) throws IOException {
+    return ByteBuffer.wrap(IOUtils.toByteArray(input));
+  }
 }
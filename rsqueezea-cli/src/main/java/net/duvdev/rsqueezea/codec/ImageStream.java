@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.codec;
+
+import javax.annotation.Nullable;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+/**
+ * Reads the images concatenated in a stream, one after the other, in any format ImageIO reads. The
+ * stream is cached in memory rather than in a temporary file, as {@link ImageIO#read(InputStream)}
+ * would. Closing it leaves the underlying stream open.
+ *
+ * <p>The size of each image is checked against its header before its pixels are read, as a small
+ * compressed image may claim more pixels than fit in memory.
+ */
+final class ImageStream implements Closeable {
+
+  /** Type of the last chunk of a PNG */
+  private static final int PNG_IEND = 0x49454e44;
+
+  private final ImageInputStream imageInput;
+
+  private final long maxPixels;
+
+  /** @param maxPixels Maximal width times height of each image */
+  ImageStream(InputStream input, long maxPixels) {
+    this.imageInput = new MemoryCacheImageInputStream(input);
+    this.maxPixels = maxPixels;
+  }
+
+  /**
+   * @return The next image, or null if the rest of the stream is not one
+   * @throws IOException If the image is larger than the maximal number of pixels
+   */
+  @Nullable
+  BufferedImage next() throws IOException {
+    Iterator<ImageReader> readers = ImageIO.getImageReaders(imageInput);
+    if (!readers.hasNext()) {
+      return null;
+    }
+    ImageReader reader = readers.next();
+    try {
+      // the PNG reader stops short of the last chunks, and flushes the stream behind it
+      long end = "png".equalsIgnoreCase(reader.getFormatName()) ? pngEnd() : -1;
+      reader.setInput(imageInput, true, true);
+      long pixels = reader.getWidth(0) * (long) reader.getHeight(0);
+      if (pixels > maxPixels) {
+        throw new IOException(
+            "Image of "
+                + reader.getWidth(0)
+                + "x"
+                + reader.getHeight(0)
+                + " pixels, more than "
+                + maxPixels);
+      }
+      BufferedImage image = reader.read(0);
+      if (end != -1) {
+        imageInput.seek(end);
+      }
+      return image;
+    } finally {
+      reader.dispose();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    imageInput.close();
+  }
+
+  /** @return Where the PNG at the position of the stream ends, walking its chunks */
+  private long pngEnd() throws IOException {
+    long start = imageInput.getStreamPosition();
+    imageInput.seek(start + 8);
+    int type;
+    do {
+      long length = imageInput.readInt() & 0xffffffffL;
+      type = imageInput.readInt();
+      imageInput.seek(imageInput.getStreamPosition() + length + 4);
+    } while (type != PNG_IEND);
+    long end = imageInput.getStreamPosition();
+    imageInput.seek(start);
+    return end;
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.codec;
+
+/**
+ * A 5x7 pixel font of lower-case hexadecimal digits, and of the few characters that labels of QR
+ * codes take besides them. It is drawn without AWT, pixel by pixel, as the PNG writer draws
+ * modules.
+ */
+final class LabelFont {
+
+  static final int GLYPH_WIDTH = 5;
+
+  static final int GLYPH_HEIGHT = 7;
+
+  /** A glyph and the blank column after it */
+  static final int ADVANCE = GLYPH_WIDTH + 1;
+
+  private static final String CHARACTERS = "0123456789abcdef/- ";
+
+  /** Rows of each character, top to bottom, the most significant of 5 bits the leftmost pixel */
+  private static final int[][] GLYPHS = {
+    {0b01110, 0b10001, 0b10011, 0b10101, 0b11001, 0b10001, 0b01110},
+    {0b00100, 0b01100, 0b00100, 0b00100, 0b00100, 0b00100, 0b01110},
+    {0b01110, 0b10001, 0b00001, 0b00010, 0b00100, 0b01000, 0b11111},
+    {0b11111, 0b00010, 0b00100, 0b00010, 0b00001, 0b10001, 0b01110},
+    {0b00010, 0b00110, 0b01010, 0b10010, 0b11111, 0b00010, 0b00010},
+    {0b11111, 0b10000, 0b11110, 0b00001, 0b00001, 0b10001, 0b01110},
+    {0b00110, 0b01000, 0b10000, 0b11110, 0b10001, 0b10001, 0b01110},
+    {0b11111, 0b00001, 0b00010, 0b00100, 0b01000, 0b01000, 0b01000},
+    {0b01110, 0b10001, 0b10001, 0b01110, 0b10001, 0b10001, 0b01110},
+    {0b01110, 0b10001, 0b10001, 0b01111, 0b00001, 0b00010, 0b01100},
+    {0b00000, 0b00000, 0b01110, 0b00001, 0b01111, 0b10001, 0b01111},
+    {0b10000, 0b10000, 0b10110, 0b11001, 0b10001, 0b10001, 0b11110},
+    {0b00000, 0b00000, 0b01110, 0b10000, 0b10000, 0b10001, 0b01110},
+    {0b00001, 0b00001, 0b01101, 0b10011, 0b10001, 0b10001, 0b01111},
+    {0b00000, 0b00000, 0b01110, 0b10001, 0b11111, 0b10000, 0b01110},
+    {0b00110, 0b01001, 0b01000, 0b11100, 0b01000, 0b01000, 0b01000},
+    {0b00000, 0b00001, 0b00010, 0b00100, 0b01000, 0b10000, 0b00000},
+    {0b00000, 0b00000, 0b00000, 0b11111, 0b00000, 0b00000, 0b00000},
+    {0b00000, 0b00000, 0b00000, 0b00000, 0b00000, 0b00000, 0b00000}
+  };
+
+  /** Do not instantiate */
+  private LabelFont() {}
+
+  /** @return The width of the text, in pixels of the font */
+  static int width(String text) {
+    return text.isEmpty() ? 0 : text.length() * ADVANCE - 1;
+  }
+
+  /** @throws IllegalArgumentException If the font does not have a character of the text */
+  static void checkDrawable(String text) {
+    for (int i = 0; i < text.length(); ++i) {
+      if (CHARACTERS.indexOf(text.charAt(i)) == -1) {
+        throw new IllegalArgumentException(
+            "Labels may only hold \"" + CHARACTERS + "\", not '" + text.charAt(i) + "'");
+      }
+    }
+  }
+
+  /** @return Whether the pixel of the text, in pixels of the font, is dark */
+  static boolean isDark(String text, int x, int y) {
+    int column = x % ADVANCE;
+    if (column == GLYPH_WIDTH) {
+      return false;
+    }
+    int row = GLYPHS[CHARACTERS.indexOf(text.charAt(x / ADVANCE))][y];
+    return (row & 1 << GLYPH_WIDTH - 1 - column) != 0;
+  }
+}
@@ -8,15 +8,21 @@ import org.bouncycastle.openssl.PEMParser;
 import org.bouncycastle.util.io.pem.PemObject;
 import org.bouncycastle.util.io.pem.PemWriter;
 
-import java.io.*;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
-public final class PEMCodec implements Codec<byte[], byte[]> {
+public final class PEMCodec implements StreamingCodec {
 
   private static final String TYPE = "SQUEEZED RSA PRIVATE KEY";
 
   @Override
-  public byte[] decode(byte[] encoded) throws DecoderException {
-    PEMParser pemParser = new PEMParser(new InputStreamReader(new ByteArrayInputStream(encoded)));
+  public ByteBuffer decode(InputStream input) throws DecoderException {
+    PEMParser pemParser = new PEMParser(new InputStreamReader(input, StandardCharsets.US_ASCII));
     PemObject pemObject;
     try {
       pemObject = pemParser.readPemObject();
@@ -30,20 +36,13 @@ public final class PEMCodec implements Codec<byte[], byte[]> {
       throw new DecoderException(
           "Wrong object type. Expecting: " + TYPE + ", but got: " + pemObject.getType());
     }
-    return pemObject.getContent();
+    return ByteBuffer.wrap(pemObject.getContent());
   }
 
   @Override
-  public byte[] encode(byte[] decoded) throws EncoderException {
-    PemObject pemObject = new PemObject(TYPE, decoded);
-    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-    PemWriter pemWriter = new PemWriter(new OutputStreamWriter(buffer));
-    try {
-      pemWriter.writeObject(pemObject);
-      pemWriter.flush();
-    } catch (IOException e) {
-      throw new EncoderException(e);
-    }
-    return buffer.toByteArray();
+  public void encode(ByteBuffer decoded, OutputStream output) throws IOException {
+    PemWriter pemWriter = new PemWriter(new OutputStreamWriter(output, StandardCharsets.US_ASCII));
+    pemWriter.writeObject(new PemObject(TYPE, ByteBuffers.toByteArray(decoded)));
+    pemWriter.flush();
   }
 }
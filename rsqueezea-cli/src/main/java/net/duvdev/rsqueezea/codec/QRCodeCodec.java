@@ -5,79 +5,236 @@
 package net.duvdev.rsqueezea.codec;
 
 import com.google.zxing.*;
-import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
-import com.google.zxing.client.j2se.MatrixToImageWriter;
 import com.google.zxing.common.BitMatrix;
-import com.google.zxing.common.HybridBinarizer;
 import com.google.zxing.qrcode.QRCodeWriter;
 import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import net.duvdev.rsqueezea.protocol.DecodingLimits;
 
-import javax.annotation.Nullable;
-import javax.imageio.ImageIO;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.awt.image.BufferedImage;
 import java.io.IOException;
-import java.util.HashMap;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
-public final class QRCodeCodec implements Codec<byte[], byte[]> {
+/**
+ * Stores bytes in a QR code, written as a PNG. A payload too large for a QR code of {@link
+ * #withMaxVersion(int) the largest version} is split across several, encoded in parallel and laid
+ * out in a grid on the same image. See {@link QRStructuredAppend}.
+ *
+ * <p>Decoding reads every QR code of the image, and of any images concatenated to it in the stream,
+ * so the codes of a split payload may also be given as several images, in any order.
+ *
+ * <p>Immutable and thread-safe: the {@code with} methods return a codec configured otherwise.
+ */
+public final class QRCodeCodec implements StreamingCodec {
+
+  public static final int MIN_VERSION = 1;
+
+  public static final int MAX_VERSION = QRPayload.MAX_VERSION;
+
+  private final Level level;
+
+  private final int maxVersion;
+
+  private final QRCodePNGWriter pngWriter;
 
-  private static final ErrorCorrectionLevel DEFAULT_LEVEL = ErrorCorrectionLevel.M;
-  private @Nullable Level level;
+  private final long maxImagePixels;
 
-  public QRCodeCodec setLevel(Level level) {
+  public QRCodeCodec() {
+    this(Level.M, MAX_VERSION, new QRCodePNGWriter(), DecodingLimits.DEFAULT_MAX_IMAGE_PIXELS);
+  }
+
+  private QRCodeCodec(Level level, int maxVersion, QRCodePNGWriter pngWriter, long maxImagePixels) {
     this.level = level;
-    return this;
+    this.maxVersion = maxVersion;
+    this.pngWriter = pngWriter;
+    this.maxImagePixels = maxImagePixels;
+  }
+
+  public Level getLevel() {
+    return level;
+  }
+
+  public int getMaxVersion() {
+    return maxVersion;
+  }
+
+  public long getMaxImagePixels() {
+    return maxImagePixels;
+  }
+
+  public QRCodeCodec withLevel(Level level) {
+    return new QRCodeCodec(level, maxVersion, pngWriter, maxImagePixels);
+  }
+
+  /**
+   * @param maxVersion Largest version of a QR code, from 1 to 40. Larger payloads are split across
+   *     several QR codes, up to {@value QRStructuredAppend#MAX_PARTS}.
+   */
+  public QRCodeCodec withMaxVersion(int maxVersion) {
+    if (maxVersion < MIN_VERSION || maxVersion > MAX_VERSION) {
+      throw new IllegalArgumentException("QR code version must be from 1 to 40: " + maxVersion);
+    }
+    return new QRCodeCodec(level, maxVersion, pngWriter, maxImagePixels);
+  }
+
+  /** @param moduleSize Side of a module in the PNG, in pixels */
+  public QRCodeCodec withModuleSize(int moduleSize) {
+    return new QRCodeCodec(
+        level,
+        maxVersion,
+        new QRCodePNGWriter(moduleSize, pngWriter.getQuietZone()),
+        maxImagePixels);
   }
 
+  /**
+   * @param quietZone Width of the white border around the code, in modules. Split payloads keep at
+   *     least {@value QRCodePNGWriter#DEFAULT_QUIET_ZONE} between their codes.
+   */
+  public QRCodeCodec withQuietZone(int quietZone) {
+    return new QRCodeCodec(
+        level,
+        maxVersion,
+        new QRCodePNGWriter(pngWriter.getModuleSize(), quietZone),
+        maxImagePixels);
+  }
+
+  /**
+   * @param maxImagePixels Maximal width times height of an image to decode, checked before its
+   *     pixels are read. {@link DecodingLimits#DEFAULT_MAX_IMAGE_PIXELS} unless given.
+   */
+  public QRCodeCodec withMaxImagePixels(long maxImagePixels) {
+    if (maxImagePixels < 1) {
+      throw new IllegalArgumentException(
+          "Maximal image pixels must be positive: " + maxImagePixels);
+    }
+    return new QRCodeCodec(level, maxVersion, pngWriter, maxImagePixels);
+  }
+
+  /** Reads the images straight from the stream, see {@link ImageStream} */
   @Override
-  public byte[] decode(byte[] encoded) throws DecoderException {
-    try {
-      MultiFormatReader reader = new MultiFormatReader();
-      HashMap<DecodeHintType, Object> hints = new HashMap<>();
-      hints.put(DecodeHintType.CHARACTER_SET, BinaryToQRCodeStringCodec.CHARSET);
-      reader.setHints(hints);
-
-      Result result =
-          reader.decode(
-              new BinaryBitmap(
-                  new HybridBinarizer(
-                      new BufferedImageLuminanceSource(
-                          ImageIO.read(new ByteArrayInputStream(encoded))))));
-      BinaryToQRCodeStringCodec codec = new BinaryToQRCodeStringCodec();
-      return codec.decode(result.getText());
-    } catch (NotFoundException | IOException e) {
-      throw new DecoderException(e.getMessage(), e);
+  public ByteBuffer decode(InputStream input) throws DecoderException, IOException {
+    List<byte[]> payloads = new ArrayList<>();
+    try (ImageStream images = new ImageStream(input, maxImagePixels)) {
+      BufferedImage image = images.next();
+      if (image == null) {
+        throw new DecoderException("Not an image in a supported format");
+      }
+      do {
+        for (Result result : QRCodeScanner.scan(image)) {
+          payloads.add(QRPayload.decode(result.getText()));
+        }
+        image = images.next();
+      } while (image != null);
     }
+    return ByteBuffer.wrap(QRStructuredAppend.join(payloads));
   }
 
   @Override
-  public byte[] encode(byte[] decoded) throws EncoderException {
-    BinaryToQRCodeStringCodec codec = new BinaryToQRCodeStringCodec();
-    String text = codec.encode(decoded);
-
-    QRCodeWriter barcodeWriter = new QRCodeWriter();
-    HashMap<EncodeHintType, Object> hints = new HashMap<>();
-    hints.put(EncodeHintType.CHARACTER_SET, BinaryToQRCodeStringCodec.CHARSET);
-    hints.put(EncodeHintType.ERROR_CORRECTION, getZXingLevel());
-    BitMatrix bitMatrix;
+  public void encode(ByteBuffer decoded, OutputStream output) throws EncoderException, IOException {
+    List<BitMatrix> symbols = encodeSymbols(ByteBuffers.toByteArray(decoded));
+    if (symbols.size() == 1) {
+      pngWriter.write(symbols.get(0), output);
+      return;
+    }
+    pngWriter.write(
+        tile(symbols, Math.max(pngWriter.getQuietZone(), QRCodePNGWriter.DEFAULT_QUIET_ZONE)),
+        output);
+  }
+
+  /**
+   * Encodes the data as {@link #encode(ByteBuffer, OutputStream)} does, but leaves the QR codes to
+   * be laid out by the caller, such as on a {@link QRCodeSheet}.
+   *
+   * @return The modules of the QR codes, without a quiet zone, the parts of a split payload in
+   *     order
+   */
+  public List<BitMatrix> encodeSymbols(byte[] data) throws EncoderException {
+    ErrorCorrectionLevel level = getZXingLevel();
+    String text = QRPayload.encode(data, level);
+    if (!QRStructuredAppend.startsWithMarker(data)
+        && QRPayload.version(text, level) <= maxVersion) {
+      return Collections.singletonList(encodeSymbol(text, level));
+    }
+
+    List<byte[]> parts = QRStructuredAppend.split(data, QRPayload.byteCapacity(maxVersion, level));
+    List<CompletableFuture<BitMatrix>> symbols = new ArrayList<>(parts.size());
+    for (byte[] part : parts) {
+      symbols.add(
+          CompletableFuture.supplyAsync(
+              () -> {
+                try {
+                  return encodeSymbol(QRPayload.encode(part, level), level);
+                } catch (EncoderException e) {
+                  throw new CompletionException(e);
+                }
+              }));
+    }
+    List<BitMatrix> matrices = new ArrayList<>(symbols.size());
+    for (CompletableFuture<BitMatrix> symbol : symbols) {
+      try {
+        matrices.add(symbol.join());
+      } catch (CompletionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof EncoderException) {
+          throw (EncoderException) cause;
+        }
+        throw e;
+      }
+    }
+    return matrices;
+  }
+
+  /** @return The modules of the QR code, without a quiet zone */
+  static BitMatrix encodeSymbol(String text, ErrorCorrectionLevel level) throws EncoderException {
+    // ISO-8859-1 is the default, and naming it would add an ECI header to the byte mode
+    Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+    hints.put(EncodeHintType.ERROR_CORRECTION, level);
+    // the quiet zone is added by the PNG writer
+    hints.put(EncodeHintType.MARGIN, 0);
     try {
-      bitMatrix = barcodeWriter.encode(text, BarcodeFormat.QR_CODE, 0, 0, hints);
+      return new QRCodeWriter().encode(text, BarcodeFormat.QR_CODE, 0, 0, hints);
     } catch (WriterException e) {
       throw new EncoderException(e.getMessage(), e);
     }
-    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-    try {
-      MatrixToImageWriter.writeToStream(bitMatrix, "PNG", buffer);
-    } catch (IOException e) {
-      throw new EncoderException(e.getMessage(), e);
+  }
+
+  /**
+   * Lays the QR codes out in rows, as close to a square as they fill
+   *
+   * @param gap Modules between codes
+   */
+  private static BitMatrix tile(List<BitMatrix> symbols, int gap) {
+    int side = 0;
+    for (BitMatrix symbol : symbols) {
+      side = Math.max(side, Math.max(symbol.getWidth(), symbol.getHeight()));
     }
-    return buffer.toByteArray();
+    int columns = (int) Math.ceil(Math.sqrt(symbols.size()));
+    int rows = (symbols.size() + columns - 1) / columns;
+    BitMatrix tiled = new BitMatrix(columns * (side + gap) - gap, rows * (side + gap) - gap);
+    for (int i = 0; i < symbols.size(); ++i) {
+      BitMatrix symbol = symbols.get(i);
+      int left = i % columns * (side + gap);
+      int top = i / columns * (side + gap);
+      for (int y = 0; y < symbol.getHeight(); ++y) {
+        for (int x = 0; x < symbol.getWidth(); ++x) {
+          if (symbol.get(x, y)) {
+            tiled.set(left + x, top + y);
+          }
+        }
+      }
+    }
+    return tiled;
   }
 
   private ErrorCorrectionLevel getZXingLevel() {
-    if (level == null) {
-      return DEFAULT_LEVEL;
-    }
     switch (level) {
       case L:
         return ErrorCorrectionLevel.L;
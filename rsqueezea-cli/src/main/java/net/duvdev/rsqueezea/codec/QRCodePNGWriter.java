@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.codec;
+
+import com.google.zxing.common.BitMatrix;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a QR code as a 1-bit grayscale PNG, as specified by ISO/IEC 15948, straight from its
+ * modules. Each module takes a square of pixels, and the code is surrounded by a quiet zone of
+ * white modules.
+ *
+ * <p>Nothing of AWT or ImageIO is used, so it also runs headless, and the image is only ever held
+ * deflated: rows of pixels are deflated as they are made.
+ */
+public final class QRCodePNGWriter {
+
+  public static final int DEFAULT_MODULE_SIZE = 1;
+
+  /** Four modules, the minimum required by ISO/IEC 18004 */
+  public static final int DEFAULT_QUIET_ZONE = 4;
+
+  /** Limits the image to a side of 2^16 pixels */
+  private static final int MAX_SIDE = 1 << 16;
+
+  private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+
+  private static final byte FILTER_NONE = 0;
+
+  private final int moduleSize;
+
+  private final int quietZone;
+
+  public QRCodePNGWriter() {
+    this(DEFAULT_MODULE_SIZE, DEFAULT_QUIET_ZONE);
+  }
+
+  /**
+   * @param moduleSize Side of a module, in pixels
+   * @param quietZone Width of the white border, in modules
+   */
+  public QRCodePNGWriter(int moduleSize, int quietZone) {
+    if (moduleSize < 1) {
+      throw new IllegalArgumentException("Module size must be positive: " + moduleSize);
+    }
+    if (quietZone < 0) {
+      throw new IllegalArgumentException("Quiet zone must not be negative: " + quietZone);
+    }
+    this.moduleSize = moduleSize;
+    this.quietZone = quietZone;
+  }
+
+  public int getModuleSize() {
+    return moduleSize;
+  }
+
+  public int getQuietZone() {
+    return quietZone;
+  }
+
+  /** @param matrix Modules of the QR code, set for dark ones, without a quiet zone */
+  public void write(BitMatrix matrix, OutputStream output) throws IOException {
+    long width = ((long) matrix.getWidth() + 2L * quietZone) * moduleSize;
+    long height = ((long) matrix.getHeight() + 2L * quietZone) * moduleSize;
+    if (width > MAX_SIDE || height > MAX_SIDE) {
+      throw new IllegalArgumentException("Image of " + width + "x" + height + " is too large");
+    }
+    writeImage(
+        output,
+        (int) width,
+        (int) height,
+        0,
+        (y, row) -> {
+          int moduleY = y / moduleSize - quietZone;
+          if (moduleY < 0 || moduleY >= matrix.getHeight()) {
+            return;
+          }
+          for (int x = 0; x < matrix.getWidth(); ++x) {
+            if (matrix.get(x, moduleY)) {
+              int start = (quietZone + x) * moduleSize;
+              paintDark(row, start, start + moduleSize);
+            }
+          }
+        });
+  }
+
+  /** Paints the dark pixels of a row of a bilevel image, which is white to begin with */
+  interface RowPainter {
+    void paint(int y, byte[] row);
+  }
+
+  /**
+   * Writes a 1-bit grayscale PNG, whose rows are painted and deflated one at a time
+   *
+   * @param dpi Resolution to record in the image, so it prints at its size, or 0 for none
+   */
+  static void writeImage(OutputStream output, int width, int height, int dpi, RowPainter painter)
+      throws IOException {
+    output.write(SIGNATURE);
+
+    ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+    DataOutputStream headerData = new DataOutputStream(header);
+    headerData.writeInt(width);
+    headerData.writeInt(height);
+    headerData.writeByte(1); // bit depth
+    headerData.writeByte(0); // grayscale
+    headerData.writeByte(0); // deflate
+    headerData.writeByte(0); // adaptive filtering
+    headerData.writeByte(0); // no interlace
+    writeChunk(output, "IHDR", header);
+
+    if (dpi > 0) {
+      int pixelsPerMeter = (int) Math.round(dpi / 0.0254);
+      ByteArrayOutputStream physical = new ByteArrayOutputStream(9);
+      DataOutputStream physicalData = new DataOutputStream(physical);
+      physicalData.writeInt(pixelsPerMeter);
+      physicalData.writeInt(pixelsPerMeter);
+      physicalData.writeByte(1); // meters
+      writeChunk(output, "pHYs", physical);
+    }
+
+    // a row takes a filter byte and a bit per pixel
+    byte[] row = new byte[1 + (width + 7) / 8];
+    ByteArrayOutputStream pixels =
+        new ByteArrayOutputStream((int) ((long) row.length * height / 8) + 64);
+    Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+    try (DeflaterOutputStream deflated = new DeflaterOutputStream(pixels, deflater, 4096)) {
+      for (int y = 0; y < height; ++y) {
+        fillWhite(row);
+        painter.paint(y, row);
+        deflated.write(row);
+      }
+    } finally {
+      deflater.end();
+    }
+    writeChunk(output, "IDAT", pixels);
+    writeChunk(output, "IEND", new ByteArrayOutputStream(0));
+    output.flush();
+  }
+
+  /** Paints the pixels of the row from {@code start}, inclusive, to {@code end}, exclusive */
+  static void paintDark(byte[] row, int start, int end) {
+    for (int pixel = start; pixel < end; ++pixel) {
+      row[1 + pixel / 8] &= (byte) ~(0x80 >>> pixel % 8);
+    }
+  }
+
+  /** Sets every pixel of the row, and the padding bits after them, which are white */
+  private static void fillWhite(byte[] row) {
+    row[0] = FILTER_NONE;
+    for (int i = 1; i < row.length; ++i) {
+      row[i] = (byte) 0xff;
+    }
+  }
+
+  private static void writeChunk(OutputStream output, String type, ByteArrayOutputStream data)
+      throws IOException {
+    DataOutputStream chunk = new DataOutputStream(output);
+    chunk.writeInt(data.size());
+    CheckedOutputStream checked = new CheckedOutputStream(output, new CRC32());
+    checked.write(type.getBytes(StandardCharsets.US_ASCII));
+    data.writeTo(checked);
+    chunk.writeInt((int) checked.getChecksum().getValue());
+  }
+}
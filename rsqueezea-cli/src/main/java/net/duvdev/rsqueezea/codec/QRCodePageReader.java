@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.codec;
+
+import com.google.zxing.Result;
+import net.duvdev.rsqueezea.protocol.DecodingLimits;
+
+import javax.annotation.Nullable;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Reads the payloads of pages of many QR codes, such as printed or scanned sheets of backups. The
+ * page is cut into tiles along blank gutters, and the codes of the tiles are read in parallel,
+ * trying harder over the page if a tile fails. Parts of a split payload are kept until all are
+ * read, so they may be spread over several pages.
+ *
+ * <p>Not thread-safe: the pages are read one after the other, each in parallel.
+ */
+public final class QRCodePageReader {
+
+  private final Executor executor;
+
+  private final long maxImagePixels;
+
+  /** Parts read of split payloads, by CRC and number of parts */
+  private final Map<Long, byte[][]> pending = new LinkedHashMap<>();
+
+  /** Split payloads already joined, whose parts are ignored if read again */
+  private final Set<Long> joined = new HashSet<>();
+
+  private final List<String> errors = new ArrayList<>();
+
+  public QRCodePageReader() {
+    this(ForkJoinPool.commonPool(), DecodingLimits.DEFAULT_MAX_IMAGE_PIXELS);
+  }
+
+  /**
+   * @param executor Executor to read the QR codes on
+   * @param maxImagePixels Maximal width times height of a page, checked before its pixels are read
+   */
+  public QRCodePageReader(Executor executor, long maxImagePixels) {
+    this.executor = executor;
+    this.maxImagePixels = maxImagePixels;
+  }
+
+  /**
+   * @param page Images of pages, one or more concatenated, see {@link ImageStream}
+   * @return The payloads of the QR codes on the page, and of split payloads whose last part is on
+   *     it, each once. None for a page without QR codes.
+   */
+  public List<ByteBuffer> read(InputStream page) throws DecoderException, IOException {
+    List<ByteBuffer> payloads = new ArrayList<>();
+    try (ImageStream images = new ImageStream(page, maxImagePixels)) {
+      BufferedImage image = images.next();
+      if (image == null) {
+        throw new DecoderException("Not an image in a supported format");
+      }
+      do {
+        for (Result result : QRCodeScanner.scanPage(image, executor)) {
+          byte[] payload;
+          try {
+            payload = QRPayload.decode(result.getText());
+          } catch (DecoderException e) {
+            errors.add("Unreadable QR code: " + e.getMessage());
+            continue;
+          }
+          if (QRStructuredAppend.isPart(payload)) {
+            byte[] data = addPart(payload);
+            if (data != null) {
+              payloads.add(ByteBuffer.wrap(data));
+            }
+          } else {
+            payloads.add(ByteBuffer.wrap(payload));
+          }
+        }
+        image = images.next();
+      } while (image != null);
+    }
+    return payloads;
+  }
+
+  /** @return QR codes read so far that hold no payload, and split payloads that did not add up */
+  public List<String> getErrors() {
+    return new ArrayList<>(errors);
+  }
+
+  /** @return The split payloads still missing parts, with the parts read of them */
+  public List<String> getIncomplete() {
+    List<String> incomplete = new ArrayList<>(pending.size());
+    for (Map.Entry<Long, byte[][]> group : pending.entrySet()) {
+      byte[][] parts = group.getValue();
+      StringBuilder read = new StringBuilder();
+      for (int i = 0; i < parts.length; ++i) {
+        if (parts[i] != null) {
+          read.append(read.length() == 0 ? "" : ", ").append(i + 1);
+        }
+      }
+      incomplete.add(
+          String.format(
+              "Only parts %s of %d of the payload with CRC-32 %08x",
+              read, parts.length, group.getKey() >>> 8));
+    }
+    return incomplete;
+  }
+
+  /** @return The payload, if that was its last part */
+  private @Nullable byte[] addPart(byte[] part) {
+    int count = QRStructuredAppend.count(part);
+    if (count == 1) {
+      // a payload stored as a part only for its marker, read as often as it is printed
+      return join(Collections.singletonList(part));
+    }
+    long key = (QRStructuredAppend.crc(part) & 0xffffffffL) << 8 | count;
+    if (joined.contains(key)) {
+      return null;
+    }
+    byte[][] parts = pending.computeIfAbsent(key, k -> new byte[count][]);
+    int index = QRStructuredAppend.index(part);
+    if (index >= count || parts[index] != null && !Arrays.equals(parts[index], part)) {
+      errors.add("Invalid or conflicting part " + (index + 1) + " of " + count);
+      return null;
+    }
+    parts[index] = part;
+    for (byte[] other : parts) {
+      if (other == null) {
+        return null;
+      }
+    }
+    pending.remove(key);
+    joined.add(key);
+    return join(Arrays.asList(parts));
+  }
+
+  private @Nullable byte[] join(List<byte[]> parts) {
+    try {
+      return QRStructuredAppend.join(parts);
+    } catch (DecoderException e) {
+      errors.add(e.getMessage());
+      return null;
+    }
+  }
+}
@@ -0,0 +1,351 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.codec;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.multi.qrcode.QRCodeMultiReader;
+
+import javax.annotation.Nullable;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+import static java.util.Arrays.asList;
+
+/**
+ * Reads the QR codes in an image, fast for the clean renders of {@link QRCodeCodec}, and harder for
+ * scans and photos of them, or for several codes in one image.
+ *
+ * <p>The image is first cut along blank rows and columns, as between the codes of a split payload,
+ * and each tile is read as a pure barcode, in parallel, which skips looking for the finder
+ * patterns. If any tile fails, every QR code in the image is looked for trying harder with each
+ * binarizer, in parallel, and the codes found by either are taken. Readers are kept per thread, as
+ * they cannot be shared but can be reused.
+ */
+final class QRCodeScanner {
+
+  private static final Map<DecodeHintType, Object> PURE_HINTS = hints(DecodeHintType.PURE_BARCODE);
+
+  private static final Map<DecodeHintType, Object> TRY_HARDER_HINTS =
+      hints(DecodeHintType.TRY_HARDER);
+
+  /** Binarizers to try harder with: adaptive for uneven light, global for blur */
+  private static final List<Function<LuminanceSource, Binarizer>> FALLBACK_BINARIZERS =
+      asList(HybridBinarizer::new, GlobalHistogramBinarizer::new);
+
+  /** Darker pixels are dark modules of a clean render */
+  private static final int THRESHOLD = 128;
+
+  /** Beyond this, the image is not a grid of codes, but noise */
+  private static final int MAX_TILES = 256;
+
+  private static final ThreadLocal<QRCodeMultiReader> READERS =
+      ThreadLocal.withInitial(QRCodeMultiReader::new);
+
+  /** Do not instantiate */
+  private QRCodeScanner() {}
+
+  static List<Result> scan(BufferedImage image) throws DecoderException {
+    return scan(image, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * @param executor Executor to read the tiles, and to try harder, on
+   * @return The QR codes found, each once, in no particular order
+   */
+  static List<Result> scan(BufferedImage image, Executor executor) throws DecoderException {
+    LuminanceSource source = new BufferedImageLuminanceSource(image);
+    Map<String, Result> found = new LinkedHashMap<>();
+    List<Rectangle> tiles = tiles(source).tiles;
+    if (!tiles.isEmpty() && tiles.size() <= MAX_TILES) {
+      List<CompletableFuture<Result>> reads = new ArrayList<>(tiles.size());
+      for (Rectangle tile : tiles) {
+        reads.add(CompletableFuture.supplyAsync(() -> readTile(source, tile), executor));
+      }
+      for (CompletableFuture<Result> read : reads) {
+        Result result = read.join();
+        if (result != null) {
+          found.putIfAbsent(result.getText(), result);
+        }
+      }
+      if (found.size() == tiles.size()) {
+        return new ArrayList<>(found.values());
+      }
+    }
+
+    // try harder
+    List<CompletableFuture<Result[]>> attempts = new ArrayList<>(FALLBACK_BINARIZERS.size());
+    for (Function<LuminanceSource, Binarizer> binarizer : FALLBACK_BINARIZERS) {
+      attempts.add(
+          CompletableFuture.supplyAsync(() -> readMultiple(binarizer.apply(source)), executor));
+    }
+    for (CompletableFuture<Result[]> attempt : attempts) {
+      for (Result result : attempt.join()) {
+        found.putIfAbsent(result.getText(), result);
+      }
+    }
+    if (found.isEmpty()) {
+      throw new DecoderException("No QR code found");
+    }
+    return new ArrayList<>(found.values());
+  }
+
+  /**
+   * Reads every QR code on a page of several, printed or scanned, in parallel. Each tile is read as
+   * a pure barcode, or failing that, trying harder within a margin around it. Tiles of text, such
+   * as labels, fail both, and are otherwise ignored. If a tile that could hold a QR code fails, or
+   * the page cannot be cut, as a photo, the page is read trying harder as a whole, and in
+   * overlapping windows of a quarter of it, so more codes are found than at once.
+   *
+   * @param executor Executor to read the tiles and windows on
+   * @return The QR codes found, each once, in no particular order. None for a blank page.
+   */
+  static List<Result> scanPage(BufferedImage image, Executor executor) {
+    LuminanceSource source = new BufferedImageLuminanceSource(image);
+    Tiling tiling = tiles(source);
+    List<Rectangle> tiles = tiling.tiles;
+    boolean missed = tiles.size() > MAX_TILES;
+    if (missed) {
+      tiles = Collections.emptyList();
+    }
+    List<CompletableFuture<Result[]>> reads = new ArrayList<>(tiles.size());
+    for (Rectangle tile : tiles) {
+      reads.add(CompletableFuture.supplyAsync(() -> readTileHarder(source, tile), executor));
+    }
+    Map<String, Result> found = new LinkedHashMap<>();
+    for (int i = 0; i < reads.size(); ++i) {
+      Result[] results = reads.get(i).join();
+      missed |= results.length == 0 && mayHoldCode(tiles.get(i), tiling.moduleSize);
+      for (Result result : results) {
+        found.putIfAbsent(result.getText(), result);
+      }
+    }
+
+    if (missed) {
+      List<CompletableFuture<Result[]>> attempts = new ArrayList<>();
+      for (Function<LuminanceSource, Binarizer> binarizer : FALLBACK_BINARIZERS) {
+        attempts.add(
+            CompletableFuture.supplyAsync(() -> readMultiple(binarizer.apply(source)), executor));
+      }
+      for (Rectangle window : windows(source.getWidth(), source.getHeight())) {
+        attempts.add(
+            CompletableFuture.supplyAsync(
+                () -> readMultiple(new HybridBinarizer(crop(source, window))), executor));
+      }
+      for (CompletableFuture<Result[]> attempt : attempts) {
+        for (Result result : attempt.join()) {
+          found.putIfAbsent(result.getText(), result);
+        }
+      }
+    }
+    return new ArrayList<>(found.values());
+  }
+
+  private static Result read(Binarizer binarizer) throws ReaderException {
+    QRCodeMultiReader reader = READERS.get();
+    try {
+      return reader.decode(new BinaryBitmap(binarizer), PURE_HINTS);
+    } finally {
+      reader.reset();
+    }
+  }
+
+  /** @return The QR code filling the tile, or null if it holds none */
+  private static @Nullable Result readTile(LuminanceSource source, Rectangle tile) {
+    try {
+      return read(new HybridBinarizer(crop(source, tile)));
+    } catch (ReaderException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  /** @return The QR code filling the tile, or those found trying harder around it */
+  private static Result[] readTileHarder(LuminanceSource source, Rectangle tile) {
+    Result result = readTile(source, tile);
+    if (result != null) {
+      return new Result[] {result};
+    }
+    int margin = Math.max(tile.width, tile.height) / 4;
+    Rectangle around = new Rectangle(tile);
+    around.grow(margin, margin);
+    around = around.intersection(new Rectangle(source.getWidth(), source.getHeight()));
+    return readMultiple(new HybridBinarizer(crop(source, around)));
+  }
+
+  /**
+   * A QR code is at least 21 modules square, and a tile of one is about square, even scanned askew.
+   * Lines of text, and their glyphs, are not.
+   *
+   * @param moduleSize Side of a module, in pixels
+   */
+  private static boolean mayHoldCode(Rectangle tile, int moduleSize) {
+    int shorter = Math.min(tile.width, tile.height);
+    return shorter >= 21 * moduleSize && Math.max(tile.width, tile.height) <= 2 * shorter;
+  }
+
+  /** @return Windows of half the width and height, at steps of a quarter */
+  private static List<Rectangle> windows(int width, int height) {
+    int windowWidth = (width + 1) / 2;
+    int windowHeight = (height + 1) / 2;
+    List<Rectangle> windows = new ArrayList<>(9);
+    for (int y = 0; y < 3; ++y) {
+      for (int x = 0; x < 3; ++x) {
+        windows.add(
+            new Rectangle(
+                Math.min(x * windowWidth / 2, width - windowWidth),
+                Math.min(y * windowHeight / 2, height - windowHeight),
+                windowWidth,
+                windowHeight));
+      }
+    }
+    return windows;
+  }
+
+  private static LuminanceSource crop(LuminanceSource source, Rectangle area) {
+    return source.crop(area.x, area.y, area.width, area.height);
+  }
+
+  /**
+   * Cuts the image along blank columns, then each band along blank rows, and so on, until no tile
+   * can be cut either way, so that codes laid out in rows of any widths each end up in a tile of
+   * their own. Blank lines of a single module occur within QR codes, so only wider ones cut. The
+   * module is measured on the first finder pattern, whose top row is 7 modules wide.
+   *
+   * @return The tiles holding dark pixels, trimmed to them, and the module they were cut by
+   */
+  static Tiling tiles(LuminanceSource source) {
+    int width = source.getWidth();
+    int height = source.getHeight();
+    byte[] luminance = source.getMatrix();
+    int moduleSize = 0;
+    for (int i = 0; i < luminance.length && moduleSize == 0; ++i) {
+      if (isDark(luminance[i])) {
+        int end = i + 1;
+        while (end % width != 0 && isDark(luminance[end])) {
+          ++end;
+        }
+        moduleSize = Math.max(1, (end - i) / 7);
+      }
+    }
+    List<Rectangle> tiles = new ArrayList<>();
+    cut(luminance, width, new Rectangle(0, 0, width, height), 2 * moduleSize, true, true, tiles);
+    return new Tiling(tiles, Math.max(1, moduleSize));
+  }
+
+  /**
+   * @param gap Blank lines that cut
+   * @param alongColumns Whether to cut along blank columns, or else along blank rows
+   * @param cutBefore Whether the area was cut the other way, so it may be cut again
+   */
+  private static void cut(
+      byte[] luminance,
+      int width,
+      Rectangle area,
+      int gap,
+      boolean alongColumns,
+      boolean cutBefore,
+      List<Rectangle> tiles) {
+    boolean[] dark = new boolean[alongColumns ? area.width : area.height];
+    for (int i = 0; i < dark.length; ++i) {
+      for (int j = 0; j < (alongColumns ? area.height : area.width) && !dark[i]; ++j) {
+        int x = area.x + (alongColumns ? i : j);
+        int y = area.y + (alongColumns ? j : i);
+        dark[i] = isDark(luminance[y * width + x]);
+      }
+    }
+    List<int[]> runs = darkRuns(dark, gap);
+    for (int[] run : runs) {
+      if (tiles.size() > MAX_TILES) {
+        return;
+      }
+      Rectangle part =
+          alongColumns
+              ? new Rectangle(area.x + run[0], area.y, run[1] - run[0], area.height)
+              : new Rectangle(area.x, area.y + run[0], area.width, run[1] - run[0]);
+      if (runs.size() == 1 && !cutBefore) {
+        tiles.add(part);
+      } else {
+        cut(luminance, width, part, gap, !alongColumns, runs.size() > 1, tiles);
+      }
+    }
+  }
+
+  /** @return The runs of lines, from first to last dark one, separated by at least a gap */
+  private static List<int[]> darkRuns(boolean[] dark, int gap) {
+    List<int[]> runs = new ArrayList<>();
+    int start = -1;
+    int end = -1;
+    for (int i = 0; i < dark.length; ++i) {
+      if (!dark[i]) {
+        continue;
+      }
+      if (start == -1) {
+        start = i;
+      } else if (i - end >= gap) {
+        runs.add(new int[] {start, end});
+        start = i;
+      }
+      end = i + 1;
+    }
+    if (start != -1) {
+      runs.add(new int[] {start, end});
+    }
+    return runs;
+  }
+
+  private static boolean isDark(byte luminance) {
+    return (luminance & 0xff) < THRESHOLD;
+  }
+
+  /** @return The QR codes found, none if there are none */
+  private static Result[] readMultiple(Binarizer binarizer) {
+    QRCodeMultiReader reader = READERS.get();
+    try {
+      return reader.decodeMultiple(new BinaryBitmap(binarizer), TRY_HARDER_HINTS);
+    } catch (NotFoundException | RuntimeException e) {
+      // a failure of one attempt, another may still succeed
+      return new Result[0];
+    } finally {
+      reader.reset();
+    }
+  }
+
+  private static Map<DecodeHintType, Object> hints(DecodeHintType mode) {
+    Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+    hints.put(DecodeHintType.CHARACTER_SET, BinaryToQRCodeStringCodec.CHARSET);
+    hints.put(mode, Boolean.TRUE);
+    return Collections.unmodifiableMap(hints);
+  }
+
+  static final class Tiling {
+    final List<Rectangle> tiles;
+
+    /** Side of a module, in pixels, as measured on the first finder pattern */
+    final int moduleSize;
+
+    private Tiling(List<Rectangle> tiles, int moduleSize) {
+      this.tiles = tiles;
+      this.moduleSize = moduleSize;
+    }
+  }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.codec;
+
+import com.google.zxing.common.BitMatrix;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A printable page of QR codes, each with a short label under it, laid out in rows. It is written
+ * as a 1-bit PNG of the size of the paper at the given resolution, and, like {@link
+ * QRCodePNGWriter}, is only ever held as modules and labels, never as pixels: rows of pixels are
+ * drawn and deflated one at a time.
+ *
+ * <p>The codes and their labels are kept apart by the quiet zone, so that {@link QRCodeScanner}
+ * reads each as a tile of its own. Not thread-safe, but a full sheet may be written on another
+ * thread while the next is filled.
+ */
+public final class QRCodeSheet {
+
+  public static final int DEFAULT_DPI = 300;
+
+  /** Half a millimeter, which phone cameras and office scanners read at ease */
+  public static final double DEFAULT_MODULE_MILLIMETERS = 0.5;
+
+  private static final double MARGIN_MILLIMETERS = 10;
+
+  private static final double MILLIMETERS_PER_INCH = 25.4;
+
+  /** Modules around codes and labels, {@value QRCodePNGWriter#DEFAULT_QUIET_ZONE} as required */
+  private static final int QUIET_ZONE = QRCodePNGWriter.DEFAULT_QUIET_ZONE;
+
+  private final int width;
+
+  private final int height;
+
+  private final int margin;
+
+  private final int moduleSize;
+
+  private final int dpi;
+
+  private final List<Row> rows = new ArrayList<>();
+
+  private int left;
+
+  /**
+   * @param dpi Resolution of the page, in pixels per inch
+   * @param moduleMillimeters Side of a module, rounded to whole pixels at the resolution
+   */
+  public QRCodeSheet(PaperSize paperSize, int dpi, double moduleMillimeters) {
+    if (dpi < 1) {
+      throw new IllegalArgumentException("Resolution must be positive: " + dpi);
+    }
+    if (!(moduleMillimeters > 0)) {
+      throw new IllegalArgumentException("Module size must be positive: " + moduleMillimeters);
+    }
+    this.width = pixels(paperSize.widthMillimeters, dpi);
+    this.height = pixels(paperSize.heightMillimeters, dpi);
+    this.margin = pixels(MARGIN_MILLIMETERS, dpi);
+    this.moduleSize = Math.max(1, pixels(moduleMillimeters, dpi));
+    this.dpi = dpi;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  /** @return Side of a module, in pixels */
+  public int getModuleSize() {
+    return moduleSize;
+  }
+
+  public boolean isEmpty() {
+    return rows.isEmpty();
+  }
+
+  /**
+   * Places the QR code after the last one, or at the start of a new row if the row is full
+   *
+   * @param symbol Modules of the QR code, without a quiet zone
+   * @param label Text under the code, of hexadecimal digits, spaces, slashes and dashes
+   * @return Whether the code was placed, or the sheet is full
+   * @throws IllegalArgumentException If the code is larger than the page
+   */
+  public boolean add(BitMatrix symbol, String label) {
+    LabelFont.checkDrawable(label);
+    Cell cell = new Cell(symbol, label);
+    int cellWidth = cell.width() * moduleSize;
+    int cellHeight = cell.height() * moduleSize;
+    if (cellWidth > width - 2 * margin || cellHeight > height - 2 * margin) {
+      throw new IllegalArgumentException(
+          "A QR code and its label of "
+              + cellWidth
+              + "x"
+              + cellHeight
+              + " pixels do not fit a page of "
+              + width
+              + "x"
+              + height);
+    }
+    Row row = rows.isEmpty() ? null : rows.get(rows.size() - 1);
+    if (row == null || left + cellWidth > width - margin) {
+      int top = row == null ? margin : row.top + row.height;
+      if (top + cellHeight > height - margin) {
+        return false;
+      }
+      row = new Row(top);
+      rows.add(row);
+      left = margin;
+    } else if (row.top + cellHeight > height - margin) {
+      return false;
+    }
+    cell.left = left;
+    row.cells.add(cell);
+    row.height = Math.max(row.height, cellHeight);
+    left += cellWidth;
+    return true;
+  }
+
+  /** Writes the page as a PNG that records its resolution, so it prints at the size of the paper */
+  public void write(OutputStream output) throws IOException {
+    QRCodePNGWriter.writeImage(output, width, height, dpi, this::paint);
+  }
+
+  private void paint(int y, byte[] pixels) {
+    for (Row row : rows) {
+      if (y < row.top || y >= row.top + row.height) {
+        continue;
+      }
+      int moduleY = (y - row.top) / moduleSize;
+      for (Cell cell : row.cells) {
+        cell.paint(moduleY, pixels);
+      }
+    }
+  }
+
+  private static int pixels(double millimeters, int dpi) {
+    return (int) Math.round(millimeters * dpi / MILLIMETERS_PER_INCH);
+  }
+
+  public enum PaperSize {
+    A4(210, 297),
+    LETTER(215.9, 279.4);
+
+    private final double widthMillimeters;
+
+    private final double heightMillimeters;
+
+    PaperSize(double widthMillimeters, double heightMillimeters) {
+      this.widthMillimeters = widthMillimeters;
+      this.heightMillimeters = heightMillimeters;
+    }
+  }
+
+  private static final class Row {
+    private final int top;
+
+    private final List<Cell> cells = new ArrayList<>();
+
+    private int height;
+
+    private Row(int top) {
+      this.top = top;
+    }
+  }
+
+  /** A QR code with its quiet zone, and its label under it, measured in modules */
+  private final class Cell {
+    private final BitMatrix symbol;
+
+    private final String label;
+
+    /** In pixels */
+    private int left;
+
+    private Cell(BitMatrix symbol, String label) {
+      this.symbol = symbol;
+      this.label = label;
+    }
+
+    private int width() {
+      return QUIET_ZONE + Math.max(symbol.getWidth(), LabelFont.width(label)) + QUIET_ZONE;
+    }
+
+    private int height() {
+      return QUIET_ZONE
+          + symbol.getHeight()
+          + QUIET_ZONE
+          + (label.isEmpty() ? 0 : LabelFont.GLYPH_HEIGHT + QUIET_ZONE);
+    }
+
+    private void paint(int moduleY, byte[] pixels) {
+      int symbolY = moduleY - QUIET_ZONE;
+      if (symbolY >= 0 && symbolY < symbol.getHeight()) {
+        for (int x = 0; x < symbol.getWidth(); ++x) {
+          if (symbol.get(x, symbolY)) {
+            paintModule(x, pixels);
+          }
+        }
+        return;
+      }
+      int labelY = symbolY - symbol.getHeight() - QUIET_ZONE;
+      if (labelY >= 0 && labelY < LabelFont.GLYPH_HEIGHT) {
+        for (int x = 0; x < LabelFont.width(label); ++x) {
+          if (LabelFont.isDark(label, x, labelY)) {
+            paintModule(x, pixels);
+          }
+        }
+      }
+    }
+
+    private void paintModule(int x, byte[] pixels) {
+      int start = left + (QUIET_ZONE + x) * moduleSize;
+      QRCodePNGWriter.paintDark(pixels, start, start + moduleSize);
+    }
+  }
+}
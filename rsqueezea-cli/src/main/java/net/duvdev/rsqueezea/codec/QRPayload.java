@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.codec;
+
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.google.zxing.qrcode.decoder.Mode;
+import com.google.zxing.qrcode.decoder.Version;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The text held by a QR code, for a payload of bytes. The bytes are either stored as they are, in
+ * the byte mode, or in Base45 in the alphanumeric mode, whichever makes the smaller QR code.
+ *
+ * <p>The mode is told from the text. Base45 only uses the alphanumeric alphabet, and QR codes
+ * written before these modes hold Base64. Bytes are stored as they are only if they could not be
+ * read as either, and in Base45 otherwise.
+ */
+final class QRPayload {
+
+  static final int MAX_VERSION = 40;
+
+  /** Do not instantiate */
+  private QRPayload() {}
+
+  /** @return The text to store in the QR code, read as ISO-8859-1 */
+  static String encode(byte[] data, ErrorCorrectionLevel level) {
+    String raw = new String(data, StandardCharsets.ISO_8859_1);
+    if (Base45Codec.isAlphabet(raw) || isBase64(raw)) {
+      return new Base45Codec().encode(data);
+    }
+    int base45Bits = alphanumericBits(Base45Codec.encodedLength(data.length));
+    // the byte mode wins ties, as it needs no conversion
+    if (version(Mode.ALPHANUMERIC, base45Bits, level)
+        < version(Mode.BYTE, data.length * 8, level)) {
+      return new Base45Codec().encode(data);
+    }
+    return raw;
+  }
+
+  static byte[] decode(String text) throws DecoderException {
+    if (Base45Codec.isAlphabet(text)) {
+      try {
+        return new Base45Codec().decode(text);
+      } catch (DecoderException e) {
+        // Base64 of digits and capital letters only, by chance
+        if (!isBase64(text)) {
+          throw e;
+        }
+      }
+    }
+    if (isBase64(text)) {
+      return new BinaryToQRCodeStringCodec().decode(text);
+    }
+    return text.getBytes(StandardCharsets.ISO_8859_1);
+  }
+
+  /**
+   * @return The smallest version holding the text made by {@link #encode}, or {@link
+   *     Integer#MAX_VALUE} if none does
+   */
+  static int version(String text, ErrorCorrectionLevel level) {
+    if (Base45Codec.isAlphabet(text)) {
+      return version(Mode.ALPHANUMERIC, alphanumericBits(text.length()), level);
+    }
+    return version(Mode.BYTE, text.length() * 8, level);
+  }
+
+  /**
+   * @param dataBits Length of the data in the mode, without its header
+   * @return The smallest version holding the data, or {@link Integer#MAX_VALUE} if none does
+   */
+  static int version(Mode mode, int dataBits, ErrorCorrectionLevel level) {
+    for (int number = 1; number <= MAX_VERSION; ++number) {
+      Version version = Version.getVersionForNumber(number);
+      int bits = 4 + mode.getCharacterCountBits(version) + dataBits;
+      if ((bits + 7) / 8 <= dataCodewords(version, level)) {
+        return number;
+      }
+    }
+    return Integer.MAX_VALUE;
+  }
+
+  /** @return The most bytes a QR code of the version holds in the byte mode */
+  static int byteCapacity(int number, ErrorCorrectionLevel level) {
+    Version version = Version.getVersionForNumber(number);
+    int bits = dataCodewords(version, level) * 8 - 4 - Mode.BYTE.getCharacterCountBits(version);
+    return bits / 8;
+  }
+
+  /** Pairs of characters take 11 bits, and a last odd one 6 */
+  private static int alphanumericBits(int length) {
+    return length / 2 * 11 + length % 2 * 6;
+  }
+
+  private static int dataCodewords(Version version, ErrorCorrectionLevel level) {
+    return version.getTotalCodewords() - version.getECBlocksForLevel(level).getTotalECCodewords();
+  }
+
+  /** Padded Base64, as written by {@link BinaryToQRCodeStringCodec} */
+  private static boolean isBase64(String text) {
+    int length = text.length();
+    if (length % 4 != 0) {
+      return false;
+    }
+    int padding = 0;
+    while (padding < 2 && padding < length && text.charAt(length - 1 - padding) == '=') {
+      ++padding;
+    }
+    for (int i = 0; i < length - padding; ++i) {
+      char c = text.charAt(i);
+      if (!(c >= 'A' && c <= 'Z'
+          || c >= 'a' && c <= 'z'
+          || c >= '0' && c <= '9'
+          || c == '+'
+          || c == '/')) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
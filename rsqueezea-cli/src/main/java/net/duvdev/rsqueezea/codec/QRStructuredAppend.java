@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.codec;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Splits a payload too large for one QR code across up to 16 of them, and joins them back in any
+ * order, after the structured append of ISO/IEC 18004.
+ *
+ * <p>Each part starts with a header of its own, as the encoder cannot write that of the standard: a
+ * marker byte, the index of the part and the number of parts in a byte, as the standard does, and
+ * the CRC-32 of the whole payload in place of its parity byte. The CRC tells the parts of one
+ * payload from those of another, and verifies the joined payload.
+ *
+ * <p>A payload that fits one QR code is stored as it is, unless it starts with the marker, in which
+ * case it is stored as a single part.
+ */
+final class QRStructuredAppend {
+
+  /** ASCII group separator. It is in neither the Base45 nor the Base64 alphabet. */
+  static final byte MARKER = 0x1d;
+
+  static final int HEADER_LENGTH = 6;
+
+  /** As the index and the number of parts take 4 bits each */
+  static final int MAX_PARTS = 16;
+
+  /** Do not instantiate */
+  private QRStructuredAppend() {}
+
+  /** @return Whether the payload must be stored as parts, even if it fits one QR code */
+  static boolean startsWithMarker(byte[] payload) {
+    return payload.length > 0 && payload[0] == MARKER;
+  }
+
+  /**
+   * @param capacity Bytes a QR code holds, header included
+   * @return The payloads of the QR codes, parts of equal length but for the last
+   */
+  static List<byte[]> split(byte[] data, int capacity) throws EncoderException {
+    int partLength = capacity - HEADER_LENGTH;
+    int count =
+        partLength < 1
+            ? Integer.MAX_VALUE
+            : Math.max(1, (data.length + partLength - 1) / partLength);
+    if (count > MAX_PARTS) {
+      throw new EncoderException(
+          data.length
+              + " bytes take more than "
+              + MAX_PARTS
+              + " QR codes of "
+              + capacity
+              + " bytes");
+    }
+    // even out the parts, so that they all take the same version
+    partLength = (data.length + count - 1) / count;
+    int crc = crc32(data);
+    List<byte[]> parts = new ArrayList<>(count);
+    for (int index = 0; index < count; ++index) {
+      int offset = index * partLength;
+      int length = Math.min(partLength, data.length - offset);
+      ByteBuffer part = ByteBuffer.allocate(HEADER_LENGTH + length);
+      part.put(MARKER).put((byte) (index << 4 | count - 1)).putInt(crc);
+      part.put(data, offset, length);
+      parts.add(part.array());
+    }
+    return parts;
+  }
+
+  static boolean isPart(byte[] payload) {
+    return payload.length >= HEADER_LENGTH && payload[0] == MARKER;
+  }
+
+  static int index(byte[] part) {
+    return (part[1] & 0xff) >>> 4;
+  }
+
+  static int count(byte[] part) {
+    return (part[1] & 0x0f) + 1;
+  }
+
+  /** @return The CRC-32 of the whole payload, the same in all its parts */
+  static int crc(byte[] part) {
+    return ByteBuffer.wrap(part).getInt(2);
+  }
+
+  /**
+   * @param payloads Payloads of the QR codes read, in any order. The same QR code may be read more
+   *     than once.
+   * @return The payload they make up
+   */
+  static byte[] join(Collection<byte[]> payloads) throws DecoderException {
+    List<byte[]> distinct = new ArrayList<>(payloads.size());
+    for (byte[] payload : payloads) {
+      if (distinct.stream().noneMatch(other -> Arrays.equals(payload, other))) {
+        distinct.add(payload);
+      }
+    }
+    if (distinct.isEmpty()) {
+      throw new DecoderException("No QR code found");
+    }
+    byte[] first = distinct.get(0);
+    if (!isPart(first)) {
+      if (distinct.size() > 1) {
+        throw new DecoderException(distinct.size() + " QR codes that are not parts of one payload");
+      }
+      return first;
+    }
+
+    int count = count(first);
+    byte[][] parts = new byte[count][];
+    int length = 0;
+    for (byte[] part : distinct) {
+      if (!isPart(part) || count(part) != count || crc(part) != crc(first)) {
+        throw new DecoderException("QR codes of different payloads");
+      }
+      int index = index(part);
+      if (index >= count) {
+        throw new DecoderException("Invalid part " + (index + 1) + " of " + count);
+      }
+      if (parts[index] != null) {
+        throw new DecoderException("Conflicting QR codes for part " + (index + 1) + " of " + count);
+      }
+      parts[index] = part;
+      length += part.length - HEADER_LENGTH;
+    }
+    byte[] data = new byte[length];
+    int offset = 0;
+    for (int index = 0; index < count; ++index) {
+      if (parts[index] == null) {
+        throw new DecoderException("Missing QR code for part " + (index + 1) + " of " + count);
+      }
+      int partLength = parts[index].length - HEADER_LENGTH;
+      System.arraycopy(parts[index], HEADER_LENGTH, data, offset, partLength);
+      offset += partLength;
+    }
+    if (crc32(data) != crc(first)) {
+      throw new DecoderException("CRC-32 mismatch, the QR codes do not make up the payload");
+    }
+    return data;
+  }
+
+  private static int crc32(byte[] data) {
+    CRC32 crc = new CRC32();
+    crc.update(data);
+    return (int) crc.getValue();
+  }
+}
@@ -0,0 +1,21 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/** The output of a codec stage, read in place by the next one */
+final class StageBuffer extends ByteArrayOutputStream {
+
+  StageBuffer(int size) {
+    super(size);
+  }
+
+  /** @return A view of the bytes written so far, valid until the next reset */
+  ByteBuffer toByteBuffer() {
+    return ByteBuffer.wrap(buf, 0, count);
+  }
+}
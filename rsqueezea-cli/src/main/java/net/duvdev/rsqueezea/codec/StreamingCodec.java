@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A codec of bytes that writes its encoding to a stream, and reads it back from one, so neither
+ * side has to be buffered whole before it is copied elsewhere. The byte array methods are
+ * implemented over the streaming ones.
+ *
+ * <p>Failures of the streams themselves are thrown as {@link IOException}, and invalid data as
+ * {@link EncoderException} or {@link DecoderException}.
+ */
+public interface StreamingCodec extends Codec<byte[], byte[]> {
+
+  /**
+   * Encodes the remaining bytes of the buffer to the stream, leaving the position of the buffer
+   * unchanged. The stream is flushed but not closed.
+   */
+  void encode(ByteBuffer decoded, OutputStream output) throws EncoderException, IOException;
+
+  /**
+   * Decodes from the stream, reading no more than the encoding needs where the format allows it.
+   * The stream is not closed.
+   */
+  ByteBuffer decode(InputStream input) throws DecoderException, IOException;
+
+  @Override
+  default byte[] encode(byte[] decoded) throws EncoderException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream(decoded.length * 2 + 64);
+    try {
+      encode(ByteBuffer.wrap(decoded), output);
+    } catch (IOException e) {
+      throw new EncoderException(e);
+    }
+    return output.toByteArray();
+  }
+
+  @Override
+  default byte[] decode(byte[] encoded) throws DecoderException {
+    ByteBuffer decoded;
+    try {
+      decoded = decode(new ByteArrayInputStream(encoded));
+    } catch (IOException e) {
+      throw new DecoderException(e.getMessage(), e);
+    }
+    return ByteBuffers.toByteArray(decoded);
+  }
+
+  /**
+   * @return The codec itself if it streams, or an adapter buffering the whole input of a byte array
+   *     codec
+   */
+  static StreamingCodec of(Codec<byte[], byte[]> codec) {
+    if (codec instanceof StreamingCodec) {
+      return (StreamingCodec) codec;
+    }
+    return new BufferingCodec(codec);
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.controller;
+
+import net.duvdev.rsqueezea.archive.ArchiveEntry;
+import net.duvdev.rsqueezea.archive.KeyArchive;
+import net.duvdev.rsqueezea.archive.KeyArchiveWriter;
+import net.duvdev.rsqueezea.codec.IdentityCodec;
+import net.duvdev.rsqueezea.loader.RSAPrivateKeyLoader;
+import net.duvdev.rsqueezea.model.ModulusFingerprint;
+import net.duvdev.rsqueezea.protocol.SqueezeType;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.RSAPrivateCrtKeySpec;
+import java.security.spec.RSAPrivateKeySpec;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public final class ArchiveController {
+
+  private final Path archivePath;
+
+  public ArchiveController(Path archivePath) {
+    this.archivePath = archivePath;
+  }
+
+  /**
+   * Squeezes and self-tests each key, then appends them all to the archive.
+   *
+   * @param keys Private keys, by the ID to store them under
+   */
+  public void append(
+      Map<String, RSAPrivateKeyLoader> keys, SqueezeType squeezeType, boolean integrityCheck)
+      throws IOException {
+    List<ArchiveEntry> entries = new ArrayList<>(keys.size());
+    for (Map.Entry<String, RSAPrivateKeyLoader> key : keys.entrySet()) {
+      RSAPrivateKeySpec privateKey = key.getValue().loadKeySpec();
+      ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+      new SqueezeController(
+              new LoadedKey(privateKey),
+              squeezeType,
+              new IdentityCodec(),
+              outputStream,
+              integrityCheck)
+          .run();
+      entries.add(
+          new ArchiveEntry(
+              key.getKey(),
+              ModulusFingerprint.of(privateKey.getModulus()),
+              ByteBuffer.wrap(outputStream.toByteArray())));
+    }
+    KeyArchiveWriter.append(archivePath, entries);
+  }
+
+  /** Prints the ID, fingerprint and squeezed size of every key, one per line */
+  public void list(PrintStream printStream) throws IOException {
+    for (ArchiveEntry entry : KeyArchive.open(archivePath).entries()) {
+      printStream.println(
+          entry.getKeyId()
+              + "\t"
+              + entry.getFingerprint()
+              + "\t"
+              + entry.getSqueezedKey().remaining());
+    }
+    printStream.flush();
+  }
+
+  /**
+   * Reassembles a key of the archive into a PKCS#1 PEM.
+   *
+   * @param key The key's ID, or the hex of its modulus fingerprint
+   * @param publicKey For keys squeezed without their public key
+   */
+  public void extract(String key, @Nullable RSAPublicKey publicKey, OutputStream outputStream)
+      throws IOException {
+    KeyArchive archive = KeyArchive.open(archivePath);
+    ArchiveEntry entry = archive.get(key);
+    if (entry == null && key.length() == 2 * ModulusFingerprint.LENGTH) {
+      entry = archive.get(parseFingerprint(key));
+    }
+    if (entry == null) {
+      throw new IOException("No such key in archive: " + key);
+    }
+    ByteBuffer squeezedKey = entry.getSqueezedKey();
+    byte[] data = new byte[squeezedKey.remaining()];
+    squeezedKey.get(data);
+    new ReassembleController(
+            publicKey, new ByteArrayInputStream(data), new IdentityCodec(), outputStream)
+        .run();
+  }
+
+  /** Drops replaced keys from the archive, and rebuilds its index */
+  public void compact() throws IOException {
+    KeyArchiveWriter.compact(archivePath);
+  }
+
+  private static ModulusFingerprint parseFingerprint(String hex) throws IOException {
+    byte[] digest = new byte[ModulusFingerprint.LENGTH];
+    for (int i = 0; i < digest.length; ++i) {
+      int high = Character.digit(hex.charAt(2 * i), 16);
+      int low = Character.digit(hex.charAt(2 * i + 1), 16);
+      if (high < 0 || low < 0) {
+        throw new IOException("No such key in archive: " + hex);
+      }
+      digest[i] = (byte) (high << 4 | low);
+    }
+    return ModulusFingerprint.fromBytes(digest);
+  }
+
+  /** A key that was already loaded, to squeeze without loading it again */
+  private static final class LoadedKey implements RSAPrivateKeyLoader {
+
+    private final RSAPrivateKeySpec privateKey;
+
+    private LoadedKey(RSAPrivateKeySpec privateKey) {
+      this.privateKey = privateKey;
+    }
+
+    @Override
+    public RSAPrivateCrtKeySpec load() throws IOException {
+      if (!(privateKey instanceof RSAPrivateCrtKeySpec)) {
+        throw new IOException("Not a two-prime RSA key");
+      }
+      return (RSAPrivateCrtKeySpec) privateKey;
+    }
+
+    @Override
+    public RSAPrivateKeySpec loadKeySpec() {
+      return privateKey;
+    }
+  }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.controller;
+
+import net.duvdev.rsqueezea.codec.Codec;
+import net.duvdev.rsqueezea.codec.DecoderException;
+import net.duvdev.rsqueezea.codec.QRCodeCodec;
+import net.duvdev.rsqueezea.codec.QRCodePageReader;
+import net.duvdev.rsqueezea.codec.StreamingCodec;
+import net.duvdev.rsqueezea.loader.PKCS1PrivateKeyLoader;
+import net.duvdev.rsqueezea.model.ModulusFingerprint;
+import net.duvdev.rsqueezea.protocol.DecodingLimits;
+
+import javax.imageio.ImageIO;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Reassembles every key on pages of QR codes, such as a binder of printed backups, in one pass.
+ * Each key is written to the output directory as a PKCS#1 PEM, named by the fingerprint of its
+ * modulus.
+ *
+ * <p>The pages are read one after the other, and the keys of each page are reassembled in parallel
+ * while the next page is read, so only a page is held in memory at a time. A key that fails does
+ * not stop the others: it is reported, and the run fails once all pages are read.
+ */
+public final class BatchReassembleController {
+
+  private final StreamingCodec codec;
+
+  private final Path outputDirectory;
+
+  private final PrintStream report;
+
+  private final DecodingLimits limits;
+
+  private final Executor executor;
+
+  /** Fingerprints of the keys written, to write each once */
+  private final Set<ModulusFingerprint> written = Collections.synchronizedSet(new HashSet<>());
+
+  private int failures;
+
+  public BatchReassembleController(
+      Codec<byte[], byte[]> codec, Path outputDirectory, PrintStream report) {
+    this(codec, outputDirectory, report, DecodingLimits.DEFAULT, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * @param codec Format of the squeezed keys, whose last stage is {@link QRCodeCodec}
+   * @param report Where to print a line for every key, page or QR code that fails, and for every
+   *     key written, with its fingerprint and page
+   * @param limits Bounds on each page, and on each key
+   * @param executor Executor to read the QR codes, and to reassemble the keys, on
+   */
+  public BatchReassembleController(
+      Codec<byte[], byte[]> codec,
+      Path outputDirectory,
+      PrintStream report,
+      DecodingLimits limits,
+      Executor executor) {
+    this.codec = new QRCodeFormat(codec).payloadCodec;
+    this.outputDirectory = outputDirectory;
+    this.report = report;
+    this.limits = limits;
+    this.executor = executor;
+  }
+
+  /**
+   * @param pages Page images, or directories of them, which are read in the order of their names
+   * @throws IOException If any page or key failed, after reading all of them
+   */
+  public void run(List<Path> pages) throws IOException {
+    Files.createDirectories(outputDirectory);
+    QRCodePageReader reader = new QRCodePageReader(executor, limits.getMaxImagePixels());
+    int errors = 0;
+    List<CompletableFuture<String>> previous = Collections.emptyList();
+    for (Path page : expand(pages)) {
+      List<ByteBuffer> payloads = Collections.emptyList();
+      String pageFailure = null;
+      try (InputStream input = Files.newInputStream(page)) {
+        payloads = reader.read(limits.limitInput(input));
+      } catch (IOException | DecoderException e) {
+        pageFailure = e.getMessage();
+      }
+      List<CompletableFuture<String>> current = new ArrayList<>(payloads.size());
+      for (ByteBuffer payload : payloads) {
+        current.add(CompletableFuture.supplyAsync(() -> reassemble(page, payload), executor));
+      }
+      reportAll(previous);
+      previous = current;
+
+      if (pageFailure != null) {
+        fail(page, pageFailure);
+      }
+      List<String> pageErrors = reader.getErrors();
+      for (String error : pageErrors.subList(errors, pageErrors.size())) {
+        fail(page, error);
+      }
+      errors = pageErrors.size();
+    }
+    reportAll(previous);
+    for (String incomplete : reader.getIncomplete()) {
+      report.println("FAILED\t-\t" + incomplete);
+      ++failures;
+    }
+    report.flush();
+    if (failures > 0) {
+      throw new IOException(failures + " keys, pages or QR codes failed");
+    }
+  }
+
+  /** @return The line to report for the key, once written */
+  private String reassemble(Path page, ByteBuffer payload) {
+    try {
+      ByteArrayOutputStream pem = new ByteArrayOutputStream();
+      byte[] data = new byte[payload.remaining()];
+      payload.duplicate().get(data);
+      new ReassembleController(null, new ByteArrayInputStream(data), codec, pem, limits).run();
+      ModulusFingerprint fingerprint =
+          ModulusFingerprint.of(
+              new PKCS1PrivateKeyLoader(new ByteArrayInputStream(pem.toByteArray()))
+                  .loadKeySpec()
+                  .getModulus());
+      if (written.add(fingerprint)) {
+        Files.write(outputDirectory.resolve(fingerprint + ".pem"), pem.toByteArray());
+      }
+      return fingerprint + "\t" + page.getFileName();
+    } catch (IOException | RuntimeException e) {
+      throw new CompletionException(page.getFileName() + "\t" + e.getMessage(), e);
+    }
+  }
+
+  private void reportAll(List<CompletableFuture<String>> keys) {
+    for (CompletableFuture<String> key : keys) {
+      try {
+        report.println(key.join());
+      } catch (CompletionException e) {
+        ++failures;
+        report.println("FAILED\t" + e.getMessage());
+      }
+    }
+    report.flush();
+  }
+
+  private void fail(Path page, String message) {
+    ++failures;
+    report.println("FAILED\t" + page.getFileName() + "\t" + message);
+  }
+
+  /** @return The files, and the images of the directories, sorted by name */
+  private static List<Path> expand(List<Path> pages) throws IOException {
+    Set<String> suffixes = new HashSet<>(Arrays.asList(ImageIO.getReaderFileSuffixes()));
+    return expand(pages, file -> suffixes.contains(suffix(file)));
+  }
+
+  /** @return The files, and the files of the directories that are accepted, sorted by name */
+  static List<Path> expand(List<Path> inputs, Predicate<Path> accept) throws IOException {
+    List<Path> files = new ArrayList<>();
+    for (Path input : inputs) {
+      if (!Files.isDirectory(input)) {
+        files.add(input);
+        continue;
+      }
+      try (Stream<Path> entries = Files.list(input)) {
+        files.addAll(
+            entries
+                .filter(Files::isRegularFile)
+                .filter(accept)
+                .sorted()
+                .collect(Collectors.toList()));
+      }
+    }
+    return files;
+  }
+
+  private static String suffix(Path file) {
+    String name = file.getFileName().toString();
+    return name.substring(name.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+  }
+}
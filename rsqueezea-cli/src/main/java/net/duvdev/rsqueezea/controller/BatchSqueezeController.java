@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.controller;
+
+import com.google.zxing.common.BitMatrix;
+import net.duvdev.rsqueezea.codec.Codec;
+import net.duvdev.rsqueezea.codec.EncoderException;
+import net.duvdev.rsqueezea.codec.QRCodeCodec;
+import net.duvdev.rsqueezea.codec.QRCodeSheet;
+import net.duvdev.rsqueezea.loader.PKCS1PrivateKeyLoader;
+import net.duvdev.rsqueezea.model.ModulusFingerprint;
+import net.duvdev.rsqueezea.protocol.SqueezeType;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * Squeezes many keys to pages of QR codes, ready to print. Each code is labelled with the start of
+ * the fingerprint of the modulus of its key, and, for a key split across several codes, with the
+ * part it is. The pages are written to the output directory as page-0001.png and on, and are read
+ * back by {@link BatchReassembleController}.
+ *
+ * <p>Keys are squeezed and encoded in parallel, a bounded number ahead of the page being laid out,
+ * and each full page is written while the next is laid out. So neither the keys nor the pages are
+ * ever all held in memory, however many there are. Keys are laid out in the order given, and a key
+ * that fails does not stop the others: it is reported, and the run fails once all keys are done.
+ */
+public final class BatchSqueezeController {
+
+  /** Hexadecimal digits of the fingerprint in a label, as many as a short Git commit ID */
+  public static final int LABEL_LENGTH = 8;
+
+  /** Keys squeezed ahead of the page, to keep the executor busy while pages are written */
+  private static final int KEYS_AHEAD = 64;
+
+  private final SqueezeType squeezeType;
+
+  private final QRCodeFormat format;
+
+  private final boolean integrityCheck;
+
+  private final Supplier<QRCodeSheet> sheets;
+
+  private final Path outputDirectory;
+
+  private final PrintStream report;
+
+  private final Executor executor;
+
+  private int failures;
+
+  private int pages;
+
+  private CompletableFuture<Void> pageWritten = CompletableFuture.completedFuture(null);
+
+  public BatchSqueezeController(
+      SqueezeType squeezeType,
+      Codec<byte[], byte[]> codec,
+      boolean integrityCheck,
+      Supplier<QRCodeSheet> sheets,
+      Path outputDirectory,
+      PrintStream report) {
+    this(
+        squeezeType,
+        codec,
+        integrityCheck,
+        sheets,
+        outputDirectory,
+        report,
+        ForkJoinPool.commonPool());
+  }
+
+  /**
+   * @param codec Format of the squeezed keys, whose last stage is {@link QRCodeCodec}
+   * @param integrityCheck Whether to add an integrity check to the squeezed keys
+   * @param sheets New empty pages, of the paper size and resolution to print at
+   * @param report Where to print a line for every key written, with its fingerprint, file and
+   *     pages, and for every key that fails
+   * @param executor Executor to squeeze the keys, and to write the pages, on
+   */
+  public BatchSqueezeController(
+      SqueezeType squeezeType,
+      Codec<byte[], byte[]> codec,
+      boolean integrityCheck,
+      Supplier<QRCodeSheet> sheets,
+      Path outputDirectory,
+      PrintStream report,
+      Executor executor) {
+    this.squeezeType = squeezeType;
+    this.format = new QRCodeFormat(codec);
+    this.integrityCheck = integrityCheck;
+    this.sheets = sheets;
+    this.outputDirectory = outputDirectory;
+    this.report = report;
+    this.executor = executor;
+  }
+
+  /**
+   * @param keys PKCS#1 PEM private key files, or directories of them, which are read in the order
+   *     of their names
+   * @throws IOException If a page could not be written, or if any key failed, after all the others
+   */
+  public void run(List<Path> keys) throws IOException {
+    Files.createDirectories(outputDirectory);
+    Deque<CompletableFuture<Squeezed>> ahead = new ArrayDeque<>();
+    QRCodeSheet sheet = sheets.get();
+    for (Path key : BatchReassembleController.expand(keys, file -> true)) {
+      ahead.add(CompletableFuture.supplyAsync(() -> squeeze(key), executor));
+      if (ahead.size() > KEYS_AHEAD) {
+        sheet = place(ahead.remove(), sheet);
+      }
+    }
+    while (!ahead.isEmpty()) {
+      sheet = place(ahead.remove(), sheet);
+    }
+    if (!sheet.isEmpty()) {
+      writePage(sheet);
+    }
+    awaitPage();
+    report.flush();
+    if (failures > 0) {
+      throw new IOException(failures + " keys failed");
+    }
+  }
+
+  private Squeezed squeeze(Path file) {
+    try {
+      byte[] pem = Files.readAllBytes(file);
+      ModulusFingerprint fingerprint =
+          ModulusFingerprint.of(
+              new PKCS1PrivateKeyLoader(new ByteArrayInputStream(pem)).loadKeySpec().getModulus());
+      ByteArrayOutputStream squeezed = new ByteArrayOutputStream();
+      new SqueezeController(
+              new PKCS1PrivateKeyLoader(new ByteArrayInputStream(pem)),
+              squeezeType,
+              format.payloadCodec,
+              squeezed,
+              integrityCheck)
+          .run();
+      return new Squeezed(file, fingerprint, format.qrCode.encodeSymbols(squeezed.toByteArray()));
+    } catch (IOException | EncoderException | RuntimeException e) {
+      throw new CompletionException(file.getFileName() + "\t" + e.getMessage(), e);
+    }
+  }
+
+  /** @return The sheet to place the next key on */
+  private QRCodeSheet place(CompletableFuture<Squeezed> future, QRCodeSheet sheet)
+      throws IOException {
+    Squeezed key;
+    try {
+      key = future.join();
+    } catch (CompletionException e) {
+      ++failures;
+      report.println("FAILED\t" + e.getMessage());
+      return sheet;
+    }
+    String id = key.fingerprint.toString().substring(0, LABEL_LENGTH);
+    int count = key.symbols.size();
+    // parts are placed in order, so the pages of a key follow one another
+    StringJoiner keyPages = new StringJoiner(",");
+    int lastPage = 0;
+    for (int part = 0; part < count; ++part) {
+      String label = count == 1 ? id : id + " " + (part + 1) + "/" + count;
+      BitMatrix symbol = key.symbols.get(part);
+      try {
+        if (!sheet.add(symbol, label)) {
+          writePage(sheet);
+          sheet = sheets.get();
+          sheet.add(symbol, label);
+        }
+      } catch (IllegalArgumentException e) {
+        ++failures;
+        report.println("FAILED\t" + key.file.getFileName() + "\t" + e.getMessage());
+        return sheet;
+      }
+      if (lastPage != pages + 1) {
+        lastPage = pages + 1;
+        keyPages.add(pageName(lastPage));
+      }
+    }
+    report.println(key.fingerprint + "\t" + key.file.getFileName() + "\t" + keyPages);
+    return sheet;
+  }
+
+  /** Writes the page on the executor, once the page before it is written */
+  private void writePage(QRCodeSheet sheet) throws IOException {
+    awaitPage();
+    Path page = outputDirectory.resolve(pageName(++pages));
+    pageWritten =
+        CompletableFuture.runAsync(
+            () -> {
+              try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(page))) {
+                sheet.write(output);
+              } catch (IOException e) {
+                throw new UncheckedIOException(e);
+              }
+            },
+            executor);
+  }
+
+  private void awaitPage() throws IOException {
+    try {
+      pageWritten.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof UncheckedIOException) {
+        throw ((UncheckedIOException) e.getCause()).getCause();
+      }
+      throw e;
+    }
+  }
+
+  private static String pageName(int page) {
+    return String.format("page-%04d.png", page);
+  }
+
+  private static final class Squeezed {
+    private final Path file;
+
+    private final ModulusFingerprint fingerprint;
+
+    private final List<BitMatrix> symbols;
+
+    private Squeezed(Path file, ModulusFingerprint fingerprint, List<BitMatrix> symbols) {
+      this.file = file;
+      this.fingerprint = fingerprint;
+      this.symbols = symbols;
+    }
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.controller;
+
+import net.duvdev.rsqueezea.codec.Codec;
+import net.duvdev.rsqueezea.codec.EncoderException;
+import net.duvdev.rsqueezea.codec.StreamingCodec;
+import net.duvdev.rsqueezea.keygen.SeededKeyGenerator;
+import net.duvdev.rsqueezea.model.SqueezedKey;
+import net.duvdev.rsqueezea.protocol.ProtocolFactory;
+import net.duvdev.rsqueezea.protocol.SqueezeType;
+import net.duvdev.rsqueezea.selftest.RSASelfTest;
+import net.duvdev.rsqueezea.selftest.RSASelfTestException;
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.SecureRandom;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.RSAPrivateCrtKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+
+/**
+ * Generates an RSA private key from a new seed, and squeezes it to that seed. The private key is
+ * the one reassembled from the squeezed seed, so the backup is known to work before the key is ever
+ * used.
+ */
+public final class GenerateController {
+
+  private final int modulusBits;
+
+  private final SecureRandom random;
+
+  private final StreamingCodec codec;
+
+  private final OutputStream privateKeyStream;
+
+  private final OutputStream squeezedStream;
+
+  private final boolean integrityCheck;
+
+  /**
+   * @param privateKeyStream Where to write the PKCS#1 PEM private key
+   * @param squeezedStream Where to write the squeezed seed
+   * @param integrityCheck Whether to add an integrity check to the squeezed seed
+   */
+  public GenerateController(
+      int modulusBits,
+      SecureRandom random,
+      Codec<byte[], byte[]> codec,
+      OutputStream privateKeyStream,
+      OutputStream squeezedStream,
+      boolean integrityCheck) {
+    this.modulusBits = modulusBits;
+    this.random = random;
+    this.codec = StreamingCodec.of(codec);
+    this.privateKeyStream = privateKeyStream;
+    this.squeezedStream = squeezedStream;
+    this.integrityCheck = integrityCheck;
+  }
+
+  public void run() throws IOException {
+    byte[] seed = SeededKeyGenerator.newSeed(random);
+    RSAPrivateCrtKeySpec privateKey = SeededKeyGenerator.generate(seed, modulusBits);
+    byte[] data =
+        ProtocolFactory.getLatest()
+            .encodeSqueezedKey(
+                SqueezedKey.fromSeed(seed, modulusBits), SqueezeType.SEED, integrityCheck);
+    SelfTestBuffer encoded = new SelfTestBuffer(data.length * 2 + 64);
+    try {
+      codec.encode(ByteBuffer.wrap(data), encoded);
+    } catch (EncoderException e) {
+      throw new IOException(e.getMessage(), e);
+    }
+
+    byte[] pem = selfTest(encoded, privateKey);
+
+    encoded.writeTo(squeezedStream);
+    squeezedStream.flush();
+    IOUtils.write(pem, privateKeyStream);
+    privateKeyStream.flush();
+  }
+
+  /** @return The PEM private key reassembled from the encoded seed */
+  private byte[] selfTest(SelfTestBuffer encoded, RSAPrivateCrtKeySpec privateKey)
+      throws IOException {
+    try {
+      RSAPublicKey publicKey =
+          (RSAPublicKey)
+              KeyFactory.getInstance("RSA")
+                  .generatePublic(
+                      new RSAPublicKeySpec(
+                          privateKey.getModulus(), privateKey.getPublicExponent()));
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      new ReassembleController(publicKey, encoded.toInputStream(), codec, output).run();
+      byte[] pem = output.toByteArray();
+      RSASelfTest.selfTest(pem, publicKey);
+      return pem;
+    } catch (IOException | GeneralSecurityException | RSASelfTestException e) {
+      throw new IOException("Self-test failed", e);
+    }
+  }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.controller;
+
+import net.duvdev.rsqueezea.codec.Codec;
+import net.duvdev.rsqueezea.codec.CodecChain;
+import net.duvdev.rsqueezea.codec.IdentityCodec;
+import net.duvdev.rsqueezea.codec.QRCodeCodec;
+import net.duvdev.rsqueezea.codec.StreamingCodec;
+
+import java.util.List;
+
+/** A format that ends in QR codes, as the stages before them and the QR codes themselves */
+final class QRCodeFormat {
+
+  /** Encodes the squeezed key to the payload of the QR codes, and back */
+  final StreamingCodec payloadCodec;
+
+  final QRCodeCodec qrCode;
+
+  /** @throws IllegalArgumentException If the last stage of the codec is not QR */
+  QRCodeFormat(Codec<byte[], byte[]> codec) {
+    if (codec instanceof QRCodeCodec) {
+      this.payloadCodec = new IdentityCodec();
+      this.qrCode = (QRCodeCodec) codec;
+      return;
+    }
+    if (codec instanceof CodecChain) {
+      List<StreamingCodec> stages = ((CodecChain) codec).getStages();
+      int last = stages.size() - 1;
+      if (stages.get(last) instanceof QRCodeCodec) {
+        this.payloadCodec = last == 1 ? stages.get(0) : new CodecChain(stages.subList(0, last));
+        this.qrCode = (QRCodeCodec) stages.get(last);
+        return;
+      }
+    }
+    throw new IllegalArgumentException("The format must end in QR, such as DER+CRC+QR");
+  }
+}
@@ -6,26 +6,28 @@ package net.duvdev.rsqueezea.controller;
 
 import net.duvdev.rsqueezea.KeyReassembler;
 import net.duvdev.rsqueezea.codec.Codec;
+import net.duvdev.rsqueezea.codec.CodecChain;
 import net.duvdev.rsqueezea.codec.DecoderException;
+import net.duvdev.rsqueezea.codec.QRCodeCodec;
+import net.duvdev.rsqueezea.codec.StreamingCodec;
+import net.duvdev.rsqueezea.der.DERWriter;
+import net.duvdev.rsqueezea.keygen.SeededKeyGenerator;
 import net.duvdev.rsqueezea.model.SqueezedKey;
-import net.duvdev.rsqueezea.protocol.Protocol;
+import net.duvdev.rsqueezea.protocol.DecodingLimits;
 import net.duvdev.rsqueezea.protocol.ProtocolFactory;
-import org.apache.commons.io.IOUtils;
-import org.bouncycastle.asn1.ASN1Encodable;
-import org.bouncycastle.asn1.ASN1Integer;
-import org.bouncycastle.asn1.ASN1Primitive;
-import org.bouncycastle.asn1.ASN1StreamParser;
-import org.bouncycastle.asn1.pkcs.PrivateKeyInfo;
-import org.bouncycastle.crypto.params.RSAPrivateCrtKeyParameters;
-import org.bouncycastle.crypto.util.PrivateKeyInfoFactory;
 import org.bouncycastle.openssl.jcajce.JcaPEMWriter;
 import org.bouncycastle.util.io.pem.PemObject;
 
 import javax.annotation.Nullable;
 import java.io.*;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.security.interfaces.RSAPublicKey;
+import java.security.spec.RSAMultiPrimePrivateCrtKeySpec;
+import java.security.spec.RSAOtherPrimeInfo;
 import java.security.spec.RSAPrivateCrtKeySpec;
+import java.util.ArrayList;
+import java.util.List;
 
 public final class ReassembleController {
 
@@ -33,35 +35,86 @@ public final class ReassembleController {
 
   private final InputStream inputStream;
 
-  private final Codec<byte[], byte[]> codec;
+  private final StreamingCodec codec;
 
   private final OutputStream outputStream;
 
+  private final DecodingLimits limits;
+
   public ReassembleController(
       @Nullable RSAPublicKey publicKey,
       InputStream inputStream,
       Codec<byte[], byte[]> codec,
       OutputStream outputStream) {
+    this(publicKey, inputStream, codec, outputStream, DecodingLimits.DEFAULT);
+  }
+
+  /**
+   * @param limits Bounds on the input, on the images of a {@link QRCodeCodec}, and on the key it
+   *     holds. The external public key is held to the same bound on the modulus.
+   */
+  public ReassembleController(
+      @Nullable RSAPublicKey publicKey,
+      InputStream inputStream,
+      Codec<byte[], byte[]> codec,
+      OutputStream outputStream,
+      DecodingLimits limits) {
     this.publicKey = publicKey;
     this.inputStream = inputStream;
-    this.codec = codec;
+    this.codec = limitImages(StreamingCodec.of(codec), limits);
     this.outputStream = outputStream;
+    this.limits = limits;
   }
 
   public void run() throws IOException {
-    byte[] encoded = IOUtils.toByteArray(inputStream);
-    byte[] data;
+    if (publicKey != null) {
+      limits.checkModulusBits(publicKey.getModulus().bitLength());
+    }
+    ByteBuffer buffer;
     try {
-      data = codec.decode(encoded);
+      buffer = codec.decode(limits.limitInput(inputStream));
     } catch (DecoderException e) {
       throw new IOException(e.getMessage(), e.getCause());
     }
-    ASN1StreamParser parser = new ASN1StreamParser(new ByteArrayInputStream(data));
-    ASN1Integer version = (ASN1Integer) parser.readObject();
-    Protocol protocol = ProtocolFactory.getInstance(version.getValue().intValueExact());
+    SqueezedKey key = ProtocolFactory.detect(buffer).decodeSqueezedKey(buffer, limits);
+    if (buffer.hasRemaining()) {
+      throw new IOException(buffer.remaining() + " bytes of trailing data after the squeezed key");
+    }
 
-    SqueezedKey key = protocol.decodeSqueezedKey(data);
+    byte[] der;
+    if (key.isSeed()) {
+      RSAPrivateCrtKeySpec privateKeySpec =
+          SeededKeyGenerator.generate(key.getSeed(), key.getModulusBits());
+      if (publicKey != null && !publicKey.getModulus().equals(privateKeySpec.getModulus())) {
+        throw new IOException("The seed does not generate the external public key");
+      }
+      der = encode(privateKeySpec);
+    } else {
+      der = reassemble(key);
+    }
+
+    JcaPEMWriter pemWriter = new JcaPEMWriter(new OutputStreamWriter(outputStream));
+    pemWriter.writeObject(new PemObject("RSA PRIVATE KEY", der));
+    pemWriter.flush();
+    outputStream.flush();
+  }
 
+  /** @return The codec, with the images of its QR code stages bounded by the limits */
+  private static StreamingCodec limitImages(StreamingCodec codec, DecodingLimits limits) {
+    if (codec instanceof QRCodeCodec) {
+      return ((QRCodeCodec) codec).withMaxImagePixels(limits.getMaxImagePixels());
+    }
+    if (codec instanceof CodecChain) {
+      List<StreamingCodec> stages = new ArrayList<>();
+      for (StreamingCodec stage : ((CodecChain) codec).getStages()) {
+        stages.add(limitImages(stage, limits));
+      }
+      return new CodecChain(stages);
+    }
+    return codec;
+  }
+
+  private byte[] reassemble(SqueezedKey key) throws IOException {
     BigInteger modulus = key.getModulus();
     BigInteger publicExponent = key.getPublicExponent();
 
@@ -75,26 +128,60 @@ public final class ReassembleController {
       }
     }
 
-    RSAPrivateCrtKeySpec privateKeySpec =
-        KeyReassembler.reassemble(modulus, publicExponent, key.getPrimeP());
-
-    PrivateKeyInfo pkInfo =
-        PrivateKeyInfoFactory.createPrivateKeyInfo(
-            new RSAPrivateCrtKeyParameters(
-                privateKeySpec.getModulus(),
-                privateKeySpec.getPublicExponent(),
-                privateKeySpec.getPrivateExponent(),
-                privateKeySpec.getPrimeP(),
-                privateKeySpec.getPrimeQ(),
-                privateKeySpec.getPrimeExponentP(),
-                privateKeySpec.getPrimeExponentQ(),
-                privateKeySpec.getCrtCoefficient()));
-
-    ASN1Encodable encodable = pkInfo.parsePrivateKey();
-    ASN1Primitive primitive = encodable.toASN1Primitive();
-    JcaPEMWriter pemWriter = new JcaPEMWriter(new OutputStreamWriter(outputStream));
-    pemWriter.writeObject(new PemObject("RSA PRIVATE KEY", primitive.getEncoded()));
-    pemWriter.flush();
-    outputStream.flush();
+    if (key.isMultiPrime()) {
+      return encodeMultiPrime(
+          KeyReassembler.reassembleMultiPrime(
+              modulus, publicExponent, key.getPrimeP(), key.getOtherPrimes()));
+    }
+    if (key.getUnknownBits() > 0) {
+      try {
+        return encode(
+            KeyReassembler.reassembleFromHighBits(
+                modulus, publicExponent, key.getPrimeP(), key.getUnknownBits()));
+      } catch (ArithmeticException e) {
+        throw new IOException(e.getMessage() + ", is it the right public key?", e);
+      }
+    }
+    return encode(KeyReassembler.reassemble(modulus, publicExponent, key.getPrimeP()));
+  }
+
+  /** Two-prime PKCS#1 private key, as specified by RFC 8017 appendix A.1.2 */
+  private static byte[] encode(RSAPrivateCrtKeySpec privateKeySpec) {
+    DERWriter privateKey = new DERWriter(privateKeySpec.getModulus().bitLength() / 8 * 5);
+    privateKey.writeInteger(0); // two-prime
+    privateKey.writeInteger(privateKeySpec.getModulus());
+    privateKey.writeInteger(privateKeySpec.getPublicExponent());
+    privateKey.writeInteger(privateKeySpec.getPrivateExponent());
+    privateKey.writeInteger(privateKeySpec.getPrimeP());
+    privateKey.writeInteger(privateKeySpec.getPrimeQ());
+    privateKey.writeInteger(privateKeySpec.getPrimeExponentP());
+    privateKey.writeInteger(privateKeySpec.getPrimeExponentQ());
+    privateKey.writeInteger(privateKeySpec.getCrtCoefficient());
+    return new DERWriter(privateKey.size() + 8).writeSequence(privateKey).toByteArray();
+  }
+
+  /** Multi-prime PKCS#1 private key, as specified by RFC 8017 appendix A.1.2 */
+  private static byte[] encodeMultiPrime(RSAMultiPrimePrivateCrtKeySpec privateKeySpec) {
+    DERWriter otherPrimeInfos = new DERWriter();
+    for (RSAOtherPrimeInfo info : privateKeySpec.getOtherPrimeInfo()) {
+      DERWriter otherPrimeInfo = new DERWriter();
+      otherPrimeInfo.writeInteger(info.getPrime());
+      otherPrimeInfo.writeInteger(info.getExponent());
+      otherPrimeInfo.writeInteger(info.getCrtCoefficient());
+      otherPrimeInfos.writeSequence(otherPrimeInfo);
+    }
+
+    DERWriter privateKey = new DERWriter(privateKeySpec.getModulus().bitLength() / 8 * 5);
+    privateKey.writeInteger(1); // multi
+    privateKey.writeInteger(privateKeySpec.getModulus());
+    privateKey.writeInteger(privateKeySpec.getPublicExponent());
+    privateKey.writeInteger(privateKeySpec.getPrivateExponent());
+    privateKey.writeInteger(privateKeySpec.getPrimeP());
+    privateKey.writeInteger(privateKeySpec.getPrimeQ());
+    privateKey.writeInteger(privateKeySpec.getPrimeExponentP());
+    privateKey.writeInteger(privateKeySpec.getPrimeExponentQ());
+    privateKey.writeInteger(privateKeySpec.getCrtCoefficient());
+    privateKey.writeSequence(otherPrimeInfos);
+    return new DERWriter(privateKey.size() + 8).writeSequence(privateKey).toByteArray();
   }
 }
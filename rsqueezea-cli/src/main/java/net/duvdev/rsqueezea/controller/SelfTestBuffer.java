@@ -0,0 +1,24 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.controller;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+/**
+ * Holds an encoded squeezed key until it passes the self-test. The self-test reads it, and {@link
+ * #writeTo} writes it out, both from the same array without copying it.
+ */
+final class SelfTestBuffer extends ByteArrayOutputStream {
+
+  SelfTestBuffer(int size) {
+    super(size);
+  }
+
+  InputStream toInputStream() {
+    return new ByteArrayInputStream(buf, 0, count);
+  }
+}
@@ -6,6 +6,7 @@ package net.duvdev.rsqueezea.controller;
 
 import net.duvdev.rsqueezea.codec.Codec;
 import net.duvdev.rsqueezea.codec.EncoderException;
+import net.duvdev.rsqueezea.codec.StreamingCodec;
 import net.duvdev.rsqueezea.loader.RSAPrivateKeyLoader;
 import net.duvdev.rsqueezea.model.SqueezedKey;
 import net.duvdev.rsqueezea.protocol.Protocol;
@@ -13,16 +14,17 @@ import net.duvdev.rsqueezea.protocol.ProtocolFactory;
 import net.duvdev.rsqueezea.protocol.SqueezeType;
 import net.duvdev.rsqueezea.selftest.RSASelfTest;
 import net.duvdev.rsqueezea.selftest.RSASelfTestException;
-import org.apache.commons.io.IOUtils;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
 import java.security.KeyFactory;
 import java.security.interfaces.RSAPublicKey;
+import java.security.spec.RSAMultiPrimePrivateCrtKeySpec;
 import java.security.spec.RSAPrivateCrtKeySpec;
+import java.security.spec.RSAPrivateKeySpec;
 import java.security.spec.RSAPublicKeySpec;
 
 public final class SqueezeController {
@@ -31,46 +33,70 @@ public final class SqueezeController {
 
   private final SqueezeType squeezeType;
 
-  private final Codec<byte[], byte[]> codec;
+  private final StreamingCodec codec;
 
   private final OutputStream outputStream;
 
+  private final boolean integrityCheck;
+
   public SqueezeController(
       RSAPrivateKeyLoader privateKeyLoader,
       SqueezeType squeezeType,
       Codec<byte[], byte[]> codec,
       OutputStream outputStream) {
+    this(privateKeyLoader, squeezeType, codec, outputStream, false);
+  }
+
+  /** @param integrityCheck Whether to add an integrity check to the squeezed key */
+  public SqueezeController(
+      RSAPrivateKeyLoader privateKeyLoader,
+      SqueezeType squeezeType,
+      Codec<byte[], byte[]> codec,
+      OutputStream outputStream,
+      boolean integrityCheck) {
     this.privateKeyLoader = privateKeyLoader;
     this.outputStream = outputStream;
-    this.codec = codec;
+    this.codec = StreamingCodec.of(codec);
     this.squeezeType = squeezeType;
+    this.integrityCheck = integrityCheck;
   }
 
   public void run() throws IOException {
-    RSAPrivateCrtKeySpec privateKey = privateKeyLoader.load();
+    RSAPrivateKeySpec privateKey = privateKeyLoader.loadKeySpec();
+    SqueezedKey squeezedKey;
+    SqueezeType type = squeezeType;
+    if (privateKey instanceof RSAMultiPrimePrivateCrtKeySpec) {
+      squeezedKey = SqueezedKey.fromRSAKey((RSAMultiPrimePrivateCrtKeySpec) privateKey);
+      // the default type, which is the only one able to hold more than two primes
+      if (type == SqueezeType.PRIME_PQ_WITH_EXPONENT) {
+        type = SqueezeType.MULTI_PRIME_WITH_EXPONENT;
+      }
+    } else {
+      squeezedKey = SqueezedKey.fromRSAKey((RSAPrivateCrtKeySpec) privateKey);
+    }
     Protocol protocol = ProtocolFactory.getLatest();
-    byte[] data = protocol.encodeSqueezedKey(SqueezedKey.fromRSAKey(privateKey), squeezeType);
-    byte[] encoded;
+    byte[] data = protocol.encodeSqueezedKey(squeezedKey, type, integrityCheck);
+    SelfTestBuffer encoded = new SelfTestBuffer(data.length * 2 + 64);
     try {
-      encoded = codec.encode(data);
+      codec.encode(ByteBuffer.wrap(data), encoded);
     } catch (EncoderException e) {
       throw new IOException(e.getMessage(), e);
     }
 
-    selfTest(encoded, privateKey);
+    selfTest(encoded, squeezedKey);
 
-    IOUtils.write(encoded, outputStream);
+    encoded.writeTo(outputStream);
     outputStream.flush();
   }
 
-  private void selfTest(byte[] encoded, RSAPrivateCrtKeySpec privateKey) throws IOException {
+  private void selfTest(SelfTestBuffer encoded, SqueezedKey squeezedKey) throws IOException {
     try {
       RSAPublicKey publicKey =
           (RSAPublicKey)
               KeyFactory.getInstance("RSA")
                   .generatePublic(
                       new RSAPublicKeySpec(
-                          privateKey.getModulus(), privateKey.getPublicExponent()));
+                          squeezedKey.getModulus(), squeezedKey.getPublicExponent()));
       byte[] toTestBytes = reassembleKey(encoded, publicKey);
       RSASelfTest.selfTest(toTestBytes, publicKey);
     } catch (IOException | GeneralSecurityException | RSASelfTestException e) {
@@ -78,10 +104,10 @@ public final class SqueezeController {
     }
   }
 
-  private byte[] reassembleKey(byte[] encoded, RSAPublicKey publicKey) throws IOException {
+  private byte[] reassembleKey(SelfTestBuffer encoded, RSAPublicKey publicKey) throws IOException {
     ByteArrayOutputStream output = new ByteArrayOutputStream();
     ReassembleController controller =
-        new ReassembleController(publicKey, new ByteArrayInputStream(encoded), codec, output);
+        new ReassembleController(publicKey, encoded.toInputStream(), codec, output);
     controller.run();
     return output.toByteArray();
   }
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.der;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the DER written by {@link DERWriter} from a {@link ByteBuffer}, advancing its position.
+ * Headers are parsed in place and sequences are read as slices of the buffer, so only the contents
+ * of integers and octet strings are copied out of it.
+ */
+public final class DERReader {
+
+  private final ByteBuffer buffer;
+
+  public DERReader(ByteBuffer buffer) {
+    this.buffer = buffer;
+  }
+
+  public boolean hasRemaining() {
+    return buffer.hasRemaining();
+  }
+
+  /** @return Tag of the next element, or -1 at the end of the input. Does not advance. */
+  public int peekTag() {
+    return buffer.hasRemaining() ? buffer.get(buffer.position()) & 0xFF : -1;
+  }
+
+  /**
+   * @return Length of the contents of the next element, which must be tagged {@code expectedTag}.
+   *     Does not advance.
+   */
+  public int peekLength(int expectedTag) throws IOException {
+    return new DERReader(buffer.duplicate()).readHeader(expectedTag);
+  }
+
+  public BigInteger readInteger() throws IOException {
+    int length = readHeader(DERWriter.TAG_INTEGER);
+    if (length == 0) {
+      throw new IOException("Empty INTEGER");
+    }
+    byte[] contents = new byte[length];
+    buffer.get(contents);
+    return new BigInteger(contents);
+  }
+
+  /** Reads an INTEGER that fits an int, without allocating */
+  public int readIntExact() throws IOException {
+    int length = readHeader(DERWriter.TAG_INTEGER);
+    if (length == 0 || length > 4) {
+      throw new IOException("INTEGER of " + length + " bytes does not fit an int");
+    }
+    int value = buffer.get(); // sign extended
+    for (int i = 1; i < length; ++i) {
+      value = (value << 8) | (buffer.get() & 0xFF);
+    }
+    return value;
+  }
+
+  public byte[] readOctetString() throws IOException {
+    byte[] contents = new byte[readHeader(DERWriter.TAG_OCTET_STRING)];
+    buffer.get(contents);
+    return contents;
+  }
+
+  /**
+   * Reads the header of a SEQUENCE, and skips this reader past it.
+   *
+   * @return A reader of the SEQUENCE contents
+   */
+  public DERReader readSequence() throws IOException {
+    int length = readHeader(DERWriter.TAG_SEQUENCE);
+    ByteBuffer contents = buffer.slice();
+    contents.limit(length);
+    buffer.position(buffer.position() + length);
+    return new DERReader(contents);
+  }
+
+  /** @return Length of the element */
+  private int readHeader(int expectedTag) throws IOException {
+    if (buffer.remaining() < 2) {
+      throw new IOException("Truncated DER");
+    }
+    int tag = buffer.get() & 0xFF;
+    if (tag != expectedTag) {
+      throw new IOException(
+          "Expected tag 0x"
+              + Integer.toHexString(expectedTag)
+              + " but was 0x"
+              + Integer.toHexString(tag));
+    }
+    int length = buffer.get() & 0xFF;
+    if (length >= 0x80) {
+      int octets = length & 0x7F;
+      if (octets == 0 || octets > 4 || octets > buffer.remaining()) {
+        throw new IOException("Unsupported DER length of " + octets + " octets");
+      }
+      length = 0;
+      for (int i = 0; i < octets; ++i) {
+        length = (length << 8) | (buffer.get() & 0xFF);
+      }
+      if (length < 0) {
+        throw new IOException("DER length overflow");
+      }
+    }
+    if (length > buffer.remaining()) {
+      throw new IOException("Truncated DER");
+    }
+    return length;
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.der;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+
+/**
+ * Writes the little DER we need - INTEGERs, SEQUENCEs of them and OCTET STRINGs - without building
+ * an ASN.1 object graph. Each integer costs a single copy of its two's complement bytes.
+ */
+public final class DERWriter {
+
+  public static final int TAG_INTEGER = 0x02;
+
+  public static final int TAG_OCTET_STRING = 0x04;
+
+  public static final int TAG_SEQUENCE = 0x30;
+
+  private final ByteArrayOutputStream outputStream;
+
+  public DERWriter() {
+    this(64);
+  }
+
+  /** @param capacity Expected length of the encoding, in bytes */
+  public DERWriter(int capacity) {
+    this.outputStream = new ByteArrayOutputStream(capacity);
+  }
+
+  public DERWriter writeInteger(long value) {
+    int length = 1;
+    while (length < 8 && (value >> (length * 8 - 1)) != 0 && (value >> (length * 8 - 1)) != -1) {
+      ++length;
+    }
+    writeHeader(TAG_INTEGER, length);
+    for (int i = length - 1; i >= 0; --i) {
+      outputStream.write((int) (value >>> (i * 8)));
+    }
+    return this;
+  }
+
+  public DERWriter writeInteger(BigInteger value) {
+    byte[] contents = value.toByteArray();
+    writeHeader(TAG_INTEGER, contents.length);
+    outputStream.write(contents, 0, contents.length);
+    return this;
+  }
+
+  public DERWriter writeOctetString(byte[] contents) {
+    writeHeader(TAG_OCTET_STRING, contents.length);
+    outputStream.write(contents, 0, contents.length);
+    return this;
+  }
+
+  /** Writes a SEQUENCE of everything written to {@code contents} */
+  public DERWriter writeSequence(DERWriter contents) {
+    byte[] bytes = contents.toByteArray();
+    writeHeader(TAG_SEQUENCE, bytes.length);
+    outputStream.write(bytes, 0, bytes.length);
+    return this;
+  }
+
+  public int size() {
+    return outputStream.size();
+  }
+
+  public byte[] toByteArray() {
+    return outputStream.toByteArray();
+  }
+
+  private void writeHeader(int tag, int length) {
+    outputStream.write(tag);
+    if (length < 0x80) {
+      outputStream.write(length);
+      return;
+    }
+    int octets = (32 - Integer.numberOfLeadingZeros(length) + 7) / 8;
+    outputStream.write(0x80 | octets);
+    for (int i = octets - 1; i >= 0; --i) {
+      outputStream.write(length >>> (i * 8));
+    }
+  }
+}
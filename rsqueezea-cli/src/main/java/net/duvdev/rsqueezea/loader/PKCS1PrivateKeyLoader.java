@@ -5,18 +5,28 @@
 package net.duvdev.rsqueezea.loader;
 
 import net.duvdev.rsqueezea.misc.BouncyCastleInitializer;
+import org.apache.commons.io.IOUtils;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1Sequence;
 import org.bouncycastle.openssl.PEMKeyPair;
 import org.bouncycastle.openssl.PEMParser;
 import org.bouncycastle.openssl.jcajce.JcaPEMKeyConverter;
+import org.bouncycastle.util.io.pem.PemObject;
+import org.bouncycastle.util.io.pem.PemReader;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.math.BigInteger;
 import java.security.KeyFactory;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.spec.InvalidKeySpecException;
+import java.security.spec.RSAMultiPrimePrivateCrtKeySpec;
+import java.security.spec.RSAOtherPrimeInfo;
 import java.security.spec.RSAPrivateCrtKeySpec;
+import java.security.spec.RSAPrivateKeySpec;
 
 public final class PKCS1PrivateKeyLoader implements RSAPrivateKeyLoader {
 
@@ -32,7 +42,34 @@ public final class PKCS1PrivateKeyLoader implements RSAPrivateKeyLoader {
 
   @Override
   public RSAPrivateCrtKeySpec load() throws IOException {
-    PEMParser pemParser = new PEMParser(new InputStreamReader(inputStream));
+    RSAPrivateKeySpec keySpec = loadKeySpec();
+    if (!(keySpec instanceof RSAPrivateCrtKeySpec)) {
+      throw new IOException("Not a two-prime RSA key");
+    }
+    return (RSAPrivateCrtKeySpec) keySpec;
+  }
+
+  @Override
+  public RSAPrivateKeySpec loadKeySpec() throws IOException {
+    byte[] pem = IOUtils.toByteArray(inputStream);
+
+    // RSAPrivateKey ::= SEQUENCE { version, 8 INTEGERs, otherPrimeInfos OtherPrimeInfos OPTIONAL }
+    // PEMParser rejects anything but the two-prime form, so multi-prime keys are looked for first
+    PemObject rawObject = new PemReader(reader(pem)).readPemObject();
+    if (rawObject != null
+        && "RSA PRIVATE KEY".equals(rawObject.getType())
+        && rawObject.getHeaders().isEmpty()) {
+      try {
+        ASN1Sequence sequence = ASN1Sequence.getInstance(rawObject.getContent());
+        if (sequence.size() > 9) {
+          return multiPrimeKeySpec(sequence);
+        }
+      } catch (IllegalArgumentException e) {
+        throw new IOException("Malformed RSA private key", e);
+      }
+    }
+
+    PEMParser pemParser = new PEMParser(reader(pem));
     Object pemObject = pemParser.readObject();
     PrivateKey key;
 
@@ -49,4 +86,39 @@ public final class PKCS1PrivateKeyLoader implements RSAPrivateKeyLoader {
       throw new IOException(e);
     }
   }
+
+  private static InputStreamReader reader(byte[] pem) {
+    return new InputStreamReader(new ByteArrayInputStream(pem));
+  }
+
+  /**
+   * The JCA key factories do not take multi-prime keys, so these are read off the ASN.1 structure
+   * (RFC 8017 appendix A.1.2).
+   */
+  private static RSAMultiPrimePrivateCrtKeySpec multiPrimeKeySpec(ASN1Sequence sequence) {
+    BigInteger[] values = new BigInteger[8];
+    for (int i = 0; i < values.length; ++i) {
+      values[i] = ASN1Integer.getInstance(sequence.getObjectAt(i + 1)).getValue();
+    }
+    ASN1Sequence otherPrimeInfos = ASN1Sequence.getInstance(sequence.getObjectAt(9));
+    RSAOtherPrimeInfo[] otherPrimeInfo = new RSAOtherPrimeInfo[otherPrimeInfos.size()];
+    for (int i = 0; i < otherPrimeInfo.length; ++i) {
+      ASN1Sequence info = ASN1Sequence.getInstance(otherPrimeInfos.getObjectAt(i));
+      otherPrimeInfo[i] =
+          new RSAOtherPrimeInfo(
+              ASN1Integer.getInstance(info.getObjectAt(0)).getValue(),
+              ASN1Integer.getInstance(info.getObjectAt(1)).getValue(),
+              ASN1Integer.getInstance(info.getObjectAt(2)).getValue());
+    }
+    return new RSAMultiPrimePrivateCrtKeySpec(
+        values[0],
+        values[1],
+        values[2],
+        values[3],
+        values[4],
+        values[5],
+        values[6],
+        values[7],
+        otherPrimeInfo);
+  }
 }
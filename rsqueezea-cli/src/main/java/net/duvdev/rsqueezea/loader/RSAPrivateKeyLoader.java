@@ -5,8 +5,18 @@
 package net.duvdev.rsqueezea.loader;
 
 import java.io.IOException;
+import java.security.spec.RSAMultiPrimePrivateCrtKeySpec;
 import java.security.spec.RSAPrivateCrtKeySpec;
+import java.security.spec.RSAPrivateKeySpec;
 
 public interface RSAPrivateKeyLoader {
   RSAPrivateCrtKeySpec load() throws IOException;
+
+  /**
+   * @return Either an {@link RSAPrivateCrtKeySpec}, or an {@link RSAMultiPrimePrivateCrtKeySpec}
+   *     for keys with more than two primes
+   */
+  default RSAPrivateKeySpec loadKeySpec() throws IOException {
+    return load();
+  }
 }
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.model;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/** SHA-256 of the big-endian, unsigned bytes of an RSA modulus. Identifies a key pair. */
+public final class ModulusFingerprint {
+
+  public static final int LENGTH = 32;
+
+  private final byte[] digest;
+
+  private ModulusFingerprint(byte[] digest) {
+    this.digest = digest;
+  }
+
+  public static ModulusFingerprint of(BigInteger modulus) {
+    byte[] bytes = modulus.toByteArray();
+    int offset = bytes[0] == 0 && bytes.length > 1 ? 1 : 0;
+    try {
+      MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+      sha256.update(bytes, offset, bytes.length - offset);
+      return new ModulusFingerprint(sha256.digest());
+    } catch (NoSuchAlgorithmException e) {
+      // every JRE is required to support SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+
+  public static ModulusFingerprint fromBytes(byte[] digest) {
+    if (digest.length != LENGTH) {
+      throw new IllegalArgumentException("Fingerprint must be " + LENGTH + " bytes");
+    }
+    return new ModulusFingerprint(digest.clone());
+  }
+
+  public byte[] getBytes() {
+    return digest.clone();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    ModulusFingerprint that = (ModulusFingerprint) o;
+    return Arrays.equals(digest, that.digest);
+  }
+
+  @Override
+  public int hashCode() {
+    // already a uniformly distributed hash
+    return (digest[0] & 0xFF) << 24
+        | (digest[1] & 0xFF) << 16
+        | (digest[2] & 0xFF) << 8
+        | (digest[3] & 0xFF);
+  }
+
+  /** @return Lower-case hex encoding of the fingerprint */
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder(2 * LENGTH);
+    for (byte b : digest) {
+      builder.append(Character.forDigit((b >>> 4) & 0xF, 16));
+      builder.append(Character.forDigit(b & 0xF, 16));
+    }
+    return builder.toString();
+  }
+}
@@ -4,28 +4,110 @@
  */
 package net.duvdev.rsqueezea.model;
 
+import net.duvdev.rsqueezea.keygen.SeededKeyGenerator;
+import net.duvdev.rsqueezea.lattice.PrimeRecovery;
+
 import javax.annotation.Nullable;
 import java.math.BigInteger;
+import java.security.spec.RSAMultiPrimePrivateCrtKeySpec;
+import java.security.spec.RSAOtherPrimeInfo;
 import java.security.spec.RSAPrivateCrtKeySpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 
 public class SqueezedKey {
 
-  private final BigInteger primeP;
+  /** Unknown bits of a prime, past which the modulus would be absurdly long */
+  public static final int MAX_UNKNOWN_BITS = 1 << 16;
+
+  private final @Nullable BigInteger primeP;
 
   private final @Nullable BigInteger modulus;
 
   private final @Nullable BigInteger publicExponent;
 
+  private final List<BigInteger> otherPrimes;
+
+  private final int unknownBits;
+
+  private final @Nullable byte[] seed;
+
+  private final int modulusBits;
+
   public SqueezedKey(BigInteger primeP) {
     this(primeP, null, null);
   }
 
   public SqueezedKey(
       BigInteger primeP, @Nullable BigInteger modulus, @Nullable BigInteger publicExponent) {
+    this(primeP, modulus, publicExponent, Collections.emptyList());
+  }
+
+  /**
+   * @param otherPrimes Prime factors of a multi-prime key, from the third one onwards. Q is always
+   *     the modulus divided by P and these.
+   */
+  public SqueezedKey(
+      BigInteger primeP,
+      @Nullable BigInteger modulus,
+      @Nullable BigInteger publicExponent,
+      List<BigInteger> otherPrimes) {
+    this(primeP, modulus, publicExponent, otherPrimes, 0);
+  }
+
+  private SqueezedKey(
+      BigInteger primeP,
+      @Nullable BigInteger modulus,
+      @Nullable BigInteger publicExponent,
+      List<BigInteger> otherPrimes,
+      int unknownBits) {
     this.primeP = primeP;
     this.modulus = modulus;
     this.publicExponent = publicExponent;
+    this.otherPrimes = Collections.unmodifiableList(new ArrayList<>(otherPrimes));
+    this.unknownBits = unknownBits;
+    this.seed = null;
+    this.modulusBits = 0;
+  }
+
+  private SqueezedKey(byte[] seed, int modulusBits) {
+    this.primeP = null;
+    this.modulus = null;
+    this.publicExponent = null;
+    this.otherPrimes = Collections.emptyList();
+    this.unknownBits = 0;
+    this.seed = seed.clone();
+    this.modulusBits = modulusBits;
+  }
+
+  /**
+   * @param primeHighBits A prime factor, shifted right by {@code unknownBits}
+   * @param unknownBits Number of low bits left out of the prime, recovered from the modulus on
+   *     reassembly
+   */
+  public static SqueezedKey fromPrimeHighBits(BigInteger primeHighBits, int unknownBits) {
+    if (unknownBits < 0 || unknownBits > MAX_UNKNOWN_BITS) {
+      throw new IllegalArgumentException("Invalid number of unknown bits: " + unknownBits);
+    }
+    return new SqueezedKey(primeHighBits, null, null, Collections.emptyList(), unknownBits);
+  }
+
+  /**
+   * @param seed Seed the key was generated from by {@link SeededKeyGenerator}
+   * @param modulusBits Length of the key's modulus
+   */
+  public static SqueezedKey fromSeed(byte[] seed, int modulusBits) {
+    if (seed.length != SeededKeyGenerator.SEED_LENGTH) {
+      throw new IllegalArgumentException("Seed of " + seed.length + " bytes");
+    }
+    if (modulusBits < SeededKeyGenerator.MIN_MODULUS_BITS
+        || modulusBits > SeededKeyGenerator.MAX_MODULUS_BITS) {
+      throw new IllegalArgumentException("Unsupported modulus length: " + modulusBits);
+    }
+    return new SqueezedKey(seed, modulusBits);
   }
 
   public static SqueezedKey fromRSAKey(RSAPrivateCrtKeySpec privateKey) {
@@ -33,7 +115,29 @@ public class SqueezedKey {
         privateKey.getPrimeP(), privateKey.getModulus(), privateKey.getPublicExponent());
   }
 
+  public static SqueezedKey fromRSAKey(RSAMultiPrimePrivateCrtKeySpec privateKey) {
+    List<BigInteger> otherPrimes = new ArrayList<>();
+    RSAOtherPrimeInfo[] otherPrimeInfo = privateKey.getOtherPrimeInfo();
+    if (otherPrimeInfo != null) {
+      for (RSAOtherPrimeInfo info : otherPrimeInfo) {
+        otherPrimes.add(info.getPrime());
+      }
+    }
+    return new SqueezedKey(
+        privateKey.getPrimeP(),
+        privateKey.getModulus(),
+        privateKey.getPublicExponent(),
+        otherPrimes);
+  }
+
+  /**
+   * @return P, or only its high bits if {@link #getUnknownBits()} is not 0
+   * @throws IllegalStateException For a seed, which has no prime until the key is generated
+   */
   public BigInteger getPrimeP() {
+    if (primeP == null) {
+      throw new IllegalStateException("A seed has no prime");
+    }
     return primeP;
   }
 
@@ -45,6 +149,58 @@ public class SqueezedKey {
     return publicExponent;
   }
 
+  /** @return Prime factors from the third one onwards. Empty for a two-prime key. */
+  public List<BigInteger> getOtherPrimes() {
+    return otherPrimes;
+  }
+
+  public boolean isMultiPrime() {
+    return !otherPrimes.isEmpty();
+  }
+
+  /** @return Number of low bits missing from {@link #getPrimeP()}. 0 for a whole prime. */
+  public int getUnknownBits() {
+    return unknownBits;
+  }
+
+  /** @return Whether this is only the seed of the key, and no part of it */
+  public boolean isSeed() {
+    return seed != null;
+  }
+
+  /** @return The seed the key is generated from, or null if this is not a seed */
+  public @Nullable byte[] getSeed() {
+    return seed == null ? null : seed.clone();
+  }
+
+  /** @return Length of the modulus generated from the seed. 0 if this is not a seed. */
+  public int getModulusBits() {
+    return modulusBits;
+  }
+
+  /**
+   * Keeps only as many high bits of the larger prime as {@link PrimeRecovery} needs to recover it
+   * from the modulus. The larger prime is at least the square root of the modulus, which the
+   * recovery relies on.
+   *
+   * @return A key with the high bits of the larger prime, and neither the modulus nor the public
+   *     exponent. This key if it already is one.
+   */
+  public SqueezedKey toPrimeHighBits() {
+    if (unknownBits > 0) {
+      return this;
+    }
+    if (modulus == null || primeP == null) {
+      throw new IllegalArgumentException("High bits of the prime requested without modulus");
+    }
+    if (isMultiPrime()) {
+      throw new IllegalArgumentException("High bits of the prime requested for a multi-prime key");
+    }
+    BigInteger prime = primeP.max(modulus.divide(primeP));
+    int bits = PrimeRecovery.unknownBits(modulus.bitLength());
+    return fromPrimeHighBits(prime.shiftRight(bits), bits);
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) return true;
@@ -52,11 +208,22 @@ public class SqueezedKey {
     SqueezedKey that = (SqueezedKey) o;
     return Objects.equals(primeP, that.primeP)
         && Objects.equals(modulus, that.modulus)
-        && Objects.equals(publicExponent, that.publicExponent);
+        && Objects.equals(publicExponent, that.publicExponent)
+        && Objects.equals(otherPrimes, that.otherPrimes)
+        && unknownBits == that.unknownBits
+        && Arrays.equals(seed, that.seed)
+        && modulusBits == that.modulusBits;
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(primeP, modulus, publicExponent);
+    return Objects.hash(
+        primeP,
+        modulus,
+        publicExponent,
+        otherPrimes,
+        unknownBits,
+        Arrays.hashCode(seed),
+        modulusBits);
   }
 }
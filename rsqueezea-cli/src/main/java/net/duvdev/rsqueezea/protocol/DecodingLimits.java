@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.protocol;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Bounds on the resources spent decoding an untrusted squeezed key. Every length is checked as soon
+ * as it is read, before anything is allocated for it, so neither a huge input nor a key claiming a
+ * huge integer costs more than the limits allow. The defaults fit every key the tool writes, up to
+ * 16384 bits.
+ */
+public final class DecodingLimits {
+
+  /** Input bytes, before the codec. Room for a photographed or scanned QR code. */
+  public static final int DEFAULT_MAX_INPUT_BYTES = 16 << 20;
+
+  public static final int DEFAULT_MAX_INTEGER_BITS = 16384;
+
+  public static final int DEFAULT_MAX_MODULUS_BITS = 16384;
+
+  /**
+   * Pixels of an image read by a codec, 64 megapixels. Room for a page scanned at 600 dpi, or a
+   * photograph, where a small PNG may claim billions.
+   */
+  public static final long DEFAULT_MAX_IMAGE_PIXELS = 1L << 26;
+
+  public static final DecodingLimits DEFAULT =
+      new DecodingLimits(
+          DEFAULT_MAX_INPUT_BYTES,
+          DEFAULT_MAX_INTEGER_BITS,
+          DEFAULT_MAX_MODULUS_BITS,
+          DEFAULT_MAX_IMAGE_PIXELS);
+
+  private final int maxInputBytes;
+
+  private final int maxIntegerBits;
+
+  private final int maxModulusBits;
+
+  private final long maxImagePixels;
+
+  /**
+   * @param maxInputBytes Maximal length of the input, in bytes
+   * @param maxIntegerBits Maximal length of any integer field, in bits
+   * @param maxModulusBits Maximal length of the key's modulus, whether in the squeezed key, implied
+   *     by its primes, or given externally
+   */
+  public DecodingLimits(int maxInputBytes, int maxIntegerBits, int maxModulusBits) {
+    this(maxInputBytes, maxIntegerBits, maxModulusBits, DEFAULT_MAX_IMAGE_PIXELS);
+  }
+
+  /**
+   * @param maxInputBytes Maximal length of the input, in bytes
+   * @param maxIntegerBits Maximal length of any integer field, in bits
+   * @param maxModulusBits Maximal length of the key's modulus, whether in the squeezed key, implied
+   *     by its primes, or given externally
+   * @param maxImagePixels Maximal width times height of an image the input is decoded from, checked
+   *     against its header before its pixels are read
+   */
+  public DecodingLimits(
+      int maxInputBytes, int maxIntegerBits, int maxModulusBits, long maxImagePixels) {
+    if (maxInputBytes < 1 || maxIntegerBits < 2 || maxModulusBits < 2 || maxImagePixels < 1) {
+      throw new IllegalArgumentException("Decoding limits must be positive");
+    }
+    this.maxInputBytes = maxInputBytes;
+    this.maxIntegerBits = maxIntegerBits;
+    this.maxModulusBits = maxModulusBits;
+    this.maxImagePixels = maxImagePixels;
+  }
+
+  public int getMaxInputBytes() {
+    return maxInputBytes;
+  }
+
+  public int getMaxIntegerBits() {
+    return maxIntegerBits;
+  }
+
+  public int getMaxModulusBits() {
+    return maxModulusBits;
+  }
+
+  public long getMaxImagePixels() {
+    return maxImagePixels;
+  }
+
+  public DecodingLimits withMaxInputBytes(int maxInputBytes) {
+    return new DecodingLimits(maxInputBytes, maxIntegerBits, maxModulusBits, maxImagePixels);
+  }
+
+  public DecodingLimits withMaxIntegerBits(int maxIntegerBits) {
+    return new DecodingLimits(maxInputBytes, maxIntegerBits, maxModulusBits, maxImagePixels);
+  }
+
+  public DecodingLimits withMaxModulusBits(int maxModulusBits) {
+    return new DecodingLimits(maxInputBytes, maxIntegerBits, maxModulusBits, maxImagePixels);
+  }
+
+  public DecodingLimits withMaxImagePixels(long maxImagePixels) {
+    return new DecodingLimits(maxInputBytes, maxIntegerBits, maxModulusBits, maxImagePixels);
+  }
+
+  /**
+   * Reads the stream to its end, failing as soon as it yields more than {@link
+   * #getMaxInputBytes()}, so an endless stream costs no more than the limit.
+   */
+  public byte[] readInput(InputStream inputStream) throws IOException {
+    return IOUtils.toByteArray(limitInput(inputStream));
+  }
+
+  /**
+   * @return A view of the stream that fails as soon as more than {@link #getMaxInputBytes()} are
+   *     read from it, for decoding straight from the stream
+   */
+  public InputStream limitInput(InputStream inputStream) {
+    return new LimitedInputStream(inputStream, maxInputBytes);
+  }
+
+  public void checkInputLength(long length) throws IOException {
+    if (length > maxInputBytes) {
+      throw new IOException("Input of " + length + " bytes, larger than " + maxInputBytes);
+    }
+  }
+
+  public void checkIntegerBits(long bitLength) throws IOException {
+    if (bitLength > maxIntegerBits) {
+      throw new IOException(
+          "Integer of " + bitLength + " bits, longer than " + maxIntegerBits + " bits");
+    }
+  }
+
+  /**
+   * Checks the length of an integer field stored in two's complement, before reading it. A positive
+   * integer of n bits takes up to n / 8 + 1 bytes, with the sign.
+   */
+  public void checkIntegerBytes(long length) throws IOException {
+    if (length > maxIntegerBits / 8 + 1) {
+      throw new IOException(
+          "Integer of " + length + " bytes, longer than " + maxIntegerBits + " bits");
+    }
+  }
+
+  public void checkModulusBits(long bitLength) throws IOException {
+    if (bitLength > maxModulusBits) {
+      throw new IOException(
+          "Modulus of " + bitLength + " bits, longer than " + maxModulusBits + " bits");
+    }
+  }
+
+  /**
+   * Checks the modulus implied by prime factors, before multiplying them. The product of {@code
+   * count} integers whose lengths add up to {@code bitLengthSum} is at least {@code bitLengthSum -
+   * count + 1} bits long.
+   */
+  public void checkFactorBits(long bitLengthSum, int count) throws IOException {
+    checkModulusBits(bitLengthSum - count + 1);
+  }
+
+  private static final class LimitedInputStream extends FilterInputStream {
+
+    private final int limit;
+
+    private long count;
+
+    LimitedInputStream(InputStream in, int limit) {
+      super(in);
+      this.limit = limit;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b != -1) {
+        count(1);
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int read = super.read(b, off, len);
+      if (read > 0) {
+        count(read);
+      }
+      return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = super.skip(n);
+      count(skipped);
+      return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    private void count(long read) throws IOException {
+      count += read;
+      if (count > limit) {
+        throw new IOException("Input is larger than " + limit + " bytes");
+      }
+    }
+  }
+}
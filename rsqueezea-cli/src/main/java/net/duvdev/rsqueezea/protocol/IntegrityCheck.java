@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.protocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * The optional integrity check of squeezed keys: a big-endian CRC32 of every byte of the encoding
+ * that precedes it. It only guards against corruption - a flipped bit in a scan - not tampering.
+ */
+final class IntegrityCheck {
+
+  static final int LENGTH = 4;
+
+  /** Do not instantiate */
+  private IntegrityCheck() {}
+
+  static byte[] compute(byte[] data) {
+    CRC32 crc = new CRC32();
+    crc.update(data, 0, data.length);
+    return ByteBuffer.allocate(LENGTH).putInt((int) crc.getValue()).array();
+  }
+
+  /**
+   * Verifies the bytes from {@code start} up to {@code end}, without moving the buffer's position.
+   */
+  static void verify(ByteBuffer buffer, int start, int end, int expected) throws IOException {
+    ByteBuffer covered = buffer.duplicate();
+    covered.limit(end).position(start);
+    CRC32 crc = new CRC32();
+    crc.update(covered);
+    if ((int) crc.getValue() != expected) {
+      throw new IOException("Integrity check failed, the squeezed key is corrupt");
+    }
+  }
+}
@@ -7,11 +7,41 @@ package net.duvdev.rsqueezea.protocol;
 import net.duvdev.rsqueezea.model.SqueezedKey;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 public interface Protocol {
   int getVersion();
 
-  byte[] encodeSqueezedKey(SqueezedKey key, SqueezeType type) throws IOException;
+  /** Encodes the key without an integrity check */
+  default byte[] encodeSqueezedKey(SqueezedKey key, SqueezeType type) throws IOException {
+    return encodeSqueezedKey(key, type, false);
+  }
 
-  SqueezedKey decodeSqueezedKey(byte[] data) throws IOException;
+  /**
+   * @param integrityCheck Whether to append a CRC32 of the encoding. Decoding verifies it before
+   *     building the key, so a corrupt key fails fast instead of in the reassembly.
+   */
+  byte[] encodeSqueezedKey(SqueezedKey key, SqueezeType type, boolean integrityCheck)
+      throws IOException;
+
+  /** Decodes the key within the {@link DecodingLimits#DEFAULT default limits} */
+  default SqueezedKey decodeSqueezedKey(byte[] data) throws IOException {
+    return decodeSqueezedKey(ByteBuffer.wrap(data));
+  }
+
+  /**
+   * Decodes the key at the buffer's position within the {@link DecodingLimits#DEFAULT default
+   * limits}, leaving the position right after it.
+   */
+  default SqueezedKey decodeSqueezedKey(ByteBuffer buffer) throws IOException {
+    return decodeSqueezedKey(buffer, DecodingLimits.DEFAULT);
+  }
+
+  /**
+   * Decodes the key at the buffer's position, leaving the position right after it.
+   *
+   * @param limits Checked against every length as it is read, before anything of that length is
+   *     built
+   */
+  SqueezedKey decodeSqueezedKey(ByteBuffer buffer, DecodingLimits limits) throws IOException;
 }
@@ -4,20 +4,124 @@
  */
 package net.duvdev.rsqueezea.protocol;
 
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.TreeMap;
+
+/**
+ * Looks up protocols by version. Protocols are registered as {@link ServiceLoader} services of
+ * {@link Protocol}, loaded once, and shared - they must be stateless.
+ */
 public final class ProtocolFactory {
+
+  /** First byte of a version 0 key, the DER INTEGER tag of its version field */
+  private static final int V0_TAG = 0x02;
+
+  /** Versions after 0 start with a varint of {@code version << 4}, see {@link V1Protocol} */
+  private static final int VERSION_SHIFT = 4;
+
+  private static final int MAX_VARINT_BYTES = 5;
+
   /** Do not instantiate */
   private ProtocolFactory() {}
 
   public static Protocol getInstance(int version) {
-    switch (version) {
-      case 0:
-        return new V0Protocol();
-      default:
-        throw new IllegalArgumentException("Unsupported version: " + version);
+    Protocol protocol = Registry.PROTOCOLS.get(version);
+    if (protocol == null) {
+      throw new IllegalArgumentException("Unsupported version: " + version);
+    }
+    return protocol;
+  }
+
+  /**
+   * @param data An encoded squeezed key
+   * @return The protocol to decode it with
+   */
+  public static Protocol getInstance(byte[] data) {
+    return detect(ByteBuffer.wrap(data));
+  }
+
+  /**
+   * Peeks at the version header of the key at the buffer's position, without moving it. The
+   * returned protocol decodes from that same position:
+   *
+   * <pre>
+   * SqueezedKey key = ProtocolFactory.detect(buffer).decodeSqueezedKey(buffer);
+   * </pre>
+   *
+   * @param buffer An encoded squeezed key
+   * @return The protocol to decode it with
+   */
+  public static Protocol detect(ByteBuffer buffer) {
+    int position = buffer.position();
+    if (!buffer.hasRemaining()) {
+      throw new IllegalArgumentException("Empty squeezed key");
+    }
+    int first = buffer.get(position) & 0xFF;
+    if (first == V0_TAG) {
+      return getInstance(peekDERInteger(buffer, position));
     }
+    int header = 0;
+    int end = Math.min(buffer.limit(), position + MAX_VARINT_BYTES);
+    for (int i = position; i < end; ++i) {
+      int b = buffer.get(i) & 0xFF;
+      header |= (b & 0x7F) << (7 * (i - position));
+      if ((b & 0x80) == 0) {
+        return getInstance(header >>> VERSION_SHIFT);
+      }
+    }
+    throw new IllegalArgumentException("Malformed squeezed key header");
   }
 
+  /** @return The registered protocol of the highest version */
   public static Protocol getLatest() {
-    return getInstance(0);
+    return Registry.LATEST;
+  }
+
+  private static int peekDERInteger(ByteBuffer buffer, int position) {
+    if (buffer.limit() - position < 3) {
+      throw new IllegalArgumentException("Malformed squeezed key header");
+    }
+    int length = buffer.get(position + 1);
+    if (length < 1 || length > 4 || buffer.limit() - position - 2 < length) {
+      throw new IllegalArgumentException("Malformed squeezed key header");
+    }
+    int version = buffer.get(position + 2);
+    for (int i = 1; i < length; ++i) {
+      version = (version << 8) | (buffer.get(position + 2 + i) & 0xFF);
+    }
+    return version;
+  }
+
+  /** Loaded on first use */
+  private static final class Registry {
+
+    private static final Map<Integer, Protocol> PROTOCOLS;
+
+    private static final Protocol LATEST;
+
+    static {
+      TreeMap<Integer, Protocol> protocols = new TreeMap<>();
+      for (Protocol protocol :
+          ServiceLoader.load(Protocol.class, ProtocolFactory.class.getClassLoader())) {
+        Protocol existing = protocols.put(protocol.getVersion(), protocol);
+        if (existing != null) {
+          throw new IllegalStateException(
+              "Version "
+                  + protocol.getVersion()
+                  + " registered by both "
+                  + existing.getClass().getName()
+                  + " and "
+                  + protocol.getClass().getName());
+        }
+      }
+      if (protocols.isEmpty()) {
+        throw new IllegalStateException("No protocols registered");
+      }
+      PROTOCOLS = Collections.unmodifiableMap(protocols);
+      LATEST = protocols.lastEntry().getValue();
+    }
   }
 }
@@ -7,5 +7,16 @@ package net.duvdev.rsqueezea.protocol;
 public enum SqueezeType {
   PRIME_P,
   PRIME_WITH_MODULUS,
-  PRIME_PQ_WITH_EXPONENT;
+  PRIME_PQ_WITH_EXPONENT,
+  MULTI_PRIME_WITH_EXPONENT,
+  /**
+   * Only the high bits of the larger prime, about 60% of it. The rest is recovered from the
+   * modulus, so reassembly needs the public key, as with {@link #PRIME_P}.
+   */
+  PRIME_P_HIGH_BITS,
+  /**
+   * Only the seed the key was generated from, and the modulus length. The key is generated again on
+   * reassembly, which needs nothing else.
+   */
+  SEED;
 }
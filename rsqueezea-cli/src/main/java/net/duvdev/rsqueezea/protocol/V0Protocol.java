@@ -4,21 +4,25 @@
  */
 package net.duvdev.rsqueezea.protocol;
 
+import net.duvdev.rsqueezea.der.DERReader;
+import net.duvdev.rsqueezea.der.DERWriter;
 import net.duvdev.rsqueezea.model.SqueezedKey;
-import org.bouncycastle.asn1.ASN1Integer;
-import org.bouncycastle.asn1.ASN1StreamParser;
-import org.bouncycastle.asn1.DEROutputStream;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
-final class V0Protocol implements Protocol {
+public final class V0Protocol implements Protocol {
 
   private static final int TYPE_PRIME_P = 0;
   private static final int TYPE_PRIME_WITH_MODULUS = 1;
   private static final int TYPE_PRIME_PQ_WITH_EXPONENT = 2;
+  private static final int TYPE_MULTI_PRIME_WITH_EXPONENT = 3;
+  private static final int TYPE_PRIME_P_HIGH_BITS = 4;
+  private static final int TYPE_SEED = 5;
 
   @Override
   public int getVersion() {
@@ -26,89 +30,236 @@ final class V0Protocol implements Protocol {
   }
 
   @Override
-  public byte[] encodeSqueezedKey(SqueezedKey key, SqueezeType type) throws IOException {
+  public byte[] encodeSqueezedKey(SqueezedKey key, SqueezeType type, boolean integrityCheck)
+      throws IOException {
     BigInteger modulus, publicExponent;
-    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-    DEROutputStream der = new DEROutputStream(outputStream);
-    der.writeObject(new ASN1Integer(getVersion()));
+    if (key.isMultiPrime() != (type == SqueezeType.MULTI_PRIME_WITH_EXPONENT)) {
+      throw new IllegalArgumentException(
+          "Squeeze type " + type + " requested for a key with " + primeCount(key) + " primes");
+    }
+    if (key.isSeed() != (type == SqueezeType.SEED)) {
+      throw new IllegalArgumentException(
+          "Squeeze type " + type + " requested for a " + (key.isSeed() ? "seed" : "whole key"));
+    }
+    DERWriter der = new DERWriter(estimateLength(key));
+    der.writeInteger(getVersion());
     switch (type) {
       case PRIME_WITH_MODULUS:
-        der.writeObject(new ASN1Integer(TYPE_PRIME_WITH_MODULUS));
-        der.writeObject(new ASN1Integer(key.getPrimeP()));
+        der.writeInteger(TYPE_PRIME_WITH_MODULUS);
+        der.writeInteger(key.getPrimeP());
         modulus = key.getModulus();
         if (modulus == null) {
           throw new IllegalArgumentException("Squeeze type " + type + " requested without modulus");
         }
-        der.writeObject(new ASN1Integer(modulus));
+        der.writeInteger(modulus);
 
         publicExponent = key.getPublicExponent();
         if (publicExponent == null) {
           throw new IllegalArgumentException(
               "Squeeze type " + type + " requested without public exponent");
         }
-        der.writeObject(new ASN1Integer(publicExponent));
+        der.writeInteger(publicExponent);
         break;
       case PRIME_P:
-        der.writeObject(new ASN1Integer(TYPE_PRIME_P));
-        der.writeObject(new ASN1Integer(key.getPrimeP()));
+        der.writeInteger(TYPE_PRIME_P);
+        der.writeInteger(key.getPrimeP());
         break;
       case PRIME_PQ_WITH_EXPONENT:
-        der.writeObject(new ASN1Integer(TYPE_PRIME_PQ_WITH_EXPONENT));
-        der.writeObject(new ASN1Integer(key.getPrimeP()));
+        der.writeInteger(TYPE_PRIME_PQ_WITH_EXPONENT);
+        der.writeInteger(key.getPrimeP());
         modulus = key.getModulus();
         if (modulus == null) {
           throw new IllegalArgumentException("Squeeze type " + type + " requested without modulus");
         }
         BigInteger primeQ = modulus.divide(key.getPrimeP());
-        der.writeObject(new ASN1Integer(primeQ));
+        der.writeInteger(primeQ);
+        publicExponent = key.getPublicExponent();
+        if (publicExponent == null) {
+          throw new IllegalArgumentException(
+              "Squeeze type " + type + " requested without public exponent");
+        }
+        der.writeInteger(publicExponent);
+        break;
+      case MULTI_PRIME_WITH_EXPONENT:
+        der.writeInteger(TYPE_MULTI_PRIME_WITH_EXPONENT);
+        der.writeInteger(key.getPrimeP());
+        modulus = key.getModulus();
+        if (modulus == null) {
+          throw new IllegalArgumentException("Squeeze type " + type + " requested without modulus");
+        }
+        BigInteger product = key.getPrimeP();
+        DERWriter otherPrimes = new DERWriter();
+        for (BigInteger prime : key.getOtherPrimes()) {
+          product = product.multiply(prime);
+          otherPrimes.writeInteger(prime);
+        }
+        der.writeInteger(modulus.divide(product));
         publicExponent = key.getPublicExponent();
         if (publicExponent == null) {
           throw new IllegalArgumentException(
               "Squeeze type " + type + " requested without public exponent");
         }
-        der.writeObject(new ASN1Integer(publicExponent));
+        der.writeInteger(publicExponent);
+        der.writeSequence(otherPrimes);
+        break;
+      case PRIME_P_HIGH_BITS:
+        SqueezedKey partial = key.toPrimeHighBits();
+        der.writeInteger(TYPE_PRIME_P_HIGH_BITS);
+        der.writeInteger(partial.getPrimeP());
+        der.writeInteger(partial.getUnknownBits());
+        break;
+      case SEED:
+        der.writeInteger(TYPE_SEED);
+        der.writeOctetString(key.getSeed());
+        der.writeInteger(key.getModulusBits());
         break;
       default:
         throw new IllegalArgumentException(type.name());
     }
-    der.flush();
-    return outputStream.toByteArray();
+    if (integrityCheck) {
+      der.writeOctetString(IntegrityCheck.compute(der.toByteArray()));
+    }
+    return der.toByteArray();
   }
 
   @Override
-  public SqueezedKey decodeSqueezedKey(byte[] data) throws IOException {
-    ASN1StreamParser parser = new ASN1StreamParser(new ByteArrayInputStream(data));
-    ASN1Integer version = (ASN1Integer) parser.readObject();
-    if (version.getValue().intValueExact() != getVersion()) {
-      throw new IOException("Wrong version. Expected 0 but was " + version.getValue());
+  public SqueezedKey decodeSqueezedKey(ByteBuffer buffer, DecodingLimits limits)
+      throws IOException {
+    try {
+      return decode(buffer, limits);
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Truncated squeezed key", e);
+    }
+  }
+
+  private SqueezedKey decode(ByteBuffer buffer, DecodingLimits limits) throws IOException {
+    int start = buffer.position();
+    DERReader parser = new DERReader(buffer);
+    int version = parser.readIntExact();
+    if (version != getVersion()) {
+      throw new IOException("Wrong version. Expected 0 but was " + version);
+    }
+    int intType = parser.readIntExact();
+    BigInteger primeP = null;
+    byte[] seed = null;
+    if (intType == TYPE_SEED) {
+      seed = parser.readOctetString();
+    } else {
+      primeP = readInteger(parser, limits);
     }
-    ASN1Integer type = (ASN1Integer) parser.readObject();
-    BigInteger primeP;
-    BigInteger modulus;
-    BigInteger publicExponent;
+    BigInteger second = null;
+    BigInteger publicExponent = null;
+    List<BigInteger> otherPrimes = new ArrayList<>();
+    int unknownBits = 0;
+    int modulusBits = 0;
 
-    int intType = type.getValue().intValueExact();
     switch (intType) {
       case TYPE_PRIME_WITH_MODULUS:
-        primeP = ((ASN1Integer) parser.readObject()).getValue();
-        modulus = ((ASN1Integer) parser.readObject()).getValue();
-        publicExponent = ((ASN1Integer) parser.readObject()).getValue();
+        second = readInteger(parser, limits);
+        limits.checkModulusBits(second.bitLength());
+        publicExponent = readInteger(parser, limits);
+        break;
+      case TYPE_PRIME_PQ_WITH_EXPONENT:
+        second = readInteger(parser, limits);
+        limits.checkFactorBits(primeP.bitLength() + second.bitLength(), 2);
+        publicExponent = readInteger(parser, limits);
         break;
       case TYPE_PRIME_P:
-        primeP = ((ASN1Integer) parser.readObject()).getValue();
-        modulus = null;
-        publicExponent = null;
         break;
-      case TYPE_PRIME_PQ_WITH_EXPONENT:
-        primeP = ((ASN1Integer) parser.readObject()).getValue();
-        BigInteger primeQ = ((ASN1Integer) parser.readObject()).getValue();
-        publicExponent = ((ASN1Integer) parser.readObject()).getValue();
-        modulus = primeP.multiply(primeQ);
+      case TYPE_MULTI_PRIME_WITH_EXPONENT:
+        second = readInteger(parser, limits);
+        long bitLengthSum = primeP.bitLength() + second.bitLength();
+        publicExponent = readInteger(parser, limits);
+        DERReader sequence = parser.readSequence();
+        while (sequence.hasRemaining()) {
+          BigInteger prime = readInteger(sequence, limits);
+          if (prime.compareTo(BigInteger.ONE) <= 0) {
+            throw new IOException("Invalid prime: " + prime);
+          }
+          otherPrimes.add(prime);
+          bitLengthSum += prime.bitLength();
+          // every prime adds at least a bit, which bounds their number
+          limits.checkFactorBits(bitLengthSum, otherPrimes.size() + 2);
+        }
+        if (otherPrimes.isEmpty()) {
+          throw new IOException("Multi-prime key without other primes");
+        }
+        break;
+      case TYPE_PRIME_P_HIGH_BITS:
+        unknownBits = parser.readIntExact();
+        if (unknownBits < 1 || unknownBits > SqueezedKey.MAX_UNKNOWN_BITS) {
+          throw new IOException("Invalid number of unknown bits: " + unknownBits);
+        }
+        limits.checkIntegerBits((long) primeP.bitLength() + unknownBits);
+        break;
+      case TYPE_SEED:
+        modulusBits = parser.readIntExact();
+        limits.checkModulusBits(modulusBits);
         break;
       default:
         throw new IllegalArgumentException(Integer.toString(intType));
     }
 
-    return new SqueezedKey(primeP, modulus, publicExponent);
+    // the optional integrity check is verified before any arithmetic on the fields
+    int end = buffer.position();
+    if (parser.peekTag() == DERWriter.TAG_OCTET_STRING) {
+      byte[] check = parser.readOctetString();
+      if (check.length != IntegrityCheck.LENGTH) {
+        throw new IOException("Integrity check of " + check.length + " bytes");
+      }
+      IntegrityCheck.verify(buffer, start, end, ByteBuffer.wrap(check).getInt());
+    }
+
+    switch (intType) {
+      case TYPE_PRIME_WITH_MODULUS:
+        return new SqueezedKey(primeP, second, publicExponent);
+      case TYPE_PRIME_P:
+        return new SqueezedKey(primeP);
+      case TYPE_PRIME_P_HIGH_BITS:
+        return SqueezedKey.fromPrimeHighBits(primeP, unknownBits);
+      case TYPE_SEED:
+        return fromSeed(seed, modulusBits);
+      case TYPE_PRIME_PQ_WITH_EXPONENT:
+        BigInteger product = primeP.multiply(second);
+        limits.checkModulusBits(product.bitLength());
+        return new SqueezedKey(primeP, product, publicExponent);
+      default:
+        BigInteger modulus = primeP.multiply(second);
+        for (BigInteger prime : otherPrimes) {
+          modulus = modulus.multiply(prime);
+        }
+        limits.checkModulusBits(modulus.bitLength());
+        return new SqueezedKey(primeP, modulus, publicExponent, otherPrimes);
+    }
+  }
+
+  private static BigInteger readInteger(DERReader parser, DecodingLimits limits)
+      throws IOException {
+    limits.checkIntegerBytes(parser.peekLength(DERWriter.TAG_INTEGER));
+    BigInteger value = parser.readInteger();
+    limits.checkIntegerBits(value.bitLength());
+    return value;
+  }
+
+  private static SqueezedKey fromSeed(byte[] seed, int modulusBits) throws IOException {
+    try {
+      return SqueezedKey.fromSeed(seed, modulusBits);
+    } catch (IllegalArgumentException e) {
+      throw new IOException(e.getMessage(), e);
+    }
+  }
+
+  private static int primeCount(SqueezedKey key) {
+    return key.getOtherPrimes().size() + 2;
+  }
+
+  /** Room for twice the modulus and the headers, which is enough for every type */
+  private static int estimateLength(SqueezedKey key) {
+    if (key.isSeed()) {
+      return 64;
+    }
+    BigInteger modulus = key.getModulus();
+    int bits = modulus == null ? key.getPrimeP().bitLength() : modulus.bitLength();
+    return bits / 4 + 64;
   }
 }
@@ -0,0 +1,424 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.protocol;
+
+import net.duvdev.rsqueezea.keygen.SeededKeyGenerator;
+import net.duvdev.rsqueezea.model.SqueezedKey;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A compact binary encoding:
+ *
+ * <pre>
+ * header       varint  (version &lt;&lt; 4) | (check &lt;&lt; 3) | type
+ * exponent     byte    well-known public exponent, or 0 followed by varint length and magnitude
+ * count        varint  number of other primes, multi-prime keys only
+ * unknown bits varint  low bits left out of the prime, high bits keys only
+ * bit lengths  varint  one per integer field
+ * body                 the integer fields, bit-packed, without their top and bottom bits
+ * check        int     CRC32 of everything before it, if the check bit of the header is set
+ * </pre>
+ *
+ * A seed has neither exponent nor integer fields. Its header is followed by the modulus length as a
+ * varint, then the 32 bytes of the seed, then the optional check.
+ *
+ * <p>Every integer field is odd (primes, and the modulus they multiply to), and has its top bit
+ * set, so neither bit is stored. The high bits of a prime are stored with a 1 bit appended, to make
+ * them odd as well. The body is padded with zero bits to a byte boundary.
+ */
+public final class V1Protocol implements Protocol {
+
+  private static final int TYPE_PRIME_P = 0;
+  private static final int TYPE_PRIME_WITH_MODULUS = 1;
+  private static final int TYPE_PRIME_PQ_WITH_EXPONENT = 2;
+  private static final int TYPE_MULTI_PRIME_WITH_EXPONENT = 3;
+  private static final int TYPE_PRIME_P_HIGH_BITS = 4;
+  private static final int TYPE_SEED = 5;
+
+  private static final int TYPE_MASK = 0x07;
+  private static final int FLAG_INTEGRITY_CHECK = 0x08;
+  private static final int VERSION_SHIFT = 4;
+
+  private static final int EXPLICIT_EXPONENT = 0;
+
+  /** Public exponents encoded as a single byte, by their index (0 is explicit) */
+  private static final BigInteger[] WELL_KNOWN_EXPONENTS = {
+    null,
+    BigInteger.valueOf(65537),
+    BigInteger.valueOf(3),
+    BigInteger.valueOf(5),
+    BigInteger.valueOf(17)
+  };
+
+  @Override
+  public int getVersion() {
+    return 1;
+  }
+
+  @Override
+  public byte[] encodeSqueezedKey(SqueezedKey key, SqueezeType type, boolean integrityCheck)
+      throws IOException {
+    if (key.isMultiPrime() != (type == SqueezeType.MULTI_PRIME_WITH_EXPONENT)) {
+      throw new IllegalArgumentException(
+          "Squeeze type "
+              + type
+              + " requested for a key with "
+              + (key.getOtherPrimes().size() + 2)
+              + " primes");
+    }
+    if (key.isSeed() != (type == SqueezeType.SEED)) {
+      throw new IllegalArgumentException(
+          "Squeeze type " + type + " requested for a " + (key.isSeed() ? "seed" : "whole key"));
+    }
+    if (type == SqueezeType.SEED) {
+      return encodeSeed(key, integrityCheck);
+    }
+    List<BigInteger> fields = new ArrayList<>();
+    fields.add(key.getPrimeP());
+    int intType;
+    int unknownBits = 0;
+    switch (type) {
+      case PRIME_P:
+        intType = TYPE_PRIME_P;
+        break;
+      case PRIME_WITH_MODULUS:
+        intType = TYPE_PRIME_WITH_MODULUS;
+        fields.add(requireModulus(key, type));
+        break;
+      case PRIME_PQ_WITH_EXPONENT:
+        intType = TYPE_PRIME_PQ_WITH_EXPONENT;
+        fields.add(requireModulus(key, type).divide(key.getPrimeP()));
+        break;
+      case MULTI_PRIME_WITH_EXPONENT:
+        intType = TYPE_MULTI_PRIME_WITH_EXPONENT;
+        BigInteger product = key.getPrimeP();
+        for (BigInteger prime : key.getOtherPrimes()) {
+          product = product.multiply(prime);
+        }
+        fields.add(requireModulus(key, type).divide(product));
+        fields.addAll(key.getOtherPrimes());
+        break;
+      case PRIME_P_HIGH_BITS:
+        intType = TYPE_PRIME_P_HIGH_BITS;
+        SqueezedKey partial = key.toPrimeHighBits();
+        unknownBits = partial.getUnknownBits();
+        fields.set(0, partial.getPrimeP().shiftLeft(1).setBit(0));
+        break;
+      default:
+        throw new IllegalArgumentException(type.name());
+    }
+
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    int flags = integrityCheck ? FLAG_INTEGRITY_CHECK : 0;
+    writeVarint(outputStream, (getVersion() << VERSION_SHIFT) | flags | intType);
+    if (intType != TYPE_PRIME_P && intType != TYPE_PRIME_P_HIGH_BITS) {
+      BigInteger publicExponent = key.getPublicExponent();
+      if (publicExponent == null) {
+        throw new IllegalArgumentException(
+            "Squeeze type " + type + " requested without public exponent");
+      }
+      writeExponent(outputStream, publicExponent);
+    }
+    if (intType == TYPE_MULTI_PRIME_WITH_EXPONENT) {
+      writeVarint(outputStream, key.getOtherPrimes().size());
+    }
+    if (intType == TYPE_PRIME_P_HIGH_BITS) {
+      writeVarint(outputStream, unknownBits);
+    }
+
+    int bodyBits = 0;
+    for (BigInteger field : fields) {
+      if (field.bitLength() < 2 || !field.testBit(0)) {
+        throw new IllegalArgumentException("Not an odd integer of at least 2 bits: " + field);
+      }
+      writeVarint(outputStream, field.bitLength());
+      bodyBits += field.bitLength() - 2;
+    }
+    byte[] body = new byte[(bodyBits + 7) >>> 3];
+    int position = 0;
+    for (BigInteger field : fields) {
+      byte[] magnitude = field.toByteArray();
+      // skip the sign padding and the top bit
+      int from = magnitude.length * 8 - field.bitLength() + 1;
+      int count = field.bitLength() - 2;
+      copyBits(magnitude, from, body, position, count);
+      position += count;
+    }
+    outputStream.write(body);
+    if (integrityCheck) {
+      outputStream.write(IntegrityCheck.compute(outputStream.toByteArray()));
+    }
+    return outputStream.toByteArray();
+  }
+
+  private byte[] encodeSeed(SqueezedKey key, boolean integrityCheck) throws IOException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    int flags = integrityCheck ? FLAG_INTEGRITY_CHECK : 0;
+    writeVarint(outputStream, (getVersion() << VERSION_SHIFT) | flags | TYPE_SEED);
+    writeVarint(outputStream, key.getModulusBits());
+    outputStream.write(key.getSeed());
+    if (integrityCheck) {
+      outputStream.write(IntegrityCheck.compute(outputStream.toByteArray()));
+    }
+    return outputStream.toByteArray();
+  }
+
+  @Override
+  public SqueezedKey decodeSqueezedKey(ByteBuffer buffer, DecodingLimits limits)
+      throws IOException {
+    try {
+      return decode(buffer, limits);
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Truncated squeezed key", e);
+    }
+  }
+
+  private SqueezedKey decode(ByteBuffer buffer, DecodingLimits limits) throws IOException {
+    int start = buffer.position();
+    int header = readVarint(buffer);
+    if (header >>> VERSION_SHIFT != getVersion()) {
+      throw new IOException(
+          "Wrong version. Expected " + getVersion() + " but was " + (header >>> VERSION_SHIFT));
+    }
+    boolean integrityCheck = (header & FLAG_INTEGRITY_CHECK) != 0;
+    int intType = header & TYPE_MASK;
+    if (intType == TYPE_SEED) {
+      return decodeSeed(buffer, start, integrityCheck, limits);
+    }
+
+    BigInteger publicExponent = null;
+    int unknownBits = 0;
+    int fieldCount;
+    switch (intType) {
+      case TYPE_PRIME_P:
+        fieldCount = 1;
+        break;
+      case TYPE_PRIME_WITH_MODULUS:
+      case TYPE_PRIME_PQ_WITH_EXPONENT:
+        publicExponent = readExponent(buffer, limits);
+        fieldCount = 2;
+        break;
+      case TYPE_MULTI_PRIME_WITH_EXPONENT:
+        publicExponent = readExponent(buffer, limits);
+        int otherPrimeCount = readVarint(buffer);
+        if (otherPrimeCount < 1 || otherPrimeCount > buffer.remaining()) {
+          throw new IOException("Invalid number of other primes: " + otherPrimeCount);
+        }
+        fieldCount = otherPrimeCount + 2;
+        // even if every prime were the shortest
+        limits.checkFactorBits(2L * fieldCount, fieldCount);
+        break;
+      case TYPE_PRIME_P_HIGH_BITS:
+        unknownBits = readVarint(buffer);
+        if (unknownBits < 1 || unknownBits > SqueezedKey.MAX_UNKNOWN_BITS) {
+          throw new IOException("Invalid number of unknown bits: " + unknownBits);
+        }
+        fieldCount = 1;
+        break;
+      default:
+        throw new IllegalArgumentException(Integer.toString(intType));
+    }
+
+    int[] bitLengths = new int[fieldCount];
+    long bodyBits = 0;
+    for (int i = 0; i < fieldCount; ++i) {
+      bitLengths[i] = readVarint(buffer);
+      if (bitLengths[i] < 2) {
+        throw new IOException("Invalid integer length: " + bitLengths[i]);
+      }
+      limits.checkIntegerBits(bitLengths[i]);
+      bodyBits += bitLengths[i] - 2;
+    }
+    switch (intType) {
+      case TYPE_PRIME_WITH_MODULUS:
+        limits.checkModulusBits(bitLengths[1]);
+        break;
+      case TYPE_PRIME_PQ_WITH_EXPONENT:
+      case TYPE_MULTI_PRIME_WITH_EXPONENT:
+        // the fields are the primes
+        limits.checkFactorBits(bodyBits + 2L * fieldCount, fieldCount);
+        break;
+      case TYPE_PRIME_P_HIGH_BITS:
+        // the high bits have a bit appended
+        limits.checkIntegerBits(bitLengths[0] - 1L + unknownBits);
+        break;
+      default:
+        break;
+    }
+    long bodyLength = (bodyBits + 7) >>> 3;
+    int checkLength = integrityCheck ? IntegrityCheck.LENGTH : 0;
+    if (bodyLength + checkLength > buffer.remaining()) {
+      throw new IOException("Truncated squeezed key");
+    }
+
+    int body = buffer.position();
+    int end = body + (int) bodyLength;
+    // verified before a single integer is built from the body
+    if (integrityCheck) {
+      IntegrityCheck.verify(buffer, start, end, buffer.getInt(end));
+    }
+    int position = 0;
+    BigInteger[] fields = new BigInteger[fieldCount];
+    for (int i = 0; i < fieldCount; ++i) {
+      fields[i] = readOddInteger(buffer, body, position, bitLengths[i]);
+      position += bitLengths[i] - 2;
+    }
+    buffer.position(end + checkLength);
+
+    BigInteger primeP = fields[0];
+    switch (intType) {
+      case TYPE_PRIME_P:
+        return new SqueezedKey(primeP);
+      case TYPE_PRIME_P_HIGH_BITS:
+        return SqueezedKey.fromPrimeHighBits(primeP.shiftRight(1), unknownBits);
+      case TYPE_PRIME_WITH_MODULUS:
+        return new SqueezedKey(primeP, fields[1], publicExponent);
+      case TYPE_PRIME_PQ_WITH_EXPONENT:
+        BigInteger product = primeP.multiply(fields[1]);
+        limits.checkModulusBits(product.bitLength());
+        return new SqueezedKey(primeP, product, publicExponent);
+      default:
+        BigInteger modulus = primeP.multiply(fields[1]);
+        List<BigInteger> otherPrimes = new ArrayList<>(fieldCount - 2);
+        for (int i = 2; i < fieldCount; ++i) {
+          otherPrimes.add(fields[i]);
+          modulus = modulus.multiply(fields[i]);
+        }
+        limits.checkModulusBits(modulus.bitLength());
+        return new SqueezedKey(primeP, modulus, publicExponent, otherPrimes);
+    }
+  }
+
+  private static SqueezedKey decodeSeed(
+      ByteBuffer buffer, int start, boolean integrityCheck, DecodingLimits limits)
+      throws IOException {
+    int modulusBits = readVarint(buffer);
+    limits.checkModulusBits(modulusBits);
+    byte[] seed = new byte[SeededKeyGenerator.SEED_LENGTH];
+    buffer.get(seed);
+    int end = buffer.position();
+    if (integrityCheck) {
+      IntegrityCheck.verify(buffer, start, end, buffer.getInt());
+    }
+    try {
+      return SqueezedKey.fromSeed(seed, modulusBits);
+    } catch (IllegalArgumentException e) {
+      throw new IOException(e.getMessage(), e);
+    }
+  }
+
+  private static BigInteger requireModulus(SqueezedKey key, SqueezeType type) {
+    BigInteger modulus = key.getModulus();
+    if (modulus == null) {
+      throw new IllegalArgumentException("Squeeze type " + type + " requested without modulus");
+    }
+    return modulus;
+  }
+
+  private static void writeExponent(ByteArrayOutputStream outputStream, BigInteger exponent) {
+    for (int i = 1; i < WELL_KNOWN_EXPONENTS.length; ++i) {
+      if (WELL_KNOWN_EXPONENTS[i].equals(exponent)) {
+        outputStream.write(i);
+        return;
+      }
+    }
+    byte[] magnitude = exponent.toByteArray();
+    int skip = magnitude[0] == 0 ? 1 : 0;
+    outputStream.write(EXPLICIT_EXPONENT);
+    writeVarint(outputStream, magnitude.length - skip);
+    outputStream.write(magnitude, skip, magnitude.length - skip);
+  }
+
+  private static BigInteger readExponent(ByteBuffer buffer, DecodingLimits limits)
+      throws IOException {
+    int code = buffer.get() & 0xFF;
+    if (code != EXPLICIT_EXPONENT) {
+      if (code >= WELL_KNOWN_EXPONENTS.length) {
+        throw new IOException("Unknown public exponent: " + code);
+      }
+      return WELL_KNOWN_EXPONENTS[code];
+    }
+    int length = readVarint(buffer);
+    limits.checkIntegerBytes(length);
+    if (length > buffer.remaining()) {
+      throw new IOException("Truncated public exponent");
+    }
+    byte[] magnitude = new byte[length];
+    buffer.get(magnitude);
+    return new BigInteger(1, magnitude);
+  }
+
+  /** Unsigned LEB128 */
+  private static void writeVarint(ByteArrayOutputStream outputStream, int value) {
+    while ((value & ~0x7F) != 0) {
+      outputStream.write((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    outputStream.write(value);
+  }
+
+  /** Unsigned LEB128, up to 31 bits */
+  private static int readVarint(ByteBuffer buffer) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 31; shift += 7) {
+      int b = buffer.get() & 0xFF;
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        if (value < 0) {
+          break;
+        }
+        return value;
+      }
+    }
+    throw new IOException("Varint too long");
+  }
+
+  /** ORs {@code count} bits of {@code source} from bit {@code from} into {@code destination} */
+  private static void copyBits(byte[] source, int from, byte[] destination, int to, int count) {
+    for (int i = 0; i < count; ++i) {
+      int s = from + i;
+      if ((source[s >>> 3] & (0x80 >>> (s & 7))) != 0) {
+        int d = to + i;
+        destination[d >>> 3] |= 0x80 >>> (d & 7);
+      }
+    }
+  }
+
+  /**
+   * Reads an odd integer of {@code bitLength} bits, whose middle bits start at bit {@code position}
+   * of the body at {@code body}. The integer is assembled byte by byte, straight from the buffer:
+   * the bits of the right-aligned magnitude map onto the body shifted by a fixed offset, with the
+   * top and bottom bits then forced on.
+   */
+  private static BigInteger readOddInteger(
+      ByteBuffer buffer, int body, int position, int bitLength) {
+    int length = (bitLength + 7) >>> 3;
+    int lead = length * 8 - bitLength;
+    // body bit of the magnitude's first bit, up to a byte before the body
+    int origin = position - 1 - lead + 8;
+    int index = body + (origin >>> 3) - 1;
+    int shift = origin & 7;
+    int end = buffer.limit();
+    byte[] magnitude = new byte[length];
+    int high = index < body ? 0 : buffer.get(index) & 0xFF;
+    for (int i = 0; i < length; ++i) {
+      int next = index + i + 1;
+      int low = next < end ? buffer.get(next) & 0xFF : 0;
+      magnitude[i] = (byte) ((high << shift) | (low >>> (8 - shift)));
+      high = low;
+    }
+    magnitude[0] &= 0xFF >>> lead;
+    magnitude[0] |= 0x80 >>> lead;
+    magnitude[length - 1] |= 1;
+    return new BigInteger(1, magnitude);
+  }
+}
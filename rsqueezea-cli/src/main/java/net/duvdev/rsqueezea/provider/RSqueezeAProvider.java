@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.provider;
+
+import net.duvdev.rsqueezea.protocol.DecodingLimits;
+
+import java.security.Provider;
+import java.util.Collections;
+
+/**
+ * A JCA provider for loading squeezed keys through the standard APIs:
+ *
+ * <pre>
+ * KeyFactory keyFactory = KeyFactory.getInstance("SqueezedRSA", new RSqueezeAProvider());
+ * RSAPrivateCrtKey key =
+ *     (RSAPrivateCrtKey) keyFactory.generatePrivate(new SqueezedRSAKeySpec(squeezed));
+ * </pre>
+ *
+ * Each provider instance keeps its own {@link ReassemblyCache}, so repeated loads of the same key
+ * are served without redoing the reassembly. Squeezed keys are decoded within {@link
+ * DecodingLimits}, the defaults unless given.
+ */
+public final class RSqueezeAProvider extends Provider {
+
+  private static final long serialVersionUID = 1L;
+
+  public static final String NAME = "RSqueezeA";
+
+  public static final String KEY_FACTORY_ALGORITHM = "SqueezedRSA";
+
+  public static final int DEFAULT_CACHE_SIZE = 1024;
+
+  private final ReassemblyCache cache;
+
+  public RSqueezeAProvider() {
+    this(DEFAULT_CACHE_SIZE);
+  }
+
+  /** @param cacheSize Maximal number of reassembled keys to keep */
+  public RSqueezeAProvider(int cacheSize) {
+    this(cacheSize, DecodingLimits.DEFAULT);
+  }
+
+  /**
+   * @param cacheSize Maximal number of reassembled keys to keep
+   * @param limits Bounds on the squeezed keys, and on external public keys, of every key factory
+   */
+  public RSqueezeAProvider(int cacheSize, DecodingLimits limits) {
+    super(NAME, 1.2, "RSqueezeA squeezed RSA private keys");
+    this.cache = new ReassemblyCache(cacheSize);
+    putService(
+        new Service(
+            this,
+            "KeyFactory",
+            KEY_FACTORY_ALGORITHM,
+            SqueezedRSAKeyFactorySpi.class.getName(),
+            Collections.emptyList(),
+            Collections.emptyMap()) {
+          @Override
+          public Object newInstance(Object constructorParameter) {
+            return new SqueezedRSAKeyFactorySpi(cache, limits);
+          }
+        });
+  }
+
+  /** @return The cache shared by all key factories of this provider */
+  public ReassemblyCache getCache() {
+    return cache;
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.provider;
+
+import net.duvdev.rsqueezea.model.ModulusFingerprint;
+
+import javax.annotation.Nullable;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A bounded, least-recently-used cache of reassembled keys, keyed by modulus fingerprint. */
+public final class ReassemblyCache {
+
+  private final int maximumSize;
+
+  private final LinkedHashMap<ModulusFingerprint, RSAPrivateCrtKey> entries;
+
+  private long hits;
+
+  private long misses;
+
+  private long evictions;
+
+  public ReassemblyCache(int maximumSize) {
+    if (maximumSize < 0) {
+      throw new IllegalArgumentException("Negative cache size: " + maximumSize);
+    }
+    this.maximumSize = maximumSize;
+    this.entries =
+        new LinkedHashMap<ModulusFingerprint, RSAPrivateCrtKey>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<ModulusFingerprint, RSAPrivateCrtKey> e) {
+            if (size() > ReassemblyCache.this.maximumSize) {
+              ++evictions;
+              return true;
+            }
+            return false;
+          }
+        };
+  }
+
+  /** @return The cached key, or null. Counts a hit or a miss. */
+  synchronized @Nullable RSAPrivateCrtKey get(ModulusFingerprint fingerprint) {
+    RSAPrivateCrtKey key = entries.get(fingerprint);
+    if (key == null) {
+      ++misses;
+    } else {
+      ++hits;
+    }
+    return key;
+  }
+
+  synchronized void put(ModulusFingerprint fingerprint, RSAPrivateCrtKey key) {
+    entries.put(fingerprint, key);
+  }
+
+  public synchronized void clear() {
+    entries.clear();
+  }
+
+  public int getMaximumSize() {
+    return maximumSize;
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public synchronized long getHitCount() {
+    return hits;
+  }
+
+  public synchronized long getMissCount() {
+    return misses;
+  }
+
+  public synchronized long getEvictionCount() {
+    return evictions;
+  }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.provider;
+
+import net.duvdev.rsqueezea.KeyReassembler;
+import net.duvdev.rsqueezea.keygen.SeededKeyGenerator;
+import net.duvdev.rsqueezea.model.ModulusFingerprint;
+import net.duvdev.rsqueezea.model.SqueezedKey;
+import net.duvdev.rsqueezea.protocol.DecodingLimits;
+import net.duvdev.rsqueezea.protocol.ProtocolFactory;
+import net.duvdev.rsqueezea.protocol.SqueezeType;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.KeyFactorySpi;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.KeySpec;
+import java.security.spec.RSAPrivateCrtKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+
+/**
+ * Turns a {@link SqueezedRSAKeySpec} into an {@link RSAPrivateCrtKey}, and an {@link
+ * RSAPrivateCrtKey} into a {@link SqueezedRSAKeySpec}. Reassembled keys are kept in a {@link
+ * ReassemblyCache} shared by all instances of the same provider. Keys squeezed to their seed are
+ * generated again every time, as their modulus, which the cache is keyed by, is only known once
+ * they are.
+ */
+public final class SqueezedRSAKeyFactorySpi extends KeyFactorySpi {
+
+  private final ReassemblyCache cache;
+
+  private final DecodingLimits limits;
+
+  SqueezedRSAKeyFactorySpi(ReassemblyCache cache, DecodingLimits limits) {
+    this.cache = cache;
+    this.limits = limits;
+  }
+
+  @Override
+  protected PublicKey engineGeneratePublic(KeySpec keySpec) throws InvalidKeySpecException {
+    RSAPublicKeySpec publicKeySpec = resolvePublicKey(squeezedKeySpec(keySpec));
+    try {
+      return KeyFactory.getInstance("RSA").generatePublic(publicKeySpec);
+    } catch (GeneralSecurityException e) {
+      throw new InvalidKeySpecException(e);
+    }
+  }
+
+  @Override
+  protected PrivateKey engineGeneratePrivate(KeySpec keySpec) throws InvalidKeySpecException {
+    SqueezedRSAKeySpec squeezedKeySpec = squeezedKeySpec(keySpec);
+    SqueezedKey squeezedKey = decode(squeezedKeySpec);
+    if (squeezedKey.isMultiPrime()) {
+      throw new InvalidKeySpecException("Multi-prime keys cannot be made into an RSAPrivateCrtKey");
+    }
+    if (squeezedKey.isSeed()) {
+      return generatePrivate(generate(squeezedKey, squeezedKeySpec));
+    }
+    RSAPublicKeySpec publicKeySpec = resolvePublicKey(squeezedKey, squeezedKeySpec);
+
+    ModulusFingerprint fingerprint = ModulusFingerprint.of(publicKeySpec.getModulus());
+    RSAPrivateCrtKey cached = cache.get(fingerprint);
+    if (cached != null && isSameKey(cached, publicKeySpec, squeezedKey)) {
+      return cached;
+    }
+
+    RSAPrivateCrtKeySpec privateKeySpec;
+    try {
+      if (squeezedKey.getUnknownBits() > 0) {
+        privateKeySpec =
+            KeyReassembler.reassembleFromHighBits(
+                publicKeySpec.getModulus(),
+                publicKeySpec.getPublicExponent(),
+                squeezedKey.getPrimeP(),
+                squeezedKey.getUnknownBits());
+      } else {
+        privateKeySpec =
+            KeyReassembler.reassemble(
+                publicKeySpec.getModulus(),
+                publicKeySpec.getPublicExponent(),
+                squeezedKey.getPrimeP());
+      }
+    } catch (ArithmeticException e) {
+      throw new InvalidKeySpecException("Cannot reassemble key", e);
+    }
+    RSAPrivateCrtKey key = generatePrivate(privateKeySpec);
+    cache.put(fingerprint, key);
+    return key;
+  }
+
+  private static RSAPrivateCrtKey generatePrivate(RSAPrivateCrtKeySpec privateKeySpec)
+      throws InvalidKeySpecException {
+    try {
+      return (RSAPrivateCrtKey) KeyFactory.getInstance("RSA").generatePrivate(privateKeySpec);
+    } catch (GeneralSecurityException e) {
+      throw new InvalidKeySpecException(e);
+    }
+  }
+
+  @Override
+  protected <T extends KeySpec> T engineGetKeySpec(Key key, Class<T> keySpec)
+      throws InvalidKeySpecException {
+    if (!(key instanceof RSAPrivateCrtKey)) {
+      throw new InvalidKeySpecException("Not an RSA CRT private key: " + key.getClass());
+    }
+    if (!keySpec.isAssignableFrom(SqueezedRSAKeySpec.class)) {
+      throw new InvalidKeySpecException("Unsupported key spec: " + keySpec);
+    }
+    RSAPrivateCrtKey privateKey = (RSAPrivateCrtKey) key;
+    SqueezedKey squeezedKey =
+        new SqueezedKey(
+            privateKey.getPrimeP(), privateKey.getModulus(), privateKey.getPublicExponent());
+    try {
+      byte[] encoded =
+          ProtocolFactory.getLatest()
+              .encodeSqueezedKey(squeezedKey, SqueezeType.PRIME_PQ_WITH_EXPONENT);
+      return keySpec.cast(new SqueezedRSAKeySpec(encoded));
+    } catch (IOException e) {
+      throw new InvalidKeySpecException(e);
+    }
+  }
+
+  @Override
+  protected Key engineTranslateKey(Key key) throws InvalidKeyException {
+    if (key instanceof RSAPrivateCrtKey || key instanceof RSAPublicKey) {
+      return key;
+    }
+    throw new InvalidKeyException("Not an RSA key: " + key.getClass());
+  }
+
+  private static SqueezedRSAKeySpec squeezedKeySpec(KeySpec keySpec)
+      throws InvalidKeySpecException {
+    if (!(keySpec instanceof SqueezedRSAKeySpec)) {
+      throw new InvalidKeySpecException(
+          "Expecting " + SqueezedRSAKeySpec.class.getSimpleName() + " but got " + keySpec);
+    }
+    return (SqueezedRSAKeySpec) keySpec;
+  }
+
+  private SqueezedKey decode(SqueezedRSAKeySpec keySpec) throws InvalidKeySpecException {
+    ByteBuffer buffer = ByteBuffer.wrap(keySpec.encoded());
+    try {
+      limits.checkInputLength(buffer.remaining());
+      @Nullable RSAPublicKey publicKey = keySpec.getPublicKey();
+      if (publicKey != null) {
+        limits.checkModulusBits(publicKey.getModulus().bitLength());
+      }
+      SqueezedKey key = ProtocolFactory.detect(buffer).decodeSqueezedKey(buffer, limits);
+      if (buffer.hasRemaining()) {
+        throw new InvalidKeySpecException("Trailing data after the squeezed key");
+      }
+      return key;
+    } catch (IOException | RuntimeException e) {
+      throw new InvalidKeySpecException("Invalid squeezed key", e);
+    }
+  }
+
+  private RSAPublicKeySpec resolvePublicKey(SqueezedRSAKeySpec keySpec)
+      throws InvalidKeySpecException {
+    return resolvePublicKey(decode(keySpec), keySpec);
+  }
+
+  private static RSAPublicKeySpec resolvePublicKey(
+      SqueezedKey squeezedKey, SqueezedRSAKeySpec keySpec) throws InvalidKeySpecException {
+    if (squeezedKey.isSeed()) {
+      RSAPrivateCrtKeySpec privateKeySpec = generate(squeezedKey, keySpec);
+      return new RSAPublicKeySpec(privateKeySpec.getModulus(), privateKeySpec.getPublicExponent());
+    }
+    BigInteger modulus = squeezedKey.getModulus();
+    BigInteger publicExponent = squeezedKey.getPublicExponent();
+    if (modulus == null || publicExponent == null) {
+      @Nullable RSAPublicKey publicKey = keySpec.getPublicKey();
+      if (publicKey == null) {
+        throw new InvalidKeySpecException(
+            "Key does not have public exponent, and no external public key provided");
+      }
+      modulus = publicKey.getModulus();
+      publicExponent = publicKey.getPublicExponent();
+    }
+    return new RSAPublicKeySpec(modulus, publicExponent);
+  }
+
+  /** Generates the key of a seed, which must match the external public key if there is one */
+  private static RSAPrivateCrtKeySpec generate(SqueezedKey squeezedKey, SqueezedRSAKeySpec keySpec)
+      throws InvalidKeySpecException {
+    RSAPrivateCrtKeySpec privateKeySpec =
+        SeededKeyGenerator.generate(squeezedKey.getSeed(), squeezedKey.getModulusBits());
+    @Nullable RSAPublicKey publicKey = keySpec.getPublicKey();
+    if (publicKey != null && !publicKey.getModulus().equals(privateKeySpec.getModulus())) {
+      throw new InvalidKeySpecException("The seed does not generate the external public key");
+    }
+    return privateKeySpec;
+  }
+
+  /**
+   * Guards against a fingerprint collision, or a different key sharing the modulus. Only the known
+   * bits of the prime are compared, so a key squeezed to the high bits of its prime is found
+   * without recovering the rest.
+   */
+  private static boolean isSameKey(
+      RSAPrivateCrtKey key, RSAPublicKeySpec publicKeySpec, SqueezedKey squeezedKey) {
+    BigInteger prime = squeezedKey.getPrimeP();
+    int unknownBits = squeezedKey.getUnknownBits();
+    return key.getModulus().equals(publicKeySpec.getModulus())
+        && key.getPublicExponent().equals(publicKeySpec.getPublicExponent())
+        && (key.getPrimeP().shiftRight(unknownBits).equals(prime)
+            || key.getPrimeQ().shiftRight(unknownBits).equals(prime));
+  }
+}
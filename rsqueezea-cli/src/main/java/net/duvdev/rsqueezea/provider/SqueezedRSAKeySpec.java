@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.provider;
+
+import javax.annotation.Nullable;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.KeySpec;
+
+/**
+ * A squeezed RSA private key, as written by {@link net.duvdev.rsqueezea.protocol.Protocol}, along
+ * with the public key for squeeze types that do not carry the modulus.
+ */
+public final class SqueezedRSAKeySpec implements KeySpec {
+
+  private final byte[] encoded;
+
+  private final @Nullable RSAPublicKey publicKey;
+
+  public SqueezedRSAKeySpec(byte[] encoded) {
+    this(encoded, null);
+  }
+
+  public SqueezedRSAKeySpec(byte[] encoded, @Nullable RSAPublicKey publicKey) {
+    this.encoded = encoded.clone();
+    this.publicKey = publicKey;
+  }
+
+  /** @return The protocol-encoded squeezed key */
+  public byte[] getEncoded() {
+    return encoded.clone();
+  }
+
+  /** @return The encoded key without copying it */
+  byte[] encoded() {
+    return encoded;
+  }
+
+  /** @return Public key to take the modulus and exponent from, if not in the squeezed key */
+  public @Nullable RSAPublicKey getPublicKey() {
+    return publicKey;
+  }
+}
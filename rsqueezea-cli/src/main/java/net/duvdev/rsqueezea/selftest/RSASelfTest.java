@@ -9,14 +9,16 @@ import net.duvdev.rsqueezea.loader.PKCS1PrivateKeyLoader;
 import javax.crypto.Cipher;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
 import java.security.KeyFactory;
 import java.security.Signature;
-import java.security.interfaces.RSAPrivateCrtKey;
 import java.security.interfaces.RSAPrivateKey;
 import java.security.interfaces.RSAPublicKey;
-import java.security.spec.RSAPrivateCrtKeySpec;
+import java.security.spec.RSAMultiPrimePrivateCrtKeySpec;
+import java.security.spec.RSAOtherPrimeInfo;
+import java.security.spec.RSAPrivateKeySpec;
 
 public final class RSASelfTest {
 
@@ -25,10 +27,18 @@ public final class RSASelfTest {
 
   public static void selfTest(byte[] pkcsPEMPrivateKey, RSAPublicKey publicKey)
       throws RSASelfTestException {
-    RSAPrivateCrtKeySpec toTestSpec = loadPrivateKey(pkcsPEMPrivateKey);
-    RSAPrivateCrtKey toTest;
+    RSAPrivateKeySpec toTestSpec = loadPrivateKey(pkcsPEMPrivateKey);
+    RSAPrivateKey toTest;
     try {
-      toTest = (RSAPrivateCrtKey) KeyFactory.getInstance("RSA").generatePrivate(toTestSpec);
+      if (toTestSpec instanceof RSAMultiPrimePrivateCrtKeySpec) {
+        // the JCA cannot use multi-prime keys, so their CRT values are checked here, and the rest
+        // of the test runs on the private exponent alone
+        RSAMultiPrimePrivateCrtKeySpec multiPrimeSpec = (RSAMultiPrimePrivateCrtKeySpec) toTestSpec;
+        testMultiPrimeDecrypt(publicKey, multiPrimeSpec);
+        toTestSpec =
+            new RSAPrivateKeySpec(multiPrimeSpec.getModulus(), multiPrimeSpec.getPrivateExponent());
+      }
+      toTest = (RSAPrivateKey) KeyFactory.getInstance("RSA").generatePrivate(toTestSpec);
       testEncrypt(publicKey, toTest);
       testSign(publicKey, toTest);
     } catch (GeneralSecurityException e) {
@@ -36,16 +46,40 @@ public final class RSASelfTest {
     }
   }
 
-  private static RSAPrivateCrtKeySpec loadPrivateKey(byte[] data) throws RSASelfTestException {
+  private static RSAPrivateKeySpec loadPrivateKey(byte[] data) throws RSASelfTestException {
     PKCS1PrivateKeyLoader privateKeyLoader =
         new PKCS1PrivateKeyLoader(new ByteArrayInputStream(data));
     try {
-      return privateKeyLoader.load();
+      return privateKeyLoader.loadKeySpec();
     } catch (IOException e) {
       throw new RSASelfTestException(e);
     }
   }
 
+  /** Raw multi-prime CRT decryption, as specified by RFC 8017 section 5.1.2 */
+  private static void testMultiPrimeDecrypt(
+      RSAPublicKey publicKey, RSAMultiPrimePrivateCrtKeySpec privateKey) {
+    BigInteger message = new BigInteger(1, "Test vector".getBytes(StandardCharsets.UTF_8));
+    BigInteger ciphertext = message.modPow(publicKey.getPublicExponent(), publicKey.getModulus());
+
+    BigInteger m1 = ciphertext.modPow(privateKey.getPrimeExponentP(), privateKey.getPrimeP());
+    BigInteger m2 = ciphertext.modPow(privateKey.getPrimeExponentQ(), privateKey.getPrimeQ());
+    BigInteger h =
+        m1.subtract(m2).multiply(privateKey.getCrtCoefficient()).mod(privateKey.getPrimeP());
+    BigInteger m = m2.add(privateKey.getPrimeQ().multiply(h));
+    BigInteger r = privateKey.getPrimeP().multiply(privateKey.getPrimeQ());
+    for (RSAOtherPrimeInfo info : privateKey.getOtherPrimeInfo()) {
+      BigInteger mi = ciphertext.modPow(info.getExponent(), info.getPrime());
+      h = mi.subtract(m).multiply(info.getCrtCoefficient()).mod(info.getPrime());
+      m = m.add(r.multiply(h));
+      r = r.multiply(info.getPrime());
+    }
+
+    if (!message.equals(m) || !r.equals(publicKey.getModulus())) {
+      throw new IllegalArgumentException("Multi-prime decrypt self-test failed");
+    }
+  }
+
   private static void testEncrypt(RSAPublicKey publicKey, RSAPrivateKey privateKey)
       throws GeneralSecurityException {
     String algorithm = "RSA";
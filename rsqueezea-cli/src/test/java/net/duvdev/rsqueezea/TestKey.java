@@ -39,6 +39,14 @@ public final class TestKey {
 
   public static final SqueezedKey SQUEEZE_KEY = new SqueezedKey(P, N, E);
 
+  public static final SqueezedKey SEED_KEY =
+      SqueezedKey.fromSeed(
+          new byte[] {
+            0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20, 21, 22, 23,
+            24, 25, 26, 27, 28, 29, 30, 31
+          },
+          1024);
+
   public static final RSAPublicKey PUBLIC_KEY;
 
   public static final RSAPrivateCrtKeySpec PRIVATE_KEY_SPEC;
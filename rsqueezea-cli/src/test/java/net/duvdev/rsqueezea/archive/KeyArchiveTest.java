@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.archive;
+
+import net.duvdev.rsqueezea.TestKey;
+import net.duvdev.rsqueezea.model.ModulusFingerprint;
+import net.duvdev.rsqueezea.protocol.ProtocolFactory;
+import net.duvdev.rsqueezea.protocol.SqueezeType;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertNull;
+import static junit.framework.TestCase.assertTrue;
+
+public class KeyArchiveTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void appendAndGet() throws Exception {
+    Path path = folder.getRoot().toPath().resolve("keys.arc");
+    byte[] squeezed =
+        ProtocolFactory.getLatest()
+            .encodeSqueezedKey(TestKey.SQUEEZE_KEY, SqueezeType.PRIME_PQ_WITH_EXPONENT);
+    ModulusFingerprint fingerprint = ModulusFingerprint.of(TestKey.N);
+    KeyArchiveWriter.append(
+        path,
+        Collections.singletonList(
+            new ArchiveEntry("test", fingerprint, ByteBuffer.wrap(squeezed))));
+    KeyArchiveWriter.append(path, entries(1000));
+
+    KeyArchive archive = KeyArchive.open(path);
+    assertEquals(1001, archive.size());
+    assertEquals(TestKey.SQUEEZE_KEY, archive.get("test").decode());
+    assertEquals("test", archive.get(fingerprint).getKeyId());
+    for (int i = 0; i < 1000; ++i) {
+      ArchiveEntry entry = archive.get("key-" + i);
+      assertEquals(fingerprint(i), entry.getFingerprint());
+      assertEquals(ByteBuffer.wrap(key(i)), entry.getSqueezedKey());
+      assertEquals("key-" + i, archive.get(fingerprint(i)).getKeyId());
+    }
+    assertNull(archive.get("key-1000"));
+    assertNull(archive.get(fingerprint(1000)));
+    assertEquals("test", archive.entries().get(0).getKeyId());
+    assertEquals("key-999", archive.entries().get(1000).getKeyId());
+  }
+
+  @Test
+  public void appendReplacesSameId() throws Exception {
+    Path path = folder.getRoot().toPath().resolve("keys.arc");
+    KeyArchiveWriter.append(path, entries(10));
+    ArchiveEntry replacement =
+        new ArchiveEntry("key-3", fingerprint(100), ByteBuffer.wrap(key(100)));
+    KeyArchiveWriter.append(path, Collections.singletonList(replacement));
+
+    KeyArchive archive = KeyArchive.open(path);
+    assertEquals(10, archive.size());
+    assertEquals(ByteBuffer.wrap(key(100)), archive.get("key-3").getSqueezedKey());
+    assertNull(archive.get(fingerprint(3)));
+    assertEquals("key-3", archive.get(fingerprint(100)).getKeyId());
+    assertEquals("key-3", archive.entries().get(9).getKeyId());
+  }
+
+  @Test
+  public void compactDropsReplacedKeys() throws Exception {
+    Path path = folder.getRoot().toPath().resolve("keys.arc");
+    KeyArchiveWriter.append(path, entries(10));
+    KeyArchiveWriter.append(path, entries(10));
+    long size = Files.size(path);
+
+    KeyArchiveWriter.compact(path);
+    assertTrue(Files.size(path) < size);
+    KeyArchive archive = KeyArchive.open(path);
+    assertEquals(10, archive.size());
+    for (int i = 0; i < 10; ++i) {
+      assertEquals(ByteBuffer.wrap(key(i)), archive.get("key-" + i).getSqueezedKey());
+    }
+  }
+
+  @Test
+  public void compactRecoversInterruptedAppend() throws Exception {
+    Path path = folder.getRoot().toPath().resolve("keys.arc");
+    KeyArchiveWriter.append(path, entries(10));
+    long size = Files.size(path);
+    KeyArchiveWriter.append(path, entries(20).subList(10, 20));
+    // cut the last record short, and lose the index after it
+    try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+      file.setLength(size);
+    }
+    try {
+      KeyArchive.open(path);
+      throw new AssertionError("Opened an archive without an index");
+    } catch (IOException e) {
+      // expected
+    }
+
+    KeyArchiveWriter.compact(path);
+    KeyArchive archive = KeyArchive.open(path);
+    assertTrue(archive.size() > 10 && archive.size() < 20);
+    for (int i = 0; i < archive.size(); ++i) {
+      assertEquals(ByteBuffer.wrap(key(i)), archive.get("key-" + i).getSqueezedKey());
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectsCorruptRecord() throws Exception {
+    Path path = folder.getRoot().toPath().resolve("keys.arc");
+    KeyArchiveWriter.append(path, entries(10));
+    byte[] data = Files.readAllBytes(path);
+    // in the fingerprint of the first key
+    data[KeyArchive.MAGIC.length + 10] ^= 1;
+    Files.write(path, data);
+    KeyArchive.open(path).get("key-0");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsEmptyId() {
+    new ArchiveEntry("", fingerprint(0), ByteBuffer.wrap(key(0)));
+  }
+
+  private static List<ArchiveEntry> entries(int count) {
+    List<ArchiveEntry> entries = new ArrayList<>(count);
+    for (int i = 0; i < count; ++i) {
+      entries.add(new ArchiveEntry("key-" + i, fingerprint(i), ByteBuffer.wrap(key(i))));
+    }
+    return entries;
+  }
+
+  private static ModulusFingerprint fingerprint(int i) {
+    return ModulusFingerprint.of(BigInteger.valueOf(i));
+  }
+
+  /** Stands in for a squeezed key, of a different length for each key */
+  private static byte[] key(int i) {
+    byte[] key = new byte[1 + i % 300];
+    Arrays.fill(key, (byte) i);
+    return key;
+  }
+}
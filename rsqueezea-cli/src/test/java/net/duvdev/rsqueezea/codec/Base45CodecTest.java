@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.codec;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.fail;
+import static org.junit.Assert.assertArrayEquals;
+
+public class Base45CodecTest {
+
+  private final Base45Codec codec = new Base45Codec();
+
+  /** RFC 9285 section 4.3 */
+  @Test
+  public void testKnownAnswers() throws Exception {
+    String[][] vectors = {
+      {"AB", "BB8"}, {"Hello!!", "%69 VD92EX0"}, {"base-45", "UJCLQE7W581"}, {"ietf!", "QED8WEX0"}
+    };
+    for (String[] vector : vectors) {
+      byte[] decoded = vector[0].getBytes(StandardCharsets.US_ASCII);
+      assertEquals(vector[1], codec.encode(decoded));
+      assertArrayEquals(decoded, codec.decode(vector[1]));
+    }
+  }
+
+  @Test
+  public void testRoundTrips() throws Exception {
+    Random random = new Random(45);
+    for (int length = 0; length < 64; ++length) {
+      byte[] decoded = new byte[length];
+      random.nextBytes(decoded);
+      String encoded = codec.encode(decoded);
+      assertEquals(Base45Codec.encodedLength(length), encoded.length());
+      assertArrayEquals(decoded, codec.decode(encoded));
+    }
+  }
+
+  @Test
+  public void testRejectsInvalidInput() {
+    // "GGW" is 65536, "V5" is 256, and "BB8G" ends with a lone character
+    for (String encoded : new String[] {"GGW", "V5", "BB8G", "bb8", "BB8~"}) {
+      try {
+        codec.decode(encoded);
+        fail(encoded);
+      } catch (DecoderException e) {
+        // expected
+      }
+    }
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.codec;
+
+import net.duvdev.rsqueezea.TestKey;
+import net.duvdev.rsqueezea.protocol.ProtocolFactory;
+import net.duvdev.rsqueezea.protocol.SqueezeType;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
+import static junit.framework.TestCase.fail;
+import static org.junit.Assert.assertArrayEquals;
+
+public class CodecChainTest {
+
+  private static byte[] data() throws Exception {
+    return ProtocolFactory.getLatest()
+        .encodeSqueezedKey(TestKey.SQUEEZE_KEY, SqueezeType.PRIME_PQ_WITH_EXPONENT);
+  }
+
+  @Test
+  public void testStagesRunInOrder() throws Exception {
+    byte[] data = data();
+    StreamingCodec chain = CodecFactory.getCodec("der+crc+pem");
+    byte[] expected = new PEMCodec().encode(new CRC32Codec().encode(data));
+    assertArrayEquals(expected, chain.encode(data));
+    assertArrayEquals(data, chain.decode(expected));
+  }
+
+  @Test
+  public void testRoundTrips() throws Exception {
+    byte[] data = data();
+    for (String format : new String[] {"DER", "crc+qr", "PEM+CRC+PEM", "pem + qr", "crc+crc+crc"}) {
+      StreamingCodec codec = CodecFactory.getCodec(format);
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      codec.encode(ByteBuffer.wrap(data), output);
+      assertEquals(
+          format,
+          ByteBuffer.wrap(data),
+          codec.decode(new ByteArrayInputStream(output.toByteArray())));
+    }
+  }
+
+  @Test
+  public void testSingleStageIsNotChained() {
+    assertTrue(CodecFactory.getCodec("qr") instanceof QRCodeCodec);
+    assertEquals(3, ((CodecChain) CodecFactory.getCodec("der+crc+qr")).getStages().size());
+  }
+
+  @Test
+  public void testCrcDetectsDamage() throws Exception {
+    StreamingCodec chain = CodecFactory.getCodec("crc+pem");
+    byte[] encoded = new PEMCodec().encode(damage(new CRC32Codec().encode(data())));
+    try {
+      chain.decode(encoded);
+      fail();
+    } catch (DecoderException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testRejectsUnknownStages() {
+    for (String format : new String[] {"der+zip", "", "der+", "+qr"}) {
+      try {
+        CodecFactory.getCodec(format);
+        fail(format);
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+    }
+  }
+
+  @Test
+  public void testEmptyChain() {
+    try {
+      new CodecChain(Arrays.<Codec<byte[], byte[]>>asList());
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  private static byte[] damage(byte[] bytes) {
+    byte[] damaged = bytes.clone();
+    damaged[damaged.length / 2] ^= 0x10;
+    return damaged;
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.codec;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertNotSame;
+import static junit.framework.TestCase.assertSame;
+import static junit.framework.TestCase.assertTrue;
+import static junit.framework.TestCase.fail;
+import static org.junit.Assert.assertArrayEquals;
+
+public class CodecFactoryTest {
+
+  @Test
+  public void testSharesOneCodecPerFormat() {
+    assertSame(CodecFactory.getCodec("der+crc+qr"), CodecFactory.getCodec(" DER + Crc+QR "));
+    assertSame(CodecFactory.getCodec(CodecFactory.CodecType.QR), CodecFactory.getCodec("qr"));
+    CodecChain chain = (CodecChain) CodecFactory.getCodec("pem+qr");
+    assertSame(CodecFactory.getCodec("QR"), chain.getStages().get(1));
+  }
+
+  @Test
+  public void testRegistersEveryProvider() {
+    for (CodecFactory.CodecType type : CodecFactory.CodecType.values()) {
+      assertTrue(type.name(), CodecFactory.getNames().contains(type.name()));
+    }
+    assertTrue(CodecFactory.getNames().contains(ReversingCodecProvider.NAME));
+  }
+
+  @Test
+  public void testChainsCodecsOfOtherProviders() throws Exception {
+    StreamingCodec codec = CodecFactory.getCodec("crc+reverse");
+    byte[] data = {1, 2, 3};
+    byte[] encoded = codec.encode(data);
+    assertEquals(data[0], encoded[encoded.length - 1]);
+    assertArrayEquals(data, codec.decode(encoded));
+  }
+
+  @Test
+  public void testUnknownCodec() {
+    for (String format : new String[] {"foo", "der+foo", "der++qr", ""}) {
+      try {
+        CodecFactory.getCodec(format);
+        fail(format);
+      } catch (IllegalArgumentException e) {
+        assertTrue(e.getMessage(), e.getMessage().startsWith("Unknown codec: "));
+      }
+    }
+  }
+
+  @Test
+  public void testConfiguringLeavesTheSharedCodecAsItIs() {
+    QRCodeCodec shared = (QRCodeCodec) CodecFactory.getCodec("qr");
+    QRCodeCodec configured = shared.withLevel(QRCodeCodec.Level.H).withMaxVersion(10);
+    assertNotSame(shared, configured);
+    assertEquals(QRCodeCodec.Level.H, configured.getLevel());
+    assertEquals(10, configured.getMaxVersion());
+    assertEquals(QRCodeCodec.Level.M, shared.getLevel());
+    assertEquals(QRCodeCodec.MAX_VERSION, shared.getMaxVersion());
+    assertSame(shared, CodecFactory.getCodec("qr"));
+  }
+
+  @Test
+  public void testSharedCodecOnManyThreads() throws Exception {
+    StreamingCodec codec = CodecFactory.getCodec("der+crc+pem+qr");
+    List<CompletableFuture<Void>> roundTrips = new ArrayList<>();
+    for (int i = 0; i < 32; ++i) {
+      byte[] data = new byte[100 + i * 17];
+      new Random(i).nextBytes(data);
+      roundTrips.add(
+          CompletableFuture.runAsync(
+              () -> {
+                try {
+                  assertArrayEquals(data, codec.decode(codec.encode(data)));
+                } catch (CodecException e) {
+                  throw new AssertionError(e);
+                }
+              }));
+    }
+    for (CompletableFuture<Void> roundTrip : roundTrips) {
+      roundTrip.join();
+    }
+  }
+}
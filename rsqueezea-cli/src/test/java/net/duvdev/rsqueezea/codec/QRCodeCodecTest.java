@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.codec;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.Result;
+import com.google.zxing.client.j2se.MatrixToImageWriter;
+import com.google.zxing.qrcode.QRCodeWriter;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.google.zxing.qrcode.decoder.Mode;
+import com.google.zxing.qrcode.encoder.Encoder;
+import net.duvdev.rsqueezea.TestKey;
+import net.duvdev.rsqueezea.protocol.ProtocolFactory;
+import net.duvdev.rsqueezea.protocol.SqueezeType;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
+import static junit.framework.TestCase.fail;
+import static org.junit.Assert.assertArrayEquals;
+
+public class QRCodeCodecTest {
+
+  @Test
+  public void testStoresBinaryAsItIs() throws Exception {
+    byte[] data = keyData();
+    assertEquals(
+        new String(data, StandardCharsets.ISO_8859_1),
+        QRPayload.encode(data, ErrorCorrectionLevel.M));
+    assertArrayEquals(data, roundTrip(data));
+  }
+
+  @Test
+  public void testStoresTextThatLooksEncodedInBase45() throws Exception {
+    for (String text : new String[] {"QUJDRA==", "HELLO WORLD", "0123456789", "pem+qr+"}) {
+      byte[] data = text.getBytes(StandardCharsets.US_ASCII);
+      String payload = QRPayload.encode(data, ErrorCorrectionLevel.M);
+      if (!text.equals("pem+qr+")) {
+        assertEquals(new Base45Codec().encode(data), payload);
+      }
+      assertArrayEquals(text, data, roundTrip(data));
+    }
+  }
+
+  @Test
+  public void testReadsBase64QRCodes() throws Exception {
+    byte[] data = keyData();
+    Map<EncodeHintType, Object> hints = new HashMap<>();
+    hints.put(EncodeHintType.CHARACTER_SET, BinaryToQRCodeStringCodec.CHARSET);
+    ByteArrayOutputStream image = new ByteArrayOutputStream();
+    MatrixToImageWriter.writeToStream(
+        new QRCodeWriter()
+            .encode(
+                new BinaryToQRCodeStringCodec().encode(data), BarcodeFormat.QR_CODE, 0, 0, hints),
+        "PNG",
+        image);
+    assertArrayEquals(data, new QRCodeCodec().decode(image.toByteArray()));
+  }
+
+  @Test
+  public void testSmallerThanBase64() throws Exception {
+    byte[] data = keyData();
+    Map<EncodeHintType, Object> hints = new HashMap<>();
+    hints.put(EncodeHintType.CHARACTER_SET, BinaryToQRCodeStringCodec.CHARSET);
+    hints.put(EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.M);
+    int base64 =
+        new QRCodeWriter()
+            .encode(
+                new BinaryToQRCodeStringCodec().encode(data), BarcodeFormat.QR_CODE, 0, 0, hints)
+            .getWidth();
+    int width = ImageIO.read(new ByteArrayInputStream(new QRCodeCodec().encode(data))).getWidth();
+    assertTrue(width + " < " + base64, width < base64);
+  }
+
+  @Test
+  public void testVersionAgreesWithTheEncoder() throws Exception {
+    Random random = new Random(19);
+    for (ErrorCorrectionLevel level : ErrorCorrectionLevel.values()) {
+      for (int length = 1; length < 1200; length += 37) {
+        byte[] data = new byte[length];
+        random.nextBytes(data);
+        data[0] = (byte) 0xff;
+        String raw = new String(data, StandardCharsets.ISO_8859_1);
+        int expected = QRPayload.version(Mode.BYTE, length * 8, level);
+        if (expected == Integer.MAX_VALUE) {
+          continue;
+        }
+        assertEquals(
+            level + " " + length,
+            expected,
+            Encoder.encode(raw, level).getVersion().getVersionNumber());
+        String base45 = new Base45Codec().encode(data);
+        int base45Bits = base45.length() / 2 * 11 + base45.length() % 2 * 6;
+        assertEquals(
+            level + " " + length,
+            QRPayload.version(Mode.ALPHANUMERIC, base45Bits, level),
+            Encoder.encode(base45, level).getVersion().getVersionNumber());
+      }
+    }
+  }
+
+  /** A rotated, scaled and dim copy of the QR code, as from a scan, is not a pure barcode */
+  @Test
+  public void testReadsScannedImages() throws Exception {
+    byte[] data = keyData();
+    BufferedImage render = ImageIO.read(new ByteArrayInputStream(new QRCodeCodec().encode(data)));
+    BufferedImage scan = new BufferedImage(520, 520, BufferedImage.TYPE_INT_RGB);
+    Graphics2D graphics = scan.createGraphics();
+    graphics.setColor(new Color(0xd8d0c0));
+    graphics.fillRect(0, 0, scan.getWidth(), scan.getHeight());
+    graphics.setRenderingHint(
+        RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+    graphics.rotate(Math.toRadians(7), 260, 260);
+    graphics.drawImage(render, 60, 60, 400, 400, null);
+    graphics.dispose();
+
+    List<Result> results = QRCodeScanner.scan(scan, Runnable::run);
+    assertEquals(1, results.size());
+    assertArrayEquals(data, QRPayload.decode(results.get(0).getText()));
+    ByteArrayOutputStream png = new ByteArrayOutputStream();
+    ImageIO.write(scan, "PNG", png);
+    assertArrayEquals(data, new QRCodeCodec().decode(png.toByteArray()));
+  }
+
+  @Test
+  public void testRejectsImagesWithoutQRCodes() throws Exception {
+    try {
+      QRCodeScanner.scan(new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB));
+      fail();
+    } catch (DecoderException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testSplitsPayloadsLargerThanTheMaxVersion() throws Exception {
+    byte[] data = randomData(1500);
+    QRCodeCodec codec = new QRCodeCodec().withLevel(QRCodeCodec.Level.H).withMaxVersion(10);
+    byte[] image = codec.encode(data);
+    int capacity = QRPayload.byteCapacity(10, ErrorCorrectionLevel.H);
+    assertEquals(
+        (data.length + capacity - QRStructuredAppend.HEADER_LENGTH - 1)
+            / (capacity - QRStructuredAppend.HEADER_LENGTH),
+        QRCodeScanner.scan(ImageIO.read(new ByteArrayInputStream(image))).size());
+    assertArrayEquals(data, codec.decode(image));
+  }
+
+  @Test
+  public void testSplitsPayloadsLargerThanAnyQRCode() throws Exception {
+    byte[] data = randomData(4000);
+    assertArrayEquals(data, roundTrip(data));
+  }
+
+  @Test
+  public void testReadsPartsFromSeveralImagesInAnyOrder() throws Exception {
+    byte[] data = randomData(600);
+    List<byte[]> parts =
+        QRStructuredAppend.split(data, QRPayload.byteCapacity(5, ErrorCorrectionLevel.M));
+    assertTrue(parts.size() > 1);
+    Collections.shuffle(parts, new Random(22));
+    ByteArrayOutputStream images = new ByteArrayOutputStream();
+    for (byte[] part : parts) {
+      new QRCodePNGWriter()
+          .write(
+              QRCodeCodec.encodeSymbol(
+                  QRPayload.encode(part, ErrorCorrectionLevel.M), ErrorCorrectionLevel.M),
+              images);
+    }
+    assertArrayEquals(data, new QRCodeCodec().decode(images.toByteArray()));
+  }
+
+  @Test
+  public void testStoresPayloadsStartingWithTheMarkerAsParts() throws Exception {
+    byte[] data = {QRStructuredAppend.MARKER, 1, 2, 3};
+    assertArrayEquals(data, roundTrip(data));
+  }
+
+  @Test
+  public void testRejectsIncompleteParts() throws Exception {
+    List<byte[]> parts = QRStructuredAppend.split(randomData(300), 120);
+    try {
+      QRStructuredAppend.join(parts.subList(1, parts.size()));
+      fail();
+    } catch (DecoderException e) {
+      assertEquals("Missing QR code for part 1 of 3", e.getMessage());
+    }
+    List<byte[]> mixed = new ArrayList<>(parts.subList(1, parts.size()));
+    mixed.add(QRStructuredAppend.split(randomData(301), 120).get(0));
+    try {
+      QRStructuredAppend.join(mixed);
+      fail();
+    } catch (DecoderException e) {
+      assertEquals("QR codes of different payloads", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testInvalidMaxVersion() {
+    for (int version : new int[] {0, 41}) {
+      try {
+        new QRCodeCodec().withMaxVersion(version);
+        fail();
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+    }
+  }
+
+  private static byte[] roundTrip(byte[] data) throws Exception {
+    QRCodeCodec codec = new QRCodeCodec();
+    return codec.decode(codec.encode(data));
+  }
+
+  /** Starts with a byte outside of Base45 and Base64, so it is stored as it is */
+  private static byte[] randomData(int length) {
+    byte[] data = new byte[length];
+    new Random(length).nextBytes(data);
+    data[0] = (byte) 0xff;
+    return data;
+  }
+
+  private static byte[] keyData() throws Exception {
+    return ProtocolFactory.getLatest()
+        .encodeSqueezedKey(TestKey.SQUEEZE_KEY, SqueezeType.PRIME_PQ_WITH_EXPONENT);
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.codec;
+
+import com.google.zxing.common.BitMatrix;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.fail;
+import static org.junit.Assert.assertArrayEquals;
+
+public class QRCodePNGWriterTest {
+
+  @Test
+  public void testPixels() throws Exception {
+    // odd sizes, so rows end in padding bits
+    BitMatrix matrix = new BitMatrix(11, 7);
+    Random random = new Random(21);
+    for (int y = 0; y < matrix.getHeight(); ++y) {
+      for (int x = 0; x < matrix.getWidth(); ++x) {
+        if (random.nextBoolean()) {
+          matrix.set(x, y);
+        }
+      }
+    }
+    for (int moduleSize : new int[] {1, 3}) {
+      for (int quietZone : new int[] {0, 2}) {
+        BufferedImage image = write(new QRCodePNGWriter(moduleSize, quietZone), matrix);
+        assertEquals((11 + 2 * quietZone) * moduleSize, image.getWidth());
+        assertEquals((7 + 2 * quietZone) * moduleSize, image.getHeight());
+        for (int y = 0; y < image.getHeight(); ++y) {
+          for (int x = 0; x < image.getWidth(); ++x) {
+            int moduleX = x / moduleSize - quietZone;
+            int moduleY = y / moduleSize - quietZone;
+            boolean dark =
+                moduleX >= 0
+                    && moduleY >= 0
+                    && moduleX < matrix.getWidth()
+                    && moduleY < matrix.getHeight()
+                    && matrix.get(moduleX, moduleY);
+            assertEquals(dark ? 0 : 0xffffff, image.getRGB(x, y) & 0xffffff);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testCodecRoundTrips() throws Exception {
+    byte[] data = new byte[300];
+    new Random(21).nextBytes(data);
+    QRCodeCodec codec = new QRCodeCodec().withModuleSize(4).withQuietZone(1);
+    byte[] png = codec.encode(data);
+    BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+    assertEquals(0, image.getWidth() % 4);
+    assertArrayEquals(data, codec.decode(png));
+  }
+
+  @Test
+  public void testRejectsInvalidSizes() {
+    for (int[] sizes : new int[][] {{0, 4}, {1, -1}}) {
+      try {
+        new QRCodePNGWriter(sizes[0], sizes[1]);
+        fail();
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRejectsHugeImages() throws Exception {
+    new QRCodePNGWriter(1 << 12, 4).write(new BitMatrix(21), new ByteArrayOutputStream());
+  }
+
+  private static BufferedImage write(QRCodePNGWriter writer, BitMatrix matrix) throws Exception {
+    ByteArrayOutputStream png = new ByteArrayOutputStream();
+    writer.write(matrix, png);
+    return ImageIO.read(new ByteArrayInputStream(png.toByteArray()));
+  }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.codec;
+
+import com.google.zxing.Result;
+import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
+import static junit.framework.TestCase.fail;
+
+public class QRCodeSheetTest {
+
+  @Test
+  public void testPageSize() throws Exception {
+    QRCodeSheet sheet = new QRCodeSheet(QRCodeSheet.PaperSize.A4, 300, 0.5);
+    assertEquals(2480, sheet.getWidth());
+    assertEquals(3508, sheet.getHeight());
+    assertEquals(6, sheet.getModuleSize());
+    assertEquals(1, new QRCodeSheet(QRCodeSheet.PaperSize.LETTER, 20, 0.1).getModuleSize());
+
+    ByteArrayOutputStream png = new ByteArrayOutputStream();
+    sheet.write(png);
+    try (ImageInputStream input =
+        ImageIO.createImageInputStream(new ByteArrayInputStream(png.toByteArray()))) {
+      ImageReader reader = ImageIO.getImageReaders(input).next();
+      reader.setInput(input);
+      assertEquals(2480, reader.getWidth(0));
+      assertEquals(3508, reader.getHeight(0));
+      IIOMetadata metadata = reader.getImageMetadata(0);
+      // millimeters per pixel, as ImageIO has it
+      String pixelSize =
+          ((IIOMetadataNode) metadata.getAsTree("javax_imageio_1.0"))
+              .getElementsByTagName("HorizontalPixelSize")
+              .item(0)
+              .getAttributes()
+              .getNamedItem("value")
+              .getNodeValue();
+      assertEquals(25.4 / 300, Double.parseDouble(pixelSize), 1e-4);
+    }
+  }
+
+  @Test
+  public void testReadsEveryCodeOfAFullPage() throws Exception {
+    QRCodeSheet sheet = new QRCodeSheet(QRCodeSheet.PaperSize.A4, 100, 0.5);
+    Random random = new Random(24);
+    Set<String> texts = new HashSet<>();
+    for (int length = 10; ; length += 7) {
+      byte[] data = new byte[length];
+      random.nextBytes(data);
+      data[0] = (byte) 0xff;
+      String text = QRPayload.encode(data, ErrorCorrectionLevel.M);
+      if (!sheet.add(QRCodeCodec.encodeSymbol(text, ErrorCorrectionLevel.M), "0a1b2c3d 1/2")) {
+        break;
+      }
+      texts.add(text);
+    }
+    assertTrue(texts.size() > 10);
+
+    List<Result> results = QRCodeScanner.scanPage(render(sheet), Runnable::run);
+    Set<String> read = new HashSet<>();
+    for (Result result : results) {
+      read.add(result.getText());
+    }
+    assertEquals(texts, read);
+  }
+
+  /** Labels are cut into tiles of a few glyphs, many pixels tall at large modules */
+  @Test
+  public void testReadsLabelledCodesOfLargeModulesTileByTile() throws Exception {
+    QRCodeSheet sheet = new QRCodeSheet(QRCodeSheet.PaperSize.A4, 300, 1);
+    Random random = new Random(23);
+    Set<String> texts = new HashSet<>();
+    for (int i = 0; i < 6; ++i) {
+      byte[] data = new byte[100];
+      random.nextBytes(data);
+      data[0] = (byte) 0xff;
+      String text = QRPayload.encode(data, ErrorCorrectionLevel.M);
+      assertTrue(
+          sheet.add(
+              QRCodeCodec.encodeSymbol(text, ErrorCorrectionLevel.M), "0a1b2c3d " + i + "/6"));
+      texts.add(text);
+    }
+    BufferedImage page = render(sheet);
+    QRCodeScanner.Tiling tiling = QRCodeScanner.tiles(new BufferedImageLuminanceSource(page));
+    assertEquals(sheet.getModuleSize(), tiling.moduleSize);
+    assertTrue(tiling.tiles.size() > texts.size());
+
+    AtomicInteger reads = new AtomicInteger();
+    List<Result> results =
+        QRCodeScanner.scanPage(
+            page,
+            read -> {
+              reads.incrementAndGet();
+              read.run();
+            });
+    Set<String> read = new HashSet<>();
+    for (Result result : results) {
+      read.add(result.getText());
+    }
+    assertEquals(texts, read);
+    // a read per tile, and none of the whole page
+    assertEquals(tiling.tiles.size(), reads.get());
+  }
+
+  @Test
+  public void testBlankPage() throws Exception {
+    QRCodeSheet sheet = new QRCodeSheet(QRCodeSheet.PaperSize.LETTER, 50, 1);
+    assertTrue(sheet.isEmpty());
+    assertTrue(QRCodeScanner.scanPage(render(sheet), Runnable::run).isEmpty());
+  }
+
+  @Test
+  public void testRejectsCodesLargerThanThePage() throws Exception {
+    QRCodeSheet sheet = new QRCodeSheet(QRCodeSheet.PaperSize.A4, 50, 2);
+    BitMatrix symbol =
+        QRCodeCodec.encodeSymbol(
+            new String(new char[1000]).replace('\0', 'A'), ErrorCorrectionLevel.L);
+    try {
+      sheet.add(symbol, "");
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    assertTrue(sheet.isEmpty());
+  }
+
+  @Test
+  public void testRejectsLabelsOutsideOfTheFont() throws Exception {
+    QRCodeSheet sheet = new QRCodeSheet(QRCodeSheet.PaperSize.A4, 300, 0.5);
+    BitMatrix symbol = QRCodeCodec.encodeSymbol("HELLO", ErrorCorrectionLevel.M);
+    try {
+      sheet.add(symbol, "Key 1");
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    assertTrue(sheet.add(symbol, "0123456789abcdef/- "));
+  }
+
+  @Test
+  public void testInvalidSizes() {
+    for (double[] size : new double[][] {{0, 0.5}, {300, 0}, {300, Double.NaN}}) {
+      try {
+        new QRCodeSheet(QRCodeSheet.PaperSize.A4, (int) size[0], size[1]);
+        fail();
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+    }
+  }
+
+  private static BufferedImage render(QRCodeSheet sheet) throws Exception {
+    ByteArrayOutputStream png = new ByteArrayOutputStream();
+    sheet.write(png);
+    return ImageIO.read(new ByteArrayInputStream(png.toByteArray()));
+  }
+}
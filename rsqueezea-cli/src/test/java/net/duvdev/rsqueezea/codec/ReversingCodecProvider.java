@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.codec;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Set;
+
+/** A codec from outside of the built-in ones, registered in the test resources */
+public final class ReversingCodecProvider implements CodecProvider {
+
+  public static final String NAME = "REVERSE";
+
+  private final StreamingCodec codec = new ReversingCodec();
+
+  @Override
+  public Set<String> getNames() {
+    return Collections.singleton(NAME);
+  }
+
+  @Override
+  public StreamingCodec getCodec(String name) {
+    return codec;
+  }
+
+  /** Writes the bytes in reverse order */
+  static final class ReversingCodec implements StreamingCodec {
+    @Override
+    public void encode(ByteBuffer decoded, OutputStream output) throws IOException {
+      for (int i = decoded.limit() - 1; i >= decoded.position(); --i) {
+        output.write(decoded.get(i));
+      }
+      output.flush();
+    }
+
+    @Override
+    public ByteBuffer decode(InputStream input) throws IOException {
+      ByteBuffer encoded = ByteBuffer.wrap(IOUtils.toByteArray(input));
+      ByteArrayOutputStream decoded = new ByteArrayOutputStream(encoded.remaining());
+      encode(encoded, decoded);
+      return ByteBuffer.wrap(decoded.toByteArray());
+    }
+  }
+}
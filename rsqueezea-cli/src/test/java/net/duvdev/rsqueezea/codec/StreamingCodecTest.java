@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.codec;
+
+import net.duvdev.rsqueezea.TestKey;
+import net.duvdev.rsqueezea.protocol.DecodingLimits;
+import net.duvdev.rsqueezea.protocol.ProtocolFactory;
+import net.duvdev.rsqueezea.protocol.SqueezeType;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertSame;
+import static junit.framework.TestCase.fail;
+import static org.junit.Assert.assertArrayEquals;
+
+@RunWith(Parameterized.class)
+public class StreamingCodecTest {
+
+  private final StreamingCodec codec;
+
+  private final byte[] data;
+
+  public StreamingCodecTest(String name, StreamingCodec codec) throws IOException {
+    this.codec = codec;
+    this.data =
+        ProtocolFactory.getLatest()
+            .encodeSqueezedKey(TestKey.SQUEEZE_KEY, SqueezeType.PRIME_PQ_WITH_EXPONENT);
+  }
+
+  @Parameterized.Parameters(name = "{0}")
+  public static Collection<Object[]> data() {
+    List<Object[]> data = new ArrayList<>();
+    for (CodecFactory.CodecType codecType : CodecFactory.CodecType.values()) {
+      data.add(new Object[] {codecType.name(), CodecFactory.getCodec(codecType)});
+    }
+    data.add(new Object[] {"buffering", StreamingCodec.of(new Base64Codec())});
+    return data;
+  }
+
+  @Test
+  public void testStreamsWhatTheArrayMethodsEncode() throws Exception {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    codec.encode(ByteBuffer.wrap(data), output);
+    assertArrayEquals(codec.encode(data), output.toByteArray());
+
+    ByteBuffer decoded = codec.decode(new ByteArrayInputStream(output.toByteArray()));
+    assertEquals(ByteBuffer.wrap(data), decoded);
+    assertArrayEquals(data, codec.decode(output.toByteArray()));
+  }
+
+  @Test
+  public void testEncodesTheRemainingBytesOnly() throws Exception {
+    byte[] padded = new byte[data.length + 10];
+    System.arraycopy(data, 0, padded, 7, data.length);
+    ByteBuffer buffer = ByteBuffer.wrap(padded, 7, data.length);
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    codec.encode(buffer.slice(), output);
+    assertArrayEquals(codec.encode(data), output.toByteArray());
+    assertEquals(7, buffer.position());
+  }
+
+  @Test
+  public void testDecodingStopsAtTheInputLimit() throws Exception {
+    byte[] encoded = codec.encode(data);
+    DecodingLimits limits = DecodingLimits.DEFAULT.withMaxInputBytes(encoded.length / 2);
+    try {
+      codec.decode(limits.limitInput(new ByteArrayInputStream(encoded)));
+      fail();
+    } catch (IOException | DecoderException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testStreamingCodecsAreNotWrapped() {
+    assertSame(codec, StreamingCodec.of(codec));
+  }
+
+  /** A codec with the byte array methods only */
+  private static final class Base64Codec implements Codec<byte[], byte[]> {
+    @Override
+    public byte[] decode(byte[] encoded) throws DecoderException {
+      return org.bouncycastle.util.encoders.Base64.decode(encoded);
+    }
+
+    @Override
+    public byte[] encode(byte[] decoded) throws EncoderException {
+      return org.bouncycastle.util.encoders.Base64.encode(decoded);
+    }
+  }
+}
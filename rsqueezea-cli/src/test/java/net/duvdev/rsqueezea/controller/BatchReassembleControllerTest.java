@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.controller;
+
+import net.duvdev.rsqueezea.codec.CodecChain;
+import net.duvdev.rsqueezea.codec.CodecFactory;
+import net.duvdev.rsqueezea.codec.QRCodeCodec;
+import net.duvdev.rsqueezea.codec.StreamingCodec;
+import net.duvdev.rsqueezea.loader.PKCS1PrivateKeyLoader;
+import net.duvdev.rsqueezea.model.ModulusFingerprint;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
+import static junit.framework.TestCase.fail;
+import static org.junit.Assert.assertArrayEquals;
+
+public class BatchReassembleControllerTest {
+
+  private static final String FORMAT = "DER+CRC+QR";
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private final SecureRandom random = new SecureRandom();
+
+  @Test
+  public void reassemblesEveryKeyOnThePages() throws Exception {
+    List<byte[]> keys = new ArrayList<>();
+    List<BufferedImage> codes = new ArrayList<>();
+    for (int i = 0; i < 4; ++i) {
+      codes.add(generate(CodecFactory.getCodec(FORMAT), keys));
+    }
+    // split across QR codes of version 1, in two columns, and cut between them
+    BufferedImage split =
+        generate(
+            new CodecChain(
+                Arrays.asList(
+                    CodecFactory.getCodec("DER+CRC"),
+                    new QRCodeCodec().withLevel(QRCodeCodec.Level.L).withMaxVersion(1))),
+            keys);
+    int half = split.getWidth() / 2;
+    Path pages = folder.newFolder("pages").toPath();
+    writePage(pages.resolve("page-1.png"), codes);
+    writePage(
+        pages.resolve("page-2.png"),
+        Arrays.asList(split.getSubimage(0, 0, half, split.getHeight()), codes.get(0)));
+    writePage(
+        pages.resolve("page-3.png"),
+        Collections.singletonList(
+            split.getSubimage(half, 0, split.getWidth() - half, split.getHeight())));
+    Files.write(pages.resolve("notes.txt"), "not a page".getBytes(StandardCharsets.US_ASCII));
+
+    Path output = folder.getRoot().toPath().resolve("keys");
+    ByteArrayOutputStream report = new ByteArrayOutputStream();
+    new BatchReassembleController(
+            CodecFactory.getCodec(FORMAT), output, new PrintStream(report, true, "UTF-8"))
+        .run(Collections.singletonList(pages));
+
+    String lines = new String(report.toByteArray(), StandardCharsets.UTF_8);
+    assertEquals(lines, 6, lines.split("\n").length);
+    assertTrue(lines, !lines.contains("FAILED"));
+    assertEquals(keys.size(), output.toFile().list().length);
+    for (byte[] key : keys) {
+      assertArrayEquals(key, Files.readAllBytes(output.resolve(fingerprint(key) + ".pem")));
+      assertTrue(lines, lines.contains(fingerprint(key) + "\t"));
+    }
+  }
+
+  @Test
+  public void reportsMissingPartsAndUnreadablePages() throws Exception {
+    List<byte[]> keys = new ArrayList<>();
+    BufferedImage code = generate(CodecFactory.getCodec(FORMAT), keys);
+    BufferedImage split =
+        generate(
+            new CodecChain(
+                Arrays.asList(
+                    CodecFactory.getCodec("DER+CRC"),
+                    new QRCodeCodec().withLevel(QRCodeCodec.Level.L).withMaxVersion(1))),
+            new ArrayList<>());
+    Path pages = folder.newFolder("pages").toPath();
+    Path page = pages.resolve("page-1.png");
+    writePage(
+        page,
+        Arrays.asList(code, split.getSubimage(0, 0, split.getWidth() / 2, split.getHeight())));
+    Path broken = pages.resolve("page-2.png");
+    Files.write(broken, "not a page".getBytes(StandardCharsets.US_ASCII));
+
+    Path output = folder.getRoot().toPath().resolve("keys");
+    ByteArrayOutputStream report = new ByteArrayOutputStream();
+    try {
+      new BatchReassembleController(
+              CodecFactory.getCodec(FORMAT), output, new PrintStream(report, true, "UTF-8"))
+          .run(Arrays.asList(page, broken));
+      fail();
+    } catch (IOException e) {
+      assertEquals("2 keys, pages or QR codes failed", e.getMessage());
+    }
+    String lines = new String(report.toByteArray(), StandardCharsets.UTF_8);
+    assertTrue(lines, lines.contains("FAILED\tpage-2.png\tNot an image in a supported format"));
+    assertTrue(lines, lines.contains("FAILED\t-\tOnly parts 1, 3 of 4"));
+    assertArrayEquals(
+        keys.get(0), Files.readAllBytes(output.resolve(fingerprint(keys.get(0)) + ".pem")));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsFormatsThatDoNotEndInQR() {
+    new BatchReassembleController(
+        CodecFactory.getCodec("QR+PEM"), folder.getRoot().toPath(), System.out);
+  }
+
+  /** @return The image of the squeezed key, whose PEM is added to the keys */
+  private BufferedImage generate(StreamingCodec codec, List<byte[]> keys) throws Exception {
+    ByteArrayOutputStream privateKey = new ByteArrayOutputStream();
+    ByteArrayOutputStream squeezed = new ByteArrayOutputStream();
+    new GenerateController(1024, random, codec, privateKey, squeezed, true).run();
+    keys.add(privateKey.toByteArray());
+    return ImageIO.read(new ByteArrayInputStream(squeezed.toByteArray()));
+  }
+
+  /** Prints the codes side by side, at 3 pixels per module, as a page would be */
+  private static void writePage(Path page, List<BufferedImage> codes) throws IOException {
+    int width = 40;
+    int height = 0;
+    for (BufferedImage code : codes) {
+      width += code.getWidth() * 3 + 40;
+      height = Math.max(height, code.getHeight() * 3 + 80);
+    }
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+    Graphics2D graphics = image.createGraphics();
+    graphics.setColor(Color.WHITE);
+    graphics.fillRect(0, 0, width, height);
+    int left = 40;
+    for (BufferedImage code : codes) {
+      graphics.drawImage(code, left, 40, code.getWidth() * 3, code.getHeight() * 3, null);
+      left += code.getWidth() * 3 + 40;
+    }
+    graphics.dispose();
+    ImageIO.write(image, "PNG", page.toFile());
+  }
+
+  private static ModulusFingerprint fingerprint(byte[] pem) throws IOException {
+    return ModulusFingerprint.of(
+        new PKCS1PrivateKeyLoader(new ByteArrayInputStream(pem)).loadKeySpec().getModulus());
+  }
+}
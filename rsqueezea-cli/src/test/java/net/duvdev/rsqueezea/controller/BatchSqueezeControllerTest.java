@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.controller;
+
+import net.duvdev.rsqueezea.codec.Codec;
+import net.duvdev.rsqueezea.codec.CodecChain;
+import net.duvdev.rsqueezea.codec.CodecFactory;
+import net.duvdev.rsqueezea.codec.QRCodeCodec;
+import net.duvdev.rsqueezea.codec.QRCodeSheet;
+import net.duvdev.rsqueezea.protocol.SqueezeType;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
+import static junit.framework.TestCase.fail;
+
+public class BatchSqueezeControllerTest {
+
+  private static final String FORMAT = "DER+CRC+QR";
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void writesPagesThatReassemble() throws Exception {
+    Path keys = folder.newFolder("keys").toPath();
+    List<byte[]> pems = generate(keys, 12);
+    Path pages = folder.getRoot().toPath().resolve("pages");
+    // nine keys to a page
+    String report =
+        squeeze(
+            CodecFactory.getCodec(FORMAT),
+            () -> new QRCodeSheet(QRCodeSheet.PaperSize.LETTER, 100, 1),
+            keys,
+            pages);
+    assertEquals(report, pems.size(), report.split("\n").length);
+    assertTrue(report, !report.contains("FAILED"));
+    assertTrue(report, report.contains("\tpage-0002.png"));
+    assertTrue(Files.exists(pages.resolve("page-0001.png")));
+
+    assertReassemble(pages, CodecFactory.getCodec(FORMAT), pems);
+  }
+
+  @Test
+  public void splitsLargeKeysAcrossCodes() throws Exception {
+    Path keys = folder.newFolder("keys").toPath();
+    List<byte[]> pems = generate(keys, 2);
+    Path pages = folder.getRoot().toPath().resolve("pages");
+    squeeze(
+        new CodecChain(
+            Arrays.asList(CodecFactory.getCodec("DER+CRC"), new QRCodeCodec().withMaxVersion(3))),
+        () -> new QRCodeSheet(QRCodeSheet.PaperSize.A4, 100, 0.5),
+        keys,
+        pages);
+    assertReassemble(pages, CodecFactory.getCodec(FORMAT), pems);
+  }
+
+  @Test
+  public void reportsEveryPageOfAKey() throws Exception {
+    Path keys = folder.newFolder("keys").toPath();
+    List<byte[]> pems = generate(keys, 2);
+    Path pages = folder.getRoot().toPath().resolve("pages");
+    // three codes to a page, and several codes to a key
+    String report =
+        squeeze(
+            new CodecChain(
+                Arrays.asList(
+                    CodecFactory.getCodec("DER+CRC"), new QRCodeCodec().withMaxVersion(3))),
+            () -> new QRCodeSheet(QRCodeSheet.PaperSize.A4, 100, 1.5),
+            keys,
+            pages);
+    for (String line : report.split("\n")) {
+      assertTrue(line, line.split("\t")[2].contains(","));
+    }
+    assertTrue(report, report.contains("\tpage-0001.png,page-0002.png"));
+    assertReassemble(pages, CodecFactory.getCodec(FORMAT), pems);
+  }
+
+  @Test
+  public void reportsKeysThatFail() throws Exception {
+    Path keys = folder.newFolder("keys").toPath();
+    List<byte[]> pems = generate(keys, 1);
+    Files.write(keys.resolve("broken.pem"), "not a key".getBytes(StandardCharsets.US_ASCII));
+    Path pages = folder.getRoot().toPath().resolve("pages");
+    ByteArrayOutputStream report = new ByteArrayOutputStream();
+    try {
+      new BatchSqueezeController(
+              SqueezeType.PRIME_PQ_WITH_EXPONENT,
+              CodecFactory.getCodec(FORMAT),
+              false,
+              () -> new QRCodeSheet(QRCodeSheet.PaperSize.A4, 100, 0.5),
+              pages,
+              new PrintStream(report, true, "UTF-8"))
+          .run(Collections.singletonList(keys));
+      fail();
+    } catch (IOException e) {
+      assertEquals("1 keys failed", e.getMessage());
+    }
+    String lines = new String(report.toByteArray(), StandardCharsets.UTF_8);
+    assertTrue(lines, lines.startsWith("FAILED\tbroken.pem\t"));
+    assertReassemble(pages, CodecFactory.getCodec(FORMAT), pems);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsFormatsThatDoNotEndInQR() {
+    new BatchSqueezeController(
+        SqueezeType.PRIME_PQ_WITH_EXPONENT,
+        CodecFactory.getCodec("DER+CRC"),
+        false,
+        () -> new QRCodeSheet(QRCodeSheet.PaperSize.A4, 100, 0.5),
+        folder.getRoot().toPath(),
+        System.out);
+  }
+
+  /** @return The PEMs of the keys, written to the directory */
+  private static List<byte[]> generate(Path directory, int count) throws Exception {
+    SecureRandom random = new SecureRandom();
+    List<byte[]> pems = new ArrayList<>(count);
+    for (int i = 0; i < count; ++i) {
+      ByteArrayOutputStream privateKey = new ByteArrayOutputStream();
+      new GenerateController(
+              1024,
+              random,
+              CodecFactory.getCodec("DER"),
+              privateKey,
+              new ByteArrayOutputStream(),
+              false)
+          .run();
+      pems.add(privateKey.toByteArray());
+      Files.write(directory.resolve(String.format("key-%02d.pem", i)), privateKey.toByteArray());
+    }
+    return pems;
+  }
+
+  /** @return The report of the run */
+  private static String squeeze(
+      Codec<byte[], byte[]> codec, Supplier<QRCodeSheet> sheets, Path keys, Path pages)
+      throws IOException {
+    ByteArrayOutputStream report = new ByteArrayOutputStream();
+    new BatchSqueezeController(
+            SqueezeType.PRIME_PQ_WITH_EXPONENT,
+            codec,
+            true,
+            sheets,
+            pages,
+            new PrintStream(report, true, "UTF-8"))
+        .run(Collections.singletonList(keys));
+    return new String(report.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  /** Reads the pages back, and checks that they hold the keys, and no other */
+  private void assertReassemble(Path pages, Codec<byte[], byte[]> codec, List<byte[]> pems)
+      throws Exception {
+    Path output = folder.getRoot().toPath().resolve("reassembled");
+    new BatchReassembleController(codec, output, new PrintStream(new ByteArrayOutputStream()))
+        .run(Collections.singletonList(pages));
+    List<byte[]> reassembled = new ArrayList<>();
+    for (Path key :
+        BatchReassembleController.expand(Collections.singletonList(output), file -> true)) {
+      reassembled.add(Files.readAllBytes(key));
+    }
+    assertEquals(pems.size(), reassembled.size());
+    for (byte[] pem : pems) {
+      assertTrue(reassembled.stream().anyMatch(other -> Arrays.equals(pem, other)));
+    }
+  }
+}
@@ -36,6 +36,7 @@ public class E2ETest {
     List<Object[]> data = new ArrayList<>();
     for (CodecFactory.CodecType codecType : CodecFactory.CodecType.values()) {
       data.add(new Object[] {SqueezeType.PRIME_P, TestKey.PUBLIC_KEY, codecType});
+      data.add(new Object[] {SqueezeType.PRIME_P_HIGH_BITS, TestKey.PUBLIC_KEY, codecType});
       data.add(new Object[] {SqueezeType.PRIME_WITH_MODULUS, null, codecType});
       data.add(new Object[] {SqueezeType.PRIME_PQ_WITH_EXPONENT, null, codecType});
     }
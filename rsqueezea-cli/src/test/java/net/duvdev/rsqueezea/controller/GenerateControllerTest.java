@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.controller;
+
+import net.duvdev.rsqueezea.TestKey;
+import net.duvdev.rsqueezea.codec.CodecFactory;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+
+@RunWith(Parameterized.class)
+public class GenerateControllerTest {
+
+  private final CodecFactory.CodecType format;
+
+  public GenerateControllerTest(CodecFactory.CodecType format) {
+    this.format = format;
+  }
+
+  @Parameterized.Parameters(name = "{0}")
+  public static Collection<Object[]> data() {
+    List<Object[]> data = new ArrayList<>();
+    for (CodecFactory.CodecType codecType : CodecFactory.CodecType.values()) {
+      data.add(new Object[] {codecType});
+    }
+    return data;
+  }
+
+  @Test
+  public void reassemblesTheGeneratedKey() throws Exception {
+    ByteArrayOutputStream privateKey = new ByteArrayOutputStream();
+    ByteArrayOutputStream squeezed = new ByteArrayOutputStream();
+    new GenerateController(
+            1024, new SecureRandom(), CodecFactory.getCodec(format), privateKey, squeezed, true)
+        .run();
+
+    ByteArrayOutputStream reassembled = new ByteArrayOutputStream();
+    new ReassembleController(
+            null,
+            new ByteArrayInputStream(squeezed.toByteArray()),
+            CodecFactory.getCodec(format),
+            reassembled)
+        .run();
+    assertArrayEquals(privateKey.toByteArray(), reassembled.toByteArray());
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectsTheWrongPublicKey() throws Exception {
+    ByteArrayOutputStream squeezed = new ByteArrayOutputStream();
+    new GenerateController(
+            1024,
+            new SecureRandom(),
+            CodecFactory.getCodec(format),
+            new ByteArrayOutputStream(),
+            squeezed,
+            false)
+        .run();
+    new ReassembleController(
+            TestKey.PUBLIC_KEY,
+            new ByteArrayInputStream(squeezed.toByteArray()),
+            CodecFactory.getCodec(format),
+            new ByteArrayOutputStream())
+        .run();
+  }
+}
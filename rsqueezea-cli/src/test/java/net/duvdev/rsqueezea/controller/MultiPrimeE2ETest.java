@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.controller;
+
+import net.duvdev.rsqueezea.codec.CodecFactory;
+import net.duvdev.rsqueezea.loader.PKCS1PrivateKeyLoader;
+import net.duvdev.rsqueezea.protocol.SqueezeType;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.spec.RSAMultiPrimePrivateCrtKeySpec;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static junit.framework.TestCase.assertEquals;
+
+@RunWith(Parameterized.class)
+public class MultiPrimeE2ETest {
+
+  private final CodecFactory.CodecType format;
+
+  public MultiPrimeE2ETest(CodecFactory.CodecType format) {
+    this.format = format;
+  }
+
+  @Parameterized.Parameters(name = "{0}")
+  public static Collection<Object[]> data() {
+    List<Object[]> data = new ArrayList<>();
+    for (CodecFactory.CodecType codecType : CodecFactory.CodecType.values()) {
+      data.add(new Object[] {codecType});
+    }
+    return data;
+  }
+
+  @Test
+  public void endToEnd() throws Exception {
+    // squeeze, which self-tests the reassembled key
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    try (InputStream inputStream = getClass().getResourceAsStream("/multiprime.pem")) {
+      new SqueezeController(
+              new PKCS1PrivateKeyLoader(inputStream),
+              SqueezeType.PRIME_PQ_WITH_EXPONENT,
+              CodecFactory.getCodec(format),
+              outputStream)
+          .run();
+    }
+
+    // reassemble
+    ByteArrayOutputStream pkcs1OutputStream = new ByteArrayOutputStream();
+    new ReassembleController(
+            null,
+            new ByteArrayInputStream(outputStream.toByteArray()),
+            CodecFactory.getCodec(format),
+            pkcs1OutputStream)
+        .run();
+
+    RSAMultiPrimePrivateCrtKeySpec expected =
+        load(getClass().getResourceAsStream("/multiprime.pem"));
+    RSAMultiPrimePrivateCrtKeySpec actual =
+        load(new ByteArrayInputStream(pkcs1OutputStream.toByteArray()));
+    assertEquals(expected.getModulus(), actual.getModulus());
+    assertEquals(expected.getPublicExponent(), actual.getPublicExponent());
+    assertEquals(expected.getPrimeP(), actual.getPrimeP());
+    assertEquals(expected.getPrimeQ(), actual.getPrimeQ());
+    assertEquals(expected.getCrtCoefficient(), actual.getCrtCoefficient());
+    assertEquals(expected.getOtherPrimeInfo().length, actual.getOtherPrimeInfo().length);
+    for (int i = 0; i < expected.getOtherPrimeInfo().length; ++i) {
+      assertEquals(
+          expected.getOtherPrimeInfo()[i].getPrime(), actual.getOtherPrimeInfo()[i].getPrime());
+      assertEquals(
+          expected.getOtherPrimeInfo()[i].getCrtCoefficient(),
+          actual.getOtherPrimeInfo()[i].getCrtCoefficient());
+    }
+  }
+
+  private static RSAMultiPrimePrivateCrtKeySpec load(InputStream inputStream) throws IOException {
+    try (InputStream input = inputStream) {
+      return (RSAMultiPrimePrivateCrtKeySpec) new PKCS1PrivateKeyLoader(input).loadKeySpec();
+    }
+  }
+}
@@ -44,6 +44,7 @@ public class StressTest {
       for (CodecFactory.CodecType codecType : CodecFactory.CodecType.values()) {
         String keyFile = "/stress/" + i + ".key";
         data.add(new Object[] {keyFile, SqueezeType.PRIME_P, true, codecType});
+        data.add(new Object[] {keyFile, SqueezeType.PRIME_P_HIGH_BITS, true, codecType});
         data.add(new Object[] {keyFile, SqueezeType.PRIME_WITH_MODULUS, false, codecType});
         data.add(new Object[] {keyFile, SqueezeType.PRIME_PQ_WITH_EXPONENT, false, codecType});
       }
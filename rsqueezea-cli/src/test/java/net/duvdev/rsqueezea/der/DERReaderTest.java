@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.der;
+
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERSequence;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static org.junit.Assert.assertArrayEquals;
+
+public class DERReaderTest {
+
+  @Test
+  public void readsBouncyCastleIntegers() throws Exception {
+    Random random = new Random(1337);
+    for (int i = 0; i < 1000; ++i) {
+      BigInteger value = new BigInteger(random.nextInt(17000), random);
+      if (random.nextBoolean()) {
+        value = value.negate();
+      }
+      DERReader reader = new DERReader(ByteBuffer.wrap(new ASN1Integer(value).getEncoded()));
+      assertEquals(value, reader.readInteger());
+      assertFalse(reader.hasRemaining());
+    }
+  }
+
+  @Test
+  public void readsInts() throws Exception {
+    for (int value : new int[] {0, 1, -1, 127, 128, -129, 65537, Integer.MIN_VALUE}) {
+      DERReader reader = new DERReader(ByteBuffer.wrap(new ASN1Integer(value).getEncoded()));
+      assertEquals(value, reader.readIntExact());
+    }
+  }
+
+  @Test
+  public void readsSequences() throws Exception {
+    ASN1EncodableVector vector = new ASN1EncodableVector();
+    for (int i = 0; i < 100; ++i) {
+      vector.add(new ASN1Integer(BigInteger.ONE.shiftLeft(i * 8)));
+    }
+    byte[] encoded = new DERSequence(vector).getEncoded();
+    ByteBuffer buffer = ByteBuffer.allocate(encoded.length + 3);
+    buffer.put(encoded).put(new ASN1Integer(7).getEncoded());
+    buffer.flip();
+
+    DERReader reader = new DERReader(buffer);
+    DERReader sequence = reader.readSequence();
+    for (int i = 0; i < 100; ++i) {
+      assertEquals(BigInteger.ONE.shiftLeft(i * 8), sequence.readInteger());
+    }
+    assertFalse(sequence.hasRemaining());
+    assertEquals(7, reader.readIntExact());
+  }
+
+  @Test
+  public void readsOctetStrings() throws Exception {
+    byte[] contents = {0x12, 0x34, 0x56, 0x78};
+    DERReader reader = new DERReader(ByteBuffer.wrap(new DEROctetString(contents).getEncoded()));
+    assertEquals(DERWriter.TAG_OCTET_STRING, reader.peekTag());
+    assertArrayEquals(contents, reader.readOctetString());
+    assertFalse(reader.hasRemaining());
+  }
+
+  @Test
+  public void rejectsTruncated() throws Exception {
+    byte[] encoded = new ASN1Integer(BigInteger.ONE.shiftLeft(1000)).getEncoded();
+    for (int length = 0; length < encoded.length; ++length) {
+      try {
+        new DERReader(ByteBuffer.wrap(Arrays.copyOf(encoded, length))).readInteger();
+        throw new AssertionError("Read an INTEGER truncated to " + length + " bytes");
+      } catch (IOException e) {
+        // expected
+      }
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectsWrongTag() throws Exception {
+    new DERReader(ByteBuffer.wrap(new byte[] {0x04, 0x01, 0x00})).readInteger();
+  }
+}
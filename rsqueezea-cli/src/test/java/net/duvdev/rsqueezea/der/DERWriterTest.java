@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.der;
+
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERSequence;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class DERWriterTest {
+
+  @Test
+  public void integersMatchBouncyCastle() throws Exception {
+    Random random = new Random(1337);
+    for (int i = 0; i < 1000; ++i) {
+      BigInteger value = new BigInteger(random.nextInt(17000), random);
+      if (random.nextBoolean()) {
+        value = value.negate();
+      }
+      assertArrayEquals(
+          new ASN1Integer(value).getEncoded(), new DERWriter().writeInteger(value).toByteArray());
+    }
+  }
+
+  @Test
+  public void longsMatchBouncyCastle() throws Exception {
+    Random random = new Random(1337);
+    long[] values = {0, 1, -1, 127, 128, -128, -129, 255, 256, Long.MAX_VALUE, Long.MIN_VALUE};
+    for (long value : values) {
+      assertArrayEquals(
+          new ASN1Integer(value).getEncoded(), new DERWriter().writeInteger(value).toByteArray());
+    }
+    for (int i = 0; i < 1000; ++i) {
+      long value = random.nextLong() >> random.nextInt(64);
+      assertArrayEquals(
+          new ASN1Integer(value).getEncoded(), new DERWriter().writeInteger(value).toByteArray());
+    }
+  }
+
+  @Test
+  public void sequencesMatchBouncyCastle() throws Exception {
+    Random random = new Random(1337);
+    for (int count : new int[] {0, 1, 2, 9, 100}) {
+      ASN1EncodableVector expected = new ASN1EncodableVector();
+      DERWriter actual = new DERWriter();
+      for (int i = 0; i < count; ++i) {
+        BigInteger value = new BigInteger(1 + random.nextInt(4096), random);
+        expected.add(new ASN1Integer(value));
+        actual.writeInteger(value);
+      }
+      assertArrayEquals(
+          new DERSequence(expected).getEncoded(),
+          new DERWriter().writeSequence(actual).toByteArray());
+    }
+  }
+
+  @Test
+  public void octetStringsMatchBouncyCastle() throws Exception {
+    Random random = new Random(1337);
+    for (int length : new int[] {0, 1, 4, 127, 128, 300}) {
+      byte[] contents = new byte[length];
+      random.nextBytes(contents);
+      assertArrayEquals(
+          new DEROctetString(contents).getEncoded(),
+          new DERWriter().writeOctetString(contents).toByteArray());
+    }
+  }
+}
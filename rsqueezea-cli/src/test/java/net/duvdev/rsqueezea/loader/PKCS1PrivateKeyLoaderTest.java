@@ -8,7 +8,10 @@ import junit.framework.TestCase;
 import net.duvdev.rsqueezea.TestKey;
 import org.junit.Test;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.math.BigInteger;
+import java.security.spec.RSAMultiPrimePrivateCrtKeySpec;
 import java.security.spec.RSAPrivateCrtKeySpec;
 
 import static junit.framework.TestCase.assertEquals;
@@ -26,4 +29,23 @@ public class PKCS1PrivateKeyLoaderTest {
       assertEquals(TestKey.P, result.getPrimeP());
     }
   }
+
+  @Test
+  public void testLoadMultiPrime() throws Exception {
+    try (InputStream inputStream = getClass().getResourceAsStream("/multiprime.pem")) {
+      RSAMultiPrimePrivateCrtKeySpec result =
+          (RSAMultiPrimePrivateCrtKeySpec) new PKCS1PrivateKeyLoader(inputStream).loadKeySpec();
+      assertEquals(1, result.getOtherPrimeInfo().length);
+      BigInteger primeR = result.getOtherPrimeInfo()[0].getPrime();
+      assertEquals(
+          result.getModulus(), result.getPrimeP().multiply(result.getPrimeQ()).multiply(primeR));
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testLoadMultiPrimeAsTwoPrime() throws Exception {
+    try (InputStream inputStream = getClass().getResourceAsStream("/multiprime.pem")) {
+      new PKCS1PrivateKeyLoader(inputStream).load();
+    }
+  }
 }
@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.protocol;
+
+import net.duvdev.rsqueezea.TestKey;
+import net.duvdev.rsqueezea.codec.Codec;
+import net.duvdev.rsqueezea.codec.IdentityCodec;
+import net.duvdev.rsqueezea.codec.QRCodeCodec;
+import net.duvdev.rsqueezea.controller.ReassembleController;
+import net.duvdev.rsqueezea.model.SqueezedKey;
+import org.junit.Test;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.interfaces.RSAPublicKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
+import static junit.framework.TestCase.fail;
+
+public class DecodingLimitsTest {
+
+  private static final List<Protocol> PROTOCOLS = Arrays.asList(new V0Protocol(), new V1Protocol());
+
+  /** Odd, but not a prime, which decoding does not care about */
+  private static final BigInteger LONG_INTEGER =
+      BigInteger.ONE.shiftLeft(16400).add(BigInteger.ONE);
+
+  @Test
+  public void testReadInputStopsAtTheLimit() throws Exception {
+    DecodingLimits limits = DecodingLimits.DEFAULT.withMaxInputBytes(100000);
+    assertEquals(100000, limits.readInput(new ByteArrayInputStream(new byte[100000])).length);
+    try {
+      limits.readInput(new EndlessInputStream());
+      fail();
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testRejectsLongIntegers() throws Exception {
+    SqueezedKey key = new SqueezedKey(LONG_INTEGER);
+    DecodingLimits raised = DecodingLimits.DEFAULT.withMaxIntegerBits(16401);
+    for (Protocol protocol : PROTOCOLS) {
+      byte[] data = protocol.encodeSqueezedKey(key, SqueezeType.PRIME_P);
+      assertRejected(protocol, data, DecodingLimits.DEFAULT);
+      assertEquals(key, protocol.decodeSqueezedKey(ByteBuffer.wrap(data), raised));
+    }
+  }
+
+  @Test
+  public void testRejectsLongModulus() throws Exception {
+    DecodingLimits limits = DecodingLimits.DEFAULT.withMaxModulusBits(2047);
+    for (Protocol protocol : PROTOCOLS) {
+      for (SqueezeType type :
+          new SqueezeType[] {SqueezeType.PRIME_WITH_MODULUS, SqueezeType.PRIME_PQ_WITH_EXPONENT}) {
+        byte[] data = protocol.encodeSqueezedKey(TestKey.SQUEEZE_KEY, type);
+        assertRejected(protocol, data, limits);
+        assertEquals(
+            TestKey.SQUEEZE_KEY,
+            protocol.decodeSqueezedKey(ByteBuffer.wrap(data), limits.withMaxModulusBits(2048)));
+      }
+      byte[] seed = protocol.encodeSqueezedKey(TestKey.SEED_KEY, SqueezeType.SEED);
+      assertRejected(protocol, seed, limits.withMaxModulusBits(1023));
+    }
+  }
+
+  /** Many small primes multiply to a long modulus, even if every one of them is short */
+  @Test
+  public void testRejectsManyPrimes() throws Exception {
+    List<BigInteger> otherPrimes = new ArrayList<>();
+    BigInteger modulus = BigInteger.valueOf(3 * 5);
+    for (int i = 0; i < 1000; ++i) {
+      otherPrimes.add(BigInteger.valueOf(7));
+      modulus = modulus.multiply(BigInteger.valueOf(7));
+    }
+    SqueezedKey key =
+        new SqueezedKey(BigInteger.valueOf(3), modulus, BigInteger.valueOf(5), otherPrimes);
+    DecodingLimits limits = DecodingLimits.DEFAULT.withMaxModulusBits(2048);
+    for (Protocol protocol : PROTOCOLS) {
+      byte[] data = protocol.encodeSqueezedKey(key, SqueezeType.MULTI_PRIME_WITH_EXPONENT);
+      assertRejected(protocol, data, limits);
+      assertEquals(key, protocol.decodeSqueezedKey(ByteBuffer.wrap(data)));
+    }
+  }
+
+  @Test
+  public void testReassembleRejectsLargeInput() throws Exception {
+    byte[] data =
+        ProtocolFactory.getLatest()
+            .encodeSqueezedKey(TestKey.SQUEEZE_KEY, SqueezeType.PRIME_PQ_WITH_EXPONENT);
+    try {
+      reassemble(
+          null, new ByteArrayInputStream(data), DecodingLimits.DEFAULT.withMaxInputBytes(100));
+      fail();
+    } catch (IOException e) {
+      // expected
+    }
+    try {
+      reassemble(null, new EndlessInputStream(), DecodingLimits.DEFAULT);
+      fail();
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testReassembleRejectsLongPublicKey() throws Exception {
+    byte[] data =
+        ProtocolFactory.getLatest().encodeSqueezedKey(TestKey.SQUEEZE_KEY, SqueezeType.PRIME_P);
+    reassemble(
+        TestKey.PUBLIC_KEY,
+        new ByteArrayInputStream(data),
+        DecodingLimits.DEFAULT.withMaxModulusBits(1024));
+  }
+
+  @Test
+  public void testReassembleRejectsHugeImages() throws Exception {
+    // a few hundred kilobytes of PNG, claiming 1.6 billion pixels
+    byte[] png = blankPng(40000, 40000);
+    assertTrue(png.length < DecodingLimits.DEFAULT_MAX_INPUT_BYTES);
+    try {
+      reassemble(new ByteArrayInputStream(png), new QRCodeCodec(), DecodingLimits.DEFAULT);
+      fail();
+    } catch (IOException e) {
+      assertTrue(e.getMessage(), e.getMessage().startsWith("Image of 40000x40000 pixels"));
+    }
+
+    byte[] squeezed =
+        new QRCodeCodec()
+            .encode(
+                ProtocolFactory.getLatest()
+                    .encodeSqueezedKey(TestKey.SQUEEZE_KEY, SqueezeType.PRIME_PQ_WITH_EXPONENT));
+    reassemble(new ByteArrayInputStream(squeezed), new QRCodeCodec(), DecodingLimits.DEFAULT);
+    try {
+      reassemble(
+          new ByteArrayInputStream(squeezed),
+          new QRCodeCodec(),
+          DecodingLimits.DEFAULT.withMaxImagePixels(100));
+      fail();
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  private static void reassemble(
+      @Nullable RSAPublicKey publicKey, InputStream inputStream, DecodingLimits limits)
+      throws IOException {
+    new ReassembleController(
+            publicKey, inputStream, new IdentityCodec(), new ByteArrayOutputStream(), limits)
+        .run();
+  }
+
+  private static void reassemble(
+      InputStream inputStream, Codec<byte[], byte[]> codec, DecodingLimits limits)
+      throws IOException {
+    new ReassembleController(null, inputStream, codec, new ByteArrayOutputStream(), limits).run();
+  }
+
+  /** @return A white 1-bit PNG, deflated row by row rather than drawn */
+  private static byte[] blankPng(int width, int height) throws IOException {
+    ByteArrayOutputStream png = new ByteArrayOutputStream();
+    png.write(new byte[] {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'});
+    writeChunk(
+        png,
+        "IHDR",
+        ByteBuffer.allocate(13).putInt(width).putInt(height).put(new byte[] {1, 0, 0, 0, 0}));
+    ByteArrayOutputStream data = new ByteArrayOutputStream();
+    byte[] row = new byte[1 + (width + 7) / 8];
+    Arrays.fill(row, 1, row.length, (byte) 0xff);
+    try (DeflaterOutputStream deflater =
+        new DeflaterOutputStream(data, new Deflater(Deflater.BEST_COMPRESSION))) {
+      for (int y = 0; y < height; ++y) {
+        deflater.write(row);
+      }
+    }
+    writeChunk(png, "IDAT", ByteBuffer.wrap(data.toByteArray()));
+    writeChunk(png, "IEND", ByteBuffer.allocate(0));
+    return png.toByteArray();
+  }
+
+  private static void writeChunk(ByteArrayOutputStream png, String type, ByteBuffer data) {
+    byte[] contents = new byte[4 + data.capacity()];
+    System.arraycopy(type.getBytes(StandardCharsets.US_ASCII), 0, contents, 0, 4);
+    System.arraycopy(data.array(), 0, contents, 4, data.capacity());
+    CRC32 crc = new CRC32();
+    crc.update(contents);
+    png.write(ByteBuffer.allocate(4).putInt(data.capacity()).array(), 0, 4);
+    png.write(contents, 0, contents.length);
+    png.write(ByteBuffer.allocate(4).putInt((int) crc.getValue()).array(), 0, 4);
+  }
+
+  private static void assertRejected(Protocol protocol, byte[] data, DecodingLimits limits) {
+    try {
+      protocol.decodeSqueezedKey(ByteBuffer.wrap(data), limits);
+      fail("Decoded beyond the limits with version " + protocol.getVersion());
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  /** Zeros, forever */
+  private static final class EndlessInputStream extends InputStream {
+    @Override
+    public int read() {
+      return 0;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      Arrays.fill(b, off, off + len, (byte) 0);
+      return len;
+    }
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.protocol;
+
+import net.duvdev.rsqueezea.TestKey;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertSame;
+
+public class ProtocolFactoryTest {
+
+  @Test
+  public void detectVersion0() throws Exception {
+    assertDetects(0);
+  }
+
+  @Test
+  public void detectVersion1() throws Exception {
+    assertDetects(1);
+  }
+
+  @Test
+  public void detectAtOffset() throws Exception {
+    byte[] key =
+        ProtocolFactory.getInstance(1)
+            .encodeSqueezedKey(TestKey.SQUEEZE_KEY, SqueezeType.PRIME_PQ_WITH_EXPONENT);
+    ByteBuffer buffer = ByteBuffer.allocate(key.length + 3);
+    buffer.put(new byte[] {0x02, 0x01, 0x00}).put(key).flip();
+    buffer.position(3);
+    assertEquals(TestKey.SQUEEZE_KEY, ProtocolFactory.detect(buffer).decodeSqueezedKey(buffer));
+    assertEquals(buffer.limit(), buffer.position());
+  }
+
+  @Test
+  public void instancesAreShared() {
+    assertSame(ProtocolFactory.getInstance(0), ProtocolFactory.getInstance(0));
+    assertSame(ProtocolFactory.getInstance(1), ProtocolFactory.getLatest());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void detectUnknownVersion() {
+    ProtocolFactory.detect(ByteBuffer.wrap(new byte[] {(byte) 0xF0, 0x01}));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void detectEmpty() {
+    ProtocolFactory.detect(ByteBuffer.allocate(0));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void detectTruncatedHeader() {
+    ProtocolFactory.detect(ByteBuffer.wrap(new byte[] {(byte) 0x90}));
+  }
+
+  private static void assertDetects(int version) throws Exception {
+    Protocol protocol = ProtocolFactory.getInstance(version);
+    ByteBuffer buffer =
+        ByteBuffer.wrap(
+            protocol.encodeSqueezedKey(TestKey.SQUEEZE_KEY, SqueezeType.PRIME_PQ_WITH_EXPONENT));
+    assertSame(protocol, ProtocolFactory.detect(buffer));
+    assertEquals(0, buffer.position());
+    assertEquals(TestKey.SQUEEZE_KEY, ProtocolFactory.detect(buffer).decodeSqueezedKey(buffer));
+  }
+}
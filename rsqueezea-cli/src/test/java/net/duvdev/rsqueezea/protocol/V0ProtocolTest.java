@@ -6,42 +6,123 @@ package net.duvdev.rsqueezea.protocol;
 
 import net.duvdev.rsqueezea.TestKey;
 import net.duvdev.rsqueezea.model.SqueezedKey;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.DEROutputStream;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 
 import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
 import static junit.framework.TestCase.assertNotNull;
+import static junit.framework.TestCase.assertTrue;
+import static org.junit.Assert.assertArrayEquals;
 
 @RunWith(Parameterized.class)
 public class V0ProtocolTest {
 
+  /** A toy three-prime key: 11 * 13 * 17 */
+  private static final SqueezedKey MULTI_PRIME_KEY =
+      new SqueezedKey(
+          BigInteger.valueOf(11),
+          BigInteger.valueOf(2431),
+          BigInteger.valueOf(7),
+          Collections.singletonList(BigInteger.valueOf(17)));
+
   private final SqueezeType squeezeType;
+  private final SqueezedKey input;
   private final SqueezedKey expected;
 
-  public V0ProtocolTest(SqueezeType squeezeType, SqueezedKey expected) {
+  public V0ProtocolTest(SqueezeType squeezeType, SqueezedKey input, SqueezedKey expected) {
     this.squeezeType = squeezeType;
+    this.input = input;
     this.expected = expected;
   }
 
   @Parameterized.Parameters(name = "{0}")
   public static Collection<Object[]> data() {
     return Arrays.asList(
-        new Object[] {SqueezeType.PRIME_WITH_MODULUS, TestKey.SQUEEZE_KEY},
-        new Object[] {SqueezeType.PRIME_P, new SqueezedKey(TestKey.P)},
-        new Object[] {SqueezeType.PRIME_PQ_WITH_EXPONENT, TestKey.SQUEEZE_KEY});
+        new Object[] {SqueezeType.PRIME_WITH_MODULUS, TestKey.SQUEEZE_KEY, TestKey.SQUEEZE_KEY},
+        new Object[] {SqueezeType.PRIME_P, TestKey.SQUEEZE_KEY, new SqueezedKey(TestKey.P)},
+        new Object[] {
+          SqueezeType.PRIME_P_HIGH_BITS, TestKey.SQUEEZE_KEY, TestKey.SQUEEZE_KEY.toPrimeHighBits()
+        },
+        new Object[] {SqueezeType.PRIME_PQ_WITH_EXPONENT, TestKey.SQUEEZE_KEY, TestKey.SQUEEZE_KEY},
+        new Object[] {SqueezeType.MULTI_PRIME_WITH_EXPONENT, MULTI_PRIME_KEY, MULTI_PRIME_KEY},
+        new Object[] {SqueezeType.SEED, TestKey.SEED_KEY, TestKey.SEED_KEY});
   }
 
   @Test
   public void testProtocolRoundtrip() throws Exception {
     V0Protocol protocol = new V0Protocol();
-    byte[] data = protocol.encodeSqueezedKey(TestKey.SQUEEZE_KEY, squeezeType);
+    byte[] data = protocol.encodeSqueezedKey(input, squeezeType);
     SqueezedKey actual = protocol.decodeSqueezedKey(data);
 
     assertNotNull(actual);
     assertEquals(expected, actual);
   }
+
+  /** Version 0 used to be written with BouncyCastle, the files it wrote must still be read */
+  @Test
+  public void testWireCompatibleWithBouncyCastle() throws Exception {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    DEROutputStream der = new DEROutputStream(outputStream);
+    der.writeObject(new ASN1Integer(0));
+    der.writeObject(new ASN1Integer(2));
+    der.writeObject(new ASN1Integer(TestKey.P));
+    der.writeObject(new ASN1Integer(TestKey.N.divide(TestKey.P)));
+    der.writeObject(new ASN1Integer(TestKey.E));
+    der.flush();
+    byte[] expected = outputStream.toByteArray();
+
+    V0Protocol protocol = new V0Protocol();
+    assertArrayEquals(
+        expected,
+        protocol.encodeSqueezedKey(TestKey.SQUEEZE_KEY, SqueezeType.PRIME_PQ_WITH_EXPONENT));
+    assertEquals(TestKey.SQUEEZE_KEY, protocol.decodeSqueezedKey(expected));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTypeMustMatchPrimeCount() throws Exception {
+    SqueezeType mismatched =
+        input.isMultiPrime()
+            ? SqueezeType.PRIME_PQ_WITH_EXPONENT
+            : SqueezeType.MULTI_PRIME_WITH_EXPONENT;
+    new V0Protocol().encodeSqueezedKey(input, mismatched);
+  }
+
+  @Test
+  public void testIntegrityCheckRoundtrip() throws Exception {
+    V0Protocol protocol = new V0Protocol();
+    byte[] data = protocol.encodeSqueezedKey(input, squeezeType, true);
+    ByteBuffer buffer = ByteBuffer.wrap(data);
+    assertEquals(expected, protocol.decodeSqueezedKey(buffer));
+    assertFalse(buffer.hasRemaining());
+  }
+
+  /** A flipped bit fails the decoding, or at worst leaves the check as trailing data */
+  @Test
+  public void testIntegrityCheckDetectsBitFlips() throws Exception {
+    V0Protocol protocol = new V0Protocol();
+    byte[] data = protocol.encodeSqueezedKey(input, squeezeType, true);
+    for (int bit = 0; bit < data.length * 8; ++bit) {
+      byte[] corrupt = data.clone();
+      corrupt[bit >>> 3] ^= 0x80 >>> (bit & 7);
+      ByteBuffer buffer = ByteBuffer.wrap(corrupt);
+      try {
+        protocol.decodeSqueezedKey(buffer);
+      } catch (IOException | IllegalArgumentException e) {
+        continue;
+      }
+      assertTrue("Flipped bit " + bit + " went unnoticed", buffer.hasRemaining());
+    }
+  }
 }
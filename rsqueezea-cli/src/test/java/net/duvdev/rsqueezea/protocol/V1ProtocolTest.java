@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.protocol;
+
+import net.duvdev.rsqueezea.TestKey;
+import net.duvdev.rsqueezea.model.SqueezedKey;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertTrue;
+
+@RunWith(Parameterized.class)
+public class V1ProtocolTest {
+
+  /** A toy three-prime key: 11 * 13 * 17, with an exponent that is not well-known */
+  private static final SqueezedKey MULTI_PRIME_KEY =
+      new SqueezedKey(
+          BigInteger.valueOf(11),
+          BigInteger.valueOf(2431),
+          BigInteger.valueOf(7),
+          Collections.singletonList(BigInteger.valueOf(17)));
+
+  private final SqueezeType squeezeType;
+  private final SqueezedKey input;
+  private final SqueezedKey expected;
+
+  public V1ProtocolTest(SqueezeType squeezeType, SqueezedKey input, SqueezedKey expected) {
+    this.squeezeType = squeezeType;
+    this.input = input;
+    this.expected = expected;
+  }
+
+  @Parameterized.Parameters(name = "{0}")
+  public static Collection<Object[]> data() {
+    return Arrays.asList(
+        new Object[] {SqueezeType.PRIME_WITH_MODULUS, TestKey.SQUEEZE_KEY, TestKey.SQUEEZE_KEY},
+        new Object[] {SqueezeType.PRIME_P, TestKey.SQUEEZE_KEY, new SqueezedKey(TestKey.P)},
+        new Object[] {
+          SqueezeType.PRIME_P_HIGH_BITS, TestKey.SQUEEZE_KEY, TestKey.SQUEEZE_KEY.toPrimeHighBits()
+        },
+        new Object[] {SqueezeType.PRIME_PQ_WITH_EXPONENT, TestKey.SQUEEZE_KEY, TestKey.SQUEEZE_KEY},
+        new Object[] {SqueezeType.MULTI_PRIME_WITH_EXPONENT, MULTI_PRIME_KEY, MULTI_PRIME_KEY},
+        new Object[] {SqueezeType.SEED, TestKey.SEED_KEY, TestKey.SEED_KEY});
+  }
+
+  @Test
+  public void testProtocolRoundtrip() throws Exception {
+    V1Protocol protocol = new V1Protocol();
+    byte[] data = protocol.encodeSqueezedKey(input, squeezeType);
+    assertEquals(expected, protocol.decodeSqueezedKey(data));
+    assertEquals(1, ProtocolFactory.getInstance(data).getVersion());
+  }
+
+  @Test
+  public void testSmallerThanV0() throws Exception {
+    byte[] v0 = new V0Protocol().encodeSqueezedKey(input, squeezeType);
+    byte[] v1 = new V1Protocol().encodeSqueezedKey(input, squeezeType);
+    assertTrue(v1.length < v0.length);
+  }
+
+  @Test
+  public void testDecodeFromBufferPosition() throws Exception {
+    byte[] data = new V1Protocol().encodeSqueezedKey(input, squeezeType);
+    ByteBuffer buffer = ByteBuffer.allocate(data.length + 6);
+    buffer.put(new byte[] {1, 2, 3}).put(data).put(new byte[] {-1, -1, -1});
+    buffer.position(3);
+    assertEquals(expected, new V1Protocol().decodeSqueezedKey(buffer));
+    assertEquals(3 + data.length, buffer.position());
+  }
+
+  @Test
+  public void testRejectsTruncated() throws Exception {
+    byte[] data = new V1Protocol().encodeSqueezedKey(input, squeezeType);
+    for (int length = 0; length < data.length; ++length) {
+      try {
+        new V1Protocol().decodeSqueezedKey(Arrays.copyOf(data, length));
+        throw new AssertionError("Decoded a key truncated to " + length + " bytes");
+      } catch (IOException e) {
+        // expected
+      }
+    }
+  }
+
+  @Test
+  public void testIntegrityCheckRoundtrip() throws Exception {
+    V1Protocol protocol = new V1Protocol();
+    byte[] data = protocol.encodeSqueezedKey(input, squeezeType, true);
+    ByteBuffer buffer = ByteBuffer.wrap(data);
+    assertEquals(expected, protocol.decodeSqueezedKey(buffer));
+    assertFalse(buffer.hasRemaining());
+  }
+
+  /** A flipped bit fails the decoding, or at worst leaves the check as trailing data */
+  @Test
+  public void testIntegrityCheckDetectsBitFlips() throws Exception {
+    V1Protocol protocol = new V1Protocol();
+    byte[] data = protocol.encodeSqueezedKey(input, squeezeType, true);
+    for (int bit = 0; bit < data.length * 8; ++bit) {
+      byte[] corrupt = data.clone();
+      corrupt[bit >>> 3] ^= 0x80 >>> (bit & 7);
+      ByteBuffer buffer = ByteBuffer.wrap(corrupt);
+      try {
+        protocol.decodeSqueezedKey(buffer);
+      } catch (IOException | IllegalArgumentException e) {
+        continue;
+      }
+      assertTrue("Flipped bit " + bit + " went unnoticed", buffer.hasRemaining());
+    }
+  }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.provider;
+
+import net.duvdev.rsqueezea.TestKey;
+import net.duvdev.rsqueezea.keygen.SeededKeyGenerator;
+import net.duvdev.rsqueezea.loader.PKCS1PrivateKeyLoader;
+import net.duvdev.rsqueezea.model.SqueezedKey;
+import net.duvdev.rsqueezea.protocol.ProtocolFactory;
+import net.duvdev.rsqueezea.protocol.SqueezeType;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.security.KeyFactory;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.RSAPrivateCrtKeySpec;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertNotSame;
+import static junit.framework.TestCase.assertSame;
+
+public class RSqueezeAProviderTest {
+
+  @Test
+  public void generatePrivateWithModulus() throws Exception {
+    RSqueezeAProvider provider = new RSqueezeAProvider();
+    KeyFactory keyFactory =
+        KeyFactory.getInstance(RSqueezeAProvider.KEY_FACTORY_ALGORITHM, provider);
+    RSAPrivateCrtKey key =
+        (RSAPrivateCrtKey)
+            keyFactory.generatePrivate(
+                new SqueezedRSAKeySpec(
+                    encode(TestKey.SQUEEZE_KEY, SqueezeType.PRIME_PQ_WITH_EXPONENT)));
+    assertSameKey(TestKey.PRIVATE_KEY_SPEC, key);
+  }
+
+  @Test
+  public void generatePrivateWithExternalPublicKey() throws Exception {
+    KeyFactory keyFactory =
+        KeyFactory.getInstance(RSqueezeAProvider.KEY_FACTORY_ALGORITHM, new RSqueezeAProvider());
+    RSAPrivateCrtKey key =
+        (RSAPrivateCrtKey)
+            keyFactory.generatePrivate(
+                new SqueezedRSAKeySpec(
+                    encode(TestKey.SQUEEZE_KEY, SqueezeType.PRIME_P), TestKey.PUBLIC_KEY));
+    assertSameKey(TestKey.PRIVATE_KEY_SPEC, key);
+  }
+
+  @Test
+  public void generatePrivateFromPrimeHighBits() throws Exception {
+    KeyFactory keyFactory =
+        KeyFactory.getInstance(RSqueezeAProvider.KEY_FACTORY_ALGORITHM, new RSqueezeAProvider());
+    SqueezedRSAKeySpec keySpec =
+        new SqueezedRSAKeySpec(
+            encode(TestKey.SQUEEZE_KEY, SqueezeType.PRIME_P_HIGH_BITS), TestKey.PUBLIC_KEY);
+    RSAPrivateCrtKey key = (RSAPrivateCrtKey) keyFactory.generatePrivate(keySpec);
+    assertEquals(TestKey.N, key.getModulus());
+    assertEquals(TestKey.PRIVATE_KEY_SPEC.getPrivateExponent(), key.getPrivateExponent());
+    assertEquals(TestKey.P.max(TestKey.N.divide(TestKey.P)), key.getPrimeP());
+    assertSame(key, keyFactory.generatePrivate(keySpec));
+  }
+
+  @Test
+  public void generatePrivateFromSeed() throws Exception {
+    KeyFactory keyFactory =
+        KeyFactory.getInstance(RSqueezeAProvider.KEY_FACTORY_ALGORITHM, new RSqueezeAProvider());
+    SqueezedRSAKeySpec keySpec = new SqueezedRSAKeySpec(encode(TestKey.SEED_KEY, SqueezeType.SEED));
+    RSAPrivateCrtKey key = (RSAPrivateCrtKey) keyFactory.generatePrivate(keySpec);
+    assertSameKey(
+        SeededKeyGenerator.generate(TestKey.SEED_KEY.getSeed(), TestKey.SEED_KEY.getModulusBits()),
+        key);
+    assertEquals(
+        key.getModulus(), ((RSAPublicKey) keyFactory.generatePublic(keySpec)).getModulus());
+  }
+
+  @Test(expected = InvalidKeySpecException.class)
+  public void generatePrivateFromSeedWithWrongPublicKey() throws Exception {
+    KeyFactory keyFactory =
+        KeyFactory.getInstance(RSqueezeAProvider.KEY_FACTORY_ALGORITHM, new RSqueezeAProvider());
+    keyFactory.generatePrivate(
+        new SqueezedRSAKeySpec(encode(TestKey.SEED_KEY, SqueezeType.SEED), TestKey.PUBLIC_KEY));
+  }
+
+  @Test(expected = InvalidKeySpecException.class)
+  public void generatePrivateWithoutPublicKey() throws Exception {
+    KeyFactory keyFactory =
+        KeyFactory.getInstance(RSqueezeAProvider.KEY_FACTORY_ALGORITHM, new RSqueezeAProvider());
+    keyFactory.generatePrivate(
+        new SqueezedRSAKeySpec(encode(TestKey.SQUEEZE_KEY, SqueezeType.PRIME_P)));
+  }
+
+  @Test
+  public void cachesReassembledKeys() throws Exception {
+    RSqueezeAProvider provider = new RSqueezeAProvider(1);
+    KeyFactory keyFactory =
+        KeyFactory.getInstance(RSqueezeAProvider.KEY_FACTORY_ALGORITHM, provider);
+    SqueezedRSAKeySpec first =
+        new SqueezedRSAKeySpec(encode(TestKey.SQUEEZE_KEY, SqueezeType.PRIME_PQ_WITH_EXPONENT));
+    SqueezedRSAKeySpec second;
+    try (InputStream inputStream = getClass().getResourceAsStream("/stress/1.key")) {
+      RSAPrivateCrtKeySpec spec = new PKCS1PrivateKeyLoader(inputStream).load();
+      second =
+          new SqueezedRSAKeySpec(
+              encode(SqueezedKey.fromRSAKey(spec), SqueezeType.PRIME_PQ_WITH_EXPONENT));
+    }
+
+    RSAPrivateCrtKey firstKey = (RSAPrivateCrtKey) keyFactory.generatePrivate(first);
+    assertSame(firstKey, keyFactory.generatePrivate(first));
+    assertEquals(1, provider.getCache().getHitCount());
+    assertEquals(1, provider.getCache().getMissCount());
+
+    // evicts the first key
+    keyFactory.generatePrivate(second);
+    assertEquals(1, provider.getCache().getEvictionCount());
+    assertEquals(1, provider.getCache().size());
+    assertNotSame(firstKey, keyFactory.generatePrivate(first));
+    assertEquals(3, provider.getCache().getMissCount());
+  }
+
+  @Test
+  public void getKeySpecRoundtrip() throws Exception {
+    KeyFactory keyFactory =
+        KeyFactory.getInstance(RSqueezeAProvider.KEY_FACTORY_ALGORITHM, new RSqueezeAProvider());
+    RSAPrivateCrtKey key =
+        (RSAPrivateCrtKey) KeyFactory.getInstance("RSA").generatePrivate(TestKey.PRIVATE_KEY_SPEC);
+    SqueezedRSAKeySpec spec = keyFactory.getKeySpec(key, SqueezedRSAKeySpec.class);
+    assertSameKey(TestKey.PRIVATE_KEY_SPEC, (RSAPrivateCrtKey) keyFactory.generatePrivate(spec));
+  }
+
+  private static byte[] encode(SqueezedKey key, SqueezeType type) throws Exception {
+    return ProtocolFactory.getLatest().encodeSqueezedKey(key, type);
+  }
+
+  private static void assertSameKey(RSAPrivateCrtKeySpec expected, RSAPrivateCrtKey actual) {
+    assertEquals(expected.getModulus(), actual.getModulus());
+    assertEquals(expected.getPublicExponent(), actual.getPublicExponent());
+    assertEquals(expected.getPrivateExponent(), actual.getPrivateExponent());
+    assertEquals(expected.getPrimeP(), actual.getPrimeP());
+    assertEquals(expected.getPrimeQ(), actual.getPrimeQ());
+    assertEquals(expected.getPrimeExponentP(), actual.getPrimeExponentP());
+    assertEquals(expected.getPrimeExponentQ(), actual.getPrimeExponentQ());
+    assertEquals(expected.getCrtCoefficient(), actual.getCrtCoefficient());
+  }
+}
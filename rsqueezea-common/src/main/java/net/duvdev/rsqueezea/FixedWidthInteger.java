@@ -0,0 +1,464 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * A mutable, non-negative integer stored in a fixed-capacity array of 32-bit limbs (least
+ * significant first).
+ *
+ * <p>All operations work in place or into a caller-provided destination, so a set of instances can
+ * be allocated once and reused for any number of computations of up to the same size. Nothing here
+ * grows an array implicitly - the caller sizes the instances via {@link #ensureCapacity(int)}.
+ */
+final class FixedWidthInteger {
+
+  private static final long MASK = 0xFFFFFFFFL;
+
+  private int[] limbs;
+
+  /** Number of significant limbs. Zero is represented by a length of 0. */
+  private int length;
+
+  FixedWidthInteger(int capacity) {
+    limbs = new int[capacity];
+  }
+
+  /** Grows the backing array to hold at least the given number of limbs. Discards the value. */
+  void ensureCapacity(int capacity) {
+    if (limbs.length < capacity) {
+      limbs = new int[capacity];
+    }
+    length = 0;
+  }
+
+  int capacity() {
+    return limbs.length;
+  }
+
+  /** @return Number of limbs needed to hold a value of the given bit length */
+  static int limbsFor(int bitLength) {
+    return (bitLength + 31) >>> 5;
+  }
+
+  FixedWidthInteger set(BigInteger value) {
+    if (value.signum() < 0) {
+      throw new IllegalArgumentException("Negative value");
+    }
+    int newLength = limbsFor(value.bitLength());
+    if (newLength > limbs.length) {
+      throw new IllegalArgumentException("Value does not fit in " + limbs.length + " limbs");
+    }
+    byte[] bytes = value.toByteArray();
+    Arrays.fill(limbs, 0, newLength, 0);
+    for (int i = 0; i < bytes.length && (i >>> 2) < newLength; ++i) {
+      limbs[i >>> 2] |= (bytes[bytes.length - 1 - i] & 0xFF) << (8 * (i & 3));
+    }
+    length = newLength;
+    return this;
+  }
+
+  FixedWidthInteger set(FixedWidthInteger value) {
+    System.arraycopy(value.limbs, 0, limbs, 0, value.length);
+    length = value.length;
+    return this;
+  }
+
+  FixedWidthInteger set(int value) {
+    limbs[0] = value;
+    length = value == 0 ? 0 : 1;
+    return this;
+  }
+
+  BigInteger toBigInteger() {
+    byte[] bytes = new byte[length * 4];
+    for (int i = 0; i < length; ++i) {
+      int limb = limbs[i];
+      int offset = bytes.length - 4 * i;
+      bytes[offset - 1] = (byte) limb;
+      bytes[offset - 2] = (byte) (limb >>> 8);
+      bytes[offset - 3] = (byte) (limb >>> 16);
+      bytes[offset - 4] = (byte) (limb >>> 24);
+    }
+    return new BigInteger(1, bytes);
+  }
+
+  boolean isZero() {
+    return length == 0;
+  }
+
+  boolean isOne() {
+    return length == 1 && limbs[0] == 1;
+  }
+
+  boolean isEven() {
+    return length == 0 || (limbs[0] & 1) == 0;
+  }
+
+  int bitLength() {
+    return length == 0 ? 0 : 32 * length - Integer.numberOfLeadingZeros(limbs[length - 1]);
+  }
+
+  int compareTo(FixedWidthInteger other) {
+    if (length != other.length) {
+      return length < other.length ? -1 : 1;
+    }
+    for (int i = length - 1; i >= 0; --i) {
+      if (limbs[i] != other.limbs[i]) {
+        return Integer.compareUnsigned(limbs[i], other.limbs[i]);
+      }
+    }
+    return 0;
+  }
+
+  /** this += other */
+  FixedWidthInteger add(FixedWidthInteger other) {
+    int longer = Math.max(length, other.length);
+    long carry = 0;
+    for (int i = 0; i < longer; ++i) {
+      long a = i < length ? limbs[i] & MASK : 0;
+      long b = i < other.length ? other.limbs[i] & MASK : 0;
+      long sum = a + b + carry;
+      limbs[i] = (int) sum;
+      carry = sum >>> 32;
+    }
+    length = longer;
+    if (carry != 0) {
+      limbs[length++] = (int) carry;
+    }
+    return this;
+  }
+
+  /** this -= other. The result must not be negative. */
+  FixedWidthInteger subtract(FixedWidthInteger other) {
+    long borrow = 0;
+    for (int i = 0; i < length; ++i) {
+      long b = i < other.length ? other.limbs[i] & MASK : 0;
+      long difference = (limbs[i] & MASK) - b - borrow;
+      limbs[i] = (int) difference;
+      borrow = difference < 0 ? 1 : 0;
+    }
+    normalize();
+    return this;
+  }
+
+  /** this += 1 */
+  FixedWidthInteger increment() {
+    for (int i = 0; i < length; ++i) {
+      if (++limbs[i] != 0) {
+        return this;
+      }
+    }
+    limbs[length++] = 1;
+    return this;
+  }
+
+  /** this -= 1. Must not be zero. */
+  FixedWidthInteger decrement() {
+    for (int i = 0; i < length; ++i) {
+      if (limbs[i]-- != 0) {
+        break;
+      }
+    }
+    normalize();
+    return this;
+  }
+
+  /** @return Number of trailing zero bits. Must not be zero. */
+  int trailingZeros() {
+    int i = 0;
+    while (limbs[i] == 0) {
+      ++i;
+    }
+    return 32 * i + Integer.numberOfTrailingZeros(limbs[i]);
+  }
+
+  FixedWidthInteger shiftRight(int bits) {
+    int limbShift = bits >>> 5;
+    int bitShift = bits & 31;
+    if (limbShift >= length) {
+      length = 0;
+      return this;
+    }
+    int newLength = length - limbShift;
+    if (bitShift == 0) {
+      System.arraycopy(limbs, limbShift, limbs, 0, newLength);
+    } else {
+      for (int i = 0; i < newLength - 1; ++i) {
+        limbs[i] =
+            (limbs[i + limbShift] >>> bitShift) | (limbs[i + limbShift + 1] << (32 - bitShift));
+      }
+      limbs[newLength - 1] = limbs[length - 1] >>> bitShift;
+    }
+    length = newLength;
+    normalize();
+    return this;
+  }
+
+  FixedWidthInteger shiftLeft(int bits) {
+    if (length == 0) {
+      return this;
+    }
+    int limbShift = bits >>> 5;
+    int bitShift = bits & 31;
+    if (bitShift == 0) {
+      System.arraycopy(limbs, 0, limbs, limbShift, length);
+      Arrays.fill(limbs, 0, limbShift, 0);
+      length += limbShift;
+      return this;
+    }
+    limbs[length + limbShift] = limbs[length - 1] >>> (32 - bitShift);
+    for (int i = length - 1; i > 0; --i) {
+      limbs[i + limbShift] = (limbs[i] << bitShift) | (limbs[i - 1] >>> (32 - bitShift));
+    }
+    limbs[limbShift] = limbs[0] << bitShift;
+    Arrays.fill(limbs, 0, limbShift, 0);
+    length += limbShift + 1;
+    normalize();
+    return this;
+  }
+
+  /** destination = a * b. The destination must not be a or b. */
+  static void multiply(FixedWidthInteger a, FixedWidthInteger b, FixedWidthInteger destination) {
+    int[] out = destination.limbs;
+    int outLength = a.length + b.length;
+    Arrays.fill(out, 0, outLength, 0);
+    for (int i = 0; i < a.length; ++i) {
+      long carry = 0;
+      long ai = a.limbs[i] & MASK;
+      for (int j = 0; j < b.length; ++j) {
+        long product = ai * (b.limbs[j] & MASK) + (out[i + j] & MASK) + carry;
+        out[i + j] = (int) product;
+        carry = product >>> 32;
+      }
+      out[i + b.length] = (int) carry;
+    }
+    destination.length = outLength;
+    destination.normalize();
+  }
+
+  /**
+   * Divides a by b (Knuth's algorithm D), storing the quotient and/or remainder.
+   *
+   * @param quotient Receives a / b, or null
+   * @param remainder Receives a mod b, or null
+   * @param dividendWork Work area, at least one limb longer than a
+   * @param divisorWork Work area, at least as long as b
+   * @throws ArithmeticException If b is zero
+   */
+  static void divide(
+      FixedWidthInteger a,
+      FixedWidthInteger b,
+      FixedWidthInteger quotient,
+      FixedWidthInteger remainder,
+      FixedWidthInteger dividendWork,
+      FixedWidthInteger divisorWork) {
+    if (b.length == 0) {
+      throw new ArithmeticException("BigInteger divide by zero");
+    }
+    if (a.compareTo(b) < 0) {
+      if (remainder != null) {
+        remainder.set(a);
+      }
+      if (quotient != null) {
+        quotient.length = 0;
+      }
+      return;
+    }
+    if (b.length == 1) {
+      divideByLimb(a, b.limbs[0] & MASK, quotient, remainder);
+      return;
+    }
+
+    int n = b.length;
+    int m = a.length - n;
+    int shift = Integer.numberOfLeadingZeros(b.limbs[n - 1]);
+
+    // normalize, so the divisor's top bit is set
+    int[] u = dividendWork.limbs;
+    int[] v = divisorWork.limbs;
+    for (int i = n - 1; i > 0; --i) {
+      v[i] = shift == 0 ? b.limbs[i] : (b.limbs[i] << shift) | (b.limbs[i - 1] >>> (32 - shift));
+    }
+    v[0] = b.limbs[0] << shift;
+    u[m + n] = shift == 0 ? 0 : a.limbs[m + n - 1] >>> (32 - shift);
+    for (int i = m + n - 1; i > 0; --i) {
+      u[i] = shift == 0 ? a.limbs[i] : (a.limbs[i] << shift) | (a.limbs[i - 1] >>> (32 - shift));
+    }
+    u[0] = a.limbs[0] << shift;
+
+    long vTop = v[n - 1] & MASK;
+    long vNext = v[n - 2] & MASK;
+    for (int j = m; j >= 0; --j) {
+      long numerator = ((u[j + n] & MASK) << 32) | (u[j + n - 1] & MASK);
+      long qHat = Long.divideUnsigned(numerator, vTop);
+      long rHat = numerator - qHat * vTop;
+      while (qHat > MASK
+          || Long.compareUnsigned(qHat * vNext, (rHat << 32) | (u[j + n - 2] & MASK)) > 0) {
+        --qHat;
+        rHat += vTop;
+        if (rHat > MASK) {
+          break;
+        }
+      }
+
+      // multiply and subtract
+      long borrow = 0;
+      long t;
+      for (int i = 0; i < n; ++i) {
+        long product = qHat * (v[i] & MASK);
+        t = (u[i + j] & MASK) - borrow - (product & MASK);
+        u[i + j] = (int) t;
+        borrow = (product >>> 32) - (t >> 32);
+      }
+      t = (u[j + n] & MASK) - borrow;
+      u[j + n] = (int) t;
+
+      if (t < 0) {
+        // subtracted too much, add back
+        --qHat;
+        long carry = 0;
+        for (int i = 0; i < n; ++i) {
+          long sum = (u[i + j] & MASK) + (v[i] & MASK) + carry;
+          u[i + j] = (int) sum;
+          carry = sum >>> 32;
+        }
+        u[j + n] += (int) carry;
+      }
+      if (quotient != null) {
+        quotient.limbs[j] = (int) qHat;
+      }
+    }
+
+    if (quotient != null) {
+      quotient.length = m + 1;
+      quotient.normalize();
+    }
+    if (remainder != null) {
+      for (int i = 0; i < n; ++i) {
+        remainder.limbs[i] = shift == 0 ? u[i] : (u[i] >>> shift) | (u[i + 1] << (32 - shift));
+      }
+      remainder.length = n;
+      remainder.normalize();
+    }
+  }
+
+  private static void divideByLimb(
+      FixedWidthInteger a, long divisor, FixedWidthInteger quotient, FixedWidthInteger remainder) {
+    long rest = 0;
+    for (int i = a.length - 1; i >= 0; --i) {
+      long numerator = (rest << 32) | (a.limbs[i] & MASK);
+      if (quotient != null) {
+        quotient.limbs[i] = (int) Long.divideUnsigned(numerator, divisor);
+      }
+      rest = Long.remainderUnsigned(numerator, divisor);
+    }
+    if (quotient != null) {
+      quotient.length = a.length;
+      quotient.normalize();
+    }
+    if (remainder != null) {
+      remainder.set((int) rest);
+    }
+  }
+
+  /**
+   * destination = gcd(a, b) using the binary GCD algorithm. a and b are used as work area and are
+   * destroyed. Both must be positive.
+   */
+  static void gcd(FixedWidthInteger a, FixedWidthInteger b, FixedWidthInteger destination) {
+    int aZeros = a.trailingZeros();
+    int bZeros = b.trailingZeros();
+    int commonZeros = Math.min(aZeros, bZeros);
+    a.shiftRight(aZeros);
+    b.shiftRight(bZeros);
+    // both odd from here on
+    while (true) {
+      int comparison = a.compareTo(b);
+      if (comparison == 0) {
+        break;
+      }
+      if (comparison > 0) {
+        FixedWidthInteger swap = a;
+        a = b;
+        b = swap;
+      }
+      b.subtract(a);
+      b.shiftRight(b.trailingZeros());
+    }
+    destination.set(a).shiftLeft(commonZeros);
+  }
+
+  /**
+   * destination = a^-1 mod m, using the binary extended Euclidean algorithm.
+   *
+   * @param a Value to invert, 0 < a < m. Destroyed.
+   * @param m Odd modulus
+   * @param other Work area. Destroyed.
+   * @param otherCoefficient Work area. Destroyed.
+   * @param destination Receives the inverse
+   * @throws ArithmeticException If a is not invertible modulo m
+   */
+  static void modInverseOdd(
+      FixedWidthInteger a,
+      FixedWidthInteger m,
+      FixedWidthInteger other,
+      FixedWidthInteger otherCoefficient,
+      FixedWidthInteger destination) {
+    // invariants: x1 * a0 = u (mod m), x2 * a0 = v (mod m)
+    FixedWidthInteger u = a;
+    FixedWidthInteger v = other.set(m);
+    FixedWidthInteger x1 = destination.set(1);
+    FixedWidthInteger x2 = otherCoefficient.set(0);
+    while (!u.isOne() && !v.isOne()) {
+      if (u.isZero() || v.isZero()) {
+        throw new ArithmeticException("BigInteger not invertible.");
+      }
+      while (u.isEven()) {
+        u.shiftRight(1);
+        halveModulo(x1, m);
+      }
+      while (v.isEven()) {
+        v.shiftRight(1);
+        halveModulo(x2, m);
+      }
+      if (u.compareTo(v) >= 0) {
+        u.subtract(v);
+        subtractModulo(x1, x2, m);
+      } else {
+        v.subtract(u);
+        subtractModulo(x2, x1, m);
+      }
+    }
+    if (!u.isOne()) {
+      destination.set(x2);
+    }
+  }
+
+  /** x = x / 2 (mod m), for odd m and x < m */
+  private static void halveModulo(FixedWidthInteger x, FixedWidthInteger m) {
+    if (!x.isEven()) {
+      x.add(m);
+    }
+    x.shiftRight(1);
+  }
+
+  /** x = x - y (mod m), for x, y < m */
+  private static void subtractModulo(
+      FixedWidthInteger x, FixedWidthInteger y, FixedWidthInteger m) {
+    if (x.compareTo(y) < 0) {
+      x.add(m);
+    }
+    x.subtract(y);
+  }
+
+  private void normalize() {
+    while (length > 0 && limbs[length - 1] == 0) {
+      --length;
+    }
+  }
+}
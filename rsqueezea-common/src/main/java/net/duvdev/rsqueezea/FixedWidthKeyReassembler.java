@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea;
+
+import java.math.BigInteger;
+import java.security.spec.RSAPrivateCrtKeySpec;
+
+/**
+ * Reassembles a CRT private key like {@link KeyReassembler}, but does the arithmetic on mutable
+ * fixed-width limbs kept in per-thread scratch space. The only allocations per key are the
+ * conversions to and from {@link BigInteger}.
+ *
+ * <p>Results are identical to {@link KeyReassembler#reassemble(BigInteger, BigInteger, BigInteger,
+ * KeyReassembler.TotientFunction)}. Inputs this engine has no fast path for (a totient function
+ * other than Euler's or Carmichael's, an even exponent or prime, degenerate values) are handed to
+ * {@link KeyReassembler} as-is.
+ */
+public final class FixedWidthKeyReassembler {
+
+  private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+  /** Do not instantiate */
+  private FixedWidthKeyReassembler() {}
+
+  /**
+   * Derive an RSA private key from the given RSA public modulus, exponent, and the prime factor P
+   * using the given totient function.
+   *
+   * @param modulus The public modulus (p * q)
+   * @param publicExponent The public exponent (e)
+   * @param primeP The P factor of the public modulus
+   * @param totientFunction Totient function
+   * @return An RSA private key with the chinese remainder theorem coefficients
+   */
+  public static RSAPrivateCrtKeySpec reassemble(
+      BigInteger modulus,
+      BigInteger publicExponent,
+      BigInteger primeP,
+      KeyReassembler.TotientFunction totientFunction) {
+    if (!isSupported(modulus, publicExponent, primeP, totientFunction)) {
+      return KeyReassembler.reassemble(modulus, publicExponent, primeP, totientFunction);
+    }
+
+    Scratch s = SCRATCH.get();
+    s.ensureCapacity(FixedWidthInteger.limbsFor(modulus.bitLength()));
+    s.n.set(modulus);
+    s.e.set(publicExponent);
+    s.p.set(primeP);
+
+    // q = n / p
+    FixedWidthInteger.divide(s.n, s.p, s.q, null, s.work1, s.work2);
+    if (s.q.bitLength() < 2) {
+      // q - 1 would not be a valid modulus
+      return KeyReassembler.reassemble(modulus, publicExponent, primeP, totientFunction);
+    }
+    s.pMinusOne.set(s.p).decrement();
+    s.qMinusOne.set(s.q).decrement();
+
+    // totient
+    FixedWidthInteger.multiply(s.pMinusOne, s.qMinusOne, s.totient);
+    if (totientFunction == KeyReassembler.CARMICHAEL_TOTIENT_FUNCTION) {
+      s.a.set(s.pMinusOne);
+      s.b.set(s.qMinusOne);
+      FixedWidthInteger.gcd(s.a, s.b, s.c);
+      s.a.set(s.totient);
+      FixedWidthInteger.divide(s.a, s.c, s.totient, null, s.work1, s.work2);
+    }
+    if (s.totient.bitLength() < 2) {
+      // BigInteger has its own conventions for moduli of 0 and 1
+      return KeyReassembler.reassemble(modulus, publicExponent, primeP, totientFunction);
+    }
+
+    // d = e^-1 mod totient. the totient is even, so the binary algorithm runs modulo the odd e:
+    // with t = totient^-1 mod e, d = (1 + totient * (e - t)) / e
+    FixedWidthInteger.divide(s.totient, s.e, null, s.a, s.work1, s.work2);
+    if (s.a.isZero()) {
+      throw new ArithmeticException("BigInteger not invertible.");
+    }
+    FixedWidthInteger.modInverseOdd(s.a, s.e, s.b, s.c, s.d);
+    s.a.set(s.e).subtract(s.d);
+    FixedWidthInteger.multiply(s.totient, s.a, s.c);
+    s.c.increment();
+    FixedWidthInteger.divide(s.c, s.e, s.d, null, s.work1, s.work2);
+
+    // CRT exponents
+    FixedWidthInteger.divide(s.d, s.pMinusOne, null, s.dP, s.work1, s.work2);
+    FixedWidthInteger.divide(s.d, s.qMinusOne, null, s.dQ, s.work1, s.work2);
+
+    // q^-1 mod p
+    FixedWidthInteger.divide(s.q, s.p, null, s.a, s.work1, s.work2);
+    if (s.a.isZero()) {
+      throw new ArithmeticException("BigInteger not invertible.");
+    }
+    FixedWidthInteger.modInverseOdd(s.a, s.p, s.b, s.c, s.qInv);
+
+    return new RSAPrivateCrtKeySpec(
+        modulus,
+        publicExponent,
+        s.d.toBigInteger(),
+        primeP,
+        s.q.toBigInteger(),
+        s.dP.toBigInteger(),
+        s.dQ.toBigInteger(),
+        s.qInv.toBigInteger());
+  }
+
+  private static boolean isSupported(
+      BigInteger modulus,
+      BigInteger publicExponent,
+      BigInteger primeP,
+      KeyReassembler.TotientFunction totientFunction) {
+    return (totientFunction == KeyReassembler.EULER_TOTIENT_FUNCTION
+            || totientFunction == KeyReassembler.CARMICHAEL_TOTIENT_FUNCTION)
+        && modulus.signum() > 0
+        && publicExponent.testBit(0)
+        && publicExponent.compareTo(BigInteger.ONE) > 0
+        && publicExponent.bitLength() <= modulus.bitLength()
+        && primeP.testBit(0)
+        && primeP.compareTo(BigInteger.ONE) > 0
+        && primeP.compareTo(modulus) <= 0;
+  }
+
+  /** Per-thread working set, sized for the largest modulus seen so far */
+  private static final class Scratch {
+    private final FixedWidthInteger n = new FixedWidthInteger(0);
+    private final FixedWidthInteger e = new FixedWidthInteger(0);
+    private final FixedWidthInteger p = new FixedWidthInteger(0);
+    private final FixedWidthInteger q = new FixedWidthInteger(0);
+    private final FixedWidthInteger pMinusOne = new FixedWidthInteger(0);
+    private final FixedWidthInteger qMinusOne = new FixedWidthInteger(0);
+    private final FixedWidthInteger totient = new FixedWidthInteger(0);
+    private final FixedWidthInteger d = new FixedWidthInteger(0);
+    private final FixedWidthInteger dP = new FixedWidthInteger(0);
+    private final FixedWidthInteger dQ = new FixedWidthInteger(0);
+    private final FixedWidthInteger qInv = new FixedWidthInteger(0);
+    private final FixedWidthInteger a = new FixedWidthInteger(0);
+    private final FixedWidthInteger b = new FixedWidthInteger(0);
+    private final FixedWidthInteger c = new FixedWidthInteger(0);
+    private final FixedWidthInteger work1 = new FixedWidthInteger(0);
+    private final FixedWidthInteger work2 = new FixedWidthInteger(0);
+
+    /** Makes room for intermediates of a modulus of the given number of limbs */
+    private void ensureCapacity(int modulusLimbs) {
+      // the widest intermediate is totient * (e - t), with e no longer than the modulus. one
+      // extra limb for carries and one for division normalization
+      int capacity = 2 * modulusLimbs + 2;
+      if (n.capacity() >= capacity) {
+        return;
+      }
+      for (FixedWidthInteger value :
+          new FixedWidthInteger[] {
+            n, e, p, q, pMinusOne, qMinusOne, totient, d, dP, dQ, qInv, a, b, c, work1, work2
+          }) {
+        value.ensureCapacity(capacity);
+      }
+    }
+  }
+}
@@ -4,10 +4,26 @@
  */
 package net.duvdev.rsqueezea;
 
+import net.duvdev.rsqueezea.lattice.PrimeRecovery;
+
 import java.math.BigInteger;
 import java.security.interfaces.RSAPublicKey;
+import java.security.spec.RSAMultiPrimePrivateCrtKeySpec;
+import java.security.spec.RSAOtherPrimeInfo;
 import java.security.spec.RSAPrivateCrtKeySpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /** Reassembles a CRT private key from a public key and the prime P factor. */
 public final class KeyReassembler {
@@ -20,6 +36,25 @@ public final class KeyReassembler {
   public static final TotientFunction CARMICHAEL_TOTIENT_FUNCTION =
       (p, q) -> lcm(p.subtract(BigInteger.ONE), q.subtract(BigInteger.ONE));
 
+  /** Reassembles using immutable {@link BigInteger} arithmetic */
+  public static final Engine BIG_INTEGER_ENGINE = KeyReassembler::reassemble;
+
+  /**
+   * Reassembles using mutable fixed-width limbs, see {@link FixedWidthKeyReassembler}. Produces the
+   * same keys as {@link #BIG_INTEGER_ENGINE} with far fewer allocations.
+   */
+  public static final Engine FIXED_WIDTH_ENGINE = FixedWidthKeyReassembler::reassemble;
+
+  /**
+   * Moduli shorter than this are reassembled sequentially by {@link
+   * #reassembleConcurrently(BigInteger, BigInteger, BigInteger, TotientFunction)}, as the
+   * scheduling overhead outweighs the gain for them.
+   */
+  public static final int DEFAULT_CONCURRENCY_THRESHOLD_BITS = 8192;
+
+  /** Public exponents up to this length take the small exponent path. Keeps e - t in a long. */
+  private static final int SMALL_EXPONENT_BITS = 62;
+
   /** Do not instantiate */
   private KeyReassembler() {}
 
@@ -81,7 +116,7 @@ public final class KeyReassembler {
       TotientFunction totientFunction) {
     BigInteger primeQ = modulus.divide(primeP);
     BigInteger totient = totientFunction.apply(primeP, primeQ);
-    BigInteger privateExponent = publicExponent.modInverse(totient);
+    BigInteger privateExponent = privateExponent(publicExponent, totient);
     BigInteger primeExponentP = privateExponent.mod(primeP.subtract(BigInteger.ONE));
     BigInteger primeExponentQ = privateExponent.mod(primeQ.subtract(BigInteger.ONE));
     BigInteger crtCoefficient = primeQ.modInverse(primeP);
@@ -96,11 +131,443 @@ public final class KeyReassembler {
         crtCoefficient);
   }
 
+  /**
+   * Derive an RSA private key from the given RSA public modulus, exponent, and the high bits of a
+   * prime factor, using the default totient function (Carmichael). The rest of the prime is
+   * recovered from the modulus with {@link PrimeRecovery}.
+   *
+   * @param modulus The public modulus (p * q)
+   * @param publicExponent The public exponent (e)
+   * @param primeHighBits A prime factor of the public modulus, shifted right by {@code unknownBits}
+   * @param unknownBits Number of low bits left out of the prime
+   * @return An RSA private key with the chinese remainder theorem coefficients
+   * @throws ArithmeticException If the prime cannot be recovered
+   */
+  public static RSAPrivateCrtKeySpec reassembleFromHighBits(
+      BigInteger modulus, BigInteger publicExponent, BigInteger primeHighBits, int unknownBits) {
+    return reassemble(
+        modulus, publicExponent, PrimeRecovery.fromHighBits(modulus, primeHighBits, unknownBits));
+  }
+
+  /**
+   * Same as {@link #reassemble(BigInteger, BigInteger, BigInteger, TotientFunction)}, but computes
+   * independent values concurrently on the common fork-join pool for moduli of at least {@link
+   * #DEFAULT_CONCURRENCY_THRESHOLD_BITS} bits.
+   *
+   * @param modulus The public modulus (p * q)
+   * @param publicExponent The public exponent (e)
+   * @param primeP The P factor of the public modulus
+   * @param totientFunction Totient function
+   * @return An RSA private key with the chinese remainder theorem coefficients
+   */
+  public static RSAPrivateCrtKeySpec reassembleConcurrently(
+      BigInteger modulus,
+      BigInteger publicExponent,
+      BigInteger primeP,
+      TotientFunction totientFunction) {
+    return reassembleConcurrently(
+        modulus,
+        publicExponent,
+        primeP,
+        totientFunction,
+        ForkJoinPool.commonPool(),
+        DEFAULT_CONCURRENCY_THRESHOLD_BITS);
+  }
+
+  /**
+   * Derive an RSA private key from the given RSA public modulus, exponent, and the prime factor P
+   * using the given totient function, computing independent values concurrently.
+   *
+   * <p>Q has to be known before anything else can be computed. Once it is, the CRT coefficient is
+   * computed alongside the totient and private exponent, and the two prime exponents are then
+   * computed alongside each other. Keys with moduli shorter than {@code thresholdBits} are
+   * reassembled sequentially on the calling thread.
+   *
+   * @param modulus The public modulus (p * q)
+   * @param publicExponent The public exponent (e)
+   * @param primeP The P factor of the public modulus
+   * @param totientFunction Totient function
+   * @param executor Executor to run the concurrent computations on
+   * @param thresholdBits Minimal modulus length to reassemble concurrently
+   * @return An RSA private key with the chinese remainder theorem coefficients
+   */
+  public static RSAPrivateCrtKeySpec reassembleConcurrently(
+      BigInteger modulus,
+      BigInteger publicExponent,
+      BigInteger primeP,
+      TotientFunction totientFunction,
+      Executor executor,
+      int thresholdBits) {
+    if (modulus.bitLength() < thresholdBits) {
+      return reassemble(modulus, publicExponent, primeP, totientFunction);
+    }
+    BigInteger primeQ = modulus.divide(primeP);
+    CompletableFuture<BigInteger> crtCoefficient =
+        CompletableFuture.supplyAsync(() -> primeQ.modInverse(primeP), executor);
+    BigInteger totient = totient(primeP, primeQ, totientFunction, executor);
+    BigInteger privateExponent = privateExponent(publicExponent, totient);
+    CompletableFuture<BigInteger> primeExponentP =
+        CompletableFuture.supplyAsync(
+            () -> privateExponent.mod(primeP.subtract(BigInteger.ONE)), executor);
+    BigInteger primeExponentQ = privateExponent.mod(primeQ.subtract(BigInteger.ONE));
+    return new RSAPrivateCrtKeySpec(
+        modulus,
+        publicExponent,
+        privateExponent,
+        primeP,
+        primeQ,
+        join(primeExponentP),
+        primeExponentQ,
+        join(crtCoefficient));
+  }
+
+  /**
+   * Derive a multi-prime RSA private key (RFC 8017 section 3.2) from the given public modulus,
+   * exponent, the prime factor P and the additional primes, using Carmichael's totient function.
+   * Per-prime values are computed concurrently on the common fork-join pool.
+   *
+   * @param modulus The public modulus (the product of all primes)
+   * @param publicExponent The public exponent (e)
+   * @param primeP The P factor of the public modulus
+   * @param otherPrimes The third prime factor onwards, in key order
+   * @return An RSA private key with the chinese remainder theorem coefficients of all primes
+   * @see #reassembleMultiPrime(BigInteger, BigInteger, BigInteger, List, Executor)
+   */
+  public static RSAMultiPrimePrivateCrtKeySpec reassembleMultiPrime(
+      BigInteger modulus,
+      BigInteger publicExponent,
+      BigInteger primeP,
+      List<BigInteger> otherPrimes) {
+    return reassembleMultiPrime(
+        modulus, publicExponent, primeP, otherPrimes, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Derive a multi-prime RSA private key (RFC 8017 section 3.2) from the given public modulus,
+   * exponent, the prime factor P and the additional primes, using Carmichael's totient function:
+   * lambda(n) = lcm(r_1 - 1, ..., r_u - 1).
+   *
+   * <p>Q is the modulus divided by all other primes. Once it is known, every prime's CRT
+   * coefficient is computed concurrently with the totient and private exponent, after which every
+   * prime's exponent is computed concurrently as well. The work grows with the number of primes,
+   * while the wall time stays close to that of a single prime.
+   *
+   * @param modulus The public modulus (the product of all primes)
+   * @param publicExponent The public exponent (e)
+   * @param primeP The P factor of the public modulus
+   * @param otherPrimes The third prime factor onwards, in key order
+   * @param executor Executor to run the per-prime computations on
+   * @return An RSA private key with the chinese remainder theorem coefficients of all primes
+   */
+  public static RSAMultiPrimePrivateCrtKeySpec reassembleMultiPrime(
+      BigInteger modulus,
+      BigInteger publicExponent,
+      BigInteger primeP,
+      List<BigInteger> otherPrimes,
+      Executor executor) {
+    int count = otherPrimes.size() + 2;
+    BigInteger[] primes = new BigInteger[count];
+    primes[0] = primeP;
+    BigInteger otherProduct = primeP;
+    for (int i = 0; i < otherPrimes.size(); ++i) {
+      primes[i + 2] = otherPrimes.get(i);
+      otherProduct = otherProduct.multiply(primes[i + 2]);
+    }
+    BigInteger[] remainder = modulus.divideAndRemainder(otherProduct);
+    if (remainder[1].signum() != 0) {
+      throw new ArithmeticException("Primes do not divide the modulus");
+    }
+    primes[1] = remainder[0];
+
+    // coefficient of Q is Q^-1 mod P, and of every other prime r_i it is (r_1 * ... * r_i-1)^-1
+    List<CompletableFuture<BigInteger>> coefficients = new ArrayList<>(count);
+    coefficients.add(
+        CompletableFuture.supplyAsync(() -> primes[1].modInverse(primes[0]), executor));
+    BigInteger prefix = primes[0].multiply(primes[1]);
+    for (int i = 2; i < count; ++i) {
+      BigInteger prime = primes[i];
+      BigInteger product = prefix;
+      coefficients.add(
+          CompletableFuture.supplyAsync(() -> product.mod(prime).modInverse(prime), executor));
+      prefix = prefix.multiply(prime);
+    }
+
+    BigInteger totient = primes[0].subtract(BigInteger.ONE);
+    for (int i = 1; i < count; ++i) {
+      totient = lcm(totient, primes[i].subtract(BigInteger.ONE));
+    }
+    BigInteger privateExponent = privateExponent(publicExponent, totient);
+
+    List<CompletableFuture<BigInteger>> exponents = new ArrayList<>(count);
+    for (int i = 0; i < count - 1; ++i) {
+      BigInteger prime = primes[i];
+      exponents.add(
+          CompletableFuture.supplyAsync(
+              () -> privateExponent.mod(prime.subtract(BigInteger.ONE)), executor));
+    }
+    exponents.add(
+        CompletableFuture.completedFuture(
+            privateExponent.mod(primes[count - 1].subtract(BigInteger.ONE))));
+
+    RSAOtherPrimeInfo[] otherPrimeInfo = null;
+    if (count > 2) {
+      otherPrimeInfo = new RSAOtherPrimeInfo[count - 2];
+      for (int i = 2; i < count; ++i) {
+        otherPrimeInfo[i - 2] =
+            new RSAOtherPrimeInfo(primes[i], join(exponents.get(i)), join(coefficients.get(i - 1)));
+      }
+    }
+    return new RSAMultiPrimePrivateCrtKeySpec(
+        modulus,
+        publicExponent,
+        privateExponent,
+        primes[0],
+        primes[1],
+        join(exponents.get(0)),
+        join(exponents.get(1)),
+        join(coefficients.get(0)),
+        otherPrimeInfo);
+  }
+
+  /**
+   * Reassemble a batch of keys in parallel using the default totient function (Carmichael).
+   *
+   * @param requests Keys to reassemble
+   * @param parallelism Number of worker threads
+   * @return One result per request, in input order
+   * @see #reassembleAll(Collection, int, TotientFunction)
+   */
+  public static List<ReassemblyResult> reassembleAll(
+      Collection<ReassemblyRequest> requests, int parallelism) {
+    return reassembleAll(requests, parallelism, CARMICHAEL_TOTIENT_FUNCTION);
+  }
+
+  /**
+   * Reassemble a stream of keys in parallel using the default totient function (Carmichael). The
+   * stream is drained before reassembly starts.
+   *
+   * @param requests Keys to reassemble
+   * @param parallelism Number of worker threads
+   * @return One result per request, in encounter order
+   * @see #reassembleAll(Collection, int, TotientFunction)
+   */
+  public static List<ReassemblyResult> reassembleAll(
+      Stream<ReassemblyRequest> requests, int parallelism) {
+    return reassembleAll(requests, parallelism, CARMICHAEL_TOTIENT_FUNCTION);
+  }
+
+  /**
+   * Reassemble a stream of keys in parallel using the given totient function. The stream is drained
+   * before reassembly starts.
+   *
+   * @param requests Keys to reassemble
+   * @param parallelism Number of worker threads
+   * @param totientFunction Totient function
+   * @return One result per request, in encounter order
+   * @see #reassembleAll(Collection, int, TotientFunction)
+   */
+  public static List<ReassemblyResult> reassembleAll(
+      Stream<ReassemblyRequest> requests, int parallelism, TotientFunction totientFunction) {
+    return reassembleAll(requests.collect(Collectors.toList()), parallelism, totientFunction);
+  }
+
+  /**
+   * Reassemble a batch of keys in parallel on a dedicated fork-join pool, using the given totient
+   * function.
+   *
+   * <p>A failure to reassemble one key does not abort the batch - it is reported in that key's
+   * {@link ReassemblyResult}.
+   *
+   * @param requests Keys to reassemble
+   * @param parallelism Number of worker threads
+   * @param totientFunction Totient function
+   * @return One result per request, in input order
+   */
+  public static List<ReassemblyResult> reassembleAll(
+      Collection<ReassemblyRequest> requests, int parallelism, TotientFunction totientFunction) {
+    return reassembleAll(requests, parallelism, totientFunction, BIG_INTEGER_ENGINE);
+  }
+
+  /**
+   * Reassemble a batch of keys in parallel on a dedicated fork-join pool, using the given totient
+   * function and arithmetic engine.
+   *
+   * <p>A failure to reassemble one key does not abort the batch - it is reported in that key's
+   * {@link ReassemblyResult}.
+   *
+   * @param requests Keys to reassemble
+   * @param parallelism Number of worker threads
+   * @param totientFunction Totient function
+   * @param engine Arithmetic engine
+   * @return One result per request, in input order
+   */
+  public static List<ReassemblyResult> reassembleAll(
+      Collection<ReassemblyRequest> requests,
+      int parallelism,
+      TotientFunction totientFunction,
+      Engine engine) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+    }
+    ReassemblyRequest[] input = requests.toArray(new ReassemblyRequest[0]);
+    if (input.length == 0) {
+      return Collections.emptyList();
+    }
+    ReassemblyResult[] output = new ReassemblyResult[input.length];
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    try {
+      pool.invoke(new ReassembleTask(input, output, 0, input.length, totientFunction, engine));
+    } finally {
+      pool.shutdown();
+    }
+    return Collections.unmodifiableList(new ArrayList<>(Arrays.asList(output)));
+  }
+
+  /**
+   * Computes the private exponent e^-1 mod totient.
+   *
+   * <p>Public exponents are nearly always small (65537, sometimes 3). For those, rather than
+   * running the extended Euclidean algorithm on the full-size totient, we invert the totient modulo
+   * e on machine words and lift the result back with a single big division: with t = totient^-1 mod
+   * e, d = (1 + totient * (e - t)) / e. Any other exponent takes the generic path.
+   *
+   * @return The same as {@code publicExponent.modInverse(totient)}
+   * @throws ArithmeticException If the totient is not positive, or the exponent is not invertible
+   */
+  public static BigInteger privateExponent(BigInteger publicExponent, BigInteger totient) {
+    if (publicExponent.signum() <= 0
+        || publicExponent.bitLength() > SMALL_EXPONENT_BITS
+        || !publicExponent.testBit(0)
+        || publicExponent.equals(BigInteger.ONE)
+        || totient.compareTo(BigInteger.ONE) <= 0) {
+      return publicExponent.modInverse(totient);
+    }
+    long e = publicExponent.longValue();
+    long t = modInverse(totient.mod(publicExponent).longValue(), e);
+    return totient.multiply(BigInteger.valueOf(e - t)).add(BigInteger.ONE).divide(publicExponent);
+  }
+
+  /** @return a^-1 mod m, for 0 <= a < m */
+  private static long modInverse(long a, long m) {
+    long r0 = m;
+    long r1 = a;
+    long t0 = 0;
+    long t1 = 1;
+    while (r1 != 0) {
+      long quotient = r0 / r1;
+      long r = r0 - quotient * r1;
+      r0 = r1;
+      r1 = r;
+      long t = t0 - quotient * t1;
+      t0 = t1;
+      t1 = t;
+    }
+    if (r0 != 1) {
+      throw new ArithmeticException("BigInteger not invertible.");
+    }
+    return t0 < 0 ? t0 + m : t0;
+  }
+
+  /**
+   * Computes the totient, splitting Carmichael's function into a concurrent GCD and product. Other
+   * totient functions are opaque and are applied as-is.
+   */
+  private static BigInteger totient(
+      BigInteger primeP, BigInteger primeQ, TotientFunction totientFunction, Executor executor) {
+    if (totientFunction != CARMICHAEL_TOTIENT_FUNCTION) {
+      return totientFunction.apply(primeP, primeQ);
+    }
+    BigInteger a = primeP.subtract(BigInteger.ONE);
+    BigInteger b = primeQ.subtract(BigInteger.ONE);
+    CompletableFuture<BigInteger> gcd = CompletableFuture.supplyAsync(() -> a.gcd(b), executor);
+    BigInteger product = a.multiply(b).abs();
+    return product.divide(join(gcd));
+  }
+
+  /** Waits for the given future, rethrowing whatever failed it unwrapped */
+  private static <T> T join(CompletableFuture<T> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw e;
+    }
+  }
+
   /** @return Least common multiple of a and b */
   private static BigInteger lcm(BigInteger a, BigInteger b) {
     return a.multiply(b).abs().divide(a.gcd(b));
   }
 
+  /** Splits a batch in halves until a single key is left, and reassembles it */
+  private static final class ReassembleTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ReassemblyRequest[] input;
+    private final ReassemblyResult[] output;
+    private final int from;
+    private final int to;
+    private final TotientFunction totientFunction;
+    private final Engine engine;
+
+    private ReassembleTask(
+        ReassemblyRequest[] input,
+        ReassemblyResult[] output,
+        int from,
+        int to,
+        TotientFunction totientFunction,
+        Engine engine) {
+      this.input = input;
+      this.output = output;
+      this.from = from;
+      this.to = to;
+      this.totientFunction = totientFunction;
+      this.engine = engine;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from == 1) {
+        output[from] = reassembleOne(input[from]);
+        return;
+      }
+      int middle = (from + to) >>> 1;
+      invokeAll(
+          new ReassembleTask(input, output, from, middle, totientFunction, engine),
+          new ReassembleTask(input, output, middle, to, totientFunction, engine));
+    }
+
+    private ReassemblyResult reassembleOne(ReassemblyRequest request) {
+      try {
+        return ReassemblyResult.success(
+            request,
+            engine.reassemble(
+                request.getModulus(),
+                request.getPublicExponent(),
+                request.getPrimeP(),
+                totientFunction));
+      } catch (RuntimeException e) {
+        return ReassemblyResult.failure(request, e);
+      }
+    }
+  }
+
   /** An interface for some totient function */
   public interface TotientFunction extends BiFunction<BigInteger, BigInteger, BigInteger> {}
+
+  /** An implementation of the reassembly arithmetic */
+  public interface Engine {
+    RSAPrivateCrtKeySpec reassemble(
+        BigInteger modulus,
+        BigInteger publicExponent,
+        BigInteger primeP,
+        TotientFunction totientFunction);
+  }
 }
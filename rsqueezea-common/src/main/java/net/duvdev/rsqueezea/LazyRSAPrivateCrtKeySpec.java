@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea;
+
+import java.math.BigInteger;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.RSAPrivateCrtKeySpec;
+
+/**
+ * A CRT private key spec that derives its values from the public key and the prime factor P on
+ * first access, rather than up front like {@link KeyReassembler}.
+ *
+ * <p>Each value is computed at most once, and only along with what it depends on: Q for the CRT
+ * coefficient, Q and the private exponent for the prime exponents. Safe for concurrent use.
+ */
+public final class LazyRSAPrivateCrtKeySpec extends RSAPrivateCrtKeySpec {
+
+  private final KeyReassembler.TotientFunction totientFunction;
+
+  private volatile BigInteger primeQ;
+
+  private volatile BigInteger privateExponent;
+
+  private volatile BigInteger primeExponentP;
+
+  private volatile BigInteger primeExponentQ;
+
+  private volatile BigInteger crtCoefficient;
+
+  /**
+   * Lazily derive an RSA private key from the given RSA public key and the prime factor P using the
+   * default totient function (Carmichael).
+   *
+   * @param publicKey RSA public key to derive private key from
+   * @param primeP The P factor of the public modulus
+   */
+  public LazyRSAPrivateCrtKeySpec(RSAPublicKey publicKey, BigInteger primeP) {
+    this(publicKey.getModulus(), publicKey.getPublicExponent(), primeP);
+  }
+
+  /**
+   * Lazily derive an RSA private key from the given RSA public modulus, exponent, and the prime
+   * factor P using the default totient function (Carmichael).
+   *
+   * @param modulus The public modulus (p * q)
+   * @param publicExponent The public exponent (e)
+   * @param primeP The P factor of the public modulus
+   */
+  public LazyRSAPrivateCrtKeySpec(
+      BigInteger modulus, BigInteger publicExponent, BigInteger primeP) {
+    this(modulus, publicExponent, primeP, KeyReassembler.CARMICHAEL_TOTIENT_FUNCTION);
+  }
+
+  /**
+   * Lazily derive an RSA private key from the given RSA public modulus, exponent, and the prime
+   * factor P using the given totient function.
+   *
+   * @param modulus The public modulus (p * q)
+   * @param publicExponent The public exponent (e)
+   * @param primeP The P factor of the public modulus
+   * @param totientFunction Totient function
+   */
+  public LazyRSAPrivateCrtKeySpec(
+      BigInteger modulus,
+      BigInteger publicExponent,
+      BigInteger primeP,
+      KeyReassembler.TotientFunction totientFunction) {
+    // the derived values are not known yet, our getters take over from the superclass'
+    super(modulus, publicExponent, null, primeP, null, null, null, null);
+    this.totientFunction = totientFunction;
+  }
+
+  @Override
+  public BigInteger getPrimeQ() {
+    BigInteger value = primeQ;
+    if (value == null) {
+      synchronized (this) {
+        value = primeQ;
+        if (value == null) {
+          value = getModulus().divide(getPrimeP());
+          primeQ = value;
+        }
+      }
+    }
+    return value;
+  }
+
+  @Override
+  public BigInteger getPrivateExponent() {
+    BigInteger value = privateExponent;
+    if (value == null) {
+      BigInteger q = getPrimeQ();
+      synchronized (this) {
+        value = privateExponent;
+        if (value == null) {
+          value =
+              KeyReassembler.privateExponent(
+                  getPublicExponent(), totientFunction.apply(getPrimeP(), q));
+          privateExponent = value;
+        }
+      }
+    }
+    return value;
+  }
+
+  @Override
+  public BigInteger getPrimeExponentP() {
+    BigInteger value = primeExponentP;
+    if (value == null) {
+      BigInteger d = getPrivateExponent();
+      synchronized (this) {
+        value = primeExponentP;
+        if (value == null) {
+          value = d.mod(getPrimeP().subtract(BigInteger.ONE));
+          primeExponentP = value;
+        }
+      }
+    }
+    return value;
+  }
+
+  @Override
+  public BigInteger getPrimeExponentQ() {
+    BigInteger value = primeExponentQ;
+    if (value == null) {
+      BigInteger d = getPrivateExponent();
+      BigInteger q = getPrimeQ();
+      synchronized (this) {
+        value = primeExponentQ;
+        if (value == null) {
+          value = d.mod(q.subtract(BigInteger.ONE));
+          primeExponentQ = value;
+        }
+      }
+    }
+    return value;
+  }
+
+  @Override
+  public BigInteger getCrtCoefficient() {
+    BigInteger value = crtCoefficient;
+    if (value == null) {
+      BigInteger q = getPrimeQ();
+      synchronized (this) {
+        value = crtCoefficient;
+        if (value == null) {
+          value = q.modInverse(getPrimeP());
+          crtCoefficient = value;
+        }
+      }
+    }
+    return value;
+  }
+
+  /** @return true if all derived values have been computed */
+  public boolean isFullyComputed() {
+    return primeQ != null
+        && privateExponent != null
+        && primeExponentP != null
+        && primeExponentQ != null
+        && crtCoefficient != null;
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea;
+
+import java.math.BigInteger;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Objects;
+
+/** The inputs needed to reassemble a single private key: modulus, public exponent and prime P. */
+public final class ReassemblyRequest {
+
+  private final BigInteger modulus;
+
+  private final BigInteger publicExponent;
+
+  private final BigInteger primeP;
+
+  /**
+   * @param modulus The public modulus (p * q)
+   * @param publicExponent The public exponent (e)
+   * @param primeP The P factor of the public modulus
+   */
+  public ReassemblyRequest(BigInteger modulus, BigInteger publicExponent, BigInteger primeP) {
+    this.modulus = Objects.requireNonNull(modulus, "modulus");
+    this.publicExponent = Objects.requireNonNull(publicExponent, "publicExponent");
+    this.primeP = Objects.requireNonNull(primeP, "primeP");
+  }
+
+  /**
+   * @param publicKey RSA public key to derive private key from
+   * @param primeP The P factor of the public modulus
+   */
+  public ReassemblyRequest(RSAPublicKey publicKey, BigInteger primeP) {
+    this(publicKey.getModulus(), publicKey.getPublicExponent(), primeP);
+  }
+
+  public BigInteger getModulus() {
+    return modulus;
+  }
+
+  public BigInteger getPublicExponent() {
+    return publicExponent;
+  }
+
+  public BigInteger getPrimeP() {
+    return primeP;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    ReassemblyRequest that = (ReassemblyRequest) o;
+    return modulus.equals(that.modulus)
+        && publicExponent.equals(that.publicExponent)
+        && primeP.equals(that.primeP);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(modulus, publicExponent, primeP);
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea;
+
+import java.security.spec.RSAPrivateCrtKeySpec;
+import java.util.Objects;
+
+/**
+ * The outcome of reassembling a single {@link ReassemblyRequest} as part of a batch. Exactly one of
+ * {@link #getKeySpec()} and {@link #getFailure()} is non-null.
+ */
+public final class ReassemblyResult {
+
+  private final ReassemblyRequest request;
+
+  private final RSAPrivateCrtKeySpec keySpec;
+
+  private final RuntimeException failure;
+
+  private ReassemblyResult(
+      ReassemblyRequest request, RSAPrivateCrtKeySpec keySpec, RuntimeException failure) {
+    this.request = request;
+    this.keySpec = keySpec;
+    this.failure = failure;
+  }
+
+  static ReassemblyResult success(ReassemblyRequest request, RSAPrivateCrtKeySpec keySpec) {
+    return new ReassemblyResult(request, Objects.requireNonNull(keySpec), null);
+  }
+
+  static ReassemblyResult failure(ReassemblyRequest request, RuntimeException failure) {
+    return new ReassemblyResult(request, null, Objects.requireNonNull(failure));
+  }
+
+  /** @return The request this result was produced for */
+  public ReassemblyRequest getRequest() {
+    return request;
+  }
+
+  /** @return true if the key was reassembled */
+  public boolean isSuccess() {
+    return keySpec != null;
+  }
+
+  /** @return The reassembled key, or null if reassembly failed */
+  public RSAPrivateCrtKeySpec getKeySpec() {
+    return keySpec;
+  }
+
+  /**
+   * @return The reason reassembly failed (e.g. {@link ArithmeticException} for a P that is not a
+   *     factor of the modulus), or null if it succeeded
+   */
+  public RuntimeException getFailure() {
+    return failure;
+  }
+}
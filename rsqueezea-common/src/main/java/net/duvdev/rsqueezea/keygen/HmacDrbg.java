@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.keygen;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+/**
+ * HMAC_DRBG with SHA-256, as specified by NIST SP 800-90A section 10.1.2, without prediction
+ * resistance, reseeding or additional input. The same entropy, nonce and personalization always
+ * produce the same bytes, which is what makes a key reproducible from its seed.
+ */
+public final class HmacDrbg {
+
+  private static final String ALGORITHM = "HmacSHA256";
+
+  private static final int OUTPUT_LENGTH = 32;
+
+  /** Maximal number of bytes per request, by SP 800-90A table 2 */
+  private static final int MAX_REQUEST_LENGTH = 1 << 16;
+
+  private final Mac mac;
+
+  private byte[] key = new byte[OUTPUT_LENGTH];
+
+  private byte[] value = new byte[OUTPUT_LENGTH];
+
+  public HmacDrbg(byte[] entropy, byte[] nonce, byte[] personalization) {
+    try {
+      mac = Mac.getInstance(ALGORITHM);
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException(ALGORITHM + " is required of every Java platform", e);
+    }
+    Arrays.fill(value, (byte) 0x01);
+    update(entropy, nonce, personalization);
+  }
+
+  /** Fills {@code bytes} with the next bytes of the output */
+  public void nextBytes(byte[] bytes) {
+    if (bytes.length > MAX_REQUEST_LENGTH) {
+      throw new IllegalArgumentException("Requested more than " + MAX_REQUEST_LENGTH + " bytes");
+    }
+    for (int offset = 0; offset < bytes.length; offset += OUTPUT_LENGTH) {
+      value = hmac(key, value);
+      System.arraycopy(value, 0, bytes, offset, Math.min(OUTPUT_LENGTH, bytes.length - offset));
+    }
+    update();
+  }
+
+  /** HMAC_DRBG_Update, with the provided data being the concatenation of {@code data} */
+  private void update(byte[]... data) {
+    boolean provided = false;
+    for (byte[] part : data) {
+      provided |= part.length != 0;
+    }
+    key = hmac(key, value, new byte[] {0x00}, data);
+    value = hmac(key, value);
+    if (provided) {
+      key = hmac(key, value, new byte[] {0x01}, data);
+      value = hmac(key, value);
+    }
+  }
+
+  private byte[] hmac(byte[] key, byte[] value) {
+    return hmac(key, value, new byte[0]);
+  }
+
+  private byte[] hmac(byte[] key, byte[] value, byte[] separator, byte[]... data) {
+    try {
+      mac.init(new SecretKeySpec(key, ALGORITHM));
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException(e);
+    }
+    mac.update(value);
+    mac.update(separator);
+    for (byte[] part : data) {
+      mac.update(part);
+    }
+    return mac.doFinal();
+  }
+}
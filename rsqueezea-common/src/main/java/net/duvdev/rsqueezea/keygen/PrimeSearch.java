@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.keygen;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Finds the first prime at or after a starting point, by sieving a window of odd candidates with
+ * the small primes, then running Miller-Rabin on the survivors.
+ *
+ * <p>The survivors are tested in batches, one candidate per thread, and the first passing candidate
+ * of a batch is taken. The prime found is therefore the same as that of a sequential search,
+ * whatever the parallelism.
+ */
+final class PrimeSearch {
+
+  /** Small primes are sieved up to this bound */
+  private static final int SIEVE_LIMIT = 1 << 20;
+
+  /** Odd candidates per window, about 20 times the average gap between 2048-bit primes */
+  private static final int WINDOW = 1 << 14;
+
+  /** The odd primes below {@link #SIEVE_LIMIT}, shared by all searches */
+  private static final int[] SMALL_PRIMES = smallPrimes();
+
+  /**
+   * Products of consecutive small primes, each fitting a long, so one division of a candidate
+   * yields the residues of several primes. Group i ends before the prime at GROUP_ENDS[i].
+   */
+  private static final long[] PRODUCTS;
+
+  private static final int[] GROUP_ENDS;
+
+  static {
+    List<Long> products = new ArrayList<>();
+    List<Integer> ends = new ArrayList<>();
+    long product = 1;
+    for (int i = 0; i < SMALL_PRIMES.length; ++i) {
+      int prime = SMALL_PRIMES[i];
+      if (product > Long.MAX_VALUE / prime) {
+        products.add(product);
+        ends.add(i);
+        product = 1;
+      }
+      product *= prime;
+    }
+    products.add(product);
+    ends.add(SMALL_PRIMES.length);
+    PRODUCTS = new long[products.size()];
+    GROUP_ENDS = new int[ends.size()];
+    for (int i = 0; i < PRODUCTS.length; ++i) {
+      PRODUCTS[i] = products.get(i);
+      GROUP_ENDS[i] = ends.get(i);
+    }
+  }
+
+  /** Do not instantiate */
+  private PrimeSearch() {}
+
+  /**
+   * @param start Where to start the search. Made odd if it is even.
+   * @param publicExponent Only primes p with gcd(p - 1, e) = 1 are taken
+   * @param executor Executor to run the Miller-Rabin tests on
+   * @param parallelism Number of candidates to test concurrently
+   * @return The first prime at or after {@code start}, coprime to e after subtracting one
+   */
+  static BigInteger firstPrime(
+      BigInteger start, BigInteger publicExponent, Executor executor, int parallelism) {
+    BigInteger offset = start.setBit(0);
+    int rounds = millerRabinRounds(offset.bitLength());
+    while (true) {
+      BitSet composite = sieve(offset);
+      List<BigInteger> batch = new ArrayList<>(parallelism);
+      for (int i = composite.nextClearBit(0); i < WINDOW; i = composite.nextClearBit(i + 1)) {
+        BigInteger candidate = offset.add(BigInteger.valueOf(2L * i));
+        if (!candidate.subtract(BigInteger.ONE).gcd(publicExponent).equals(BigInteger.ONE)) {
+          continue;
+        }
+        batch.add(candidate);
+        if (batch.size() == parallelism) {
+          BigInteger prime = firstProbablePrime(batch, rounds, executor);
+          if (prime != null) {
+            return prime;
+          }
+          batch.clear();
+        }
+      }
+      BigInteger prime = firstProbablePrime(batch, rounds, executor);
+      if (prime != null) {
+        return prime;
+      }
+      offset = offset.add(BigInteger.valueOf(2L * WINDOW));
+    }
+  }
+
+  /**
+   * Miller-Rabin with bases derived from SHA-256 of the candidate, so the outcome does not depend
+   * on a random source. The bases are as good as random for candidates that are not chosen to fool
+   * them, and the candidates here come from a DRBG.
+   */
+  static boolean isProbablePrime(BigInteger candidate, int rounds) {
+    BigInteger minusOne = candidate.subtract(BigInteger.ONE);
+    int shift = minusOne.getLowestSetBit();
+    BigInteger odd = minusOne.shiftRight(shift);
+    BigInteger range = candidate.subtract(BigInteger.valueOf(3));
+    byte[] bytes = candidate.toByteArray();
+    MessageDigest digest = sha256();
+    for (int round = 0; round < rounds; ++round) {
+      digest.update(bytes);
+      digest.update(ByteBuffer.allocate(4).putInt(0, round));
+      BigInteger base = new BigInteger(1, digest.digest()).mod(range).add(BigInteger.valueOf(2));
+      BigInteger x = base.modPow(odd, candidate);
+      if (x.equals(BigInteger.ONE) || x.equals(minusOne)) {
+        continue;
+      }
+      boolean witness = true;
+      for (int i = 1; i < shift && witness; ++i) {
+        x = x.multiply(x).mod(candidate);
+        if (x.equals(minusOne)) {
+          witness = false;
+        } else if (x.equals(BigInteger.ONE)) {
+          break;
+        }
+      }
+      if (witness) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Rounds for an error probability under 2^-100, by FIPS 186-4 table C.2 */
+  static int millerRabinRounds(int bitLength) {
+    if (bitLength >= 1536) {
+      return 4;
+    }
+    if (bitLength >= 1024) {
+      return 5;
+    }
+    if (bitLength >= 512) {
+      return 7;
+    }
+    return 40;
+  }
+
+  /** @return Whether each odd candidate offset + 2i has a small prime factor */
+  private static BitSet sieve(BigInteger offset) {
+    BitSet composite = new BitSet(WINDOW);
+    for (int group = 0, i = 0; group < PRODUCTS.length; ++group) {
+      long residue = offset.mod(BigInteger.valueOf(PRODUCTS[group])).longValue();
+      for (; i < GROUP_ENDS[group]; ++i) {
+        int prime = SMALL_PRIMES[i];
+        int r = (int) (residue % prime);
+        // offset + 2j = 0 (mod prime) for j = -r / 2, and 1/2 = (prime + 1) / 2
+        long first = (long) (prime - r) % prime * ((prime + 1) / 2) % prime;
+        for (int j = (int) first; j < WINDOW; j += prime) {
+          composite.set(j);
+        }
+      }
+    }
+    return composite;
+  }
+
+  /** @return The first candidate to pass, or null if none does */
+  private static BigInteger firstProbablePrime(
+      List<BigInteger> candidates, int rounds, Executor executor) {
+    if (candidates.size() == 1) {
+      BigInteger candidate = candidates.get(0);
+      return isProbablePrime(candidate, rounds) ? candidate : null;
+    }
+    List<CompletableFuture<Boolean>> results = new ArrayList<>(candidates.size());
+    for (BigInteger candidate : candidates) {
+      results.add(
+          CompletableFuture.supplyAsync(() -> isProbablePrime(candidate, rounds), executor));
+    }
+    for (int i = 0; i < candidates.size(); ++i) {
+      if (join(results.get(i))) {
+        return candidates.get(i);
+      }
+    }
+    return null;
+  }
+
+  private static <T> T join(CompletableFuture<T> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw e;
+    }
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is required of every Java platform", e);
+    }
+  }
+
+  /** Sieve of Eratosthenes */
+  private static int[] smallPrimes() {
+    BitSet composite = new BitSet(SIEVE_LIMIT);
+    int count = 0;
+    int[] primes = new int[SIEVE_LIMIT / 8];
+    for (int i = 3; i < SIEVE_LIMIT; i += 2) {
+      if (composite.get(i)) {
+        continue;
+      }
+      primes[count++] = i;
+      for (long j = (long) i * i; j < SIEVE_LIMIT; j += 2 * i) {
+        composite.set((int) j);
+      }
+    }
+    int[] result = new int[count];
+    System.arraycopy(primes, 0, result, 0, count);
+    return result;
+  }
+}
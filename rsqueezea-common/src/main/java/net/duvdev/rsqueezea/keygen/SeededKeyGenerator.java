@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.keygen;
+
+import net.duvdev.rsqueezea.KeyReassembler;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.security.spec.RSAPrivateCrtKeySpec;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Generates RSA keys deterministically from a 256-bit seed, so the seed alone is enough to generate
+ * the same key again.
+ *
+ * <p>An {@link HmacDrbg} is instantiated with the seed as its entropy input, no nonce, and the
+ * personalization string "RSqueezeA RSA key" followed by the modulus length as a big-endian int.
+ * For each of P and Q in turn, it yields a starting point of the prime's length, rounded up to
+ * whole bytes and then shifted right, with its top two bits set so the modulus has exactly the
+ * requested length. The prime is the first odd number at or after that point which passes
+ * Miller-Rabin, and whose predecessor is coprime to e = 65537. Should the primes be closer than
+ * 2^(n/2 - 100), which FIPS 186-4 forbids, both are drawn again.
+ *
+ * <p>The larger prime is P, and the rest of the key is computed as {@link KeyReassembler} does.
+ */
+public final class SeededKeyGenerator {
+
+  /** Length of a seed, in bytes */
+  public static final int SEED_LENGTH = 32;
+
+  public static final int MIN_MODULUS_BITS = 512;
+
+  public static final int MAX_MODULUS_BITS = 16384;
+
+  public static final BigInteger PUBLIC_EXPONENT = BigInteger.valueOf(65537);
+
+  private static final byte[] PERSONALIZATION =
+      "RSqueezeA RSA key".getBytes(StandardCharsets.US_ASCII);
+
+  /** Do not instantiate */
+  private SeededKeyGenerator() {}
+
+  /** @return A new seed from {@code random} */
+  public static byte[] newSeed(SecureRandom random) {
+    byte[] seed = new byte[SEED_LENGTH];
+    random.nextBytes(seed);
+    return seed;
+  }
+
+  /**
+   * Generates the key of the seed, testing candidate primes on the common fork-join pool.
+   *
+   * @param seed {@link #SEED_LENGTH} bytes
+   * @param modulusBits Length of the modulus
+   * @return The same key for the same seed and length
+   */
+  public static RSAPrivateCrtKeySpec generate(byte[] seed, int modulusBits) {
+    return generate(seed, modulusBits, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Generates the key of the seed, testing as many candidate primes at once as the pool's
+   * parallelism. The key does not depend on the pool.
+   *
+   * @param seed {@link #SEED_LENGTH} bytes
+   * @param modulusBits Length of the modulus
+   * @param pool Pool to test candidate primes on
+   * @return The same key for the same seed and length
+   */
+  public static RSAPrivateCrtKeySpec generate(byte[] seed, int modulusBits, ForkJoinPool pool) {
+    if (seed.length != SEED_LENGTH) {
+      throw new IllegalArgumentException(
+          "Seed of " + seed.length + " bytes, expecting " + SEED_LENGTH);
+    }
+    if (modulusBits < MIN_MODULUS_BITS || modulusBits > MAX_MODULUS_BITS) {
+      throw new IllegalArgumentException("Unsupported modulus length: " + modulusBits);
+    }
+    byte[] personalization =
+        ByteBuffer.allocate(PERSONALIZATION.length + 4)
+            .put(PERSONALIZATION)
+            .putInt(modulusBits)
+            .array();
+    HmacDrbg drbg = new HmacDrbg(seed, new byte[0], personalization);
+    int bitsP = (modulusBits + 1) / 2;
+    int bitsQ = modulusBits / 2;
+    int parallelism = pool.getParallelism();
+    while (true) {
+      BigInteger p =
+          PrimeSearch.firstPrime(startingPoint(drbg, bitsP), PUBLIC_EXPONENT, pool, parallelism);
+      BigInteger q =
+          PrimeSearch.firstPrime(startingPoint(drbg, bitsQ), PUBLIC_EXPONENT, pool, parallelism);
+      if (p.bitLength() == bitsP
+          && q.bitLength() == bitsQ
+          && p.subtract(q).abs().bitLength() > bitsQ - 100) {
+        BigInteger modulus = p.multiply(q);
+        return KeyReassembler.reassemble(modulus, PUBLIC_EXPONENT, p.max(q));
+      }
+    }
+  }
+
+  private static BigInteger startingPoint(HmacDrbg drbg, int bits) {
+    byte[] bytes = new byte[(bits + 7) / 8];
+    drbg.nextBytes(bytes);
+    return new BigInteger(1, bytes)
+        .shiftRight(bytes.length * 8 - bits)
+        .setBit(bits - 1)
+        .setBit(bits - 2);
+  }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.lattice;
+
+import java.math.BigInteger;
+
+/**
+ * LLL lattice basis reduction (Lenstra, Lenstra and Lovasz), with delta = 0.99.
+ *
+ * <p>The basis is kept exact, while the Gram-Schmidt coefficients are computed in floating point
+ * with a separate exponent, as in the Schnorr-Euchner variant. Entries thousands of bits long,
+ * which overflow a double, are therefore reduced at the cost of a few double operations per
+ * coefficient. A dot product that cancels badly in floating point is recomputed exactly.
+ *
+ * <p>Meant for the small, ill-conditioned lattices of Coppersmith's method. Larger or denser
+ * lattices may need more precision than a double has.
+ */
+public final class LatticeReduction {
+
+  private static final Dpe DELTA = Dpe.of(0.99, 0);
+
+  /** Slightly above 1/2, so rounding errors cannot cause endless size reduction */
+  private static final Dpe ETA = Dpe.of(0.51, 0);
+
+  /** Bits of cancellation beyond which a floating point dot product is recomputed exactly */
+  private static final int CANCELLATION_BITS = 30;
+
+  /** Do not instantiate */
+  private LatticeReduction() {}
+
+  /**
+   * Reduces the basis in place. The rows are the basis vectors, shortest first on return.
+   *
+   * @param basis Linearly independent rows of equal length
+   * @throws ArithmeticException If the reduction does not converge, which happens when the basis is
+   *     too ill-conditioned for the precision
+   */
+  public static void reduce(BigInteger[][] basis) {
+    int n = basis.length;
+    if (n < 2) {
+      return;
+    }
+    int dimension = basis[0].length;
+    Dpe[][] approximate = new Dpe[n][];
+    for (int i = 0; i < n; ++i) {
+      approximate[i] = approximate(basis[i]);
+    }
+    Dpe[][] mu = new Dpe[n][n];
+    Dpe[][] r = new Dpe[n][n];
+    Dpe[] squaredNorms = new Dpe[n];
+    squaredNorms[0] = dot(approximate[0], approximate[0]);
+
+    // each size reduction pass takes about 50 bits off the coefficients
+    int passes = maxBitLength(basis) + 64;
+    long budget = 1000L * n * n * passes;
+    int k = 1;
+    while (k < n) {
+      if (--budget < 0) {
+        throw new ArithmeticException("Lattice reduction does not converge");
+      }
+      sizeReduce(basis, approximate, mu, r, squaredNorms, k, dimension, passes);
+
+      Dpe squaredNorm = dot(approximate[k], approximate[k]);
+      for (int j = 0; j < k; ++j) {
+        squaredNorm = squaredNorm.subtract(mu[k][j].multiply(r[k][j]));
+      }
+      squaredNorms[k] = squaredNorm;
+      Dpe previous = squaredNorms[k - 1];
+      Dpe m = mu[k][k - 1];
+      // Lovasz condition
+      if (DELTA.multiply(previous).compareTo(squaredNorm.add(m.multiply(m).multiply(previous)))
+          > 0) {
+        swap(basis, k);
+        swap(approximate, k);
+        k = Math.max(k - 1, 1);
+        if (k == 1) {
+          squaredNorms[0] = dot(approximate[0], approximate[0]);
+        }
+      } else {
+        ++k;
+      }
+    }
+  }
+
+  /** Size-reduces row k against the rows before it, until its coefficients are at most eta */
+  private static void sizeReduce(
+      BigInteger[][] basis,
+      Dpe[][] approximate,
+      Dpe[][] mu,
+      Dpe[][] r,
+      Dpe[] squaredNorms,
+      int k,
+      int dimension,
+      int passes) {
+    for (int pass = 0; pass < passes; ++pass) {
+      for (int j = 0; j < k; ++j) {
+        Dpe s = dot(approximate[k], approximate[j]);
+        int expected = (norm(approximate[k]) + norm(approximate[j])) / 2;
+        if (s.exponent < expected - CANCELLATION_BITS) {
+          s = Dpe.of(exactDot(basis[k], basis[j]));
+        }
+        for (int i = 0; i < j; ++i) {
+          s = s.subtract(mu[j][i].multiply(r[k][i]));
+        }
+        r[k][j] = s;
+        mu[k][j] = s.divide(squaredNorms[j]);
+      }
+      boolean reduced = false;
+      for (int j = k - 1; j >= 0; --j) {
+        if (mu[k][j].abs().compareTo(ETA) <= 0) {
+          continue;
+        }
+        BigInteger q = mu[k][j].round();
+        Dpe approximateQ = Dpe.of(q);
+        for (int i = 0; i < dimension; ++i) {
+          if (basis[j][i].signum() != 0) {
+            basis[k][i] = basis[k][i].subtract(q.multiply(basis[j][i]));
+          }
+        }
+        for (int i = 0; i < j; ++i) {
+          mu[k][i] = mu[k][i].subtract(approximateQ.multiply(mu[j][i]));
+        }
+        mu[k][j] = mu[k][j].subtract(approximateQ);
+        reduced = true;
+      }
+      if (!reduced) {
+        return;
+      }
+      approximate[k] = approximate(basis[k]);
+    }
+    throw new ArithmeticException("Lattice reduction does not converge");
+  }
+
+  private static Dpe[] approximate(BigInteger[] vector) {
+    Dpe[] approximate = new Dpe[vector.length];
+    for (int i = 0; i < vector.length; ++i) {
+      approximate[i] = Dpe.of(vector[i]);
+    }
+    return approximate;
+  }
+
+  private static Dpe dot(Dpe[] a, Dpe[] b) {
+    Dpe sum = Dpe.ZERO;
+    for (int i = 0; i < a.length; ++i) {
+      sum = sum.add(a[i].multiply(b[i]));
+    }
+    return sum;
+  }
+
+  private static BigInteger exactDot(BigInteger[] a, BigInteger[] b) {
+    BigInteger sum = BigInteger.ZERO;
+    for (int i = 0; i < a.length; ++i) {
+      sum = sum.add(a[i].multiply(b[i]));
+    }
+    return sum;
+  }
+
+  /** @return Binary exponent of the vector's squared norm */
+  private static int norm(Dpe[] vector) {
+    return dot(vector, vector).exponent;
+  }
+
+  private static int maxBitLength(BigInteger[][] basis) {
+    int bits = 0;
+    for (BigInteger[] row : basis) {
+      for (BigInteger value : row) {
+        bits = Math.max(bits, value.bitLength());
+      }
+    }
+    return bits;
+  }
+
+  private static <T> void swap(T[] rows, int k) {
+    T row = rows[k];
+    rows[k] = rows[k - 1];
+    rows[k - 1] = row;
+  }
+
+  /** A double mantissa in [0.5, 1) with an int exponent, so it does not overflow */
+  private static final class Dpe {
+
+    static final Dpe ZERO = new Dpe(0, 0);
+
+    /** Bits of a BigInteger that fit a long, and therefore a double with rounding */
+    private static final int LONG_BITS = 62;
+
+    final double mantissa;
+
+    final int exponent;
+
+    private Dpe(double mantissa, int exponent) {
+      this.mantissa = mantissa;
+      this.exponent = exponent;
+    }
+
+    /** @return mantissa * 2^exponent, normalized */
+    static Dpe of(double mantissa, int exponent) {
+      if (mantissa == 0) {
+        return ZERO;
+      }
+      int shift = Math.getExponent(mantissa) + 1;
+      return new Dpe(Math.scalb(mantissa, -shift), exponent + shift);
+    }
+
+    static Dpe of(BigInteger value) {
+      int shift = Math.max(value.bitLength() - LONG_BITS, 0);
+      return of((double) value.shiftRight(shift).longValue(), shift);
+    }
+
+    Dpe multiply(Dpe other) {
+      return of(mantissa * other.mantissa, exponent + other.exponent);
+    }
+
+    Dpe divide(Dpe other) {
+      return of(mantissa / other.mantissa, exponent - other.exponent);
+    }
+
+    Dpe add(Dpe other) {
+      if (mantissa == 0) {
+        return other;
+      }
+      if (other.mantissa == 0) {
+        return this;
+      }
+      if (exponent < other.exponent) {
+        return other.add(this);
+      }
+      int difference = exponent - other.exponent;
+      if (difference > 64) {
+        return this;
+      }
+      return of(mantissa + Math.scalb(other.mantissa, -difference), exponent);
+    }
+
+    Dpe subtract(Dpe other) {
+      return add(other.negate());
+    }
+
+    Dpe negate() {
+      return new Dpe(-mantissa, exponent);
+    }
+
+    Dpe abs() {
+      return mantissa < 0 ? negate() : this;
+    }
+
+    int compareTo(Dpe other) {
+      if (mantissa == 0
+          || other.mantissa == 0
+          || Math.signum(mantissa) != Math.signum(other.mantissa)) {
+        return Double.compare(mantissa, other.mantissa);
+      }
+      if (exponent != other.exponent) {
+        return (exponent > other.exponent) == (mantissa > 0) ? 1 : -1;
+      }
+      return Double.compare(mantissa, other.mantissa);
+    }
+
+    /** @return The nearest integer, exact in its top 62 bits */
+    BigInteger round() {
+      if (exponent <= LONG_BITS) {
+        return BigInteger.valueOf(Math.round(Math.scalb(mantissa, exponent)));
+      }
+      return BigInteger.valueOf((long) Math.scalb(mantissa, LONG_BITS))
+          .shiftLeft(exponent - LONG_BITS);
+    }
+  }
+}
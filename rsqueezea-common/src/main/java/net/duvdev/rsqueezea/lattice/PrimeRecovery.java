@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.lattice;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Recovers a prime factor of an RSA modulus from its high bits, with Coppersmith's method.
+ *
+ * <p>With P = p0 + x for the known p0 and a small unknown x, the polynomial f(x) = x + p0 has a
+ * root modulo P, which divides N. The lattice of N^(m-i) f^i for i &lt; m, and x^j f^m for j &lt;
+ * m, scaled by the bound on x, is reduced with {@link LatticeReduction}. Its shortest vector is a
+ * polynomial with the same root over the integers, which is then found by Hensel lifting a root
+ * modulo a small prime.
+ *
+ * <p>For P of at least half the modulus, this lattice (m = 3) finds up to about a fifth of the
+ * modulus' bits, which is two fifths of P's bits. Recovery takes well under a second for a 4096 bit
+ * modulus, and a few seconds for 8192 bits.
+ */
+public final class PrimeRecovery {
+
+  /** Lattice parameter m, trading the bits that can be recovered for time */
+  private static final int M = 3;
+
+  /** Margin below the theoretical bound of m(m - 1) / (2m(2m - 1)) = 1/5 of the modulus' bits */
+  private static final int MARGIN_BITS = 16;
+
+  private static final int[] SMALL_PRIMES = {
+    3, 5, 7, 11, 13, 17, 19, 23, 29, 31, 37, 41, 43, 47, 53, 59, 61, 67, 71, 73, 79, 83, 89, 97
+  };
+
+  /** Do not instantiate */
+  private PrimeRecovery() {}
+
+  /**
+   * @param modulusBitLength Bit length of the modulus
+   * @return Number of low bits of the larger prime that can be left out, and still be recovered
+   */
+  public static int unknownBits(int modulusBitLength) {
+    return Math.max(modulusBitLength / 5 - MARGIN_BITS, 0);
+  }
+
+  /**
+   * Finds the prime factor of {@code modulus} whose high bits are given.
+   *
+   * @param modulus The public modulus (p * q)
+   * @param highBits The prime, shifted right by {@code unknownBits}
+   * @param unknownBits Number of low bits left out of the prime, at most {@link #unknownBits(int)}
+   *     of the modulus' length if the prime is the larger one
+   * @return The prime
+   * @throws ArithmeticException If no such factor is found
+   */
+  public static BigInteger fromHighBits(BigInteger modulus, BigInteger highBits, int unknownBits) {
+    if (unknownBits < 0 || highBits.signum() <= 0) {
+      throw new IllegalArgumentException("Invalid high bits of a prime");
+    }
+    if (unknownBits == 0) {
+      return checkFactor(modulus, highBits);
+    }
+    // centered, so that |x| <= 2^(unknownBits - 1)
+    BigInteger approximation = highBits.shiftLeft(unknownBits).setBit(unknownBits - 1);
+    int boundBits = unknownBits - 1;
+
+    BigInteger[][] basis = basis(modulus, approximation, boundBits);
+    LatticeReduction.reduce(basis);
+    for (BigInteger[] row : basis) {
+      BigInteger[] polynomial = new BigInteger[row.length];
+      for (int j = 0; j < row.length; ++j) {
+        polynomial[j] = row[j].shiftRight(j * boundBits);
+      }
+      BigInteger factor = findFactor(modulus, approximation, polynomial, unknownBits);
+      if (factor != null) {
+        return factor;
+      }
+    }
+    throw new ArithmeticException("Cannot recover the prime from its high bits");
+  }
+
+  /**
+   * @return Rows of polynomial coefficients, lowest degree first, with coefficient j scaled by 2^(j
+   *     * boundBits)
+   */
+  private static BigInteger[][] basis(BigInteger modulus, BigInteger approximation, int boundBits) {
+    int dimension = 2 * M;
+    BigInteger[][] basis = new BigInteger[dimension][dimension];
+    BigInteger[] power = {BigInteger.ONE};
+    for (int i = 0; i < dimension; ++i) {
+      BigInteger[] row = basis[i];
+      Arrays.fill(row, BigInteger.ZERO);
+      if (i < M) {
+        // N^(m - i) f^i
+        BigInteger scale = modulus.pow(M - i);
+        for (int j = 0; j < power.length; ++j) {
+          row[j] = power[j].multiply(scale);
+        }
+        power = multiplyByLinear(power, approximation);
+      } else {
+        // x^(i - m) f^m
+        System.arraycopy(power, 0, row, i - M, power.length);
+      }
+      for (int j = 1; j < dimension; ++j) {
+        row[j] = row[j].shiftLeft(j * boundBits);
+      }
+    }
+    return basis;
+  }
+
+  /** @return The coefficients of polynomial * (x + a) */
+  private static BigInteger[] multiplyByLinear(BigInteger[] polynomial, BigInteger a) {
+    BigInteger[] product = new BigInteger[polynomial.length + 1];
+    product[polynomial.length] = polynomial[polynomial.length - 1];
+    for (int j = polynomial.length - 1; j > 0; --j) {
+      product[j] = polynomial[j - 1].add(polynomial[j].multiply(a));
+    }
+    product[0] = polynomial[0].multiply(a);
+    return product;
+  }
+
+  /**
+   * Looks for an integer root x of the polynomial for which approximation + x divides the modulus.
+   * Roots modulo a small prime are lifted until they determine x, which is less than 2^rootBits in
+   * absolute value.
+   *
+   * @return The factor, or null if there is none
+   */
+  private static BigInteger findFactor(
+      BigInteger modulus, BigInteger approximation, BigInteger[] polynomial, int rootBits) {
+    BigInteger target = BigInteger.ONE.shiftLeft(rootBits + 1);
+    BigInteger[] derivative = derivative(polynomial);
+    for (int prime : SMALL_PRIMES) {
+      BigInteger bigPrime = BigInteger.valueOf(prime);
+      for (int root = 0; root < prime; ++root) {
+        BigInteger r = BigInteger.valueOf(root);
+        if (evaluate(polynomial, r).mod(bigPrime).signum() != 0
+            || evaluate(derivative, r).mod(bigPrime).signum() == 0) {
+          continue;
+        }
+        BigInteger power = bigPrime;
+        while (power.compareTo(target) < 0) {
+          power = power.multiply(power);
+          BigInteger slope = evaluate(derivative, r).modInverse(power);
+          r = r.subtract(evaluate(polynomial, r).multiply(slope)).mod(power);
+        }
+        if (r.shiftLeft(1).compareTo(power) > 0) {
+          r = r.subtract(power);
+        }
+        BigInteger candidate = approximation.add(r);
+        if (candidate.compareTo(BigInteger.ONE) > 0
+            && candidate.compareTo(modulus) < 0
+            && modulus.mod(candidate).signum() == 0) {
+          return candidate;
+        }
+      }
+    }
+    return null;
+  }
+
+  private static BigInteger evaluate(BigInteger[] polynomial, BigInteger x) {
+    BigInteger value = BigInteger.ZERO;
+    for (int j = polynomial.length - 1; j >= 0; --j) {
+      value = value.multiply(x).add(polynomial[j]);
+    }
+    return value;
+  }
+
+  private static BigInteger[] derivative(BigInteger[] polynomial) {
+    BigInteger[] derivative = new BigInteger[Math.max(polynomial.length - 1, 1)];
+    derivative[0] = BigInteger.ZERO;
+    for (int j = 1; j < polynomial.length; ++j) {
+      derivative[j - 1] = polynomial[j].multiply(BigInteger.valueOf(j));
+    }
+    return derivative;
+  }
+
+  private static BigInteger checkFactor(BigInteger modulus, BigInteger prime) {
+    if (prime.compareTo(BigInteger.ONE) <= 0 || modulus.mod(prime).signum() != 0) {
+      throw new ArithmeticException("Cannot recover the prime from its high bits");
+    }
+    return prime;
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.security.spec.RSAPrivateCrtKeySpec;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static junit.framework.TestCase.assertEquals;
+
+public class FixedWidthKeyReassemblerTest {
+
+  private static final List<KeyReassembler.TotientFunction> TOTIENT_FUNCTIONS =
+      Arrays.asList(
+          KeyReassembler.EULER_TOTIENT_FUNCTION, KeyReassembler.CARMICHAEL_TOTIENT_FUNCTION);
+
+  private final Random random = new Random(1337);
+
+  @Test
+  public void matchesBigIntegerForVariousSizes() {
+    for (int bits : new int[] {64, 96, 128, 512, 1024, 2048}) {
+      for (BigInteger e : Arrays.asList(BigInteger.valueOf(3), BigInteger.valueOf(65537))) {
+        BigInteger p = rsaPrime(bits / 2, e);
+        BigInteger q = rsaPrime(bits - bits / 2, e);
+        assertMatches(p.multiply(q), e, p);
+        assertMatches(p.multiply(q), e, q);
+      }
+    }
+  }
+
+  @Test
+  public void matchesBigIntegerForUnbalancedPrimes() {
+    BigInteger e = BigInteger.valueOf(65537);
+    BigInteger p = rsaPrime(200, e);
+    BigInteger q = rsaPrime(900, e);
+    assertMatches(p.multiply(q), e, p);
+    assertMatches(p.multiply(q), e, q);
+  }
+
+  @Test
+  public void matchesBigIntegerForLargeExponent() {
+    BigInteger p = rsaPrime(512, BigInteger.ONE);
+    BigInteger q = rsaPrime(512, BigInteger.ONE);
+    BigInteger totient = p.subtract(BigInteger.ONE).multiply(q.subtract(BigInteger.ONE));
+    BigInteger e;
+    do {
+      e = new BigInteger(1000, random).setBit(0);
+    } while (!e.gcd(totient).equals(BigInteger.ONE));
+    assertMatches(p.multiply(q), e, p);
+  }
+
+  @Test
+  public void matchesBigIntegerForFixedKey() {
+    assertMatches(KeyReassemblerTest.N, KeyReassemblerTest.E, KeyReassemblerTest.P);
+  }
+
+  @Test(expected = ArithmeticException.class)
+  public void nonInvertibleExponent() {
+    BigInteger e = BigInteger.valueOf(3);
+    BigInteger p;
+    do {
+      p = BigInteger.probablePrime(256, random);
+    } while (!p.mod(e).equals(BigInteger.ONE));
+    BigInteger q = rsaPrime(256, e);
+    FixedWidthKeyReassembler.reassemble(
+        p.multiply(q), e, p, KeyReassembler.CARMICHAEL_TOTIENT_FUNCTION);
+  }
+
+  @Test
+  public void arithmeticMatchesBigInteger() {
+    FixedWidthInteger a = new FixedWidthInteger(80);
+    FixedWidthInteger b = new FixedWidthInteger(80);
+    FixedWidthInteger c = new FixedWidthInteger(80);
+    FixedWidthInteger d = new FixedWidthInteger(80);
+    FixedWidthInteger work1 = new FixedWidthInteger(80);
+    FixedWidthInteger work2 = new FixedWidthInteger(80);
+    for (int i = 0; i < 2000; ++i) {
+      BigInteger x = new BigInteger(1 + random.nextInt(1200), random);
+      BigInteger y = new BigInteger(1 + random.nextInt(1200), random).add(BigInteger.ONE);
+
+      FixedWidthInteger.multiply(a.set(x), b.set(y), c);
+      assertEquals(x.multiply(y), c.toBigInteger());
+
+      FixedWidthInteger.divide(a.set(x), b.set(y), c, d, work1, work2);
+      assertEquals(x.divide(y), c.toBigInteger());
+      assertEquals(x.mod(y), d.toBigInteger());
+
+      if (x.signum() > 0) {
+        FixedWidthInteger.gcd(a.set(x), b.set(y), c);
+        assertEquals(x.gcd(y), c.toBigInteger());
+      }
+
+      BigInteger m = y.setBit(0);
+      BigInteger r = x.mod(m);
+      if (r.signum() > 0 && r.gcd(m).equals(BigInteger.ONE)) {
+        FixedWidthInteger.modInverseOdd(a.set(r), b.set(m), c, d, work1);
+        assertEquals(r.modInverse(m), work1.toBigInteger());
+      }
+
+      int shift = random.nextInt(100);
+      assertEquals(x.shiftLeft(shift), a.set(x).shiftLeft(shift).toBigInteger());
+      assertEquals(x.shiftRight(shift), a.set(x).shiftRight(shift).toBigInteger());
+    }
+  }
+
+  private BigInteger rsaPrime(int bits, BigInteger e) {
+    BigInteger prime;
+    do {
+      prime = BigInteger.probablePrime(bits, random);
+    } while (!prime.subtract(BigInteger.ONE).gcd(e).equals(BigInteger.ONE));
+    return prime;
+  }
+
+  private static void assertMatches(BigInteger modulus, BigInteger e, BigInteger primeP) {
+    for (KeyReassembler.TotientFunction totientFunction : TOTIENT_FUNCTIONS) {
+      RSAPrivateCrtKeySpec expected =
+          KeyReassembler.reassemble(modulus, e, primeP, totientFunction);
+      RSAPrivateCrtKeySpec actual =
+          KeyReassembler.FIXED_WIDTH_ENGINE.reassemble(modulus, e, primeP, totientFunction);
+      KeyReassemblerTest.assertSameKey(expected, actual);
+    }
+  }
+}
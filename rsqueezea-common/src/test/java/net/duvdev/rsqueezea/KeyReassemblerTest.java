@@ -13,15 +13,28 @@ import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.SecureRandom;
 import java.security.interfaces.RSAPublicKey;
+import java.security.spec.RSAMultiPrimePrivateCrtKeySpec;
+import java.security.spec.RSAOtherPrimeInfo;
 import java.security.spec.RSAPrivateCrtKeySpec;
 import java.security.spec.RSAPublicKeySpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.BiFunction;
+import java.util.stream.Stream;
 
 import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertNotNull;
+import static junit.framework.TestCase.assertNull;
+import static junit.framework.TestCase.assertSame;
+import static junit.framework.TestCase.assertTrue;
 
 public class KeyReassemblerTest {
 
-  private static final BigInteger N =
+  static final BigInteger N =
       new BigInteger(
           "C0A5FC54E72BE64289CF785D647CCD96FF3A1864BA00FA9A60D073BE446FF0FE"
               + "65DA1D7F0E019166454ABFA6FBD5A7D2F03A0E349FF52EB3D6A9F4B9FDB9D188"
@@ -32,14 +45,14 @@ public class KeyReassemblerTest {
               + "36984E4746E42E5A3D1F2FD2303F57CE689C3B0EB6E64F83F622B3D8340DB175"
               + "C860BB29D44A1BE1B75562518010B60374D818991653F54B633A749CDA35CAD1",
           16);
-  private static final BigInteger P =
+  static final BigInteger P =
       new BigInteger(
           "E0E4AC66C7F018E682953A241055F3E71F0FF451A08031E60567B8150C63EF24"
               + "36DD020E9BE792FE5745BCE5C850FE190529CE49D3BE71A26E869EB287F59F4B"
               + "FAF069A433EA158A950F2A829687810D2778C85937BA206C9A7A4FCF10408496"
               + "760252DC40C3ADC396B6EE094E5CB66F87ADF8F5EFF747E1F664498BC3E7A65B",
           16);
-  private static final BigInteger E = new BigInteger("65537");
+  static final BigInteger E = new BigInteger("65537");
   private static RSAPublicKey publicKey;
 
   private static RSAPublicKey generatedPublicKey;
@@ -114,6 +127,150 @@ public class KeyReassemblerTest {
         this::decryptCrt);
   }
 
+  @Test
+  public void batchKeepsOrderAndReportsFailures() {
+    ReassemblyRequest fixed = new ReassemblyRequest(publicKey, P);
+    ReassemblyRequest broken = new ReassemblyRequest(N, E, BigInteger.ONE);
+    ReassemblyRequest generated = new ReassemblyRequest(generatedPublicKey, generatedPrimeP);
+
+    List<ReassemblyResult> results =
+        KeyReassembler.reassembleAll(Arrays.asList(fixed, broken, generated), 2);
+
+    assertEquals(3, results.size());
+    assertSame(fixed, results.get(0).getRequest());
+    assertSame(broken, results.get(1).getRequest());
+    assertSame(generated, results.get(2).getRequest());
+
+    assertTrue(results.get(0).isSuccess());
+    assertSameKey(KeyReassembler.reassemble(publicKey, P), results.get(0).getKeySpec());
+    assertFalse(results.get(1).isSuccess());
+    assertNotNull(results.get(1).getFailure());
+    assertTrue(results.get(2).isSuccess());
+    assertSameKey(
+        KeyReassembler.reassemble(generatedPublicKey, generatedPrimeP),
+        results.get(2).getKeySpec());
+  }
+
+  @Test
+  public void batchOfStream() {
+    List<ReassemblyResult> results =
+        KeyReassembler.reassembleAll(
+            Stream.of(
+                new ReassemblyRequest(publicKey, P),
+                new ReassemblyRequest(generatedPublicKey, generatedPrimeP)),
+            2);
+
+    assertEquals(2, results.size());
+    assertSameKey(KeyReassembler.reassemble(publicKey, P), results.get(0).getKeySpec());
+    assertSameKey(
+        KeyReassembler.reassemble(generatedPublicKey, generatedPrimeP),
+        results.get(1).getKeySpec());
+  }
+
+  @Test
+  public void concurrentMatchesSequential() {
+    for (KeyReassembler.TotientFunction totientFunction :
+        Arrays.asList(
+            KeyReassembler.EULER_TOTIENT_FUNCTION, KeyReassembler.CARMICHAEL_TOTIENT_FUNCTION)) {
+      RSAPrivateCrtKeySpec expected = KeyReassembler.reassemble(N, E, P, totientFunction);
+      RSAPrivateCrtKeySpec actual =
+          KeyReassembler.reassembleConcurrently(
+              N, E, P, totientFunction, ForkJoinPool.commonPool(), 0);
+      assertSameKey(expected, actual);
+    }
+  }
+
+  @Test
+  public void fromHighBitsMatchesFullPrime() {
+    BigInteger prime = P.max(N.divide(P));
+    int unknownBits = 400;
+    RSAPrivateCrtKeySpec expected = KeyReassembler.reassemble(N, E, prime);
+    RSAPrivateCrtKeySpec actual =
+        KeyReassembler.reassembleFromHighBits(N, E, prime.shiftRight(unknownBits), unknownBits);
+    assertSameKey(expected, actual);
+  }
+
+  @Test(expected = ArithmeticException.class)
+  public void concurrentRethrowsFailure() {
+    KeyReassembler.reassembleConcurrently(
+        N,
+        E,
+        BigInteger.ONE,
+        KeyReassembler.CARMICHAEL_TOTIENT_FUNCTION,
+        ForkJoinPool.commonPool(),
+        0);
+  }
+
+  @Test
+  public void smallExponentPathMatchesModInverse() {
+    Random random = new Random(1337);
+    for (int i = 0; i < 500; ++i) {
+      BigInteger totient = new BigInteger(64 + random.nextInt(4096), random).clearBit(0);
+      for (BigInteger e :
+          Arrays.asList(
+              BigInteger.valueOf(3),
+              BigInteger.valueOf(17),
+              BigInteger.valueOf(65537),
+              BigInteger.valueOf(-3),
+              BigInteger.valueOf(random.nextLong() >>> 2).setBit(0),
+              new BigInteger(128, random).setBit(0))) {
+        BigInteger expected;
+        try {
+          expected = e.modInverse(totient);
+        } catch (ArithmeticException ex) {
+          expected = null;
+        }
+        try {
+          assertEquals(expected, KeyReassembler.privateExponent(e, totient));
+        } catch (ArithmeticException ex) {
+          assertNull(expected);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void multiPrimeDecrypts() {
+    Random random = new Random(1337);
+    for (int count = 2; count <= 5; ++count) {
+      List<BigInteger> primes = new ArrayList<>();
+      BigInteger modulus = BigInteger.ONE;
+      while (primes.size() < count) {
+        BigInteger prime = BigInteger.probablePrime(384, random);
+        if (!primes.contains(prime) && prime.mod(E).compareTo(BigInteger.ONE) != 0) {
+          primes.add(prime);
+          modulus = modulus.multiply(prime);
+        }
+      }
+      RSAMultiPrimePrivateCrtKeySpec key =
+          KeyReassembler.reassembleMultiPrime(
+              modulus, E, primes.get(0), primes.subList(2, primes.size()));
+      assertEquals(primes.get(1), key.getPrimeQ());
+      assertEquals(count - 2, key.getOtherPrimeInfo() == null ? 0 : key.getOtherPrimeInfo().length);
+
+      BigInteger message = new BigInteger(modulus.bitLength() - 1, random);
+      BigInteger ciphertext = message.modPow(E, modulus);
+      assertEquals(message, ciphertext.modPow(key.getPrivateExponent(), modulus));
+      assertEquals(message, decryptMultiPrimeCrt(ciphertext, key));
+    }
+  }
+
+  @Test(expected = ArithmeticException.class)
+  public void multiPrimeRejectsNonFactors() {
+    KeyReassembler.reassembleMultiPrime(N, E, P, Arrays.asList(BigInteger.valueOf(65539)));
+  }
+
+  static void assertSameKey(RSAPrivateCrtKeySpec expected, RSAPrivateCrtKeySpec actual) {
+    assertEquals(expected.getModulus(), actual.getModulus());
+    assertEquals(expected.getPublicExponent(), actual.getPublicExponent());
+    assertEquals(expected.getPrivateExponent(), actual.getPrivateExponent());
+    assertEquals(expected.getPrimeP(), actual.getPrimeP());
+    assertEquals(expected.getPrimeQ(), actual.getPrimeQ());
+    assertEquals(expected.getPrimeExponentP(), actual.getPrimeExponentP());
+    assertEquals(expected.getPrimeExponentQ(), actual.getPrimeExponentQ());
+    assertEquals(expected.getCrtCoefficient(), actual.getCrtCoefficient());
+  }
+
   private BigInteger randomMessage(BigInteger modulus) {
     SecureRandom secureRandom = new SecureRandom();
     int bits = modulus.bitLength() / 2;
@@ -135,6 +292,25 @@ public class KeyReassemblerTest {
     return m2.add(h.multiply(key.getPrimeQ()));
   }
 
+  /** RSADP as specified by RFC 8017 section 5.1.2, step 2.b */
+  private BigInteger decryptMultiPrimeCrt(
+      BigInteger ciphertext, RSAMultiPrimePrivateCrtKeySpec key) {
+    BigInteger m1 = ciphertext.modPow(key.getPrimeExponentP(), key.getPrimeP());
+    BigInteger m2 = ciphertext.modPow(key.getPrimeExponentQ(), key.getPrimeQ());
+    BigInteger h = key.getCrtCoefficient().multiply(m1.subtract(m2)).mod(key.getPrimeP());
+    BigInteger m = m2.add(h.multiply(key.getPrimeQ()));
+    if (key.getOtherPrimeInfo() != null) {
+      BigInteger r = key.getPrimeP().multiply(key.getPrimeQ());
+      for (RSAOtherPrimeInfo info : key.getOtherPrimeInfo()) {
+        BigInteger mi = ciphertext.modPow(info.getExponent(), info.getPrime());
+        h = mi.subtract(m).multiply(info.getCrtCoefficient()).mod(info.getPrime());
+        m = m.add(r.multiply(h));
+        r = r.multiply(info.getPrime());
+      }
+    }
+    return m;
+  }
+
   public void testRSA(
       RSAPublicKey publicKey,
       BigInteger primeP,
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.security.KeyFactory;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertSame;
+import static junit.framework.TestCase.assertTrue;
+
+public class LazyRSAPrivateCrtKeySpecTest {
+
+  @Test
+  public void matchesEagerReassembly() {
+    for (KeyReassembler.TotientFunction totientFunction :
+        new KeyReassembler.TotientFunction[] {
+          KeyReassembler.EULER_TOTIENT_FUNCTION, KeyReassembler.CARMICHAEL_TOTIENT_FUNCTION
+        }) {
+      KeyReassemblerTest.assertSameKey(
+          KeyReassembler.reassemble(
+              KeyReassemblerTest.N, KeyReassemblerTest.E, KeyReassemblerTest.P, totientFunction),
+          new LazyRSAPrivateCrtKeySpec(
+              KeyReassemblerTest.N, KeyReassemblerTest.E, KeyReassemblerTest.P, totientFunction));
+    }
+  }
+
+  @Test
+  public void computesOnlyWhatIsAccessed() {
+    LazyRSAPrivateCrtKeySpec spec =
+        new LazyRSAPrivateCrtKeySpec(
+            KeyReassemblerTest.N, KeyReassemblerTest.E, KeyReassemblerTest.P);
+    assertEquals(KeyReassemblerTest.N, spec.getModulus());
+    assertEquals(KeyReassemblerTest.P, spec.getPrimeP());
+    spec.getCrtCoefficient();
+    assertFalse(spec.isFullyComputed());
+  }
+
+  @Test
+  public void memoizesAcrossThreads() throws Exception {
+    LazyRSAPrivateCrtKeySpec spec =
+        new LazyRSAPrivateCrtKeySpec(
+            KeyReassemblerTest.N, KeyReassemblerTest.E, KeyReassemblerTest.P);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Callable<BigInteger>> tasks = new ArrayList<>();
+      for (int i = 0; i < 32; ++i) {
+        tasks.add(i % 2 == 0 ? spec::getPrimeExponentQ : spec::getPrivateExponent);
+      }
+      List<Future<BigInteger>> results = executor.invokeAll(tasks);
+      for (int i = 2; i < results.size(); ++i) {
+        assertSame(results.get(i % 2).get(), results.get(i).get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void acceptedByKeyFactory() throws Exception {
+    LazyRSAPrivateCrtKeySpec spec =
+        new LazyRSAPrivateCrtKeySpec(
+            KeyReassemblerTest.N, KeyReassemblerTest.E, KeyReassemblerTest.P);
+    RSAPrivateCrtKey key = (RSAPrivateCrtKey) KeyFactory.getInstance("RSA").generatePrivate(spec);
+    assertEquals(spec.getCrtCoefficient(), key.getCrtCoefficient());
+    assertTrue(spec.isFullyComputed());
+  }
+}
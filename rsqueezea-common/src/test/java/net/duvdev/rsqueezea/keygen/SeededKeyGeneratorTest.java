@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.keygen;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.spec.RSAPrivateCrtKeySpec;
+import java.util.concurrent.ForkJoinPool;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertTrue;
+import static junit.framework.TestCase.fail;
+
+public class SeededKeyGeneratorTest {
+
+  @Test
+  public void testHmacDrbgKnownAnswer() {
+    HmacDrbg drbg =
+        new HmacDrbg(seed(0), new byte[0], "personal".getBytes(StandardCharsets.US_ASCII));
+    byte[] first = new byte[40];
+    drbg.nextBytes(first);
+    assertEquals(
+        "4aa4b33538b50eb053318bc08c132d9b18682fc3304bb14f90cc423c2d3dd17ef4674e3d099007e3",
+        hex(first));
+    byte[] second = new byte[16];
+    drbg.nextBytes(second);
+    assertEquals("8dfd74c7d3fbbf4d94bb03064c8dc94b", hex(second));
+  }
+
+  @Test
+  public void testKnownKey() {
+    // Changing this value breaks every seed squeezed so far
+    assertEquals(
+        "ba907dfd858a574d2f2d67ecdd48bb3f0f8357008a627a3ac556d60e87239adee234d4f1d5d8f782ad3488e5"
+            + "6a515a591022c67710c216578c7539f85dfb3c19a9b759405bf09e8c168540f042754420ce35c1ab5a"
+            + "f924d189d776227a037dc4dfb3645646e2ccc469ab82addb31b322bcb2c35f801d3e31b2264516b318"
+            + "a447",
+        SeededKeyGenerator.generate(seed(0), 1024).getModulus().toString(16));
+  }
+
+  @Test
+  public void testSameKeyWhateverTheParallelism() {
+    ForkJoinPool sequential = new ForkJoinPool(1);
+    ForkJoinPool parallel = new ForkJoinPool(4);
+    try {
+      for (int i = 1; i < 4; ++i) {
+        RSAPrivateCrtKeySpec expected = SeededKeyGenerator.generate(seed(i), 1024, sequential);
+        RSAPrivateCrtKeySpec actual = SeededKeyGenerator.generate(seed(i), 1024, parallel);
+        assertEquals(expected.getModulus(), actual.getModulus());
+        assertEquals(expected.getPrimeP(), actual.getPrimeP());
+      }
+    } finally {
+      sequential.shutdown();
+      parallel.shutdown();
+    }
+  }
+
+  @Test
+  public void testKeyIsValid() {
+    for (int bits : new int[] {512, 1023, 1024, 2048}) {
+      RSAPrivateCrtKeySpec key = SeededKeyGenerator.generate(seed(bits), bits);
+      assertEquals(bits, key.getModulus().bitLength());
+      assertEquals(SeededKeyGenerator.PUBLIC_EXPONENT, key.getPublicExponent());
+      assertEquals(key.getModulus(), key.getPrimeP().multiply(key.getPrimeQ()));
+      assertTrue(key.getPrimeP().compareTo(key.getPrimeQ()) > 0);
+      assertTrue(key.getPrimeP().isProbablePrime(64));
+      assertTrue(key.getPrimeQ().isProbablePrime(64));
+      BigInteger message = BigInteger.valueOf(0x5eed);
+      assertEquals(
+          message,
+          message
+              .modPow(key.getPublicExponent(), key.getModulus())
+              .modPow(key.getPrivateExponent(), key.getModulus()));
+    }
+  }
+
+  @Test
+  public void testSeedsYieldDifferentKeys() {
+    assertFalse(
+        SeededKeyGenerator.generate(seed(1), 512)
+            .getModulus()
+            .equals(SeededKeyGenerator.generate(seed(2), 512).getModulus()));
+    assertFalse(
+        SeededKeyGenerator.generate(seed(1), 512)
+            .getModulus()
+            .equals(SeededKeyGenerator.generate(seed(1), 520).getModulus()));
+  }
+
+  @Test
+  public void testInvalidArguments() {
+    try {
+      SeededKeyGenerator.generate(new byte[SeededKeyGenerator.SEED_LENGTH - 1], 1024);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      SeededKeyGenerator.generate(seed(0), SeededKeyGenerator.MIN_MODULUS_BITS - 1);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testMillerRabin() {
+    assertTrue(PrimeSearch.isProbablePrime(BigInteger.valueOf(65537), 40));
+    assertTrue(
+        PrimeSearch.isProbablePrime(BigInteger.ONE.shiftLeft(127).subtract(BigInteger.ONE), 40));
+    // Carmichael numbers pass the Fermat test for every coprime base
+    for (long carmichael : new long[] {561, 41041, 825265, 321197185}) {
+      assertFalse(PrimeSearch.isProbablePrime(BigInteger.valueOf(carmichael), 40));
+    }
+    assertFalse(
+        PrimeSearch.isProbablePrime(
+            BigInteger.ONE.shiftLeft(127).subtract(BigInteger.ONE).pow(2), 40));
+  }
+
+  private static String hex(byte[] bytes) {
+    return String.format("%0" + 2 * bytes.length + "x", new BigInteger(1, bytes));
+  }
+
+  private static byte[] seed(int value) {
+    byte[] seed = new byte[SeededKeyGenerator.SEED_LENGTH];
+    for (int i = 0; i < seed.length; ++i) {
+      seed[i] = (byte) (i + value);
+    }
+    return seed;
+  }
+}
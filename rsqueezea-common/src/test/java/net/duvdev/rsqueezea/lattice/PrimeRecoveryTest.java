@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) Itay Duvdevani and contributors. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for details.
+ */
+package net.duvdev.rsqueezea.lattice;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.security.interfaces.RSAPrivateCrtKey;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.fail;
+
+public class PrimeRecoveryTest {
+
+  @Test
+  public void testReduceFindsShortestBasis() {
+    BigInteger[][] basis = {
+      {BigInteger.valueOf(1), BigInteger.valueOf(1), BigInteger.valueOf(1)},
+      {BigInteger.valueOf(-1), BigInteger.valueOf(0), BigInteger.valueOf(2)},
+      {BigInteger.valueOf(3), BigInteger.valueOf(5), BigInteger.valueOf(6)}
+    };
+    LatticeReduction.reduce(basis);
+    assertEquals(1, squaredNorm(basis[0]));
+    assertEquals(2, squaredNorm(basis[1]));
+    assertEquals(5, squaredNorm(basis[2]));
+  }
+
+  @Test
+  public void testRecoversAtTheBound() throws Exception {
+    for (int bits : new int[] {512, 1024, 2048}) {
+      for (int seed = 0; seed < 4; ++seed) {
+        BigInteger[] key = generate(bits, seed);
+        BigInteger modulus = key[0];
+        BigInteger prime = key[1];
+        int unknownBits = PrimeRecovery.unknownBits(modulus.bitLength());
+        assertEquals(
+            prime, PrimeRecovery.fromHighBits(modulus, prime.shiftRight(unknownBits), unknownBits));
+      }
+    }
+  }
+
+  @Test
+  public void testRecoversWithFewUnknownBits() throws Exception {
+    BigInteger[] key = generate(1024, 7);
+    for (int unknownBits : new int[] {0, 1, 2, 17}) {
+      assertEquals(
+          key[1], PrimeRecovery.fromHighBits(key[0], key[1].shiftRight(unknownBits), unknownBits));
+    }
+  }
+
+  @Test
+  public void testWrongHighBits() throws Exception {
+    BigInteger[] key = generate(1024, 3);
+    int unknownBits = PrimeRecovery.unknownBits(key[0].bitLength());
+    BigInteger highBits = key[1].shiftRight(unknownBits).flipBit(20);
+    try {
+      PrimeRecovery.fromHighBits(key[0], highBits, unknownBits);
+      fail();
+    } catch (ArithmeticException e) {
+      // expected
+    }
+  }
+
+  /** @return The modulus and the larger prime of a key */
+  private static BigInteger[] generate(int bits, int seed) throws Exception {
+    SecureRandom random = SecureRandom.getInstance("SHA1PRNG");
+    random.setSeed(seed);
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+    generator.initialize(bits, random);
+    RSAPrivateCrtKey key = (RSAPrivateCrtKey) generator.generateKeyPair().getPrivate();
+    return new BigInteger[] {key.getModulus(), key.getPrimeP().max(key.getPrimeQ())};
+  }
+
+  private static long squaredNorm(BigInteger[] vector) {
+    long norm = 0;
+    for (BigInteger value : vector) {
+      norm += value.longValueExact() * value.longValueExact();
+    }
+    return norm;
+  }
+}